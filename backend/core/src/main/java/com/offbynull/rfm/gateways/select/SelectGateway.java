@@ -20,6 +20,7 @@ import com.offbynull.rfm.gateways.ssh.*;
 import com.offbynull.actors.gateway.Gateway;
 import com.offbynull.actors.gateways.threadpool.ThreadPoolGateway;
 import com.offbynull.actors.shuttle.Shuttle;
+import com.offbynull.rfm.gateways.virtual.VirtualThreadProcessor;
 import java.util.Map;
 import com.offbynull.actors.gateways.threadpool.ThreadPoolProcessor;
 import java.util.HashMap;
@@ -42,6 +43,13 @@ public final class SelectGateway implements Gateway {
         return ThreadPoolGateway.create(prefix, payloadTypes, minThreads, maxThreads);
     }
 
+    // Closing/joining the returned gateway only covers the thread that hands messages off -- messages already running on virtual threads
+    // aren't interrupted or waited on (see VirtualThreadProcessor).
+    public static ThreadPoolGateway createVirtual(String prefix, Map<Class<?>, ThreadPoolProcessor> payloadTypes, int maxConcurrent) {
+        // Pool thread only hands off requests, so 1 is enough -- maxConcurrent is what bounds the work.
+        return ThreadPoolGateway.create(prefix, VirtualThreadProcessor.wrap(payloadTypes, maxConcurrent), 1, 1);
+    }
+
     public SelectGateway(String prefix, int minThreads, int maxThreads) {
         Validate.notNull(prefix);
         Validate.isTrue(minThreads >= 0);
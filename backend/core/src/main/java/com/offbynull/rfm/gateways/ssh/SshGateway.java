@@ -19,6 +19,7 @@ package com.offbynull.rfm.gateways.ssh;
 import com.offbynull.actors.gateway.Gateway;
 import com.offbynull.actors.gateways.threadpool.ThreadPoolGateway;
 import com.offbynull.actors.shuttle.Shuttle;
+import com.offbynull.rfm.gateways.virtual.VirtualThreadProcessor;
 import java.util.Map;
 import com.offbynull.actors.gateways.threadpool.ThreadPoolProcessor;
 import java.util.HashMap;
@@ -42,15 +43,44 @@ public final class SshGateway implements Gateway {
         return new SshGateway(prefix, minThreads, maxThreads);
     }
 
+    /**
+     * Create a {@link SshGateway} that runs each request on its own virtual thread rather than tying up a thread pool thread.
+     * <p>
+     * {@link #close() } and {@link #join() } only cover the thread that hands requests off. Requests that are already running when the
+     * gateway is closed aren't interrupted or waited on -- they run to completion in the background, and their responses are dropped if
+     * nothing is listening for them anymore.
+     * @param prefix address prefix for this gateway
+     * @param maxConcurrent maximum number of requests running at any given time -- once hit, this gateway stops pulling in new requests
+     * until a running one finishes
+     * @return new gateway
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code maxConcurrent <= 0}
+     */
+    public static SshGateway createVirtual(String prefix, int maxConcurrent) {
+        Validate.notNull(prefix);
+        Validate.isTrue(maxConcurrent > 0);
+
+        // Pool thread only hands off requests, so 1 is enough.
+        Map<Class<?>, ThreadPoolProcessor> payloadTypes = VirtualThreadProcessor.wrap(createPayloadTypes(), maxConcurrent);
+        return new SshGateway(ThreadPoolGateway.create(prefix, payloadTypes, 1, 1));
+    }
+
     public SshGateway(String prefix, int minThreads, int maxThreads) {
         Validate.notNull(prefix);
         Validate.isTrue(minThreads >= 0);
         Validate.isTrue(maxThreads >= 0);
 
+        this.backingGateway = ThreadPoolGateway.create(prefix, createPayloadTypes(), minThreads, maxThreads);
+    }
+
+    private SshGateway(ThreadPoolGateway backingGateway) {
+        this.backingGateway = backingGateway;
+    }
+
+    private static Map<Class<?>, ThreadPoolProcessor> createPayloadTypes() {
         Map<Class<?>, ThreadPoolProcessor> payloadTypes = new HashMap<>();
         payloadTypes.put(SshRequestMessage.class, new SshProcessor());
-
-        this.backingGateway = ThreadPoolGateway.create(prefix, payloadTypes, minThreads, maxThreads);
+        return payloadTypes;
     }
 
     @Override
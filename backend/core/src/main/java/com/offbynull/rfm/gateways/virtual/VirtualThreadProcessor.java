@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.gateways.virtual;
+
+import com.offbynull.actors.gateways.threadpool.ThreadPoolProcessor;
+import com.offbynull.actors.shuttle.Message;
+import com.offbynull.actors.shuttle.Shuttle;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ThreadPoolProcessor} that hands each message off to its own virtual thread.
+ * <p>
+ * The thread pool thread that calls {@link #process(com.offbynull.actors.shuttle.Message, java.util.concurrent.ConcurrentHashMap) }
+ * only waits for a permit from the semaphore and starts the virtual thread, so a single pool thread is enough to keep thousands of
+ * blocking calls (e.g. SSH sessions) going at once. Once all permits are taken, the pool thread blocks until one frees up -- this is what
+ * provides back-pressure, as the backing gateway stops pulling messages until then.
+ * <p>
+ * If the JVM doesn't support virtual threads, platform daemon threads are used instead (the semaphore still bounds how many there are).
+ * <p>
+ * Threads started by this processor aren't owned by the backing gateway. Closing the gateway stops it from handing off new messages, but
+ * it neither waits for nor interrupts messages that are already processing -- those run to completion in the background (virtual threads
+ * and fallback platform threads are both daemons, so they don't keep the JVM alive).
+ * @author Kasra Faghihi
+ */
+public final class VirtualThreadProcessor implements ThreadPoolProcessor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadProcessor.class);
+
+    private static final ThreadFactory THREAD_FACTORY = createThreadFactory();
+    
+    private final ThreadPoolProcessor backingProcessor;
+    private final Semaphore permits;
+    private final ThreadFactory threadFactory;
+
+    /**
+     * Wrap a set of processors such that they run on virtual threads. All of the returned processors share the same pool of permits,
+     * meaning that {@code maxConcurrent} is the limit for all payload types combined.
+     * @param payloadTypes payload types mapped to processors
+     * @param maxConcurrent maximum number of messages processing at any given time
+     * @return copy of {@code payloadTypes} with processors wrapped
+     * @throws NullPointerException if any argument is {@code null} or contains {@code null}
+     * @throws IllegalArgumentException if {@code maxConcurrent <= 0}
+     */
+    public static Map<Class<?>, ThreadPoolProcessor> wrap(Map<Class<?>, ThreadPoolProcessor> payloadTypes, int maxConcurrent) {
+        Validate.notNull(payloadTypes);
+        Validate.noNullElements(payloadTypes.keySet());
+        Validate.noNullElements(payloadTypes.values());
+        Validate.isTrue(maxConcurrent > 0);
+        
+        Semaphore permits = new Semaphore(maxConcurrent);
+        
+        Map<Class<?>, ThreadPoolProcessor> ret = new HashMap<>();
+        payloadTypes.forEach((k, v) -> ret.put(k, new VirtualThreadProcessor(v, permits)));
+        return ret;
+    }
+
+    /**
+     * Constructs a {@link VirtualThreadProcessor} object.
+     * @param backingProcessor processor to run on virtual threads
+     * @param permits semaphore bounding the number of messages processing at any given time
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public VirtualThreadProcessor(ThreadPoolProcessor backingProcessor, Semaphore permits) {
+        this(backingProcessor, permits, THREAD_FACTORY);
+    }
+
+    VirtualThreadProcessor(ThreadPoolProcessor backingProcessor, Semaphore permits, ThreadFactory threadFactory) {
+        Validate.notNull(backingProcessor);
+        Validate.notNull(permits);
+        Validate.notNull(threadFactory);
+
+        this.backingProcessor = backingProcessor;
+        this.permits = permits;
+        this.threadFactory = threadFactory;
+    }
+
+    @Override
+    public void process(Message message, ConcurrentHashMap<String, Shuttle> outShuttles) throws Exception {
+        Validate.notNull(message);
+        Validate.notNull(outShuttles);
+
+        permits.acquire();
+        try {
+            Thread thread = threadFactory.newThread(() -> {
+                try {
+                    backingProcessor.process(message, outShuttles);
+                } catch (Exception e) {
+                    LOG.error("Failed to process message {}", message, e);
+                } finally {
+                    permits.release();
+                }
+            });
+            thread.start();
+        } catch (RuntimeException | Error e) {
+            permits.release();
+            throw e;
+        }
+    }
+    
+    private static ThreadFactory createThreadFactory() {
+        // Source level is 1.8, so Thread.ofVirtual() has to be accessed reflectively.
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderCls = Class.forName("java.lang.Thread$Builder");
+            builder = builderCls.getMethod("name", String.class, long.class).invoke(builder, "rfm-vthread-", 0L);
+            ThreadFactory factory = (ThreadFactory) builderCls.getMethod("factory").invoke(builder);
+            LOG.info("Using virtual threads");
+            return factory;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.info("Virtual threads not available, falling back to platform threads");
+        }
+        
+        return createPlatformThreadFactory();
+    }
+    
+    static ThreadFactory createPlatformThreadFactory() {
+        AtomicLong counter = new AtomicLong();
+        return r -> {
+            Thread thread = new Thread(r, "rfm-thread-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,139 @@
+package com.offbynull.rfm.gateways.virtual;
+
+import com.offbynull.actors.address.Address;
+import com.offbynull.actors.gateways.threadpool.ThreadPoolProcessor;
+import com.offbynull.actors.shuttle.Message;
+import com.offbynull.actors.shuttle.Shuttle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VirtualThreadProcessorTest {
+
+    private static final int MAX_CONCURRENT = 4;
+
+    private final Message message = new Message(Address.fromString("src"), Address.fromString("dst"), "payload");
+    private final ConcurrentHashMap<String, Shuttle> outShuttles = new ConcurrentHashMap<>();
+
+    private ExecutorService dispatchExecutor;
+    private Semaphore permits;
+
+    @Before
+    public void setUp() {
+        dispatchExecutor = Executors.newSingleThreadExecutor();
+        permits = new Semaphore(MAX_CONCURRENT);
+    }
+
+    @After
+    public void tearDown() {
+        dispatchExecutor.shutdownNow();
+    }
+
+    @Test(timeout = 10000L)
+    public void mustBlockOnceMaxConcurrentReachedUntilOneFinishes() throws Exception {
+        Semaphore finishOne = new Semaphore(0);
+        CountDownLatch started = new CountDownLatch(MAX_CONCURRENT + 1);
+        VirtualThreadProcessor fixture = new VirtualThreadProcessor((m, s) -> {
+            started.countDown();
+            finishOne.acquire();
+        }, permits);
+
+        for (int i = 0; i < MAX_CONCURRENT; i++) {
+            fixture.process(message, outShuttles);
+        }
+
+        Future<?> blocked = dispatchExecutor.submit(() -> {
+            fixture.process(message, outShuttles);
+            return null;
+        });
+        try {
+            blocked.get(500L, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (TimeoutException te) {
+            // expected -- all permits taken, dispatching thread stays blocked
+        }
+        assertEquals(1L, started.getCount());
+
+        finishOne.release();
+        blocked.get();
+        started.await();
+
+        finishOne.release(MAX_CONCURRENT);
+    }
+
+    @Test(timeout = 10000L)
+    public void mustReleasePermitWhenProcessingFails() throws Exception {
+        VirtualThreadProcessor fixture = new VirtualThreadProcessor((m, s) -> {
+            throw new IllegalStateException("fake failure");
+        }, permits);
+
+        for (int i = 0; i < MAX_CONCURRENT * 4; i++) { // would block forever if failures leaked permits
+            fixture.process(message, outShuttles);
+        }
+
+        permits.acquire(MAX_CONCURRENT);
+    }
+
+    @Test(timeout = 10000L)
+    public void mustReleasePermitWhenProcessingThrowsError() throws Exception {
+        VirtualThreadProcessor fixture = new VirtualThreadProcessor((m, s) -> {
+            throw new AssertionError("fake error");
+        }, permits);
+
+        for (int i = 0; i < MAX_CONCURRENT * 4; i++) {
+            fixture.process(message, outShuttles);
+        }
+
+        permits.acquire(MAX_CONCURRENT);
+    }
+
+    @Test
+    public void mustReleasePermitWhenThreadCannotBeStarted() throws Exception {
+        ThreadFactory failingFactory = r -> {
+            throw new IllegalStateException("fake failure");
+        };
+        VirtualThreadProcessor fixture = new VirtualThreadProcessor((m, s) -> { }, permits, failingFactory);
+
+        try {
+            fixture.process(message, outShuttles);
+            fail();
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+
+        assertEquals(MAX_CONCURRENT, permits.availablePermits());
+    }
+
+    @Test(timeout = 10000L)
+    public void mustRunOnPlatformDaemonThreadsWhenFallingBack() throws Exception {
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        ThreadPoolProcessor backing = (m, s) -> {
+            thread.set(Thread.currentThread());
+            done.countDown();
+        };
+        VirtualThreadProcessor fixture = new VirtualThreadProcessor(backing, permits,
+                VirtualThreadProcessor.createPlatformThreadFactory());
+
+        fixture.process(message, outShuttles);
+        done.await();
+
+        assertTrue(thread.get().isDaemon());
+        assertTrue(thread.get().getName().startsWith("rfm-thread-"));
+        assertFalse(thread.get() == Thread.currentThread());
+    }
+}
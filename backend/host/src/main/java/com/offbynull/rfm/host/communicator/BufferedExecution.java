@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.communicator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.Validate;
+
+// Backs Communicator.executeBuffered()/executeBufferedNoSync(). Lives here because interface methods can't be private in Java 8.
+final class BufferedExecution {
+
+    private BufferedExecution() {
+        // do nothing
+    }
+
+    public static BufferedExecuteResult execute(
+            Communicator communicator,
+            long timeout, long expectedBootTime,
+            boolean sync,
+            String script, String... scriptArgs) throws IOException {
+        Validate.notNull(communicator);
+        Validate.notNull(script);
+        Validate.notNull(scriptArgs);
+        Validate.noNullElements(scriptArgs);
+        Validate.isTrue(timeout >= 0L);
+        Validate.isTrue(expectedBootTime == -1L || expectedBootTime >= 0L);
+
+        Path stdoutPath = Files.createTempFile("comm", "stdout");
+        Path stderrPath = Files.createTempFile("comm", "stderr");
+
+        FileChannel stdoutFc = null;
+        FileChannel stderrFc = null;
+        try {
+            // create stdout/stderr buffer files
+            stdoutFc = FileChannel.open(stdoutPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            stderrFc = FileChannel.open(stderrPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            stdoutFc.truncate(0L); // just incase
+            stderrFc.truncate(0L); // just incase
+            
+            // create writers linked to stdout/stderr file buffers
+            OutputStream stdoutOs = Channels.newOutputStream(stdoutFc);
+            OutputStreamWriter stdoutWriter = new OutputStreamWriter(stdoutOs, UTF_8);
+            
+            OutputStream stderrOs = Channels.newOutputStream(stderrFc);
+            OutputStreamWriter stderrWriter = new OutputStreamWriter(stderrOs, UTF_8);
+
+            // execute script and dump stdout/stderr to file buffers
+            ExecuteResult execRes = communicator.execute(
+                    timeout, expectedBootTime,
+                    stdoutWriter, Long.MAX_VALUE,
+                    stderrWriter, Long.MAX_VALUE,
+                    script, scriptArgs);
+            
+            // flush writers to make sure the channels have everything
+            stdoutWriter.flush();
+            stderrWriter.flush();
+
+            InputStream stdoutIs;
+            InputStream stderrIs;
+            if (sync) {
+                // make sure disk has everything, then set stdout/stderr buffer file pointers to 0 (for reading from beginning)
+                stdoutFc.force(true);
+                stderrFc.force(true);
+                stdoutFc.position(0L);
+                stderrFc.position(0L);
+                stdoutIs = Channels.newInputStream(stdoutFc);
+                stderrIs = Channels.newInputStream(stderrFc);
+            } else {
+                // no fsync -- the page cache already has everything, so read it back out through a mapping
+                stdoutIs = openMapped(stdoutFc);
+                stderrIs = openMapped(stderrFc);
+            }
+
+            // create readers linked to stdout/stderr file buffers
+            InputStreamReader stdoutReader = new InputStreamReader(stdoutIs, UTF_8);
+            InputStreamReader stderrReader = new InputStreamReader(stderrIs, UTF_8);
+
+            return new BufferedExecuteResult(
+                    stdoutPath, stdoutReader,
+                    stderrPath, stderrReader,
+                    execRes.getExitCode(), execRes.getBootTime());
+        } catch (RuntimeException | IOException e) {
+            // once the channels are closed, any streams on those channels will be implictly closed as well
+            IOUtils.closeQuietly(stdoutFc);
+            IOUtils.closeQuietly(stderrFc);
+            Files.deleteIfExists(stdoutPath);
+            Files.deleteIfExists(stderrPath);
+            throw e;
+        }
+    }
+    
+    private static InputStream openMapped(FileChannel fc) throws IOException {
+        long size = fc.size();
+        if (size > Integer.MAX_VALUE) { // too large to map in one go, fall back to reading through the channel
+            fc.position(0L);
+            return Channels.newInputStream(fc);
+        }
+
+        MappedByteBuffer buffer = fc.map(READ_ONLY, 0L, size);
+        fc.close(); // mapping stays valid after the channel is closed
+        return new ByteBufferInputStream(buffer);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.communicator;
+
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import org.apache.commons.lang3.Validate;
+
+// InputStream over a ByteBuffer (used to read back memory-mapped buffer files without copying them onto the heap first).
+final class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+        Validate.notNull(buffer);
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        Validate.notNull(b);
+        Validate.isTrue(off >= 0 && len >= 0 && len <= b.length - off);
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int amount = Math.min(len, buffer.remaining());
+        buffer.get(b, off, amount);
+        return amount;
+    }
+
+    @Override
+    public long skip(long n) {
+        if (n <= 0L) {
+            return 0L;
+        }
+        int amount = (int) Math.min(n, buffer.remaining());
+        ((Buffer) buffer).position(buffer.position() + amount); // cast so Java 8 runtimes link against Buffer.position(int)
+        return amount;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+}
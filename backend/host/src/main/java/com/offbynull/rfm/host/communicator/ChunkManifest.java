@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.communicator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import java.util.Arrays;
+import java.util.Properties;
+import org.apache.commons.lang3.Validate;
+
+// Local record of a chunked transfer's progress. Tracks the expected hash of each chunk along with whether or not that chunk has been
+// transferred, so an interrupted transfer can pick up where it left off. A manifest is only reused if everything about the transfer
+// (direction, remote path, size, chunk size, and chunk hashes) still matches -- otherwise the transfer starts from scratch.
+final class ChunkManifest {
+
+    private final String direction;
+    private final String remotePath;
+    private final long size;
+    private final int chunkSize;
+    private final String[] hashes;
+    private final boolean[] done;
+
+    ChunkManifest(String direction, String remotePath, long size, int chunkSize, String[] hashes) {
+        Validate.notNull(direction);
+        Validate.notNull(remotePath);
+        Validate.notNull(hashes);
+        Validate.noNullElements(hashes);
+        Validate.isTrue(size >= 0L);
+        Validate.isTrue(chunkSize >= 1);
+        Validate.isTrue(hashes.length == chunkCount(size, chunkSize));
+
+        this.direction = direction;
+        this.remotePath = remotePath;
+        this.size = size;
+        this.chunkSize = chunkSize;
+        this.hashes = hashes.clone();
+        this.done = new boolean[hashes.length];
+    }
+
+    static int chunkCount(long size, int chunkSize) {
+        return Math.toIntExact((size + chunkSize - 1L) / chunkSize);
+    }
+
+    // Returns null if no manifest exists at path or if the manifest there is unreadable
+    static ChunkManifest load(Path path) throws IOException {
+        Properties props = new Properties();
+        try (InputStream is = Files.newInputStream(path)) {
+            props.load(is);
+        } catch (NoSuchFileException nsfe) {
+            return null;
+        }
+
+        try {
+            String direction = props.getProperty("direction");
+            String remotePath = props.getProperty("remotePath");
+            long size = Long.parseLong(props.getProperty("size"));
+            int chunkSize = Integer.parseInt(props.getProperty("chunkSize"));
+            int count = chunkCount(size, chunkSize);
+            String[] hashes = new String[count];
+            boolean[] done = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                hashes[i] = props.getProperty("chunk." + i + ".hash");
+                done[i] = Boolean.parseBoolean(props.getProperty("chunk." + i + ".done"));
+            }
+
+            ChunkManifest ret = new ChunkManifest(direction, remotePath, size, chunkSize, hashes);
+            System.arraycopy(done, 0, ret.done, 0, count);
+            return ret;
+        } catch (RuntimeException re) {
+            return null;
+        }
+    }
+
+    // Written to a temporary file first and then moved over, so a crash mid-save can't leave behind a corrupt manifest
+    synchronized void save(Path path) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("direction", direction);
+        props.setProperty("remotePath", remotePath);
+        props.setProperty("size", String.valueOf(size));
+        props.setProperty("chunkSize", String.valueOf(chunkSize));
+        for (int i = 0; i < hashes.length; i++) {
+            props.setProperty("chunk." + i + ".hash", hashes[i]);
+            props.setProperty("chunk." + i + ".done", String.valueOf(done[i]));
+        }
+
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream os = Files.newOutputStream(tempPath)) {
+            props.store(os, null);
+        }
+        Files.move(tempPath, path, ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    // Appends a done marker to the manifest rather than rewriting the whole thing, so marking off every chunk of a transfer stays linear in
+    // the number of chunks. Later entries in a properties file override earlier ones, so load() picks the marker up. A torn append can
+    // only lose the marker (the chunk gets transferred again) -- the leading newline keeps it from merging into a previously torn line.
+    synchronized void appendDone(Path path, int chunk) throws IOException {
+        done[chunk] = true;
+        
+        String line = "\nchunk." + chunk + ".done=true\n";
+        Files.write(path, line.getBytes(ISO_8859_1), APPEND);
+    }
+
+    boolean matches(String direction, String remotePath, long size, int chunkSize, String[] hashes) {
+        return this.direction.equals(direction)
+                && this.remotePath.equals(remotePath)
+                && this.size == size
+                && this.chunkSize == chunkSize
+                && Arrays.equals(this.hashes, hashes);
+    }
+
+    int getChunkCount() {
+        return hashes.length;
+    }
+
+    String getHash(int chunk) {
+        return hashes[chunk];
+    }
+
+    synchronized boolean isDone(int chunk) {
+        return done[chunk];
+    }
+
+    synchronized void setDone(int chunk, boolean value) {
+        done[chunk] = value;
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.communicator;
+
+import static com.offbynull.rfm.host.communicator.HashUtils.sha256Hex;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Transfers large files between the local machine and a host in fixed-size chunks, using multiple concurrent operations on a
+ * {@link Communicator}.
+ * <p>
+ * Each chunk is verified against a SHA-256 hash that's computed on the host. Progress is tracked in a manifest file stored next to the
+ * local file ({@code localPath + ".chunks"}), so if a transfer gets interrupted, calling the same method again only transfers the chunks
+ * that are missing. The manifest is deleted once the transfer completes.
+ * @author Kasra Faghihi
+ */
+public final class ChunkedTransfer {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedTransfer.class);
+
+    /**
+     * Default chunk size (8 MiB).
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Default number of chunks transferred concurrently.
+     */
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    private static final String MANIFEST_SUFFIX = ".chunks";
+    private static final int MAX_VERIFY_ATTEMPTS = 3;
+    private static final String DIRECTION_UPLOAD = "upload";
+    private static final String DIRECTION_DOWNLOAD = "download";
+    
+    private static final String CHUNK_HASHES_SCRIPT;
+    static {
+        try {
+            CHUNK_HASHES_SCRIPT = IOUtils.toString(ChunkedTransfer.class.getResourceAsStream("chunk_hashes.sh"), UTF_8);
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe);
+        }
+    }
+
+    private final Communicator communicator;
+    private final int chunkSize;
+    private final int parallelism;
+
+    /**
+     * Constructs a {@link ChunkedTransfer} object. Equivalent to calling
+     * {@code new ChunkedTransfer(communicator, DEFAULT_CHUNK_SIZE, DEFAULT_PARALLELISM)}.
+     * @param communicator communicator
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public ChunkedTransfer(Communicator communicator) {
+        this(communicator, DEFAULT_CHUNK_SIZE, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Constructs a {@link ChunkedTransfer} object.
+     * @param communicator communicator
+     * @param chunkSize size of each chunk in bytes (each in-flight chunk is held in memory)
+     * @param parallelism maximum number of chunks transferred concurrently
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code chunkSize < 1} or {@code parallelism < 1}
+     */
+    public ChunkedTransfer(Communicator communicator, int chunkSize, int parallelism) {
+        Validate.notNull(communicator);
+        Validate.isTrue(chunkSize >= 1);
+        Validate.isTrue(parallelism >= 1);
+
+        this.communicator = communicator;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Upload a file. If the remote file already exists, it will be overwritten.
+     * @param timeout timeout in milliseconds (applies to each individual operation rather than the transfer as a whole -- note that
+     * hashing the remote file is a single operation)
+     * @param localPath local file path
+     * @param remotePath remote file path
+     * @throws IOException on IO error, or if chunks still fail verification after being re-sent
+     * @throws TimeLimitExceededException if timed out
+     * @throws IllegalArgumentException if any of the following conditions are NOT met:
+     * {@code timeout >= 0L},
+     * {@code !localPath.isEmpty()},
+     * {@code !remotePath.isEmpty()}
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public void upload(long timeout, String localPath, String remotePath) throws IOException {
+        Validate.notNull(localPath);
+        Validate.notNull(remotePath);
+        Validate.isTrue(timeout >= 0L);
+        Validate.notBlank(localPath);
+        Validate.notBlank(remotePath);
+
+        Path local = Paths.get(localPath);
+        Path manifestPath = Paths.get(localPath + MANIFEST_SUFFIX);
+        
+        try (FileChannel fc = FileChannel.open(local, StandardOpenOption.READ)) {
+            long size = fc.size();
+            String[] localHashes = hashLocal(fc, size);
+
+            ChunkManifest manifest = ChunkManifest.load(manifestPath);
+            if (manifest == null || !manifest.matches(DIRECTION_UPLOAD, remotePath, size, chunkSize, localHashes)) {
+                logger.debug("Starting new upload of {} to {}", localPath, remotePath);
+                manifest = new ChunkManifest(DIRECTION_UPLOAD, remotePath, size, chunkSize, localHashes);
+                manifest.save(manifestPath);
+            } else {
+                logger.debug("Resuming upload of {} to {}", localPath, remotePath);
+            }
+
+            ChunkManifest finalManifest = manifest;
+            for (int attempt = 0; attempt < MAX_VERIFY_ATTEMPTS; attempt++) {
+                transferChunks(manifest, manifestPath, chunk -> {
+                    long offset = (long) chunk * chunkSize;
+                    int len = chunkLength(size, chunk);
+                    
+                    byte[] data = new byte[len];
+                    readFully(fc, data, offset);
+                    communicator.upload(timeout, data, 0, remotePath, offset, len);
+                });
+
+                // Truncate is needed in case remote file already existed and was larger
+                RemoteHashes remoteHashes = hashRemote(timeout, remotePath, size);
+                List<Integer> badChunks = new ArrayList<>();
+                for (int i = 0; i < finalManifest.getChunkCount(); i++) {
+                    if (!finalManifest.getHash(i).equals(remoteHashes.hashes[i])) {
+                        badChunks.add(i);
+                        finalManifest.setDone(i, false);
+                    }
+                }
+
+                if (badChunks.isEmpty()) {
+                    Files.deleteIfExists(manifestPath);
+                    return;
+                }
+
+                logger.warn("Chunks failed verification, resending: {}", badChunks);
+                manifest.save(manifestPath);
+            }
+            
+            throw new IOException("Chunks failed verification after " + MAX_VERIFY_ATTEMPTS + " attempts");
+        }
+    }
+
+    /**
+     * Download a file. If the local file already exists, it will be overwritten.
+     * @param timeout timeout in milliseconds (applies to each individual operation rather than the transfer as a whole -- note that
+     * hashing the remote file is a single operation)
+     * @param remotePath remote file path
+     * @param localPath local file path
+     * @throws IOException on IO error, or if {@code remotePath} doesn't exist, or if {@code remotePath} not a regular file, or if chunks
+     * still fail verification after being re-fetched
+     * @throws TimeLimitExceededException if timed out
+     * @throws IllegalArgumentException if any of the following conditions are NOT met:
+     * {@code timeout >= 0L},
+     * {@code !remotePath.isEmpty()},
+     * {@code !localPath.isEmpty()}
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public void download(long timeout, String remotePath, String localPath) throws IOException {
+        Validate.notNull(remotePath);
+        Validate.notNull(localPath);
+        Validate.isTrue(timeout >= 0L);
+        Validate.notBlank(remotePath);
+        Validate.notBlank(localPath);
+
+        Path local = Paths.get(localPath);
+        Path manifestPath = Paths.get(localPath + MANIFEST_SUFFIX);
+
+        RemoteHashes remoteHashes = hashRemote(timeout, remotePath, -1L);
+        long size = remoteHashes.size;
+
+        ChunkManifest manifest = ChunkManifest.load(manifestPath);
+        if (manifest == null
+                || !manifest.matches(DIRECTION_DOWNLOAD, remotePath, size, chunkSize, remoteHashes.hashes)
+                || !Files.isRegularFile(local)
+                || Files.size(local) != size) {
+            logger.debug("Starting new download of {} to {}", remotePath, localPath);
+            manifest = new ChunkManifest(DIRECTION_DOWNLOAD, remotePath, size, chunkSize, remoteHashes.hashes);
+            manifest.save(manifestPath);
+        } else {
+            logger.debug("Resuming download of {} to {}", remotePath, localPath);
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(local.toFile(), "rw")) {
+            raf.setLength(size);
+            FileChannel fc = raf.getChannel();
+
+            ChunkManifest finalManifest = manifest;
+            transferChunks(manifest, manifestPath, chunk -> {
+                long offset = (long) chunk * chunkSize;
+                int len = chunkLength(size, chunk);
+
+                for (int attempt = 0; attempt < MAX_VERIFY_ATTEMPTS; attempt++) {
+                    byte[] data = communicator.download(timeout, remotePath, offset, len);
+                    if (!finalManifest.getHash(chunk).equals(sha256Hex(data, 0, data.length))) {
+                        logger.warn("Chunk {} failed verification, refetching", chunk);
+                        continue;
+                    }
+
+                    writeFully(fc, data, offset);
+                    fc.force(false); // must be on disk before it's marked as done in the manifest
+                    return;
+                }
+
+                throw new IOException("Chunk " + chunk + " failed verification after " + MAX_VERIFY_ATTEMPTS + " attempts");
+            });
+        }
+
+        Files.deleteIfExists(manifestPath);
+    }
+
+    // Runs op for each chunk that isn't done, marking it done (and appending that to the manifest) as each one finishes. Bails on first
+    // failure.
+    private void transferChunks(ChunkManifest manifest, Path manifestPath, ChunkOperation op) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(
+                parallelism,
+                new BasicThreadFactory.Builder().daemon(true).namingPattern("Chunked Transfer %d").build());
+        try {
+            CompletionService<Integer> completionService = new ExecutorCompletionService<>(executor);
+            int submitted = 0;
+            for (int i = 0; i < manifest.getChunkCount(); i++) {
+                if (manifest.isDone(i)) {
+                    continue;
+                }
+                int chunk = i;
+                completionService.submit(() -> {
+                    op.run(chunk);
+                    return chunk;
+                });
+                submitted++;
+            }
+
+            for (int i = 0; i < submitted; i++) {
+                Future<Integer> future = completionService.take();
+                int chunk;
+                try {
+                    chunk = future.get();
+                } catch (ExecutionException ee) {
+                    Throwable cause = ee.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IOException(cause);
+                }
+
+                manifest.appendDone(manifestPath, chunk);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", ie);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private RemoteHashes hashRemote(long timeout, String remotePath, long truncateSize) throws IOException {
+        String[] args = truncateSize == -1L
+                ? new String[] { remotePath, String.valueOf(chunkSize) }
+                : new String[] { remotePath, String.valueOf(chunkSize), String.valueOf(truncateSize) };
+        
+        InMemoryExecuteResult res = communicator.execute(timeout, -1L, Long.MAX_VALUE, 64L * 1024L, CHUNK_HASHES_SCRIPT, args);
+        if (res.getExitCode() != 0) {
+            throw new IOException("Bad exit code\n" + res.getStderr());
+        }
+        
+        String[] lines = res.getStdout().split("\n");
+        try {
+            long size = Long.parseLong(lines[0].trim());
+            int count = ChunkManifest.chunkCount(size, chunkSize);
+            Validate.isTrue(lines.length == count + 1, "Unexpected number of hashes");
+            String[] hashes = new String[count];
+            for (int i = 0; i < count; i++) {
+                hashes[i] = lines[i + 1].trim();
+            }
+            return new RemoteHashes(size, hashes);
+        } catch (RuntimeException re) {
+            throw new IOException("Unable to parse hashes", re);
+        }
+    }
+
+    private String[] hashLocal(FileChannel fc, long size) throws IOException {
+        int count = ChunkManifest.chunkCount(size, chunkSize);
+        String[] ret = new String[count];
+        byte[] data = new byte[(int) Math.min(size, chunkSize)];
+        for (int i = 0; i < count; i++) {
+            int len = chunkLength(size, i);
+            readFully(fc, data, (long) i * chunkSize, len);
+            ret[i] = sha256Hex(data, 0, len);
+        }
+        return ret;
+    }
+
+    private int chunkLength(long size, int chunk) {
+        return (int) Math.min(chunkSize, size - (long) chunk * chunkSize);
+    }
+
+    private static void readFully(FileChannel fc, byte[] data, long offset) throws IOException {
+        readFully(fc, data, offset, data.length);
+    }
+
+    private static void readFully(FileChannel fc, byte[] data, long offset, int len) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(data, 0, len);
+        while (bb.hasRemaining()) {
+            int read = fc.read(bb, offset + bb.position());
+            if (read == -1) {
+                throw new IOException("Local file changed during transfer");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel fc, byte[] data, long offset) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        while (bb.hasRemaining()) {
+            fc.write(bb, offset + bb.position());
+        }
+    }
+
+    private interface ChunkOperation {
+        void run(int chunk) throws IOException;
+    }
+
+    private static final class RemoteHashes {
+        private final long size;
+        private final String[] hashes;
+
+        RemoteHashes(long size, String[] hashes) {
+            this.size = size;
+            this.hashes = hashes;
+        }
+    }
+}
@@ -18,19 +18,12 @@ package com.offbynull.rfm.host.communicator;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.StringWriter;
 import java.io.Writer;
-import java.nio.channels.Channels;
-import java.nio.channels.FileChannel;
-import static java.nio.charset.StandardCharsets.UTF_8;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
-import org.apache.commons.io.IOUtils;
+import java.util.ArrayList;
+import java.util.List;
+import static org.apache.commons.collections4.list.UnmodifiableList.unmodifiableList;
 import org.apache.commons.lang3.Validate;
 
 /**
@@ -118,6 +111,55 @@ public interface Communicator extends Closeable {
      */
     void pipe(long timeout, String remotePath, long remoteOffset, OutputStream os, long limit) throws IOException;
 
+    /**
+     * Upload a large file in chunks, using multiple concurrent operations, with each chunk verified against a hash computed on the host.
+     * Interrupted uploads resume from where they left off when called again. Equivalent to calling
+     * {@code new ChunkedTransfer(this, chunkSize, parallelism).upload(timeout, localPath, remotePath)}.
+     * @param timeout timeout in milliseconds (for each individual operation)
+     * @param localPath local file path
+     * @param remotePath remote file path
+     * @param chunkSize size of each chunk in bytes
+     * @param parallelism maximum number of chunks transferred concurrently
+     * @throws IOException on IO error, or if chunks still fail verification after being re-sent
+     * @throws TimeLimitExceededException if timed out
+     * @throws IllegalArgumentException if any of the following conditions are NOT met:
+     * {@code timeout >= 0L},
+     * {@code !localPath.isEmpty()},
+     * {@code !remotePath.isEmpty()},
+     * {@code chunkSize >= 1},
+     * {@code parallelism >= 1}
+     * @throws NullPointerException if any argument is {@code null}
+     * @see ChunkedTransfer
+     */
+    default void uploadChunked(long timeout, String localPath, String remotePath, int chunkSize, int parallelism) throws IOException {
+        new ChunkedTransfer(this, chunkSize, parallelism).upload(timeout, localPath, remotePath);
+    }
+
+    /**
+     * Download a large file in chunks, using multiple concurrent operations, with each chunk verified against a hash computed on the host.
+     * Interrupted downloads resume from where they left off when called again. Equivalent to calling
+     * {@code new ChunkedTransfer(this, chunkSize, parallelism).download(timeout, remotePath, localPath)}.
+     * @param timeout timeout in milliseconds (for each individual operation)
+     * @param remotePath remote file path
+     * @param localPath local file path
+     * @param chunkSize size of each chunk in bytes
+     * @param parallelism maximum number of chunks transferred concurrently
+     * @throws IOException on IO error, or if {@code remotePath} doesn't exist, or if {@code remotePath} not a regular file, or if chunks
+     * still fail verification after being re-fetched
+     * @throws TimeLimitExceededException if timed out
+     * @throws IllegalArgumentException if any of the following conditions are NOT met:
+     * {@code timeout >= 0L},
+     * {@code !remotePath.isEmpty()},
+     * {@code !localPath.isEmpty()},
+     * {@code chunkSize >= 1},
+     * {@code parallelism >= 1}
+     * @throws NullPointerException if any argument is {@code null}
+     * @see ChunkedTransfer
+     */
+    default void downloadChunked(long timeout, String remotePath, String localPath, int chunkSize, int parallelism) throws IOException {
+        new ChunkedTransfer(this, chunkSize, parallelism).download(timeout, remotePath, localPath);
+    }
+
     /**
      * Download a region of a remote file.
      * @param timeout timeout in milliseconds
@@ -196,6 +238,91 @@ public interface Communicator extends Closeable {
      */
     void delete(long timeout, String remotePath) throws IOException;
 
+    /**
+     * Get status of multiple Linux filesystem files (file, directory, symbolic link, etc).
+     * <p>
+     * The default implementation calls {@link #stat(long, java.lang.String)} for each path in turn. Implementations are encouraged to
+     * override this with something that doesn't need a round trip per path.
+     * @param timeout timeout in milliseconds (for the entire batch)
+     * @param remotePaths remote paths
+     * @return status of each path in {@code remotePaths} (in the same order), where an element is {@code null} if the path doesn't exist
+     * @throws IOException on IO error
+     * @throws TimeLimitExceededException if timed out
+     * @throws IllegalArgumentException if any of the following conditions are NOT met:
+     * {@code timeout >= 0L},
+     * {@code !remotePaths.contains(null)},
+     * {@code remotePaths.stream().noneMatch(p -> p.isEmpty())}
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    default List<StatResult> statAll(long timeout, List<String> remotePaths) throws IOException {
+        Validate.notNull(remotePaths);
+        Validate.noNullElements(remotePaths);
+        Validate.isTrue(timeout >= 0L);
+        remotePaths.forEach(p -> Validate.notBlank(p));
+
+        long deadline = System.currentTimeMillis() + timeout;
+        List<StatResult> ret = new ArrayList<>(remotePaths.size());
+        for (String remotePath : remotePaths) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining < 0L) {
+                throw new TimeLimitExceededException();
+            }
+            ret.add(stat(remaining, remotePath));
+        }
+        return unmodifiableList(ret);
+    }
+
+    /**
+     * Delete multiple files.
+     * <p>
+     * Deletion is attempted on every path, even if deleting an earlier path failed. Once all paths have been attempted, an
+     * {@link IOException} is thrown if any of them failed (additional failures are added as suppressed exceptions).
+     * <p>
+     * The default implementation calls {@link #delete(long, java.lang.String)} for each path in turn. Implementations are encouraged to
+     * override this with something that doesn't need a round trip per path.
+     * @param timeout timeout in milliseconds (for the entire batch)
+     * @param remotePaths remote file paths
+     * @throws IOException on IO error, or if any path in {@code remotePaths} doesn't exist, or if any path in {@code remotePaths} not a
+     * regular file
+     * @throws TimeLimitExceededException if timed out
+     * @throws IllegalArgumentException if any of the following conditions are NOT met:
+     * {@code timeout >= 0L},
+     * {@code !remotePaths.contains(null)},
+     * {@code remotePaths.stream().noneMatch(p -> p.isEmpty())}
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    default void deleteAll(long timeout, List<String> remotePaths) throws IOException {
+        Validate.notNull(remotePaths);
+        Validate.noNullElements(remotePaths);
+        Validate.isTrue(timeout >= 0L);
+        remotePaths.forEach(p -> Validate.notBlank(p));
+
+        long deadline = System.currentTimeMillis() + timeout;
+        IOException failure = null;
+        for (String remotePath : remotePaths) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining < 0L) {
+                throw new TimeLimitExceededException();
+            }
+
+            try {
+                delete(remaining, remotePath);
+            } catch (TimeLimitExceededException tlee) {
+                throw tlee;
+            } catch (IOException ioe) {
+                if (failure == null) {
+                    failure = ioe;
+                } else {
+                    failure.addSuppressed(ioe);
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
     /**
      * Execute a bash script with root permission.
      * <p>
@@ -252,66 +379,77 @@ public interface Communicator extends Closeable {
     default BufferedExecuteResult executeBuffered(
             long timeout, long expectedBootTime,
             String script, String... scriptArgs) throws IOException {
-        Validate.notNull(script);
-        Validate.notNull(scriptArgs);
-        Validate.noNullElements(scriptArgs);
-        Validate.isTrue(timeout >= 0L);
-        Validate.isTrue(expectedBootTime == -1L || expectedBootTime >= 0L);
-
-        Path stdoutPath = Files.createTempFile("comm", "stdout");
-        Path stderrPath = Files.createTempFile("comm", "stderr");
-
-        FileChannel stdoutFc = null;
-        FileChannel stderrFc = null;
-        try {
-            // create stdout/stderr buffer files
-            stdoutFc = FileChannel.open(stdoutPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
-            stderrFc = FileChannel.open(stderrPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
-            stdoutFc.truncate(0L); // just incase
-            stderrFc.truncate(0L); // just incase
-            
-            // create writers linked to stdout/stderr file buffers
-            OutputStream stdoutOs = Channels.newOutputStream(stdoutFc);
-            OutputStreamWriter stdoutWriter = new OutputStreamWriter(stdoutOs, UTF_8);
-            
-            OutputStream stderrOs = Channels.newOutputStream(stderrFc);
-            OutputStreamWriter stderrWriter = new OutputStreamWriter(stderrOs, UTF_8);
-
-            // execute script and dump stdout/stderr to file buffers
-            ExecuteResult execRes = execute(
-                    timeout, expectedBootTime,
-                    stdoutWriter, Long.MAX_VALUE,
-                    stderrWriter, Long.MAX_VALUE,
-                    script, scriptArgs);
-            
-            // flush writers to make sure disk has everything
-            stdoutWriter.flush();
-            stdoutFc.force(true);
-            stderrWriter.flush();
-            stderrFc.force(true);
-            
-            // set stdout/stderr buffer file pointers to 0 (for reading from beginning)
-            stdoutFc.position(0L);
-            stderrFc.position(0L);
-
-            // create readers linked to stdout/stderr file buffers
-            InputStream stdoutIs = Channels.newInputStream(stdoutFc);
-            InputStreamReader stdoutReader = new InputStreamReader(stdoutIs, UTF_8);
-
-            InputStream stderrIs = Channels.newInputStream(stderrFc);
-            InputStreamReader stderrReader = new InputStreamReader(stderrIs, UTF_8);
+        return BufferedExecution.execute(this, timeout, expectedBootTime, true, script, scriptArgs);
+    }
 
-            return new BufferedExecuteResult(
-                    stdoutPath, stdoutReader,
-                    stderrPath, stderrReader,
-                    execRes.getExitCode(), execRes.getBootTime());
-        } catch (RuntimeException | IOException e) {
-            // once the channels are closed, any streams on those channels will be implictly closed as well
-            IOUtils.closeQuietly(stdoutFc);
-            IOUtils.closeQuietly(stderrFc);
-            throw e;
-        }
+    /**
+     * Execute a bash script with root permission.
+     * <p>
+     * This variant of the execute method is the same as {@link #executeBuffered(long, long, java.lang.String, java.lang.String...) },
+     * except that buffer files aren't synced to disk before being read back and are read back through memory-mappings. Use it when the
+     * output is only going to be read by this process and surviving a crash doesn't matter. Remember to call
+     * {@link BufferedExecuteResult#close()} to release/delete buffer files when you finish reading.
+     * <p>
+     * Script arguments are automatically escaped.
+     * @param timeout timeout in milliseconds
+     * @param expectedBootTime expected boot time in seconds since Unix epoch, or {@code -1L} if unknown
+     * @param script script to execute
+     * @param scriptArgs arguments for script
+     * @return execution result
+     * @throws IOException on IO error
+     * @throws BootTimeChangedException if {@code expectedBootTime} is different than host's boot time
+     * @throws TimeLimitExceededException if timed out
+     * @throws IllegalArgumentException if any of the following conditions are NOT met:
+     * {@code timeout >= 0L},
+     * {@code expectedBootTime == -1L || expectedBootTime >= 0L}
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    default BufferedExecuteResult executeBufferedNoSync(
+            long timeout, long expectedBootTime,
+            String script, String... scriptArgs) throws IOException {
+        return BufferedExecution.execute(this, timeout, expectedBootTime, false, script, scriptArgs);
+    }
 
+    /**
+     * Execute a bash script with root permission.
+     * <p>
+     * This variant of the execute method streams stdout and stderr to {@link OutputConsumer}s as chunks arrive. Nothing is buffered
+     * beyond what the underlying transport already buffers, and chunks are handed over without being copied -- see
+     * {@link OutputConsumer} for the rules around holding on to chunks.
+     * <p>
+     * Script arguments are automatically escaped.
+     * @param timeout timeout in milliseconds
+     * @param expectedBootTime expected boot time in seconds since Unix epoch, or {@code -1L} if unknown
+     * @param stdoutConsumer consumer to stream stdout to
+     * @param stdoutLimit number of characters to stream from stdout must be less than this amount
+     * @param stderrConsumer consumer to stream stderr to
+     * @param stderrLimit number of characters to stream from stderr must be less than this amount
+     * @param script script to execute
+     * @param scriptArgs arguments for script
+     * @return execution result
+     * @throws IOException on IO error
+     * @throws BootTimeChangedException if {@code expectedBootTime} is different than host's boot time
+     * @throws StreamLimitExceededException if stdout/stderr limit is hit
+     * @throws TimeLimitExceededException if timed out
+     * @throws IllegalArgumentException if any of the following conditions are NOT met:
+     * {@code timeout >= 0L},
+     * {@code expectedBootTime == -1L || expectedBootTime >= 0L},
+     * {@code stdoutLimit >= 0L},
+     * {@code stderrLimit >= 0L}
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    default ExecuteResult executeStreaming(
+            long timeout, long expectedBootTime,
+            OutputConsumer stdoutConsumer, long stdoutLimit,
+            OutputConsumer stderrConsumer, long stderrLimit,
+            String script, String... scriptArgs) throws IOException {
+        Validate.notNull(stdoutConsumer);
+        Validate.notNull(stderrConsumer);
+        return execute(
+                timeout, expectedBootTime,
+                new OutputConsumerWriter(stdoutConsumer), stdoutLimit,
+                new OutputConsumerWriter(stderrConsumer), stderrLimit,
+                script, scriptArgs);
     }
 
     /**
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.communicator;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.CharBuffer;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Reads framed script output as it streams in.
+ * <p>
+ * Scripts write each entry as a name followed by a value, each terminated by a NUL character ({@code !NAME\0VALUE\0}). Bash
+ * variables can't hold NUL characters, so values never need to be escaped or have their lines counted -- embedded newlines come through
+ * as-is. Scripts get the {@code write_frame NAME VALUE} shell function that writes entries in this format through
+ * {@link #prependWriter(java.lang.String) }.
+ * <p>
+ * Output in the older line-counted format ({@code !NAME}, a line with the number of lines in the value, then the value's lines) is also
+ * accepted. Which format is being used is detected from how the first name ends (NUL vs newline).
+ * <p>
+ * Parse errors aren't thrown from {@link #accept(java.nio.CharBuffer) } (the communicator would just log and drop them). Instead, the
+ * first error is held on to, the rest of the stream gets ignored, and the error gets thrown when {@link #finish() } is called.
+ * @author Kasra Faghihi
+ */
+public final class FrameReader implements OutputConsumer {
+
+    private static final char TERMINATOR = '\0';
+    
+    private static final String WRITER_SCRIPT;
+    static {
+        try {
+            WRITER_SCRIPT = IOUtils.toString(FrameReader.class.getResourceAsStream("frame_writer.sh"), UTF_8);
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe);
+        }
+    }
+
+    private enum State {
+        DETECT, // reading first name, format not known yet
+        NAME,
+        VALUE,
+        LEGACY  // older format detected, rest of output goes to legacyParser
+    }
+
+    private final Map<String, String> entries = new HashMap<>();
+
+    private State state = State.DETECT;
+    private final StringBuilder field = new StringBuilder();
+    private String name;
+    private StreamingScriptParser legacyParser;
+
+    private RuntimeException error;
+    private boolean finished;
+
+    @Override
+    public void accept(CharBuffer chunk) {
+        Validate.notNull(chunk);
+        Validate.validState(!finished);
+        if (error != null) {
+            return;
+        }
+
+        if (state == State.LEGACY) {
+            legacyParser.accept(chunk);
+            return;
+        }
+
+        try {
+            int base = chunk.position();
+            int limit = chunk.limit();
+            int segStart = base;
+            for (int pos = base; pos < limit; pos++) {
+                char ch = chunk.get(pos);
+                if (ch == TERMINATOR) {
+                    field.append(chunk, segStart - base, pos - base);
+                    endField();
+                    segStart = pos + 1;
+                } else if (state == State.DETECT && (ch == '\n' || ch == '\r')) {
+                    // older format -- hand the name read so far and everything after it over to the line-counted parser
+                    state = State.LEGACY;
+                    legacyParser = new StreamingScriptParser();
+                    legacyParser.accept(CharBuffer.wrap(field));
+                    field.setLength(0);
+                    ((Buffer) chunk).position(segStart);
+                    legacyParser.accept(chunk);
+                    return;
+                }
+            }
+            field.append(chunk, segStart - base, limit - base);
+            ((Buffer) chunk).position(limit); // cast so Java 8 runtimes link against Buffer.position(int)
+        } catch (RuntimeException re) {
+            error = re;
+        }
+    }
+
+    /**
+     * Signal that the output has ended and get the entries that were read.
+     * @return entries mapped by name
+     * @throws IllegalArgumentException if the output was malformed (e.g. ended in the middle of an entry, duplicate names)
+     * @throws IllegalStateException if already called
+     */
+    public Map<String, String> finish() {
+        Validate.validState(!finished);
+        finished = true;
+
+        if (error == null) {
+            try {
+                if (state == State.LEGACY) {
+                    entries.putAll(legacyParser.finish());
+                } else {
+                    Validate.isTrue(state != State.VALUE && field.length() == 0, "Output ended before entry was complete");
+                }
+            } catch (RuntimeException re) {
+                error = re;
+            }
+        }
+        
+        if (error != null) {
+            throw error;
+        }
+        return entries;
+    }
+
+    /**
+     * Read all entries from a block of output.
+     * @param output output to read
+     * @return entries mapped by name
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if the output was malformed (e.g. ended in the middle of an entry, duplicate names)
+     */
+    public static Map<String, String> read(CharSequence output) {
+        Validate.notNull(output);
+        FrameReader reader = new FrameReader();
+        reader.accept(CharBuffer.wrap(output));
+        return reader.finish();
+    }
+
+    /**
+     * Define the {@code write_frame NAME VALUE} shell function at the top of a bash script. Scripts that write framed output call
+     * {@code write_frame} rather than defining it themselves.
+     * @param script bash script
+     * @return {@code script} with {@code write_frame} defined ahead of it
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public static String prependWriter(String script) {
+        Validate.notNull(script);
+        return WRITER_SCRIPT + "\n\n\n" + script;
+    }
+
+    private void endField() {
+        String str = field.toString();
+        field.setLength(0);
+        switch (state) {
+            case DETECT:
+            case NAME:
+                Validate.isTrue(str.startsWith("!"), "Bad entry name: %s", str);
+                name = str;
+                state = State.VALUE;
+                break;
+            case VALUE:
+                Validate.isTrue(!entries.containsKey(name), "Duplicate entry found for %s", name);
+                entries.put(name, str);
+                state = State.NAME;
+                break;
+            default:
+                throw new IllegalStateException(); // should never happen
+        }
+    }
+}
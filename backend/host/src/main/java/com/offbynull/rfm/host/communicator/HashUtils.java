@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.communicator;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Hashing utilities shared by code that needs to compare local data against data on a host.
+ * <p>
+ * Hashes are lowercase hex, which is the same format that {@code sha256sum} outputs on the host.
+ * @author Kasra Faghihi
+ */
+public final class HashUtils {
+    private HashUtils() {
+        // do nothing
+    }
+
+    /**
+     * SHA-256 hash of a region of a byte array.
+     * @param data data to hash
+     * @param offset offset of region within {@code data}
+     * @param len length of region
+     * @return lowercase hex SHA-256 hash
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code offset} and {@code len} don't describe a region within {@code data}
+     */
+    public static String sha256Hex(byte[] data, int offset, int len) {
+        Validate.notNull(data);
+        Validate.isTrue(offset >= 0 && len >= 0 && offset <= data.length - len);
+
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException(nsae); // should never happen -- every JVM is required to support SHA-256
+        }
+        md.update(data, offset, len);
+
+        byte[] digest = md.digest();
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * SHA-256 hash of the UTF-8 encoding of a string.
+     * @param data data to hash
+     * @return lowercase hex SHA-256 hash
+     * @throws NullPointerException if any argument is {@code null}
+     */
+    public static String sha256Hex(String data) {
+        Validate.notNull(data);
+        byte[] encoded = data.getBytes(UTF_8);
+        return sha256Hex(encoded, 0, encoded.length);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.communicator;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+
+/**
+ * Consumes a stream of output (e.g. stdout/stderr of a script) as it arrives, one chunk at a time.
+ * <p>
+ * Chunks are views over the communicator's internal buffers rather than copies. A chunk is only valid for the duration of the
+ * {@link #accept(java.nio.CharBuffer) } call it's passed in to -- implementations that need to hold on to data must copy it out.
+ * @author Kasra Faghihi
+ */
+public interface OutputConsumer {
+
+    /**
+     * Consume the next chunk of output.
+     * @param chunk next chunk of output (only valid for the duration of this call)
+     * @throws IOException on IO error
+     */
+    void accept(CharBuffer chunk) throws IOException;
+}
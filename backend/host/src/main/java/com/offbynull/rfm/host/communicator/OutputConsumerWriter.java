@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.communicator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import org.apache.commons.lang3.Validate;
+
+// Adapts an OutputConsumer to the Writer-based execute method. Chunks handed to the consumer wrap the caller's buffer directly.
+final class OutputConsumerWriter extends Writer {
+
+    private final OutputConsumer consumer;
+
+    OutputConsumerWriter(OutputConsumer consumer) {
+        Validate.notNull(consumer);
+        this.consumer = consumer;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        consumer.accept(CharBuffer.wrap(cbuf, off, len));
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        consumer.accept(CharBuffer.wrap(str, off, off + len));
+    }
+
+    @Override
+    public Writer append(CharSequence csq) throws IOException {
+        CharSequence seq = csq == null ? "null" : csq;
+        if (seq.length() != 0) {
+            consumer.accept(CharBuffer.wrap(seq));
+        }
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // do nothing
+    }
+
+    @Override
+    public void close() throws IOException {
+        // do nothing
+    }
+}
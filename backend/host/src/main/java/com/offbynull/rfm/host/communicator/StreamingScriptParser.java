@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.communicator;
+
+import java.nio.Buffer;
+import java.nio.CharBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Reads script output in the line-counted format as it streams in: {@code !NAME}, a line with the number of lines in the value, then
+ * the value's lines. {@code \n}, {@code \r}, and {@code \r\n} are all line terminators, and a trailing line without a terminator
+ * still counts.
+ * <p>
+ * Parse errors aren't thrown from {@link #accept(java.nio.CharBuffer) } (the communicator would just log and drop them). Instead, the
+ * first error is held on to, the rest of the stream gets ignored, and the error gets thrown when {@link #finish() } is called.
+ * <p>
+ * Long-running scripts can split their output into records by emitting a record marker entry (e.g. {@code !SAMPLE} with 0 lines). When
+ * a record marker is hit, the entries collected since the last one are handed to the record listener and collection starts over, meaning
+ * the same entry can show up again in the next record.
+ * @author Kasra Faghihi
+ */
+public final class StreamingScriptParser implements OutputConsumer {
+
+    private enum State {
+        MARKER,
+        LENGTH,
+        BODY
+    }
+
+    private final String recordMarker;
+    private final Consumer<Map<String, String>> recordListener;
+    private Map<String, String> entries = new HashMap<>();
+
+    private State state = State.MARKER;
+    private final StringBuilder line = new StringBuilder(); // partial marker/length line
+    private boolean lineStarted; // true if anything (even an empty line) has been read since the last line terminator
+    private boolean skipLf;      // true if last char was \r -- a \n immediately following it is part of the same terminator
+
+    private String marker;
+    private long remainingLines;
+    private final StringBuilder body = new StringBuilder();
+
+    private RuntimeException error;
+    private boolean finished;
+
+    /**
+     * Constructs a {@link StreamingScriptParser} object that doesn't split output into records.
+     */
+    public StreamingScriptParser() {
+        this.recordMarker = null;
+        this.recordListener = null;
+    }
+
+    /**
+     * Constructs a {@link StreamingScriptParser} object that splits output into records.
+     * @param recordMarker name of the entry that marks the end of a record
+     * @param recordListener listener invoked with the entries of each record as it ends
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code !recordMarker.startsWith("!")}
+     */
+    public StreamingScriptParser(String recordMarker, Consumer<Map<String, String>> recordListener) {
+        Validate.notNull(recordMarker);
+        Validate.notNull(recordListener);
+        Validate.isTrue(recordMarker.startsWith("!"));
+        this.recordMarker = recordMarker;
+        this.recordListener = recordListener;
+    }
+
+    @Override
+    public void accept(CharBuffer chunk) {
+        Validate.notNull(chunk);
+        Validate.validState(!finished);
+        if (error != null) {
+            return;
+        }
+
+        try {
+            int pos = chunk.position();
+            int limit = chunk.limit();
+            int segStart = pos;
+            while (pos < limit) {
+                char ch = chunk.get(pos);
+                if (skipLf) {
+                    skipLf = false;
+                    if (ch == '\n') {
+                        pos++;
+                        segStart = pos;
+                        continue;
+                    }
+                }
+
+                if (ch == '\n' || ch == '\r') {
+                    appendSegment(chunk, segStart, pos);
+                    endLine();
+                    skipLf = ch == '\r';
+                    pos++;
+                    segStart = pos;
+                } else {
+                    pos++;
+                }
+            }
+            appendSegment(chunk, segStart, pos);
+            ((Buffer) chunk).position(limit); // cast so Java 8 runtimes link against Buffer.position(int)
+        } catch (NumberFormatException e) {
+            error = new IllegalArgumentException(e);
+        } catch (RuntimeException re) {
+            error = re;
+        }
+    }
+
+    /**
+     * Signal that the output has ended and get the entries that were read (entries after the last record marker, if splitting into
+     * records).
+     * @return entries mapped by name
+     * @throws IllegalArgumentException if the output was malformed (e.g. ended in the middle of an entry, duplicate names)
+     * @throws IllegalStateException if already called
+     */
+    public Map<String, String> finish() {
+        Validate.validState(!finished);
+        finished = true;
+
+        if (error == null) {
+            try {
+                if (lineStarted) { // last line had no terminator
+                    endLine();
+                }
+                Validate.isTrue(state == State.MARKER, "Output ended before entry %s was complete", marker);
+            } catch (RuntimeException re) {
+                error = re;
+            }
+        }
+        
+        if (error != null) {
+            throw error;
+        }
+        return entries;
+    }
+
+    private void appendSegment(CharBuffer chunk, int start, int end) {
+        if (start == end) {
+            return;
+        }
+        
+        lineStarted = true;
+        int base = chunk.position();
+        if (state == State.BODY) {
+            body.append(chunk, start - base, end - base);
+        } else {
+            line.append(chunk, start - base, end - base);
+        }
+    }
+
+    private void endLine() {
+        lineStarted = false;
+        switch (state) {
+            case MARKER: {
+                String markerStr = line.toString();
+                line.setLength(0);
+                Validate.isTrue(markerStr.startsWith("!"), "Bad entry name: %s", markerStr);
+                marker = markerStr;
+                state = State.LENGTH;
+                break;
+            }
+            case LENGTH: {
+                String lengthStr = line.toString();
+                line.setLength(0);
+                remainingLines = Long.parseLong(lengthStr);
+                if (remainingLines <= 0L) {
+                    completeEntry();
+                } else {
+                    state = State.BODY;
+                }
+                break;
+            }
+            case BODY: {
+                remainingLines--;
+                if (remainingLines == 0L) {
+                    completeEntry();
+                } else {
+                    body.append('\n');
+                }
+                break;
+            }
+            default:
+                throw new IllegalStateException(); // should never happen
+        }
+    }
+
+    private void completeEntry() {
+        if (marker.equals(recordMarker)) {
+            Map<String, String> record = entries;
+            entries = new HashMap<>();
+            body.setLength(0);
+            state = State.MARKER;
+            recordListener.accept(record);
+            return;
+        }
+
+        Validate.isTrue(!entries.containsKey(marker), "Duplicate entry found for %s", marker);
+        entries.put(marker, body.toString());
+        body.setLength(0);
+        state = State.MARKER;
+    }
+}
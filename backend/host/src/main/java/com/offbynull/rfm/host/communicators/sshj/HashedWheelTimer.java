@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.communicators.sshj;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Timeout scheduler based on a hashed timing wheel (Varghese & Lauck). The wheel is an array of buckets, each representing one tick.
+// A timeout is placed in the bucket for the tick it expires on, along with how many full rotations of the wheel remain before it's due.
+// Every tick, the worker thread walks only the bucket for that tick.
+//
+// Callers never touch the wheel directly. Scheduling adds the timeout to a lock-free queue and cancelling flips the timeout's state with a
+// CAS (and adds it to another lock-free queue so the worker can unlink it from its bucket). Both are O(1) and there's no lock shared
+// between callers. The worker thread is a daemon that gets started on first use and runs for the life of the JVM.
+//
+// Timeouts are only as precise as the tick duration, and tasks run on the worker thread (they should be short).
+final class HashedWheelTimer {
+    
+    private static final Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    private static final int MAX_TRANSFERS_PER_TICK = 100000;
+    
+    private static final int STATE_INIT = 0;
+    private static final int STATE_CANCELLED = 1;
+    private static final int STATE_EXPIRED = 2;
+
+    private final String name;
+    private final long tickDuration;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startTime;
+
+    private final Queue<Timeout> pendingTimeouts;
+    private final Queue<Timeout> cancelledTimeouts;
+    private final AtomicBoolean started;
+
+    HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+        Validate.notNull(name);
+        Validate.notNull(unit);
+        Validate.isTrue(tickDuration > 0L);
+        Validate.isTrue(wheelSize > 0 && Integer.bitCount(wheelSize) == 1); // must be power of 2
+
+        this.name = name;
+        this.tickDuration = unit.toNanos(tickDuration);
+        this.wheel = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = wheelSize - 1;
+        this.startTime = System.nanoTime();
+
+        this.pendingTimeouts = new ConcurrentLinkedQueue<>();
+        this.cancelledTimeouts = new ConcurrentLinkedQueue<>();
+        this.started = new AtomicBoolean();
+    }
+
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Validate.notNull(task);
+        Validate.notNull(unit);
+        Validate.isTrue(delay >= 0L);
+
+        if (!started.get() && started.compareAndSet(false, true)) {
+            logger.debug("Starting worker thread");
+            Thread worker = new Thread(this::run);
+            worker.setDaemon(true);
+            worker.setName(name);
+            worker.start();
+        }
+
+        long deadline = (System.nanoTime() - startTime) + unit.toNanos(delay);
+        if (deadline < 0L) { // overflow -- practically never expires
+            deadline = Long.MAX_VALUE;
+        }
+
+        Timeout timeout = new Timeout(this, task, deadline);
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        long tick = 0L;
+        while (true) {
+            long deadline = waitForNextTick(tick);
+            
+            // Nothing can be allowed to kill this thread -- if it dies, no timeout scheduled on this timer ever fires again
+            try {
+                removeCancelled();
+                transferPending(tick);
+                wheel[(int) (tick & mask)].expire(deadline);
+            } catch (Throwable t) {
+                logger.error("Unexpected error while processing tick {}", tick, t);
+            }
+            
+            tick++;
+        }
+    }
+
+    private long waitForNextTick(long tick) {
+        long deadline = tickDuration * (tick + 1L);
+        while (true) {
+            long currentTime = System.nanoTime() - startTime;
+            long sleepNanos = deadline - currentTime;
+            if (sleepNanos <= 0L) {
+                return currentTime;
+            }
+
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            } catch (InterruptedException ie) {
+                // do nothing -- worker runs for the life of the JVM
+            }
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) { // null if it was cancelled before it made it into the wheel
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferPending(long tick) {
+        // Cap the number of transfers per tick so that a flood of new timeouts doesn't stall expiration
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = pendingTimeouts.poll();
+            if (timeout == null) {
+                break;
+            }
+            if (timeout.state.get() != STATE_INIT) { // cancelled while pending
+                continue;
+            }
+
+            long expireTick = timeout.deadline / tickDuration;
+            timeout.remainingRounds = (expireTick - tick) / wheel.length;
+
+            long bucketTick = Math.max(expireTick, tick); // if already past deadline, put it in current tick's bucket
+            wheel[(int) (bucketTick & mask)].add(timeout);
+        }
+    }
+
+    // Only ever accessed by worker thread.
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0L) {
+                    remove(timeout);
+                    if (timeout.deadline <= deadline) {
+                        timeout.expire();
+                    } else { // should never happen -- put it back through pending so it gets placed in the right bucket next tick
+                        logger.warn("Timeout reached its bucket before its deadline, rescheduling");
+                        timeout.timer.pendingTimeouts.add(timeout);
+                    }
+                } else if (timeout.state.get() == STATE_CANCELLED) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+
+    public static final class Timeout {
+        private final HashedWheelTimer timer;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state;
+
+        // Only ever accessed by worker thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(HashedWheelTimer timer, Runnable task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+            this.state = new AtomicInteger(STATE_INIT);
+        }
+
+        // Returns false if the task has already run (or is running) or was already cancelled
+        public boolean cancel() {
+            if (!state.compareAndSet(STATE_INIT, STATE_CANCELLED)) {
+                return false;
+            }
+            timer.cancelledTimeouts.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == STATE_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == STATE_EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(STATE_INIT, STATE_EXPIRED)) {
+                return;
+            }
+
+            try {
+                task.run();
+            } catch (Throwable t) { // tasks run on the worker thread, don't let them take it down
+                logger.warn("Timeout task threw exception", t);
+            }
+        }
+    }
+}
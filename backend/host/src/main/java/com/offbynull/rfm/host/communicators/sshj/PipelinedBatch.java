@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.communicators.sshj;
+
+import com.offbynull.rfm.host.communicator.StatResult;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import net.schmizz.sshj.sftp.SFTPException;
+import static org.apache.commons.collections4.list.UnmodifiableList.unmodifiableList;
+import org.apache.commons.lang3.Validate;
+
+// Runs a batch of single-path SFTP requests (stat, remove). The SFTP protocol allows for multiple outstanding requests on a session, so all
+// requests in a batch are sent out before waiting on any of the responses. A batch of N paths ends up costing about 1 round trip instead of
+// N.
+//
+// An SFTPException from a retrieve is a failure of that request alone. Any other IOException is a problem with the session, so it's
+// thrown as-is and the rest of the batch is abandoned.
+final class PipelinedBatch {
+
+    private PipelinedBatch() {
+        // do nothing
+    }
+
+    // Returns the status of each path (in the same order), null for paths that don't exist. Fails if stat fails for any other reason.
+    public static <T> List<StatResult> statAll(RemoteBatch<T> remote, List<String> remotePaths) throws IOException {
+        Validate.notNull(remote);
+        Validate.notNull(remotePaths);
+        Validate.noNullElements(remotePaths);
+
+        List<T> requests = new ArrayList<>(remotePaths.size());
+        for (String remotePath : remotePaths) {
+            requests.add(remote.requestStat(remotePath));
+        }
+
+        List<StatResult> ret = new ArrayList<>(remotePaths.size());
+        for (int i = 0; i < requests.size(); i++) {
+            try {
+                ret.add(remote.retrieveStat(requests.get(i)));
+            } catch (SFTPException sftpe) {
+                throw new IOException("Stat failed: " + remotePaths.get(i), sftpe);
+            }
+        }
+
+        return unmodifiableList(ret);
+    }
+
+    // Deletes every path, even if deleting an earlier path failed. Once all paths have been attempted, the failure of the first path that
+    // failed is thrown (failures of later paths are added to it as suppressed exceptions).
+    public static <T> void deleteAll(RemoteBatch<T> remote, List<String> remotePaths) throws IOException {
+        Validate.notNull(remote);
+        Validate.notNull(remotePaths);
+        Validate.noNullElements(remotePaths);
+
+        List<T> requests = new ArrayList<>(remotePaths.size());
+        for (String remotePath : remotePaths) {
+            requests.add(remote.requestDelete(remotePath));
+        }
+
+        IOException failure = null;
+        for (int i = 0; i < requests.size(); i++) {
+            try {
+                remote.retrieveDelete(requests.get(i));
+            } catch (SFTPException sftpe) {
+                IOException ioe = new IOException("Delete failed: " + remotePaths.get(i), sftpe);
+                if (failure == null) {
+                    failure = ioe;
+                } else {
+                    failure.addSuppressed(ioe);
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    interface RemoteBatch<T> {
+        T requestStat(String path) throws IOException;
+        StatResult retrieveStat(T request) throws IOException; // null if path doesn't exist
+        T requestDelete(String path) throws IOException;
+        void retrieveDelete(T request) throws IOException;
+    }
+}
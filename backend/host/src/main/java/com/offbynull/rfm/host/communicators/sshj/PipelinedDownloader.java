@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.communicators.sshj;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Downloads a region of a remote file while keeping multiple read requests in flight. A single blocking read at a time caps throughput to
+// roughly blockSize / RTT, which is painfully slow for large files over high latency links.
+//
+// The calling thread issues reads (up to window of them outstanding at once) and collects their responses into a ring of reusable
+// buffers. A separate writer thread drains filled buffers to the output stream and hands them back, so network reads overlap with writes
+// to the output stream. If the output stream is slower than the network, the ring fills up and no new reads get issued until a buffer is
+// freed up.
+final class PipelinedDownloader {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PipelinedDownloader.class);
+    
+    static final int DEFAULT_BLOCK_SIZE = 64 * 1024; // SSHJ seems to limit to this size, even if we specify larger
+    static final int REGION_BLOCK_SIZE = 32 * 1024; // largest read the SFTP spec requires servers to honour
+    
+    private static final Block END_BLOCK = new Block(new byte[0], 0);
+
+    private PipelinedDownloader() {
+        // do nothing
+    }
+
+    public static <T> void pipe(RemoteReader<T> reader, long offset, OutputStream os, long limit, int window) throws IOException {
+        pipe(reader, offset, os, limit, window, DEFAULT_BLOCK_SIZE);
+    }
+
+    public static <T> void pipe(RemoteReader<T> reader, long offset, OutputStream os, long limit, int window, int blockSize)
+            throws IOException {
+        Validate.notNull(reader);
+        Validate.notNull(os);
+        Validate.isTrue(offset >= 0L);
+        Validate.isTrue(limit >= 0L);
+        Validate.isTrue(window >= 1);
+        Validate.isTrue(blockSize >= 1);
+        long end = Math.addExact(offset, limit);  // check for rollover
+
+        if (limit == 0L) {
+            return;
+        }
+
+        // Ring of buffers. Every buffer is either in the free queue, being filled by this thread, or in the full queue / being written out
+        // by the writer thread. The full queue has room for 1 extra element so that END_BLOCK can always be added without blocking.
+        BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(window);
+        BlockingQueue<Block> fullBuffers = new ArrayBlockingQueue<>(window + 1);
+        for (int i = 0; i < window; i++) {
+            freeBuffers.add(new byte[blockSize]);
+        }
+
+        Writer writer = new Writer(os, freeBuffers, fullBuffers);
+        Thread writerThread = new Thread(writer);
+        writerThread.setDaemon(true);
+        writerThread.setName("SSHJ Pipelined Download Writer");
+        writerThread.start();
+
+        try {
+            Deque<PendingRead<T>> inFlight = new ArrayDeque<>(window);
+            long nextOffset = offset;
+            while (true) {
+                // Top up outstanding reads
+                while (inFlight.size() < window && nextOffset < end) {
+                    int len = (int) Math.min(blockSize, end - nextOffset);
+                    inFlight.addLast(new PendingRead<>(nextOffset, len, reader.requestRead(nextOffset, len)));
+                    nextOffset += len;
+                }
+
+                PendingRead<T> pendingRead = inFlight.pollFirst();
+                if (pendingRead == null) { // limit reached
+                    break;
+                }
+
+                byte[] buffer = takeFreeBuffer(freeBuffers, writer);
+
+                int filled = reader.retrieveRead(pendingRead.request, buffer, 0);
+                if (filled == -1) { // EOF
+                    freeBuffers.add(buffer);
+                    break;
+                }
+
+                // Servers are allowed to return less than what was asked for without it meaning EOF. Later reads in the window were issued
+                // for the offsets after this one, so the gap has to be filled in before moving on.
+                boolean eof = false;
+                while (filled < pendingRead.len) {
+                    int readLen = reader.read(pendingRead.offset + filled, buffer, filled, pendingRead.len - filled);
+                    if (readLen == -1) {
+                        eof = true;
+                        break;
+                    }
+                    filled += readLen;
+                }
+
+                fullBuffers.add(new Block(buffer, filled));
+                if (eof) {
+                    break;
+                }
+            }
+        } finally {
+            fullBuffers.add(END_BLOCK);
+            try {
+                writerThread.join();
+            } catch (InterruptedException ie) {
+                writerThread.interrupt();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", ie);
+            }
+        }
+        
+        if (writer.failure != null) {
+            throw writer.failure;
+        }
+    }
+
+    // Reads exactly len bytes starting at offset, failing if the file ends before that. Reads are issued in blocks of at most
+    // REGION_BLOCK_SIZE, and short reads (OpenSSH's sftp-server returns at most 64K-256K per read depending on version) are topped up by
+    // pipe().
+    public static <T> byte[] download(RemoteReader<T> reader, long offset, int len, int window) throws IOException {
+        Validate.isTrue(len >= 0);
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream(len);
+        pipe(reader, offset, os, len, window, REGION_BLOCK_SIZE);
+        if (os.size() < len) {
+            throw new IOException("Not enough bytes -- " + os.size() + " read but " + len + " expected");
+        }
+        return os.toByteArray();
+    }
+
+    private static byte[] takeFreeBuffer(BlockingQueue<byte[]> freeBuffers, Writer writer) throws IOException {
+        try {
+            byte[] buffer = freeBuffers.take(); // writer always hands buffers back, even after failing, so this won't block forever
+            if (writer.failure != null) {
+                throw new IOException("Writing failed", writer.failure);
+            }
+            return buffer;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", ie);
+        }
+    }
+
+    interface RemoteReader<T> {
+        T requestRead(long offset, int len) throws IOException;
+        int retrieveRead(T request, byte[] to, int toOffset) throws IOException;
+        int read(long offset, byte[] to, int toOffset, int len) throws IOException;
+    }
+
+    private static final class PendingRead<T> {
+        private final long offset;
+        private final int len;
+        private final T request;
+
+        PendingRead(long offset, int len, T request) {
+            this.offset = offset;
+            this.len = len;
+            this.request = request;
+        }
+    }
+
+    private static final class Block {
+        private final byte[] buffer;
+        private final int len;
+
+        Block(byte[] buffer, int len) {
+            this.buffer = buffer;
+            this.len = len;
+        }
+    }
+
+    private static final class Writer implements Runnable {
+        private final OutputStream os;
+        private final BlockingQueue<byte[]> freeBuffers;
+        private final BlockingQueue<Block> fullBuffers;
+        private volatile IOException failure;
+
+        Writer(OutputStream os, BlockingQueue<byte[]> freeBuffers, BlockingQueue<Block> fullBuffers) {
+            this.os = os;
+            this.freeBuffers = freeBuffers;
+            this.fullBuffers = fullBuffers;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Block block = fullBuffers.take();
+                    if (block == END_BLOCK) {
+                        return;
+                    }
+
+                    // Once writing fails, keep handing buffers back without writing them so the reading side can notice and bail out
+                    if (failure == null) {
+                        try {
+                            os.write(block.buffer, 0, block.len);
+                        } catch (RuntimeException | IOException e) {
+                            logger.debug("Exception encountered while writing", e);
+                            failure = e instanceof IOException ? (IOException) e : new IOException(e);
+                        }
+                    }
+                    freeBuffers.add(block.buffer);
+                }
+            } catch (InterruptedException ie) {
+                failure = new IOException("Interrupted", ie);
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.communicators.sshj;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import net.schmizz.concurrent.Promise;
+import net.schmizz.sshj.sftp.FileAttributes;
+import net.schmizz.sshj.sftp.OpenMode;
+import net.schmizz.sshj.sftp.PacketType;
+import net.schmizz.sshj.sftp.RemoteFile;
+import net.schmizz.sshj.sftp.Request;
+import net.schmizz.sshj.sftp.Response;
+import net.schmizz.sshj.sftp.SFTPEngine;
+import net.schmizz.sshj.sftp.SFTPException;
+import org.apache.commons.lang3.Validate;
+
+// SSHJ's RemoteFile only exposes blocking reads and writes (1 round trip per request) -- the async methods are protected. This subclass
+// exposes them so that multiple requests can be kept in flight. Files need to be opened through open() here rather than through
+// SFTPClient, because SFTPClient always hands back a plain RemoteFile.
+final class PipelinedRemoteFile extends RemoteFile
+        implements PipelinedDownloader.RemoteReader<Promise<Response, SFTPException>>,
+        PipelinedUploader.RemoteWriter<Promise<Response, SFTPException>> {
+
+    private PipelinedRemoteFile(SFTPEngine engine, String path, byte[] handle) {
+        super(engine, path, handle);
+    }
+
+    public static PipelinedRemoteFile open(SFTPEngine engine, String path) throws IOException {
+        return open(engine, path, EnumSet.of(OpenMode.READ));
+    }
+
+    public static PipelinedRemoteFile open(SFTPEngine engine, String path, Set<OpenMode> modes) throws IOException {
+        Validate.notNull(engine);
+        Validate.notNull(path);
+        Validate.notNull(modes);
+        Validate.noNullElements(modes);
+
+        // Mirrors what SFTPEngine.open() does
+        Request req = engine.newRequest(PacketType.OPEN);
+        req.putString(path, engine.getSubsystem().getRemoteCharset());
+        req.putUInt32(OpenMode.toMask(modes));
+        req.putFileAttributes(FileAttributes.EMPTY);
+        byte[] handle = engine.request(req)
+                .retrieve(engine.getTimeoutMs(), TimeUnit.MILLISECONDS)
+                .ensurePacketTypeIs(PacketType.HANDLE)
+                .readBytes();
+
+        return new PipelinedRemoteFile(engine, path, handle);
+    }
+
+    @Override
+    public Promise<Response, SFTPException> requestRead(long offset, int len) throws IOException {
+        return asyncRead(offset, len);
+    }
+
+    @Override
+    public int retrieveRead(Promise<Response, SFTPException> request, byte[] to, int toOffset) throws IOException {
+        Response res = request.retrieve(requester.getTimeoutMs(), TimeUnit.MILLISECONDS);
+        return checkReadResponse(res, to, toOffset);
+    }
+
+    @Override
+    public Promise<Response, SFTPException> requestWrite(long offset, byte[] from, int fromOffset, int len) throws IOException {
+        return asyncWrite(offset, from, fromOffset, len);
+    }
+
+    @Override
+    public void retrieveWrite(Promise<Response, SFTPException> request) throws IOException {
+        request.retrieve(requester.getTimeoutMs(), TimeUnit.MILLISECONDS).ensureStatusPacketIsOK();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.communicators.sshj;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import org.apache.commons.lang3.Validate;
+
+// Uploads a region of a local buffer to a remote file as a series of write requests, keeping multiple of them in flight. SFTP servers cap
+// the size of a single message (OpenSSH's sftp-server rejects anything over 256K), so a large region can't go out as a single write. The
+// SFTP spec only guarantees that writes of up to 32K are accepted, which is why that's the default block size.
+final class PipelinedUploader {
+
+    static final int DEFAULT_BLOCK_SIZE = 32 * 1024;
+
+    private PipelinedUploader() {
+        // do nothing
+    }
+
+    public static <T> void upload(RemoteWriter<T> writer, byte[] data, int dataOffset, long offset, int len, int window)
+            throws IOException {
+        upload(writer, data, dataOffset, offset, len, window, DEFAULT_BLOCK_SIZE);
+    }
+
+    public static <T> void upload(RemoteWriter<T> writer, byte[] data, int dataOffset, long offset, int len, int window, int blockSize)
+            throws IOException {
+        Validate.notNull(writer);
+        Validate.notNull(data);
+        Validate.isTrue(dataOffset >= 0);
+        Validate.isTrue(offset >= 0L);
+        Validate.isTrue(len >= 0);
+        Validate.isTrue(window >= 1);
+        Validate.isTrue(blockSize >= 1);
+        Validate.isTrue(dataOffset + len <= data.length);
+        Math.addExact(offset, len);  // check for rollover
+
+        Deque<T> inFlight = new ArrayDeque<>(window);
+        int written = 0;
+        while (written < len) {
+            if (inFlight.size() == window) {
+                writer.retrieveWrite(inFlight.pollFirst());
+            }
+
+            int blockLen = Math.min(blockSize, len - written);
+            inFlight.addLast(writer.requestWrite(offset + written, data, dataOffset + written, blockLen));
+            written += blockLen;
+        }
+
+        // Every write has to be acknowledged -- a failure on any of them means the region didn't make it over
+        while (!inFlight.isEmpty()) {
+            writer.retrieveWrite(inFlight.pollFirst());
+        }
+    }
+
+    interface RemoteWriter<T> {
+        T requestWrite(long offset, byte[] from, int fromOffset, int len) throws IOException;
+        void retrieveWrite(T request) throws IOException;
+    }
+}
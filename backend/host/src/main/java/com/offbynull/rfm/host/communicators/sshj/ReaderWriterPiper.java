@@ -18,6 +18,7 @@ package com.offbynull.rfm.host.communicators.sshj;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.Reader;
 import java.io.Writer;
 import org.apache.commons.lang3.Validate;
@@ -58,7 +59,8 @@ final class ReaderWriterPiper implements Closeable {
             logger.debug("Joining");
             thread.join();
         } catch (InterruptedException ie) {
-            throw new IOException("Interrupted", ie);
+            Thread.currentThread().interrupt();
+            throw (InterruptedIOException) new InterruptedIOException("Interrupted").initCause(ie);
         }
     }
 
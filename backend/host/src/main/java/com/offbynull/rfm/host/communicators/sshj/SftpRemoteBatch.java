@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.communicators.sshj;
+
+import com.offbynull.rfm.host.communicator.StatResult;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import net.schmizz.concurrent.Promise;
+import net.schmizz.sshj.sftp.FileAttributes;
+import net.schmizz.sshj.sftp.PacketType;
+import net.schmizz.sshj.sftp.Request;
+import net.schmizz.sshj.sftp.Response;
+import net.schmizz.sshj.sftp.Response.StatusCode;
+import net.schmizz.sshj.sftp.SFTPEngine;
+import net.schmizz.sshj.sftp.SFTPException;
+import org.apache.commons.lang3.Validate;
+
+// SSHJ's SFTPClient only exposes blocking stat/remove (1 round trip per path). This sends the raw requests through the SFTPEngine instead,
+// so that PipelinedBatch can keep a whole batch of them in flight.
+final class SftpRemoteBatch implements PipelinedBatch.RemoteBatch<Promise<Response, SFTPException>> {
+
+    private final SFTPEngine engine;
+    private final Charset charset;
+
+    SftpRemoteBatch(SFTPEngine engine) {
+        Validate.notNull(engine);
+        this.engine = engine;
+        this.charset = engine.getSubsystem().getRemoteCharset();
+    }
+
+    @Override
+    public Promise<Response, SFTPException> requestStat(String path) throws IOException {
+        Request req = engine.newRequest(PacketType.STAT);
+        req.putString(path, charset);
+        return engine.request(req);
+    }
+
+    @Override
+    public StatResult retrieveStat(Promise<Response, SFTPException> request) throws IOException {
+        Response res = request.retrieve(engine.getTimeoutMs(), TimeUnit.MILLISECONDS);
+        if (res.getType() == PacketType.STATUS) {
+            StatusCode statusCode = res.readStatusCode();
+            if (statusCode != StatusCode.NO_SUCH_FILE) {
+                throw new SFTPException(statusCode, "Stat failed");
+            }
+            return null;
+        }
+
+        FileAttributes attrs = res.ensurePacketTypeIs(PacketType.ATTRS).readFileAttributes();
+        return new StatResult(attrs.getUID(), attrs.getGID(), attrs.getSize(), attrs.getMode().getMask());
+    }
+
+    @Override
+    public Promise<Response, SFTPException> requestDelete(String path) throws IOException {
+        Request req = engine.newRequest(PacketType.REMOVE);
+        req.putString(path, charset);
+        return engine.request(req);
+    }
+
+    @Override
+    public void retrieveDelete(Promise<Response, SFTPException> request) throws IOException {
+        request.retrieve(engine.getTimeoutMs(), TimeUnit.MILLISECONDS).ensureStatusPacketIsOK();
+    }
+}
@@ -23,39 +23,40 @@ import static java.lang.String.format;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import net.schmizz.keepalive.KeepAliveProvider;
+import net.schmizz.sshj.DefaultConfig;
 import net.schmizz.sshj.SSHClient;
 import net.schmizz.sshj.connection.channel.direct.Session.Command;
 import net.schmizz.sshj.connection.channel.direct.Signal;
 import net.schmizz.sshj.sftp.FileAttributes;
-import net.schmizz.sshj.sftp.RemoteFile;
 import net.schmizz.sshj.sftp.SFTPClient;
+import net.schmizz.sshj.sftp.SFTPEngine;
 import net.schmizz.sshj.transport.verification.PromiscuousVerifier;
 import net.schmizz.sshj.userauth.keyprovider.KeyProvider;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.text.RandomStringGenerator;
 import com.offbynull.rfm.host.communicator.Communicator;
 import com.offbynull.rfm.host.communicator.ExecuteResult;
+import com.offbynull.rfm.host.communicator.FrameReader;
 import com.offbynull.rfm.host.communicator.InMemoryExecuteResult;
 import com.offbynull.rfm.host.communicator.StreamLimitExceededException;
 import com.offbynull.rfm.host.communicator.TimeLimitExceededException;
 import static com.offbynull.rfm.host.communicators.sshj.InternalUtils.readLine;
 import static com.offbynull.rfm.host.communicators.sshj.InternalUtils.writeLine;
-import java.io.BufferedReader;
-import java.io.Closeable;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
-import java.io.StringReader;
 import java.io.Writer;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashSet;
-import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import static java.util.stream.Collectors.joining;
 import net.schmizz.sshj.sftp.OpenMode;
@@ -67,16 +68,24 @@ import static org.apache.commons.io.IOUtils.closeQuietly;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
+import com.offbynull.rfm.host.communicators.sshj.SshjConnectionPool.Lease;
 
 /**
  * Low-level Linux host communicator using SSH (via SSHJ).
+ * <p>
+ * Connections to the host are pooled and reused across operations (see {@link SshjConnectionPoolSettings}).
  * @author Kasra Faghihi
  */
 public final class SshjCommunicator implements Communicator {
     
     private static final Logger logger = LoggerFactory.getLogger(SshjCommunicator.class);
 
-    private static final SingletonTimer singletonTimer = new SingletonTimer();
+    private static final HashedWheelTimer timer = new HashedWheelTimer("SSHJ Timeout Timer", 10L, TimeUnit.MILLISECONDS, 512);
+
+     * Default number of requests kept in flight when piping a file or transferring a region of a file.
+     * Default number of read requests kept in flight when piping a file.
+     */
+    public static final int DEFAULT_PIPE_WINDOW = 16;
 
     private static final String PRIME_SCRIPT;
 
@@ -88,16 +97,16 @@ public final class SshjCommunicator implements Communicator {
     private static final String ROOT_RUN_BOOT_UPDATE = "BootUpdate";
     static {
         try {
-            PRIME_SCRIPT = IOUtils.toString(SshjCommunicator.class.getResourceAsStream("prime.sh"), UTF_8);
+            PRIME_SCRIPT = FrameReader.prependWriter(IOUtils.toString(SshjCommunicator.class.getResourceAsStream("prime.sh"), UTF_8));
             ROOT_RUN_SCRIPT = IOUtils.toString(SshjCommunicator.class.getResourceAsStream("root_run.sh"), UTF_8);
         } catch (IOException ioe) {
             throw new IllegalStateException(ioe);
         }
     }
 
-    private final Object lock;
-    private final Set<Closeable> activeCloseables;
-    private boolean closed;
+    private final SshjConnectionPoolSettings poolSettings;
+    private final SshjConnectionPool pool;
+    private final int pipeWindow;
 
     private final RandomStringGenerator safeRandomStringGen;
     private final String safeHostname;
@@ -116,7 +125,8 @@ public final class SshjCommunicator implements Communicator {
     }
 
     /**
-     * Constructs a {@link SshjCommunicator} instance.
+     * Constructs a {@link SshjCommunicator} instance. Equivalent to calling
+     * {@code new SshjCommunicator(random, host, cred, SshjConnectionPoolSettings.DEFAULT, DEFAULT_PIPE_WINDOW)}.
      * @param random random number generator
      * @param host SSH host
      * @param cred SSH credentials
@@ -124,13 +134,35 @@ public final class SshjCommunicator implements Communicator {
      * @throws NullPointerException of my argument is {@code null}
      */
     public SshjCommunicator(Random random, SshHost host, SshCredential cred) {
+        this(random, host, cred, SshjConnectionPoolSettings.DEFAULT, DEFAULT_PIPE_WINDOW);
+    }
+
+    /**
+     * Constructs a {@link SshjCommunicator} instance.
+     * @param random random number generator
+     * @param host SSH host
+     * @param cred SSH credentials
+     * @param poolSettings connection pool settings
+     * @param pipeWindow maximum number of 64K read requests kept in flight when piping a file (see
+     * {@link #pipe(long, java.lang.String, long, java.io.OutputStream, long)}), as well as the maximum number of 32K read/write requests
+     * kept in flight when transferring a region of a file (see {@link #upload(long, byte[], int, java.lang.String, long, int)} and
+     * {@link #download(long, java.lang.String, long, int)}) -- higher values are better for high-latency links, at the cost of memory per
+     * request
+     * @throws IllegalStateException if this machine doesn't have a local hostname
+     * @throws NullPointerException of my argument is {@code null}
+     * @throws IllegalArgumentException if {@code pipeWindow < 1}
+     */
+    public SshjCommunicator(Random random, SshHost host, SshCredential cred, SshjConnectionPoolSettings poolSettings, int pipeWindow) {
         Validate.notNull(random);
         Validate.notNull(host);
         Validate.notNull(cred);
+        Validate.notNull(poolSettings);
+        Validate.isTrue(pipeWindow >= 1);
 
         try {
-            this.lock = new Object();
-            this.activeCloseables = Collections.newSetFromMap(new IdentityHashMap<>());
+            this.poolSettings = poolSettings;
+            this.pipeWindow = pipeWindow;
+            this.pool = new SshjConnectionPool(poolSettings, this::createClient, timer);
 
             this.safeRandomStringGen = createRsg(random);
             this.safeHostname = InetAddress.getLocalHost().getCanonicalHostName().replaceAll("[^a-zA-Z0-9]", "_");
@@ -167,8 +199,8 @@ public final class SshjCommunicator implements Communicator {
                 MDC.MDCCloseable mdc3 = MDC.putCloseable("inst", safeRandomStringGen.generate(8))) {
             logger.debug("Upload timeout:{} localData:{} localOffset:{}, remotePath:{}, remoteOffset:{}, len:{}",
                     localData, localOffset, remotePath, remoteOffset, len);
-            wrap(timeout, (ssh) -> {
-                rawUpload(ssh, localData, localOffset, remotePath, remoteOffset, len);
+            wrap(timeout, (conn) -> {
+                rawUpload(conn, localData, localOffset, remotePath, remoteOffset, len);
                 return null;
             });
             logger.debug("Uploaded");
@@ -186,8 +218,8 @@ public final class SshjCommunicator implements Communicator {
                 MDC.MDCCloseable mdc2 = MDC.putCloseable("user", cred.getUser());
                 MDC.MDCCloseable mdc3 = MDC.putCloseable("inst", safeRandomStringGen.generate(8))) {
             logger.debug("Upload timeout:{} localData:{} remotePath:{}", timeout, localData, remotePath);
-            wrap(timeout, (ssh) -> {
-                rawUpload(ssh, localData, remotePath);
+            wrap(timeout, (conn) -> {
+                rawUpload(conn, localData, remotePath);
                 return null;
             });
             logger.debug("Uploaded");
@@ -206,8 +238,8 @@ public final class SshjCommunicator implements Communicator {
                 MDC.MDCCloseable mdc2 = MDC.putCloseable("user", cred.getUser());
                 MDC.MDCCloseable mdc3 = MDC.putCloseable("inst", safeRandomStringGen.generate(8))) {
             logger.debug("Upload timeout:{} localPath:{} remotePath:{}", timeout, localPath, remotePath);
-            wrap(timeout, (ssh) -> {
-                rawUpload(ssh, localPath, remotePath);
+            wrap(timeout, (conn) -> {
+                rawUpload(conn, localPath, remotePath);
                 return null;
             });
             logger.debug("Uploaded");
@@ -230,8 +262,8 @@ public final class SshjCommunicator implements Communicator {
             logger.debug("Piping timeout:{} remotePath:{} remoteOffset:{} limit:{}", timeout, remotePath, remoteOffset, limit);
             wrap(
                     timeout,
-                    (ssh) -> {
-                        rawPipe(ssh, remotePath, remoteOffset, os, limit);
+                    (conn) -> {
+                        rawPipe(conn, remotePath, remoteOffset, os, limit);
                         return null;
                     },
                     () -> {
@@ -255,7 +287,7 @@ public final class SshjCommunicator implements Communicator {
                 MDC.MDCCloseable mdc2 = MDC.putCloseable("user", cred.getUser());
                 MDC.MDCCloseable mdc3 = MDC.putCloseable("inst", safeRandomStringGen.generate(8))) {
             logger.debug("Download timeout:{} remotePath:{} remoteOffset:{} len:{}", timeout, remotePath, remoteOffset, len);
-            byte[] ret = wrap(timeout, (ssh) -> rawDownload(ssh, remotePath, remoteOffset, len));
+            byte[] ret = wrap(timeout, (conn) -> rawDownload(conn, remotePath, remoteOffset, len));
             logger.debug("Downloaded:{}", ret);
             
             return ret;
@@ -272,7 +304,7 @@ public final class SshjCommunicator implements Communicator {
                 MDC.MDCCloseable mdc2 = MDC.putCloseable("user", cred.getUser());
                 MDC.MDCCloseable mdc3 = MDC.putCloseable("inst", safeRandomStringGen.generate(8))) {
             logger.debug("Download timeout:{} remotePath:{}", timeout, remotePath);
-            byte[] ret = wrap(timeout, (ssh) -> rawDownload(ssh, remotePath));
+            byte[] ret = wrap(timeout, (conn) -> rawDownload(conn, remotePath));
             logger.debug("Downloaded:{}", ret);
             
             return ret;
@@ -291,8 +323,8 @@ public final class SshjCommunicator implements Communicator {
                 MDC.MDCCloseable mdc2 = MDC.putCloseable("user", cred.getUser());
                 MDC.MDCCloseable mdc3 = MDC.putCloseable("inst", safeRandomStringGen.generate(8))) {
             logger.debug("Download timeout:{} remotePath:{}, localPath:{}", timeout, remotePath, localPath);
-            wrap(timeout, (ssh) -> {
-                rawDownload(ssh, remotePath, localPath);
+            wrap(timeout, (conn) -> {
+                rawDownload(conn, remotePath, localPath);
                 return null;
             });
             logger.debug("Downloaded");
@@ -308,7 +340,7 @@ public final class SshjCommunicator implements Communicator {
         try (MDC.MDCCloseable mdc1 = MDC.putCloseable("host", this.host.toString());
                 MDC.MDCCloseable mdc2 = MDC.putCloseable("user", this.cred.getUser())) {
             logger.debug("Stat timeout:{} remotePath:{}", timeout, remotePath);
-            StatResult ret = wrap(timeout, (ssh) -> rawStat(ssh, remotePath));
+            StatResult ret = wrap(timeout, (conn) -> rawStat(conn, remotePath));
             logger.debug("Stat'd:{}", ret);
             
             return ret;
@@ -325,14 +357,51 @@ public final class SshjCommunicator implements Communicator {
                 MDC.MDCCloseable mdc2 = MDC.putCloseable("user", cred.getUser());
                 MDC.MDCCloseable mdc3 = MDC.putCloseable("inst", safeRandomStringGen.generate(8))) {
             logger.debug("Delete timeout:{} remotePath:{}", timeout, remotePath);
-            wrap(timeout, (ssh) -> {
-                rawDelete(ssh, remotePath);
+            wrap(timeout, (conn) -> {
+                rawDelete(conn, remotePath);
                 return null;
             });
             logger.debug("Deleted");
         }
     }
 
+    @Override
+    public List<StatResult> statAll(long timeout, List<String> remotePaths) throws IOException {
+        Validate.notNull(remotePaths);
+        Validate.noNullElements(remotePaths);
+        Validate.isTrue(timeout >= 0L);
+        remotePaths.forEach(p -> Validate.notBlank(p));
+        
+        try (MDC.MDCCloseable mdc1 = MDC.putCloseable("host", host.toString());
+                MDC.MDCCloseable mdc2 = MDC.putCloseable("user", cred.getUser());
+                MDC.MDCCloseable mdc3 = MDC.putCloseable("inst", safeRandomStringGen.generate(8))) {
+            logger.debug("Stat all timeout:{} remotePaths:{}", timeout, remotePaths);
+            List<StatResult> ret = wrap(timeout, (conn) -> rawStatAll(conn, remotePaths));
+            logger.debug("Stat'd all:{}", ret);
+            
+            return ret;
+        }
+    }
+
+    @Override
+    public void deleteAll(long timeout, List<String> remotePaths) throws IOException {
+        Validate.notNull(remotePaths);
+        Validate.noNullElements(remotePaths);
+        Validate.isTrue(timeout >= 0L);
+        remotePaths.forEach(p -> Validate.notBlank(p));
+        
+        try (MDC.MDCCloseable mdc1 = MDC.putCloseable("host", host.toString());
+                MDC.MDCCloseable mdc2 = MDC.putCloseable("user", cred.getUser());
+                MDC.MDCCloseable mdc3 = MDC.putCloseable("inst", safeRandomStringGen.generate(8))) {
+            logger.debug("Delete all timeout:{} remotePaths:{}", timeout, remotePaths);
+            wrap(timeout, (conn) -> {
+                rawDeleteAll(conn, remotePaths);
+                return null;
+            });
+            logger.debug("Deleted all");
+        }
+    }
+
     @Override
     public ExecuteResult execute(
             long timeout, long expectedBootTime,
@@ -352,7 +421,7 @@ public final class SshjCommunicator implements Communicator {
                 MDC.MDCCloseable mdc3 = MDC.putCloseable("inst", safeRandomStringGen.generate(8))) {
             logger.debug("Execute timeout:{} expectedBootTime:{} stdoutLimit:{} stderrLimit:{} script:{} scriptArgs:{}",
                     timeout, expectedBootTime, stdoutLimit, stderrLimit, script, scriptArgs);
-            ExecuteResult ret = wrap(timeout, (ssh) -> rawExecute(ssh, expectedBootTime, stdoutWriter, stdoutLimit, stderrWriter,
+            ExecuteResult ret = wrap(timeout, (conn) -> rawExecute(conn, expectedBootTime, stdoutWriter, stdoutLimit, stderrWriter,
                     stderrLimit, script, scriptArgs));
             logger.debug("Executed:{}", ret);
             
@@ -384,57 +453,15 @@ public final class SshjCommunicator implements Communicator {
             throw new IOException("Bad exit code\n" + res.getStderr());
         }
 
-        try (StringReader sr = new StringReader(res.getStdout());
-                BufferedReader br = new BufferedReader(sr)) {
-            String[] fingerprints = null;
-            String privateKey = null;
-            String publicKey = null;
-            String keyPassword = null;
-
-            while (true) {
-                String markerStr = br.readLine();
-                if (markerStr == null) {
-                    break;
-                }
-
-                if (!markerStr.startsWith("!")) {
-                    throw new IllegalArgumentException();
-                }
-
-                String lengthStr = br.readLine();
-
-                long length = Long.parseLong(lengthStr);
-                StringBuilder outputStr = new StringBuilder();
-                for (long i = 0; i < length; i++) {
-                    String line = br.readLine();
-                    outputStr.append(line);
-                    if (i < length - 1) {
-                        outputStr.append('\n');
-                    }
-                }
-
-                switch (markerStr) {
-                    case "!FINGERPRINTS":
-                        Validate.isTrue(fingerprints == null, "Duplicate fingerprints entry");
-                        fingerprints = outputStr.toString().split("[\n]+");
-                        break;
-                    case "!KEYPRIV":
-                        Validate.isTrue(privateKey == null, "Duplicate private key entry");
-                        privateKey = outputStr.toString();
-                        break;
-                    case "!KEYPUB":
-                        Validate.isTrue(publicKey == null, "Duplicate public key entry");
-                        publicKey = outputStr.toString();
-                        break;
-                    case "!KEYPASSWORD":
-                        Validate.isTrue(keyPassword == null, "Duplicate private key password entry");
-                        keyPassword = outputStr.toString();
-                        break;
-                    default:
-                        logger.debug("Unrecognized marker {}", markerStr);
-                        break;
-                }
-            }
+        try {
+            Map<String, String> output = FrameReader.read(res.getStdout());
+            
+            String fingerprintsStr = output.get("!FINGERPRINTS");
+            String privateKey = output.get("!KEYPRIV");
+            String publicKey = output.get("!KEYPUB");
+            String keyPassword = output.get("!KEYPASSWORD");
+            Validate.isTrue(fingerprintsStr != null, "Fingerprints entry missing");
+            String[] fingerprints = fingerprintsStr.split("[\n]+");
 
             PrimeResult ret = new PrimeResult(Arrays.asList(fingerprints), privateKey, publicKey, keyPassword);
             logger.debug("Primed:{}", ret);
@@ -448,20 +475,7 @@ public final class SshjCommunicator implements Communicator {
     @Override
     public void close() throws IOException {
         logger.trace("Closing");
-        synchronized (lock) {
-            if (closed) {
-                return;
-            }
-            closed = true;
-
-            activeCloseables.forEach((closeable) -> {
-                try {
-                    closeable.close();
-                } catch (IOException ioe) {
-                    logger.warn("Failed to close resource", ioe);
-                }
-            });
-        }
+        pool.close();
     }
 
 
@@ -472,26 +486,24 @@ public final class SshjCommunicator implements Communicator {
     }
     
     private <T> T wrap(long timeout, SSHTimeoutFunction<T> runLogic, Runnable additionalTimeoutLogic) throws IOException {
-        AtomicBoolean timeoutFlag = new AtomicBoolean();        
-        SSHClient ssh = null;
+        AtomicBoolean timeoutFlag = new AtomicBoolean();
+        Lease lease = null;
+        HashedWheelTimer.Timeout timeoutHandle = null;
         
-        singletonTimer.addReference();
         try {
-            synchronized (lock) {
-                if (closed) {
-                    throw new IOException("Closed");
-                }
-
-                ssh = new SSHClient();
-                activeCloseables.add(ssh);
+            long startTime = System.nanoTime();
+            lease = pool.acquire(timeout); // blocks if pool exhausted, throws TimeLimitExceededException if waited past timeout
+            long remainingTimeout = Math.max(0L, timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+
+            SSHClient ssh = lease.getClient();
+            timeoutHandle = initTimeout(ssh, remainingTimeout, timeoutFlag);
+            if (lease.isFresh()) {
+                connect(ssh);
             }
 
-            initTimeout(ssh, timeout, timeoutFlag);
-            connect(ssh);
-
-            return runLogic.apply(ssh);
+            return runLogic.apply(lease);
         } catch (RuntimeException | IOException e) {
-            if (e instanceof IOException && timeoutFlag.get() == true) {
+            if (e instanceof TimeLimitExceededException || (e instanceof IOException && timeoutFlag.get() == true)) {
                 logger.debug("Timed out");
                 
                 try {
@@ -500,38 +512,39 @@ public final class SshjCommunicator implements Communicator {
                     logger.warn("Error running additional timeout logic", re);
                 }
                 
-                throw new TimeLimitExceededException(e);
+                throw e instanceof TimeLimitExceededException ? (TimeLimitExceededException) e : new TimeLimitExceededException(e);
             } else {
                 logger.debug("Exception", e);
                 throw e;
             }
         } finally {
-            logger.trace("Removing timer");
-            singletonTimer.removeReference();
-            logger.trace("Removed timer");
-
-            if (ssh != null) {
-                ssh.close();
-                synchronized (lock) {
-                    // if another thread closed obj while method was running, throw exc (regardless of success or failure), the ssh client
-                    // will have already been closed in this object's close() method.
-                    if (closed) {
-                        throw new IOException("Closed");
-                    }
-                    activeCloseables.remove(ssh);
+            // If the timer couldn't be cancelled, it has either fired or is in the process of firing -- the connection is being torn down
+            // and can't go back into the pool. Otherwise, let the pool decide (it'll discard the connection if it's no longer healthy).
+            boolean reusable = true;
+            if (timeoutHandle != null) {
+                logger.trace("Cancelling timer");
+                reusable = timeoutHandle.cancel();
+            }
+
+            if (lease != null) {
+                pool.release(lease, reusable && !timeoutFlag.get() && !Thread.currentThread().isInterrupted());
+                // if another thread closed obj while method was running, throw exc (regardless of success or failure), the ssh client
+                // will have already been closed in this object's close() method.
+                if (pool.isClosed()) {
+                    throw new IOException("Closed");
                 }
             }
         }
     }
     
     private interface SSHTimeoutFunction<T> {
-        T apply(SSHClient ssh) throws IOException;
+        T apply(Lease conn) throws IOException;
     }
 
-    private void initTimeout(SSHClient ssh, long timeout, AtomicBoolean timeoutFlag) throws IOException {
+    private HashedWheelTimer.Timeout initTimeout(SSHClient ssh, long timeout, AtomicBoolean timeoutFlag) throws IOException {
         // Set disconnect timer
         logger.trace("Adding timer:{} millis", timeout);
-        singletonTimer.schedule(() -> {
+        HashedWheelTimer.Timeout ret = timer.schedule(() -> {
             timeoutFlag.set(true);
             try {
                 ssh.disconnect();
@@ -540,6 +553,13 @@ public final class SshjCommunicator implements Communicator {
             }
         }, timeout, TimeUnit.MILLISECONDS);
         logger.trace("Added timer");
+        return ret;
+    }
+
+    private SSHClient createClient() {
+        DefaultConfig config = new DefaultConfig();
+        config.setKeepAliveProvider(KeepAliveProvider.KEEP_ALIVE); // disconnects if keep-alives go unanswered
+        return new SSHClient(config);
     }
 
     private void connect(SSHClient ssh) throws IOException {
@@ -568,6 +588,14 @@ public final class SshjCommunicator implements Communicator {
             ssh.authPassword(cred.getUser(), cred.getPassword());
         }
         logger.trace("Authenticated");
+
+        // Start keep-alives -- only done once authenticated because setting the interval spawns the keep-alive thread, which only gets
+        // stopped if the connection is torn down
+        int keepAliveInterval = poolSettings.getKeepAliveInterval();
+        if (keepAliveInterval > 0) {
+            logger.trace("Starting keep-alives every {} seconds", keepAliveInterval);
+            ssh.getConnection().getKeepAlive().setKeepAliveInterval(keepAliveInterval);
+        }
     }
 
 
@@ -580,62 +608,38 @@ public final class SshjCommunicator implements Communicator {
         CREATE_WRITE_MODE = (UnmodifiableSet<OpenMode>) unmodifiableSet(openModes);
     }
 
-    private void rawUpload(SSHClient ssh, byte[] localData, int localOffset, String remotePath, long remoteOffset, int len) throws IOException {
-        try (SFTPClient sftp = ssh.newSFTPClient();
-                RemoteFile remoteFile = sftp.open(remotePath, CREATE_WRITE_MODE)) {
-            remoteFile.write(remoteOffset, localData, localOffset, len);
+    private void rawUpload(Lease conn, byte[] localData, int localOffset, String remotePath, long remoteOffset, int len) throws IOException {
+        SFTPEngine engine = conn.getSftpClient().getSFTPEngine();
+        try (PipelinedRemoteFile remoteFile = PipelinedRemoteFile.open(engine, remotePath, CREATE_WRITE_MODE)) {
+            PipelinedUploader.upload(remoteFile, localData, localOffset, remoteOffset, len, pipeWindow);
         }
     }
 
-    private void rawUpload(SSHClient ssh, byte[] localData, String remotePath) throws IOException {
-        try (SFTPClient sftp = ssh.newSFTPClient()) {
-            String name = FilenameUtils.getName(remotePath);
+    private void rawUpload(Lease conn, byte[] localData, String remotePath) throws IOException {
+        SFTPClient sftp = conn.getSftpClient();
+        String name = FilenameUtils.getName(remotePath);
 
-            CustomInMemorySourceFile srcFile = new CustomInMemorySourceFile(name, localData);
-            sftp.getFileTransfer().upload(srcFile, remotePath);
-        }
+        CustomInMemorySourceFile srcFile = new CustomInMemorySourceFile(name, localData);
+        sftp.getFileTransfer().upload(srcFile, remotePath);
     }
 
-    private void rawUpload(SSHClient ssh, String localPath, String remotePath) throws IOException {
-        try (SFTPClient sftp = ssh.newSFTPClient()) {
-            sftp.getFileTransfer().upload(localPath, remotePath);
-        }
+    private void rawUpload(Lease conn, String localPath, String remotePath) throws IOException {
+        SFTPClient sftp = conn.getSftpClient();
+        sftp.getFileTransfer().upload(localPath, remotePath);
     }
     
-    private static final int PIPE_BLOCK_SIZE = 64*1024; // SSHJ seems to limit to this size, even if we specify larger
-    private void rawPipe(SSHClient ssh, String remotePath, long remoteOffset, OutputStream os, long limit) throws IOException {
-        try (SFTPClient sftp = ssh.newSFTPClient();
-                RemoteFile remoteFile = sftp.open(remotePath)) {
-            if (limit == 0) {
-                return;
-            }
-
-            // This isn't the most efficient way of doing this, but it's the most obvious. In the future, you can have multiple buffers of
-            // size PIPE_BLOCK_SIZE. One thread can read into the buffers, while the other thread can write the buffers out to the stream.
-            //
-            // Assuming reading and writing are happening at relatively the same speed, multiple buffers/threads would be a good solution.
-            
-            byte []temp = new byte[PIPE_BLOCK_SIZE];
-            while (true) {
-                int readLen = (int) Math.min(limit, PIPE_BLOCK_SIZE);
-                int dataLen = remoteFile.read(remoteOffset, temp, 0, readLen);
-                os.write(temp, 0, dataLen);
-                
-                remoteOffset += dataLen;
-                
-                limit -= dataLen;
-                if (dataLen == 0L || limit == 0L) { // if nothing left to read OR limit was hit
-                    break;
-                }
-            }
+    private void rawPipe(Lease conn, String remotePath, long remoteOffset, OutputStream os, long limit) throws IOException {
+        SFTPEngine engine = conn.getSftpClient().getSFTPEngine();
+        try (PipelinedRemoteFile remoteFile = PipelinedRemoteFile.open(engine, remotePath)) {
+            PipelinedDownloader.pipe(remoteFile, remoteOffset, os, limit, pipeWindow);
         } finally {
             closeQuietly(os);
         }
     }
 
-    private byte[] rawDownload(SSHClient ssh, String remotePath, long remoteOffset, int len) throws IOException {
-        try (SFTPClient sftp = ssh.newSFTPClient();
-                RemoteFile remoteFile = sftp.open(remotePath)) {
+    private byte[] rawDownload(Lease conn, String remotePath, long remoteOffset, int len) throws IOException {
+        SFTPEngine engine = conn.getSftpClient().getSFTPEngine();
+        try (PipelinedRemoteFile remoteFile = PipelinedRemoteFile.open(engine, remotePath)) {
             if (len == 0) {
                 // This is a special case -- sshj will return -1 if you actually try to read 0 length, regardless of if you read in the file
                 // or past the file.
@@ -645,48 +649,49 @@ public final class SshjCommunicator implements Communicator {
                 }
                 return new byte[0];
             } else {
-                byte[] ret = new byte[len];
-                int readAmount = remoteFile.read(remoteOffset, ret, 0, len);
-                if (readAmount < len) {
-                    throw new IOException("Not enough bytes -- " + readAmount + " read but " + len + " expected");
-                }
-                return ret;
+                return PipelinedDownloader.download(remoteFile, remoteOffset, len, pipeWindow);
             }
         }
     }
 
-    private byte[] rawDownload(SSHClient ssh, String remotePath) throws IOException {
-        try (SFTPClient sftp = ssh.newSFTPClient()) {
-            CustomInMemoryDestFile dstFile = new CustomInMemoryDestFile();
-            sftp.getFileTransfer().download(remotePath, dstFile);
-            return dstFile.toByteArray();
-        }
+    private byte[] rawDownload(Lease conn, String remotePath) throws IOException {
+        SFTPClient sftp = conn.getSftpClient();
+        CustomInMemoryDestFile dstFile = new CustomInMemoryDestFile();
+        sftp.getFileTransfer().download(remotePath, dstFile);
+        return dstFile.toByteArray();
     }
 
-    private void rawDownload(SSHClient ssh, String remotePath, String localFile) throws IOException {
-        try (SFTPClient sftp = ssh.newSFTPClient()) {
-            sftp.getFileTransfer().download(remotePath, localFile);
-        }
+    private void rawDownload(Lease conn, String remotePath, String localFile) throws IOException {
+        SFTPClient sftp = conn.getSftpClient();
+        sftp.getFileTransfer().download(remotePath, localFile);
     }
 
-    private StatResult rawStat(SSHClient ssh, String remotePath) throws IOException {
-        try (SFTPClient sftp = ssh.newSFTPClient()) {
-            FileAttributes attrs = sftp.statExistence(remotePath);
-            if (attrs == null){
-                return null;
-            } else {
-                return new StatResult(attrs.getUID(), attrs.getGID(), attrs.getSize(), attrs.getMode().getMask());
-            }
+    private StatResult rawStat(Lease conn, String remotePath) throws IOException {
+        SFTPClient sftp = conn.getSftpClient();
+        FileAttributes attrs = sftp.statExistence(remotePath);
+        if (attrs == null){
+            return null;
+        } else {
+            return new StatResult(attrs.getUID(), attrs.getGID(), attrs.getSize(), attrs.getMode().getMask());
         }
     }
 
-    private void rawDelete(SSHClient ssh, String remotePath) throws IOException {
-        try (SFTPClient sftp = ssh.newSFTPClient()) {
-            sftp.rm(remotePath);
-        }
+    private void rawDelete(Lease conn, String remotePath) throws IOException {
+        SFTPClient sftp = conn.getSftpClient();
+        sftp.rm(remotePath);
     }
 
-    private ExecuteResult rawExecute(SSHClient ssh,
+    private List<StatResult> rawStatAll(Lease conn, List<String> remotePaths) throws IOException {
+        SFTPEngine engine = conn.getSftpClient().getSFTPEngine();
+        return PipelinedBatch.statAll(new SftpRemoteBatch(engine), remotePaths);
+    }
+
+    private void rawDeleteAll(Lease conn, List<String> remotePaths) throws IOException {
+        SFTPEngine engine = conn.getSftpClient().getSFTPEngine();
+        PipelinedBatch.deleteAll(new SftpRemoteBatch(engine), remotePaths);
+    }
+
+    private ExecuteResult rawExecute(Lease conn,
             long expectedBootTime,
             Writer stdoutWriter, long stdoutLimit,
             Writer stderrWriter, long stderrLimit,
@@ -706,15 +711,15 @@ public final class SshjCommunicator implements Communicator {
 
         // Send scripts
         logger.trace("Uploading root run script to {}", rootRunDstPath);
-        rawUpload(ssh, ROOT_RUN_SCRIPT.getBytes(UTF_8), rootRunDstPath);
+        rawUpload(conn, ROOT_RUN_SCRIPT.getBytes(UTF_8), rootRunDstPath);
         
         logger.trace("Uploading final script to {}", scriptDstPath);
-        rawUpload(ssh, script.getBytes(UTF_8), scriptDstPath);
+        rawUpload(conn, script.getBytes(UTF_8), scriptDstPath);
         
         String scriptRun = "/bin/bash " + scriptDstPath + " "
                 + Arrays.stream(scriptArgs).map(a -> "'" + a.replace("'", "'\\''") + "'").collect(joining(" "));
         logger.trace("Uploading script run script to {} -- {}", scriptRunDstPath, scriptRun);
-        rawUpload(ssh, scriptRun.getBytes(UTF_8), scriptRunDstPath);
+        rawUpload(conn, scriptRun.getBytes(UTF_8), scriptRunDstPath);
 
         // Run script as root
         String commandStr = "/bin/bash " + rootRunDstPath + " " + expectedBootTime + " /bin/bash " + scriptRunDstPath;
@@ -724,7 +729,7 @@ public final class SshjCommunicator implements Communicator {
         LimitedWriter stderrLimitedWriter = null;
         
         logger.trace("Executing command {}", commandStr);
-        try (Command command = ssh.startSession().exec(commandStr);
+        try (Command command = conn.getClient().startSession().exec(commandStr);
                 OutputStream stdinStream = command.getOutputStream();
                 InputStream stdoutStream = command.getInputStream();
                 InputStream stderrStream = command.getErrorStream();
@@ -785,9 +790,7 @@ public final class SshjCommunicator implements Communicator {
                                                                                                  // so start piping that as well now
 
             logger.trace("Waiting for pipers and command to finish");
-            stdoutPiper.join();   // wait until stdout finishes (should finish if now that command finished)
-            stderrPiper.join();   // wait until stderr finishes (should finish if now that command finished)
-            command.join();       // wait until command finishes
+            awaitCompletion(command, stdoutPiper, stderrPiper);
 
             // Process finished/terminated -- collect data
             Signal signal = command.getExitSignal();
@@ -804,23 +807,9 @@ public final class SshjCommunicator implements Communicator {
             return new ExecuteResult(exitCode, newBootTime);
         } finally {
             // Delete temporary files
-            logger.trace("Deleting {}", scriptRunDstPath);
-            try {
-                rawDelete(ssh, scriptRunDstPath);
-            } catch (RuntimeException | IOException ioe) {
-                // do nothing
-            }
-            
-            logger.trace("Deleting {}", scriptDstPath);
-            try {
-                rawDelete(ssh, scriptDstPath);
-            } catch (RuntimeException | IOException ioe) {
-                // do nothing
-            }
-            
-            logger.trace("Deleting {}", rootRunDstPath);
+            logger.trace("Deleting {} {} {}", scriptRunDstPath, scriptDstPath, rootRunDstPath);
             try {
-                rawDelete(ssh, rootRunDstPath);
+                rawDeleteAll(conn, Arrays.asList(scriptRunDstPath, scriptDstPath, rootRunDstPath));
             } catch (RuntimeException | IOException ioe) {
                 // do nothing
             }
@@ -839,6 +828,32 @@ public final class SshjCommunicator implements Communicator {
         }
     }
     
+    private void awaitCompletion(Command command, ReaderWriterPiper stdoutPiper, ReaderWriterPiper stderrPiper) throws IOException {
+        try {
+            stdoutPiper.join();   // wait until stdout finishes (should finish if now that command finished)
+            stderrPiper.join();   // wait until stderr finishes (should finish if now that command finished)
+            command.join();       // wait until command finishes
+        } catch (IOException ioe) {
+            boolean interrupted = ioe instanceof InterruptedIOException         // from pipers
+                    || ioe.getCause() instanceof InterruptedException           // from sshj
+                    || Thread.currentThread().isInterrupted();
+            if (!interrupted) {
+                throw ioe;
+            }
+
+            // Caller gave up on the command (e.g. operation cancelled) -- ask the host to terminate it rather than leaving it running.
+            // root_run.sh passes this on to the entire process group of the script.
+            logger.debug("Interrupted, signalling command to terminate");
+            Thread.currentThread().interrupt();
+            try {
+                command.signal(Signal.TERM);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Failed to signal command", e);
+            }
+            throw ioe;
+        }
+    }
+
     private long processRootRunResponse(long expectedBootTime, Reader stderrReader) throws IOException {
         boolean bootTimeUpdateBail = false;
         String line = readLine(stderrReader);
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.communicators.sshj;
+
+import java.io.IOException;
+import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.sftp.SFTPClient;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// A pooled SSH connection along with the SFTP session that's been opened over it (if any). Opening an SFTP session means opening a new
+// channel and negotiating the SFTP subsystem, so the session is opened on first use and then kept around for as long as the connection
+// lives. Not thread-safe -- a connection is only ever used by whichever operation currently has it leased.
+final class SshjConnection {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SshjConnection.class);
+
+    private final SSHClient client;
+    private SFTPClient sftp;
+
+    SshjConnection(SSHClient client) {
+        Validate.notNull(client);
+        this.client = client;
+    }
+
+    public SSHClient getClient() {
+        return client;
+    }
+
+    public SFTPClient getSftpClient() throws IOException {
+        if (sftp != null && !sftp.getSFTPEngine().getSubsystem().isOpen()) {
+            logger.debug("Cached SFTP session no longer open, discarding");
+            closeSftpClient();
+        }
+
+        if (sftp == null) {
+            logger.trace("Opening SFTP session");
+            sftp = client.newSFTPClient();
+        }
+
+        return sftp;
+    }
+
+    public boolean isHealthy() {
+        return client.isConnected() && client.isAuthenticated();
+    }
+
+    public void close() {
+        closeSftpClient();
+        try {
+            client.close();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to close connection", e);
+        }
+    }
+
+    private void closeSftpClient() {
+        if (sftp == null) {
+            return;
+        }
+
+        try {
+            sftp.close();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to close SFTP session", e);
+        }
+        sftp = null;
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.communicators.sshj;
+
+import com.offbynull.rfm.host.communicator.TimeLimitExceededException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.sftp.SFTPClient;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Pool of SSH connections to a single host. Connections are leased out exclusively -- a timeout on an operation disconnects the
+// connection it was leased, so sharing a connection between concurrent operations would mean one operation timing out kills the others.
+//
+// Each connection also carries a lazily-opened SFTP session (see SshjConnection), so file operations on a reused connection skip the
+// channel open and subsystem negotiation.
+//
+// Leases either hand back an idle connection that's still connected+authenticated or a fresh (unconnected) client. The caller is
+// responsible for connecting/authenticating fresh clients, which means connection establishment stays under the caller's timeout. Idle
+// connections are reused most-recently-returned first and evicted once they pass the idle timeout -- whenever the pool is touched, and by
+// a sweep on the timer scheduled for when the oldest idle connection expires (so idle connections to a host that's no longer being used
+// still get closed).
+final class SshjConnectionPool implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SshjConnectionPool.class);
+
+    private final Object lock;
+    private final SshjConnectionPoolSettings settings;
+    private final Supplier<SSHClient> clientFactory;
+    private final HashedWheelTimer timer;
+
+    private final Deque<IdleConnection> idle; // most recently returned at head
+    private final Set<SshjConnection> leased;
+    private HashedWheelTimer.Timeout sweepTimeout; // null if no sweep scheduled
+    private boolean closed;
+
+    SshjConnectionPool(SshjConnectionPoolSettings settings, Supplier<SSHClient> clientFactory, HashedWheelTimer timer) {
+        Validate.notNull(settings);
+        Validate.notNull(clientFactory);
+        Validate.notNull(timer);
+
+        this.lock = new Object();
+        this.settings = settings;
+        this.clientFactory = clientFactory;
+        this.timer = timer;
+        this.idle = new ArrayDeque<>();
+        this.leased = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    public Lease acquire(long timeout) throws IOException {
+        Validate.isTrue(timeout >= 0L);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        List<SshjConnection> toClose = new ArrayList<>();
+        try {
+            synchronized (lock) {
+                while (true) {
+                    if (closed) {
+                        throw new IOException("Closed");
+                    }
+
+                    evictExpired(toClose);
+
+                    // Reuse idle connection if one's available and it's still healthy
+                    IdleConnection idleConnection;
+                    while ((idleConnection = idle.pollFirst()) != null) {
+                        SshjConnection connection = idleConnection.connection;
+                        if (connection.isHealthy()) {
+                            logger.trace("Reusing pooled connection");
+                            leased.add(connection);
+                            return new Lease(connection, false);
+                        }
+                        logger.debug("Discarding unhealthy pooled connection");
+                        toClose.add(connection);
+                    }
+
+                    // Create new connection if there's room for one
+                    if (leased.size() < settings.getMaxConnections()) {
+                        logger.trace("Creating new connection");
+                        SshjConnection connection = new SshjConnection(clientFactory.get());
+                        leased.add(connection);
+                        return new Lease(connection, true);
+                    }
+
+                    // Otherwise, wait for a connection to be returned
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0L) {
+                        throw new TimeLimitExceededException();
+                    }
+                    logger.trace("Pool exhausted, waiting up to {} nanos", remaining);
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", ie);
+        } finally {
+            toClose.forEach(c -> c.close());
+        }
+    }
+
+    public void release(Lease lease, boolean reusable) {
+        Validate.notNull(lease);
+
+        SshjConnection connection = lease.connection;
+        List<SshjConnection> toClose = new ArrayList<>();
+        synchronized (lock) {
+            if (!leased.remove(connection)) {
+                throw new IllegalStateException("Connection not leased from this pool");
+            }
+
+            if (reusable && !closed && connection.isHealthy()) {
+                logger.trace("Returning connection to pool");
+                idle.addFirst(new IdleConnection(connection, System.nanoTime()));
+            } else {
+                logger.trace("Discarding connection");
+                toClose.add(connection);
+            }
+
+            evictExpired(toClose);
+            scheduleSweep();
+            lock.notifyAll();
+        }
+        toClose.forEach(c -> c.close());
+    }
+
+    public int getIdleCount() {
+        synchronized (lock) {
+            return idle.size();
+        }
+    }
+
+    public int getLeasedCount() {
+        synchronized (lock) {
+            return leased.size();
+        }
+    }
+
+    public boolean isClosed() {
+        synchronized (lock) {
+            return closed;
+        }
+    }
+
+    @Override
+    public void close() {
+        List<SshjConnection> toClose = new ArrayList<>();
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            if (sweepTimeout != null) {
+                sweepTimeout.cancel();
+                sweepTimeout = null;
+            }
+
+            idle.forEach(ic -> toClose.add(ic.connection));
+            idle.clear();
+            toClose.addAll(leased); // leased connections will be removed from leased set once they're released
+
+            lock.notifyAll();
+        }
+        toClose.forEach(c -> c.close());
+    }
+
+    // Runs on the timer thread
+    private void sweep() {
+        List<SshjConnection> toClose = new ArrayList<>();
+        synchronized (lock) {
+            sweepTimeout = null;
+            if (closed) {
+                return;
+            }
+
+            evictExpired(toClose);
+            scheduleSweep();
+        }
+        toClose.forEach(c -> c.close());
+    }
+
+    // Must be called while holding lock. Sweep is scheduled for when the oldest idle connection expires -- if connections get leased out
+    // before then, the sweep finds nothing to evict and reschedules itself for whichever idle connection is now oldest.
+    private void scheduleSweep() {
+        if (closed || sweepTimeout != null || idle.isEmpty()) {
+            return;
+        }
+
+        long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(settings.getIdleTimeout());
+        long idleNanos = System.nanoTime() - idle.peekLast().returnTime;
+        long delay = Math.max(0L, idleTimeoutNanos - idleNanos);
+        sweepTimeout = timer.schedule(this::sweep, delay, TimeUnit.NANOSECONDS);
+    }
+
+    private void evictExpired(List<SshjConnection> toClose) {
+        long now = System.nanoTime();
+        long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(settings.getIdleTimeout());
+
+        Iterator<IdleConnection> it = idle.descendingIterator(); // oldest first
+        while (it.hasNext()) {
+            IdleConnection idleConnection = it.next();
+            if (now - idleConnection.returnTime < idleTimeoutNanos) {
+                break;
+            }
+            logger.debug("Evicting idle connection");
+            it.remove();
+            toClose.add(idleConnection.connection);
+        }
+    }
+
+    public static final class Lease {
+        private final SshjConnection connection;
+        private final boolean fresh;
+
+        private Lease(SshjConnection connection, boolean fresh) {
+            this.connection = connection;
+            this.fresh = fresh;
+        }
+
+        public SSHClient getClient() {
+            return connection.getClient();
+        }
+
+        public SFTPClient getSftpClient() throws IOException {
+            return connection.getSftpClient();
+        }
+
+        public boolean isFresh() {
+            return fresh;
+        }
+    }
+
+    private static final class IdleConnection {
+        private final SshjConnection connection;
+        private final long returnTime;
+
+        IdleConnection(SshjConnection connection, long returnTime) {
+            this.connection = connection;
+            this.returnTime = returnTime;
+        }
+    }
+}
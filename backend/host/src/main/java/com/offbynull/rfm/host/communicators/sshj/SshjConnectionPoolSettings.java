@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.communicators.sshj;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * SSH connection pool settings.
+ * @author Kasra Faghihi
+ */
+public final class SshjConnectionPoolSettings {
+
+    /**
+     * Default settings: at most 4 connections, idle connections evicted after 60 seconds, keep-alives every 15 seconds.
+     */
+    public static final SshjConnectionPoolSettings DEFAULT = new SshjConnectionPoolSettings(4, 60000L, 15);
+
+    private final int maxConnections;
+    private final long idleTimeout;
+    private final int keepAliveInterval;
+
+    /**
+     * Constructs a {@link SshjConnectionPoolSettings} object.
+     * @param maxConnections maximum number of connections that can be open to the host at any one time (operations that need a connection
+     * while this many connections are leased out will block until one is returned)
+     * @param idleTimeout number of milliseconds a connection can sit unused in the pool before it's closed
+     * @param keepAliveInterval number of seconds between keep-alive requests on a connection, or {@code 0} to disable keep-alives (dead
+     * connections are detected and discarded when keep-alives go unanswered)
+     * @throws IllegalArgumentException if {@code maxConnections < 1}, or if {@code idleTimeout < 0}, or if {@code keepAliveInterval < 0}
+     */
+    public SshjConnectionPoolSettings(int maxConnections, long idleTimeout, int keepAliveInterval) {
+        Validate.isTrue(maxConnections >= 1);
+        Validate.isTrue(idleTimeout >= 0L);
+        Validate.isTrue(keepAliveInterval >= 0);
+
+        this.maxConnections = maxConnections;
+        this.idleTimeout = idleTimeout;
+        this.keepAliveInterval = keepAliveInterval;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public int getKeepAliveInterval() {
+        return keepAliveInterval;
+    }
+
+    @Override
+    public String toString() {
+        return "SshjConnectionPoolSettings{" + "maxConnections=" + maxConnections + ", idleTimeout=" + idleTimeout
+                + ", keepAliveInterval=" + keepAliveInterval + '}';
+    }
+
+}
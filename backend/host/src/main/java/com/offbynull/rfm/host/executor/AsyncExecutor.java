@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.executor;
+
+import java.io.Closeable;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous counterpart of {@link Executor}. Each method mirrors the {@link Executor} method of the same name, but returns immediately
+ * with a {@link CompletableFuture} rather than blocking the caller until the host responds.
+ * <p>
+ * Futures complete exceptionally with the same exceptions the corresponding {@link Executor} method would have thrown (e.g.
+ * {@link RebootedException}, {@link TaskIdConflictException}, {@link TaskStateException}, {@link IllegalArgumentException}). The one
+ * exception is {@code null} arguments, which cause a {@link NullPointerException} to be thrown directly.
+ * <p>
+ * Cancelling a future (via {@link CompletableFuture#cancel(boolean) }) before the operation starts means the operation never runs.
+ * Cancelling it after the operation has started aborts the operation, including the script running on the host, on a best-effort basis
+ * -- the operation may have already partially (or fully) completed on the host by the time it's aborted.
+ * @author Kasra Faghihi
+ */
+public interface AsyncExecutor extends Closeable {
+
+    /**
+     * Check Linux host's state.
+     * @return future for check output
+     * @see Executor#checkHost()
+     */
+    CompletableFuture<HostCheckResult> checkHost();
+
+    /**
+     * Create a task.
+     * @param id task identifier
+     * @param config task configuration
+     * @return future that completes once the task is created
+     * @see Executor#createTask(java.lang.String, com.offbynull.rfm.host.executor.TaskConfiguration)
+     */
+    CompletableFuture<Void> createTask(String id, TaskConfiguration config);
+
+    /**
+     * Destroy a task.
+     * @param id task identifier
+     * @return future that completes once the task is destroyed
+     * @see Executor#destroyTask(java.lang.String)
+     */
+    CompletableFuture<Void> destroyTask(String id);
+
+    /**
+     * Allocate resources for a task.
+     * @param id task identifier
+     * @param resources task resources
+     * @return future that completes once the resources are allocated
+     * @see Executor#allocateTask(java.lang.String, com.offbynull.rfm.host.executor.TaskResourceAllocation)
+     */
+    CompletableFuture<Void> allocateTask(String id, TaskResourceAllocation resources);
+
+    /**
+     * Deallocate resources for a task.
+     * @param id task identifier
+     * @return future that completes once the resources are deallocated
+     * @see Executor#deallocateTask(java.lang.String)
+     */
+    CompletableFuture<Void> deallocateTask(String id);
+
+    /**
+     * Reallocate resources for a task.
+     * @param id task identifier
+     * @param resources task resources
+     * @return future that completes once the resources are reallocated
+     * @see Executor#reallocateTask(java.lang.String, com.offbynull.rfm.host.executor.TaskResourceAllocation)
+     */
+    CompletableFuture<Void> reallocateTask(String id, TaskResourceAllocation resources);
+
+    /**
+     * Backup a task's disk using {@link BackupOptions#DEFAULT}.
+     * @param id task identifier
+     * @param backupPath path to backup to
+     * @return future that completes once the backup is complete
+     * @see Executor#backupTaskDisk(java.lang.String, java.lang.String)
+     */
+    default CompletableFuture<Void> backupTaskDisk(String id, String backupPath) {
+        return backupTaskDisk(id, backupPath, BackupOptions.DEFAULT);
+    }
+
+    /**
+     * Backup a task's disk.
+     * @param id task identifier
+     * @param backupPath path to backup to
+     * @param options backup options
+     * @return future that completes once the backup is complete
+     * @see Executor#backupTaskDisk(java.lang.String, java.lang.String, com.offbynull.rfm.host.executor.BackupOptions)
+     */
+    CompletableFuture<Void> backupTaskDisk(String id, String backupPath, BackupOptions options);
+
+    /**
+     * Compact an incremental backup of a task's disk.
+     * @param id task identifier
+     * @param backupPath path containing backup
+     * @return future that completes once the compaction is complete
+     * @see Executor#compactTaskDiskBackup(java.lang.String, java.lang.String)
+     */
+    CompletableFuture<Void> compactTaskDiskBackup(String id, String backupPath);
+
+    /**
+     * Restore a task's disk.
+     * @param id task identifier
+     * @param backupPath path to restore from
+     * @return future that completes once the restore is complete
+     * @see Executor#restoreTaskDisk(java.lang.String, java.lang.String)
+     */
+    CompletableFuture<Void> restoreTaskDisk(String id, String backupPath);
+
+    /**
+     * Download a file from a task's disk.
+     * @param id task identifier
+     * @param path path of file within task's disk
+     * @param offset offset within file
+     * @param os stream to write file to
+     * @param limit maximum number of bytes to download
+     * @param timeout timeout in milliseconds
+     * @return future that completes once the download is complete
+     * @see Executor#downloadTaskFile(java.lang.String, java.lang.String, long, java.io.OutputStream, long, long)
+     */
+    CompletableFuture<Void> downloadTaskFile(String id, String path, long offset, OutputStream os, long limit, long timeout);
+
+    /**
+     * Tail a file on a task's disk.
+     * @param id task identifier
+     * @param path path of file within task's disk
+     * @param fromOffset offset within file
+     * @param maxBytes maximum number of bytes to read
+     * @return future that completes with the bytes read and offset to continue from
+     * @see Executor#tailTaskFile(java.lang.String, java.lang.String, long, long)
+     */
+    default CompletableFuture<TaskFileTail> tailTaskFile(String id, String path, long fromOffset, long maxBytes) {
+        return tailTaskFile(id, path, fromOffset, maxBytes, null);
+    }
+
+    /**
+     * Tail a file on a task's disk, only returning lines that match a filter.
+     * @param id task identifier
+     * @param path path of file within task's disk
+     * @param fromOffset offset within file
+     * @param maxBytes maximum number of bytes to read
+     * @param filter extended regular expression that lines must match, or {@code null} for no filter
+     * @return future that completes with the bytes read and offset to continue from
+     * @see Executor#tailTaskFile(java.lang.String, java.lang.String, long, long, java.lang.String)
+     */
+    CompletableFuture<TaskFileTail> tailTaskFile(String id, String path, long fromOffset, long maxBytes, String filter);
+
+    /**
+     * Start a task.
+     * @param id task identifier
+     * @return future that completes once the task is started
+     * @see Executor#startTask(java.lang.String)
+     */
+    CompletableFuture<Void> startTask(String id);
+
+    /**
+     * Stop a task.
+     * @param id task identifier
+     * @return future that completes once the task is stopped
+     * @see Executor#stopTask(java.lang.String)
+     */
+    CompletableFuture<Void> stopTask(String id);
+
+    /**
+     * Check task status.
+     * @param id task identifier
+     * @return future for work status
+     * @see Executor#checkTask(java.lang.String)
+     */
+    CompletableFuture<TaskCheckResult> checkTask(String id);
+
+    /**
+     * Check the status of multiple tasks at once.
+     * @param ids task identifiers
+     * @return future for work status of each task in {@code ids} that exists, keyed by task identifier
+     * @see Executor#checkTasks(java.util.Collection)
+     */
+    CompletableFuture<Map<String, TaskCheckResult>> checkTasks(Collection<String> ids);
+}
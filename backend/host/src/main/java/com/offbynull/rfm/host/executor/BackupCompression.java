@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.executor;
+
+/**
+ * Compression applied to task disk backups.
+ * @author Kasra Faghihi
+ */
+public enum BackupCompression {
+    /**
+     * No compression. The backup is a plain copy of the disk image, which can share blocks with the original (reflink) if the
+     * filesystem supports it.
+     */
+    NONE(0, 0),
+    /**
+     * gzip compression (levels 1 to 9). Slow, but the tool is available everywhere.
+     */
+    GZIP(1, 9),
+    /**
+     * zstd compression (levels 1 to 19). Compresses about as well as gzip at a fraction of the CPU time.
+     */
+    ZSTD(1, 19),
+    /**
+     * lz4 compression (levels 1 to 12). Fastest, but compresses the least.
+     */
+    LZ4(1, 12);
+    
+    private final int minLevel;
+    private final int maxLevel;
+
+    BackupCompression(int minLevel, int maxLevel) {
+        this.minLevel = minLevel;
+        this.maxLevel = maxLevel;
+    }
+
+    /**
+     * Get the lowest compression level supported.
+     * @return lowest compression level ({@code 0} if levels aren't supported)
+     */
+    public int getMinLevel() {
+        return minLevel;
+    }
+
+    /**
+     * Get the highest compression level supported.
+     * @return highest compression level ({@code 0} if levels aren't supported)
+     */
+    public int getMaxLevel() {
+        return maxLevel;
+    }
+}
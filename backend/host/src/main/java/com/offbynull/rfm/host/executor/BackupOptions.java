@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.executor;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Task disk backup options.
+ * @author Kasra Faghihi
+ */
+public final class BackupOptions {
+    
+    /**
+     * Default options: gzip at its default level (gzip is the only compressor guaranteed to be on the host), only reading allocated
+     * regions of the disk image.
+     */
+    public static final BackupOptions DEFAULT = new BackupOptions(BackupCompression.GZIP, 0, true, true, false);
+
+    private final BackupCompression compression;
+    private final int compressionLevel;
+    private final boolean sparse;
+    private final boolean reflink;
+    private final boolean incremental;
+
+    /**
+     * Constructs a (non-incremental) {@link BackupOptions} instance. Equivalent to calling
+     * {@code new BackupOptions(compression, compressionLevel, sparse, reflink, false)}.
+     * @param compression compression to apply
+     * @param compressionLevel compression level ({@code 0} for the compressor's default)
+     * @param sparse if {@code true}, only allocated regions of the disk image are read (holes are skipped rather than read as zeros)
+     * @param reflink if {@code true} and {@code compression == BackupCompression.NONE}, the backup shares blocks with the disk image if
+     * the filesystem supports it (falls back to a regular copy if it doesn't)
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if any of the following conditions are NOT met:
+     * {@code compressionLevel == 0 || (compressionLevel >= compression.getMinLevel() && compressionLevel <= compression.getMaxLevel())}
+     */
+    public BackupOptions(BackupCompression compression, int compressionLevel, boolean sparse, boolean reflink) {
+        this(compression, compressionLevel, sparse, reflink, false);
+    }
+
+    /**
+     * Constructs a {@link BackupOptions} instance.
+     * <p>
+     * Incremental backups split the disk image into fixed-size blocks and keep a hash of each block. The first incremental backup to a
+     * directory stores every block (minus all-zero blocks if {@code sparse}) and each one after it only stores the blocks whose hash
+     * changed, chained to the one before it. Restoring replays the chain in order. Chains grow with each backup, use
+     * {@link Executor#compactTaskDiskBackup(java.lang.String, java.lang.String) } to merge a chain back down to a single backup. A
+     * non-incremental backup to the same directory discards the chain.
+     * @param compression compression to apply
+     * @param compressionLevel compression level ({@code 0} for the compressor's default)
+     * @param sparse if {@code true}, only allocated regions of the disk image are read (holes are skipped rather than read as zeros) --
+     * for incremental backups, all-zero blocks are left out of the first backup in the chain instead
+     * @param reflink if {@code true} and {@code compression == BackupCompression.NONE}, the backup shares blocks with the disk image if
+     * the filesystem supports it (falls back to a regular copy if it doesn't) -- ignored for incremental backups
+     * @param incremental if {@code true}, only blocks that changed since the last incremental backup to the same directory are stored
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if any of the following conditions are NOT met:
+     * {@code compressionLevel == 0 || (compressionLevel >= compression.getMinLevel() && compressionLevel <= compression.getMaxLevel())}
+     */
+    public BackupOptions(BackupCompression compression, int compressionLevel, boolean sparse, boolean reflink, boolean incremental) {
+        Validate.notNull(compression);
+        Validate.isTrue(compressionLevel == 0
+                || (compressionLevel >= compression.getMinLevel() && compressionLevel <= compression.getMaxLevel()),
+                "Compression level out of range");
+        this.compression = compression;
+        this.compressionLevel = compressionLevel;
+        this.sparse = sparse;
+        this.reflink = reflink;
+        this.incremental = incremental;
+    }
+
+    /**
+     * Get compression.
+     * @return compression
+     */
+    public BackupCompression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Get compression level.
+     * @return compression level ({@code 0} for the compressor's default)
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Get whether only allocated regions of the disk image are read.
+     * @return {@code true} if holes in the disk image are skipped
+     */
+    public boolean isSparse() {
+        return sparse;
+    }
+
+    /**
+     * Get whether the backup may share blocks with the disk image. Only applies if compression is {@link BackupCompression#NONE}.
+     * @return {@code true} if reflink copies are allowed
+     */
+    public boolean isReflink() {
+        return reflink;
+    }
+
+    /**
+     * Get whether only blocks that changed since the last incremental backup are stored.
+     * @return {@code true} if incremental
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    @Override
+    public String toString() {
+        return "BackupOptions{" + "compression=" + compression + ", compressionLevel=" + compressionLevel + ", sparse=" + sparse
+                + ", reflink=" + reflink + ", incremental=" + incremental + '}';
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.executor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounds how many tasks can be in flight at once. Tasks submitted past the bound are queued (the submitting thread never blocks) and
+ * passed on to the downstream {@link Executor} as earlier tasks finish.
+ * <p>
+ * Limiters can be chained: a limiter per host whose downstream is a single global limiter bounds concurrency both per host and overall.
+ * A task counts against a limiter from the moment that limiter passes it downstream until it finishes running.
+ * <p>
+ * If the downstream {@link Executor} rejects a task passed to {@link #execute(java.lang.Runnable) }, the rejection is thrown back to the
+ * caller. If it rejects a task that was queued, there's no caller left to throw to: the task is never run, and if it's a
+ * {@link RejectableTask} it's told why via {@link RejectableTask#rejected(java.lang.RuntimeException) } (other tasks are dropped with a
+ * warning). Once one queued task is rejected, the tasks queued behind it are tried in turn.
+ * <p>
+ * This class is thread-safe.
+ * @author Kasra Faghihi
+ */
+public final class ExecutionLimiter implements Executor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionLimiter.class);
+
+    private final Executor downstream;
+    private final int maxInFlight;
+
+    private final Object lock = new Object();
+    private final Queue<Runnable> queue = new ArrayDeque<>();
+    private int inFlight;
+
+    /**
+     * Constructs a {@link ExecutionLimiter} object.
+     * @param downstream executor that runs tasks once they're allowed through
+     * @param maxInFlight maximum number of tasks allowed through at once
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code maxInFlight < 1}
+     */
+    public ExecutionLimiter(Executor downstream, int maxInFlight) {
+        Validate.notNull(downstream);
+        Validate.isTrue(maxInFlight >= 1);
+        this.downstream = downstream;
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        Validate.notNull(command);
+
+        synchronized (lock) {
+            if (inFlight >= maxInFlight) {
+                queue.add(command);
+                return;
+            }
+            inFlight++;
+        }
+        dispatch(command);
+    }
+
+    /**
+     * Get the number of tasks currently allowed through.
+     * @return number of tasks in flight
+     */
+    public int getInFlightCount() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    /**
+     * Get the number of tasks waiting to be allowed through.
+     * @return number of tasks queued
+     */
+    public int getQueuedCount() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    private void dispatch(Runnable command) {
+        try {
+            downstream.execute(wrap(command));
+        } catch (RuntimeException re) { // downstream rejected it, so it never got the chance to run
+            next();
+            throw re;
+        }
+    }
+
+    private void next() {
+        List<Runnable> rejected = null;
+        List<RuntimeException> rejections = null;
+        while (true) {
+            Runnable command;
+            synchronized (lock) {
+                command = queue.poll();
+                if (command == null) {
+                    inFlight--;
+                    break;
+                }
+            }
+
+            // pass the slot straight on to the next queued task -- if downstream rejects it, there's no submitter left to report that to,
+            // so fail it and move on to the task after it (looping rather than going through wrap(), otherwise a long run of rejections
+            // would recurse until the stack overflows)
+            try {
+                downstream.execute(wrap(command));
+                break;
+            } catch (RuntimeException re) {
+                if (rejected == null) {
+                    rejected = new ArrayList<>();
+                    rejections = new ArrayList<>();
+                }
+                rejected.add(command);
+                rejections.add(re);
+            }
+        }
+
+        // tell rejected tasks only once the slot is passed on/given back -- a rejected task may be a slot of another limiter chained to
+        // this one, in which case telling it frees up that limiter's slot and that limiter then submits its next queued task to this one
+        if (rejected != null) {
+            for (int i = 0; i < rejected.size(); i++) {
+                reject(rejected.get(i), rejections.get(i));
+            }
+        }
+    }
+
+    private static void reject(Runnable command, RuntimeException cause) {
+        if (!(command instanceof RejectableTask)) {
+            logger.warn("Queued task {} rejected downstream, dropping", command, cause);
+            return;
+        }
+
+        try {
+            ((RejectableTask) command).rejected(cause);
+        } catch (RuntimeException re) {
+            logger.error("Rejected task {} failed to handle rejection", command, re);
+        }
+    }
+
+    private Runnable wrap(Runnable command) {
+        return new Slot(command);
+    }
+
+    /**
+     * Task that wants to know if it gets rejected by the downstream {@link Executor} after being queued by a {@link ExecutionLimiter}.
+     */
+    public interface RejectableTask extends Runnable {
+        /**
+         * Called (once) instead of {@link #run() } when this task was queued and the downstream {@link Executor} rejected it. Called on
+         * whatever thread freed up the slot that this task was being passed on to, so implementations should return quickly.
+         * @param cause exception the downstream {@link Executor} rejected this task with
+         */
+        void rejected(RuntimeException cause);
+    }
+
+    // Task as handed downstream. Holds a slot of this limiter until it finishes running or gets rejected by a limiter chained after this
+    // one.
+    private final class Slot implements RejectableTask {
+        private final Runnable command;
+
+        Slot(Runnable command) {
+            this.command = command;
+        }
+
+        @Override
+        public void run() {
+            try {
+                command.run();
+            } finally {
+                next();
+            }
+        }
+
+        @Override
+        public void rejected(RuntimeException cause) {
+            try {
+                reject(command, cause);
+            } finally {
+                next();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return command.toString();
+        }
+    }
+}
@@ -19,6 +19,8 @@ package com.offbynull.rfm.host.executor;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * Executes high-level Linux commands with containerization support.
@@ -110,12 +112,17 @@ public interface Executor extends Closeable {
      * Reallocate resources for task. Note that, unlike calling {@link #deallocateTask(java.lang.String) } followed by
      * {@link #allocateTask(java.lang.String, com.offbynull.rfm.host.executor.TaskResourceAllocation) }, this method guarantees that
      * persisted data remains in-place (e.g. disk gets resized but files on disk remain untouched).
+     * <p>
+     * Growing the disk is done while the disk stays mounted if possible, so a task that's {@link TaskState#STARTED} can have its disk
+     * grown so long as nothing else about its resource allocation changes. Anything else (e.g. shrinking the disk or changing CPU/memory)
+     * requires the task to be {@link TaskState#ALLOCATED}.
      * @param id task identifier
      * @param resources task resource allocation
      * @throws IOException on I/O, resource, or internal error
      * @throws RebootedException if host was rebooted since this {@link Executor} was created
      * @throws TaskIdConflictException if task ID doesn't exist
-     * @throws TaskStateException if task state isn't set to {@link TaskState#ALLOCATED}
+     * @throws TaskStateException if task state isn't set to {@link TaskState#ALLOCATED}, or if task state is set to
+     * {@link TaskState#STARTED} but the reallocation is anything other than growing the disk (or the disk can't be grown while mounted)
      * @throws NullPointerException if any argument is {@code null}
      * @throws ArithmeticException if any of the following expressions cause an overflow:
      * {@code cpuAffinity.size() * 100000L}
@@ -124,10 +131,38 @@ public interface Executor extends Closeable {
      */
     void reallocateTask(String id, TaskResourceAllocation resources) throws IOException;
 
+    /**
+     * Backup task disk using {@link BackupOptions#DEFAULT}. Equivalent to calling
+     * {@link #backupTaskDisk(java.lang.String, java.lang.String, com.offbynull.rfm.host.executor.BackupOptions) } with
+     * {@link BackupOptions#DEFAULT}.
+     * @param id task identifier
+     * @param backupPath directory to backup to
+     * @throws IOException on I/O, resource, or internal error
+     * @throws RebootedException if host was rebooted since this {@link Executor} was created
+     * @throws TaskIdConflictException if task ID doesn't exist
+     * @throws TaskStateException if task state isn't set to {@link TaskState#ALLOCATED}
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if any of the following conditions are NOT met:
+     * {@code !id.isEmpty()},
+     * {@code !backupPath.isEmpty()},
+     * {@code backupPath.startsWith("/")},
+     * {@code !backupPath.endsWith("/")},
+     * {@code !backupPath.contains("/../")},
+     * {@code !backupPath.contains("/./")},
+     * {@code !backupPath.contains("\u0000")}
+     */
+    default void backupTaskDisk(String id, String backupPath) throws IOException {
+        backupTaskDisk(id, backupPath, BackupOptions.DEFAULT);
+    }
+
     /**
      * Backup task disk.
+     * <p>
+     * Any existing backup in {@code backupPath} is replaced, even if it was written in a different format.
+     * {@link #restoreTaskDisk(java.lang.String, java.lang.String) } detects the format on its own.
      * @param id task identifier
      * @param backupPath directory to backup to
+     * @param options backup options
      * @throws IOException on I/O, resource, or internal error
      * @throws RebootedException if host was rebooted since this {@link Executor} was created
      * @throws TaskIdConflictException if task ID doesn't exist
@@ -142,8 +177,32 @@ public interface Executor extends Closeable {
      * {@code !backupPath.contains("/./")},
      * {@code !backupPath.contains("\u0000")}
      */
-    void backupTaskDisk(String id, String backupPath) throws IOException;
+    void backupTaskDisk(String id, String backupPath, BackupOptions options) throws IOException;
     
+    /**
+     * Compact an incremental task disk backup, merging its chain of backups into a single backup (see
+     * {@link BackupOptions#BackupOptions(com.offbynull.rfm.host.executor.BackupCompression, int, boolean, boolean, boolean) }). The
+     * merged backup uses the same compression as the latest backup in the chain. Does nothing if {@code backupPath} doesn't contain a
+     * chain of at least 2 backups.
+     * <p>
+     * The task doesn't need to exist, but no other operation on the task will run while compacting. Compacting needs enough free space in
+     * {@code backupPath} for the task disk image to be rebuilt temporarily.
+     * @param id task identifier
+     * @param backupPath directory containing backup
+     * @throws IOException on I/O, resource, or internal error
+     * @throws RebootedException if host was rebooted since this {@link Executor} was created
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if any of the following conditions are NOT met:
+     * {@code !id.isEmpty()},
+     * {@code !backupPath.isEmpty()},
+     * {@code backupPath.startsWith("/")},
+     * {@code !backupPath.endsWith("/")},
+     * {@code !backupPath.contains("/../")},
+     * {@code !backupPath.contains("/./")},
+     * {@code !backupPath.contains("\u0000")}
+     */
+    void compactTaskDiskBackup(String id, String backupPath) throws IOException;
+
     /**
      * Restore task disk.
      * @param id task identifier
@@ -192,6 +251,70 @@ public interface Executor extends Closeable {
      */
     void downloadTaskFile(String id, String path, long offset, OutputStream os, long limit, long timeout) throws IOException;
 
+    /**
+     * Tail a task file. Equivalent to calling
+     * {@link #tailTaskFile(java.lang.String, java.lang.String, long, long, java.lang.String) } with a {@code null} filter.
+     * @param id task identifier
+     * @param path task file path (in task disk)
+     * @param fromOffset offset in file at {@code path} to read from (typically {@link TaskFileTail#getNextOffset() } of the previous
+     * call, or {@code 0L} for the first call)
+     * @param maxBytes maximum number of bytes to read
+     * @return bytes read and offset to continue from
+     * @throws IOException on I/O error, resource error, or internal error
+     * @throws RebootedException if host was rebooted since this {@link Executor} was created
+     * @throws TaskIdConflictException if task ID doesn't exist
+     * @throws TaskStateException if task state is set to {@link TaskState#CREATED} (task disk isn't mounted)
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if any of the following conditions are NOT met:
+     * {@code !id.isEmpty()},
+     * {@code !path.isEmpty()},
+     * {@code path.startsWith("/")},
+     * {@code !path.endsWith("/")},
+     * {@code !path.contains("/../")},
+     * {@code !path.contains("/./")},
+     * {@code !path.contains("\u0000")},
+     * {@code fromOffset >= 0L},
+     * {@code maxBytes > 0L},
+     * {@code maxBytes <= 16777216L}
+     */
+    default TaskFileTail tailTaskFile(String id, String path, long fromOffset, long maxBytes) throws IOException {
+        return tailTaskFile(id, path, fromOffset, maxBytes, null);
+    }
+
+    /**
+     * Tail a task file, optionally filtering out lines on the host so that only matching lines are transferred.
+     * <p>
+     * Unlike {@link #downloadTaskFile(java.lang.String, java.lang.String, long, java.io.OutputStream, long, long) }, this method is meant
+     * to be called repeatedly on files that are being appended to (e.g. logs). If a filter is applied, only complete lines are read: if
+     * the last line read isn't terminated yet (e.g. it's still being written), it's left for the next call.
+     * @param id task identifier
+     * @param path task file path (in task disk)
+     * @param fromOffset offset in file at {@code path} to read from (typically {@link TaskFileTail#getNextOffset() } of the previous
+     * call, or {@code 0L} for the first call)
+     * @param maxBytes maximum number of bytes to read (before filtering)
+     * @param filter extended regular expression (as used by {@code grep -E}) that lines must match to be returned, or {@code null} to
+     * return bytes as-is
+     * @return bytes read and offset to continue from
+     * @throws IOException on I/O error, resource error, or internal error
+     * @throws RebootedException if host was rebooted since this {@link Executor} was created
+     * @throws TaskIdConflictException if task ID doesn't exist
+     * @throws TaskStateException if task state is set to {@link TaskState#CREATED} (task disk isn't mounted)
+     * @throws NullPointerException if any argument other than {@code filter} is {@code null}
+     * @throws IllegalArgumentException if any of the following conditions are NOT met:
+     * {@code !id.isEmpty()},
+     * {@code !path.isEmpty()},
+     * {@code path.startsWith("/")},
+     * {@code !path.endsWith("/")},
+     * {@code !path.contains("/../")},
+     * {@code !path.contains("/./")},
+     * {@code !path.contains("\u0000")},
+     * {@code fromOffset >= 0L},
+     * {@code maxBytes > 0L},
+     * {@code maxBytes <= 16777216L},
+     * {@code filter == null || !filter.contains("\u0000")}
+     */
+    TaskFileTail tailTaskFile(String id, String path, long fromOffset, long maxBytes, String filter) throws IOException;
+
     /**
      * Start task.
      * <p>
@@ -235,4 +358,20 @@ public interface Executor extends Closeable {
      * {@code !id.isEmpty()}
      */
     TaskCheckResult checkTask(String id) throws IOException;
+
+    /**
+     * Check the status of multiple tasks at once.
+     * <p>
+     * Equivalent to calling {@link #checkTask(java.lang.String) } for each ID, except that implementations are expected to check all of
+     * them in one go rather than interacting with the host once per ID. IDs that don't exist are left out of the returned map rather
+     * than causing a {@link TaskIdConflictException}.
+     * @param ids task identifiers
+     * @return work status of each task in {@code ids} that exists, keyed by task identifier
+     * @throws IOException on I/O, resource, or internal error
+     * @throws RebootedException if host was rebooted since this {@link Executor} was created
+     * @throws NullPointerException if any argument is {@code null} or contains {@code null}
+     * @throws IllegalArgumentException if any of the following conditions are NOT met:
+     * {@code ids.stream().noneMatch(id -> id.isEmpty())}
+     */
+    Map<String, TaskCheckResult> checkTasks(Collection<String> ids) throws IOException;
 }
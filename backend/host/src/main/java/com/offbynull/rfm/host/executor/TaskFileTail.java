@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.executor;
+
+import java.util.Arrays;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Result of tailing a task file.
+ * @author Kasra Faghihi
+ */
+public final class TaskFileTail {
+    private final byte[] data;
+    private final long nextOffset;
+    private final long fileSize;
+    private final boolean truncated;
+
+    /**
+     * Constructs a {@link TaskFileTail} instance.
+     * @param data bytes read (after filtering, if a filter was applied)
+     * @param nextOffset offset to continue tailing from
+     * @param fileSize size of file at the time it was read
+     * @param truncated {@code true} if file was smaller than the offset requested (e.g. truncated or replaced), in which case reading
+     * started over from the beginning of the file
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if any of the following conditions are NOT met:
+     * {@code nextOffset >= 0L},
+     * {@code fileSize >= 0L},
+     * {@code nextOffset <= fileSize}
+     */
+    public TaskFileTail(byte[] data, long nextOffset, long fileSize, boolean truncated) {
+        Validate.notNull(data);
+        Validate.isTrue(nextOffset >= 0L);
+        Validate.isTrue(fileSize >= 0L);
+        Validate.isTrue(nextOffset <= fileSize);
+        this.data = data.clone();
+        this.nextOffset = nextOffset;
+        this.fileSize = fileSize;
+        this.truncated = truncated;
+    }
+
+    /**
+     * Get data read.
+     * @return bytes read (after filtering, if a filter was applied)
+     */
+    public byte[] getData() {
+        return data.clone();
+    }
+
+    /**
+     * Get offset to continue tailing from. Pass this in as the offset of the next call.
+     * @return next offset
+     */
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    /**
+     * Get size of file at the time it was read.
+     * @return file size
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Get whether the file was smaller than the offset requested, in which case reading started over from the beginning of the file.
+     * @return {@code true} if truncated
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    @Override
+    public String toString() {
+        return "TaskFileTail{" + "data=" + Arrays.toString(data) + ", nextOffset=" + nextOffset + ", fileSize=" + fileSize
+                + ", truncated=" + truncated + '}';
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.executors.async;
+
+import com.offbynull.rfm.host.executor.AsyncExecutor;
+import com.offbynull.rfm.host.executor.BackupOptions;
+import com.offbynull.rfm.host.executor.ExecutionLimiter;
+import com.offbynull.rfm.host.executor.ExecutionLimiter.RejectableTask;
+import com.offbynull.rfm.host.executor.Executor;
+import com.offbynull.rfm.host.executor.HostCheckResult;
+import com.offbynull.rfm.host.executor.TaskCheckResult;
+import com.offbynull.rfm.host.executor.TaskConfiguration;
+import com.offbynull.rfm.host.executor.TaskFileTail;
+import com.offbynull.rfm.host.executor.TaskResourceAllocation;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * {@link AsyncExecutor} that runs operations on a (blocking) {@link Executor}.
+ * <p>
+ * Operations are handed to an {@link ExecutionLimiter} dedicated to this host, which bounds how many of this host's operations are in
+ * flight at once. That limiter in turn hands operations to a downstream {@link java.util.concurrent.Executor} shared across hosts --
+ * typically another {@link ExecutionLimiter} that bounds in-flight operations globally. Callers never block, and threads are only tied up
+ * by operations that are actually running, so the number of threads needed is bounded by the global limit rather than the number of
+ * hosts.
+ * <p>
+ * If the downstream {@link java.util.concurrent.Executor} rejects an operation (e.g. it's been shut down), the operation doesn't run. If
+ * the operation was submitted straight through, the rejection is thrown back to the caller. If it was queued first, its future completes
+ * exceptionally with the rejection instead.
+ * <p>
+ * Cancelling an operation that's running interrupts the thread running it. {@link Executor}s backed by
+ * {@link com.offbynull.rfm.host.communicators.sshj.SshjCommunicator} react to this by signalling the script running on the host to
+ * terminate.
+ * @author Kasra Faghihi
+ */
+public final class AsyncExecutorAdapter implements AsyncExecutor {
+
+    private final Executor executor;
+    private final ExecutionLimiter hostLimiter;
+
+    /**
+     * Constructs a {@link AsyncExecutorAdapter} object.
+     * @param executor executor to run operations on
+     * @param downstream executor that runs operations once this host's limit allows them through (e.g. a global
+     * {@link ExecutionLimiter})
+     * @param maxInFlight maximum number of operations in flight at once for this host
+     * @throws NullPointerException if any argument is {@code null}
+     * @throws IllegalArgumentException if {@code maxInFlight < 1}
+     */
+    public AsyncExecutorAdapter(Executor executor, java.util.concurrent.Executor downstream, int maxInFlight) {
+        Validate.notNull(executor);
+        Validate.notNull(downstream);
+        Validate.isTrue(maxInFlight >= 1);
+        this.executor = executor;
+        this.hostLimiter = new ExecutionLimiter(downstream, maxInFlight);
+    }
+
+    @Override
+    public CompletableFuture<HostCheckResult> checkHost() {
+        return submit(() -> executor.checkHost());
+    }
+
+    @Override
+    public CompletableFuture<Void> createTask(String id, TaskConfiguration config) {
+        Validate.notNull(id);
+        Validate.notNull(config);
+        return submit(() -> {
+            executor.createTask(id, config);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> destroyTask(String id) {
+        Validate.notNull(id);
+        return submit(() -> {
+            executor.destroyTask(id);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> allocateTask(String id, TaskResourceAllocation resources) {
+        Validate.notNull(id);
+        Validate.notNull(resources);
+        return submit(() -> {
+            executor.allocateTask(id, resources);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> deallocateTask(String id) {
+        Validate.notNull(id);
+        return submit(() -> {
+            executor.deallocateTask(id);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> reallocateTask(String id, TaskResourceAllocation resources) {
+        Validate.notNull(id);
+        Validate.notNull(resources);
+        return submit(() -> {
+            executor.reallocateTask(id, resources);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> backupTaskDisk(String id, String backupPath, BackupOptions options) {
+        Validate.notNull(id);
+        Validate.notNull(backupPath);
+        Validate.notNull(options);
+        return submit(() -> {
+            executor.backupTaskDisk(id, backupPath, options);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> compactTaskDiskBackup(String id, String backupPath) {
+        Validate.notNull(id);
+        Validate.notNull(backupPath);
+        return submit(() -> {
+            executor.compactTaskDiskBackup(id, backupPath);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> restoreTaskDisk(String id, String backupPath) {
+        Validate.notNull(id);
+        Validate.notNull(backupPath);
+        return submit(() -> {
+            executor.restoreTaskDisk(id, backupPath);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> downloadTaskFile(String id, String path, long offset, OutputStream os, long limit, long timeout) {
+        Validate.notNull(id);
+        Validate.notNull(path);
+        Validate.notNull(os);
+        return submit(() -> {
+            executor.downloadTaskFile(id, path, offset, os, limit, timeout);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<TaskFileTail> tailTaskFile(String id, String path, long fromOffset, long maxBytes, String filter) {
+        Validate.notNull(id);
+        Validate.notNull(path);
+        return submit(() -> executor.tailTaskFile(id, path, fromOffset, maxBytes, filter));
+    }
+
+    @Override
+    public CompletableFuture<Void> startTask(String id) {
+        Validate.notNull(id);
+        return submit(() -> {
+            executor.startTask(id);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> stopTask(String id) {
+        Validate.notNull(id);
+        return submit(() -> {
+            executor.stopTask(id);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<TaskCheckResult> checkTask(String id) {
+        Validate.notNull(id);
+        return submit(() -> executor.checkTask(id));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, TaskCheckResult>> checkTasks(Collection<String> ids) {
+        Validate.notNull(ids);
+        Validate.noNullElements(ids);
+        Collection<String> idsCopy = new ArrayList<>(ids); // copy because caller may modify before operation runs
+        return submit(() -> executor.checkTasks(idsCopy));
+    }
+
+    /**
+     * Get the number of this host's operations currently in flight.
+     * @return number of operations in flight
+     */
+    public int getInFlightCount() {
+        return hostLimiter.getInFlightCount();
+    }
+
+    /**
+     * Get the number of this host's operations waiting to be let through.
+     * @return number of operations queued
+     */
+    public int getQueuedCount() {
+        return hostLimiter.getQueuedCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.close();
+    }
+
+    private <T> CompletableFuture<T> submit(Operation<T> operation) {
+        Task<T> task = new Task<>(operation);
+        hostLimiter.execute(task);
+        return task.future;
+    }
+
+    private interface Operation<T> {
+        T run() throws IOException;
+    }
+
+    private static final class Task<T> implements RejectableTask {
+        private final Operation<T> operation;
+        private final CompletableFuture<T> future;
+
+        private Thread runner; // non-null only while the operation is running, guarded by this
+
+        Task(Operation<T> operation) {
+            this.operation = operation;
+            this.future = new CompletableFuture<>();
+            this.future.whenComplete((res, t) -> {
+                if (future.isCancelled()) {
+                    interruptRunner();
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (future.isDone()) { // cancelled before it got the chance to run
+                    return;
+                }
+                runner = Thread.currentThread();
+            }
+
+            try {
+                future.complete(operation.run());
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+            } catch (Error e) {
+                future.completeExceptionally(e);
+                throw e;
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                    Thread.interrupted(); // clear interrupt (if cancelled) so it doesn't leak into whatever this thread runs next
+                }
+            }
+        }
+
+        @Override
+        public void rejected(RuntimeException cause) {
+            future.completeExceptionally(cause);
+        }
+
+        private synchronized void interruptRunner() {
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.executors.async;
+
+import com.offbynull.rfm.host.executor.Executor;
+import com.offbynull.rfm.host.executor.HostCheckResult;
+import com.offbynull.rfm.host.executor.TaskCheckResult;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the same operation across many hosts at once.
+ * <p>
+ * Each sweep hands one operation per host to a fixed pool of threads, so at most {@code parallelism} hosts are being talked to at any
+ * given time. Results are streamed to a {@link Listener} as each host finishes rather than being collected until the slowest host is done.
+ * <p>
+ * Two timeouts apply to a sweep...
+ * <ul>
+ * <li>host timeout -- how long a single host's operation may run for, counted from when it starts running (time spent waiting for a
+ * free thread doesn't count).</li>
+ * <li>sweep timeout -- how long the sweep as a whole may run for, counted from when the sweep is started.</li>
+ * </ul>
+ * Hosts that hit either timeout are reported as failed with a {@link TimeoutException}, and the thread running the operation (if any) is
+ * interrupted. {@link Executor}s backed by {@link com.offbynull.rfm.host.communicators.sshj.SshjCommunicator} react to this by
+ * signalling the script running on the host to terminate.
+ * <p>
+ * This class is thread-safe.
+ * @author Kasra Faghihi
+ */
+public final class FleetInspector implements Closeable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(FleetInspector.class);
+
+    private final ThreadPoolExecutor threadPool;
+    private final ScheduledThreadPoolExecutor timer;
+
+    /**
+     * Constructs a {@link FleetInspector} object.
+     * @param parallelism maximum number of hosts to run operations on at once
+     * @throws IllegalArgumentException if {@code parallelism < 1}
+     */
+    public FleetInspector(int parallelism) {
+        Validate.isTrue(parallelism >= 1);
+
+        threadPool = new ThreadPoolExecutor(
+                parallelism, parallelism,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new BasicThreadFactory.Builder().daemon(true).namingPattern("Fleet Inspector %d").build());
+        threadPool.allowCoreThreadTimeOut(true); // idle between sweeps -- don't hold on to threads
+
+        timer = new ScheduledThreadPoolExecutor(
+                1,
+                new BasicThreadFactory.Builder().daemon(true).namingPattern("Fleet Inspector Timer %d").build());
+        timer.setRemoveOnCancelPolicy(true); // most timeouts get cancelled -- don't let them pile up in the queue
+    }
+
+    /**
+     * Check the state of many hosts. Equivalent to calling {@link Executor#checkHost() } on each executor.
+     * @param <K> host key type
+     * @param executors executors to check, keyed by whatever the caller uses to identify hosts
+     * @param hostTimeout maximum amount of time in milliseconds a single host may take
+     * @param sweepTimeout maximum amount of time in milliseconds the entire sweep may take
+     * @param listener listener to stream results to
+     * @return future that completes once every host has been reported to {@code listener} (cancelling it stops the sweep, and hosts that
+     * haven't been reported yet won't be)
+     * @throws NullPointerException if any argument is {@code null} or contains {@code null}
+     * @throws IllegalArgumentException if {@code hostTimeout <= 0L || sweepTimeout <= 0L}
+     * @throws IllegalStateException if closed
+     */
+    public <K> CompletableFuture<Void> checkHosts(Map<K, ? extends Executor> executors, long hostTimeout, long sweepTimeout,
+            Listener<? super K, ? super HostCheckResult> listener) {
+        Validate.notNull(executors);
+        Validate.noNullElements(executors.keySet());
+        Validate.noNullElements(executors.values());
+        
+        Map<K, Operation<HostCheckResult>> operations = new LinkedHashMap<>();
+        executors.forEach((k, e) -> operations.put(k, () -> e.checkHost()));
+        return sweep(operations, hostTimeout, sweepTimeout, listener);
+    }
+
+    /**
+     * Check the state of tasks on many hosts. Equivalent to calling {@link Executor#checkTasks(java.util.Collection) } on each executor.
+     * @param <K> host key type
+     * @param executors executors to check, keyed by whatever the caller uses to identify hosts
+     * @param taskIds identifiers of tasks to check, keyed by host key (hosts in {@code executors} but not in {@code taskIds} are skipped)
+     * @param hostTimeout maximum amount of time in milliseconds a single host may take
+     * @param sweepTimeout maximum amount of time in milliseconds the entire sweep may take
+     * @param listener listener to stream results to
+     * @return future that completes once every host has been reported to {@code listener} (cancelling it stops the sweep, and hosts that
+     * haven't been reported yet won't be)
+     * @throws NullPointerException if any argument is {@code null} or contains {@code null}
+     * @throws IllegalArgumentException if {@code hostTimeout <= 0L || sweepTimeout <= 0L}, or if {@code taskIds} contains a host key that
+     * isn't in {@code executors}
+     * @throws IllegalStateException if closed
+     */
+    public <K> CompletableFuture<Void> checkTasks(Map<K, ? extends Executor> executors, Map<K, ? extends Collection<String>> taskIds,
+            long hostTimeout, long sweepTimeout, Listener<? super K, ? super Map<String, TaskCheckResult>> listener) {
+        Validate.notNull(executors);
+        Validate.notNull(taskIds);
+        Validate.noNullElements(executors.keySet());
+        Validate.noNullElements(executors.values());
+        Validate.noNullElements(taskIds.values());
+        taskIds.values().forEach(ids -> Validate.noNullElements(ids));
+        Validate.isTrue(executors.keySet().containsAll(taskIds.keySet()));
+
+        Map<K, Operation<Map<String, TaskCheckResult>>> operations = new LinkedHashMap<>();
+        taskIds.forEach((k, ids) -> {
+            Executor executor = executors.get(k);
+            Collection<String> idsCopy = new ArrayList<>(ids); // copy because caller may modify before operation runs
+            operations.put(k, () -> executor.checkTasks(idsCopy));
+        });
+        return sweep(operations, hostTimeout, sweepTimeout, listener);
+    }
+
+    private <K, T> CompletableFuture<Void> sweep(Map<K, Operation<T>> operations, long hostTimeout, long sweepTimeout,
+            Listener<? super K, ? super T> listener) {
+        Validate.notNull(listener);
+        Validate.isTrue(hostTimeout > 0L);
+        Validate.isTrue(sweepTimeout > 0L);
+        Validate.validState(!threadPool.isShutdown());
+
+        Sweep<K, T> sweep = new Sweep<>(hostTimeout, listener, operations.size());
+        for (Entry<K, Operation<T>> e : operations.entrySet()) {
+            sweep.hosts.add(new HostRun<>(sweep, e.getKey(), e.getValue()));
+        }
+
+        if (sweep.hosts.isEmpty()) {
+            sweep.future.complete(null);
+            return sweep.future;
+        }
+
+        Future<?> deadline = timer.schedule(() -> sweep.expire(), sweepTimeout, TimeUnit.MILLISECONDS);
+        sweep.future.whenComplete((res, t) -> {
+            deadline.cancel(false);
+            if (sweep.future.isCancelled()) {
+                sweep.cancel();
+            }
+        });
+
+        for (HostRun<K, T> host : sweep.hosts) {
+            threadPool.execute(host);
+        }
+        return sweep.future;
+    }
+
+    /**
+     * Get the number of host operations waiting for a free thread (across all sweeps).
+     * @return number of host operations queued
+     */
+    public int getQueuedCount() {
+        return threadPool.getQueue().size();
+    }
+
+    /**
+     * Shuts down this {@link FleetInspector}. Threads running host operations are interrupted and sweeps in progress never complete.
+     */
+    @Override
+    public void close() {
+        threadPool.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    /**
+     * Receives results as a sweep progresses. Methods are invoked from the threads running host operations, possibly concurrently, so
+     * implementations must be thread-safe. Each host is reported exactly once (unless the sweep is cancelled).
+     * @param <K> host key type
+     * @param <T> result type
+     */
+    public interface Listener<K, T> {
+        /**
+         * Host operation completed successfully.
+         * @param key host key
+         * @param result operation's result
+         */
+        void succeeded(K key, T result);
+
+        /**
+         * Host operation failed.
+         * @param key host key
+         * @param cause cause of failure ({@link TimeoutException} if host or sweep timeout was hit, otherwise whatever was thrown by the
+         * operation)
+         */
+        void failed(K key, Throwable cause);
+    }
+
+    private interface Operation<T> {
+        T run() throws IOException;
+    }
+    
+    private static final class Sweep<K, T> {
+        private final long hostTimeout;
+        private final Listener<? super K, ? super T> listener;
+        private final List<HostRun<K, T>> hosts;
+        private final AtomicInteger remaining;
+        private final CompletableFuture<Void> future;
+
+        Sweep(long hostTimeout, Listener<? super K, ? super T> listener, int count) {
+            this.hostTimeout = hostTimeout;
+            this.listener = listener;
+            this.hosts = new ArrayList<>(count);
+            this.remaining = new AtomicInteger(count);
+            this.future = new CompletableFuture<>();
+        }
+
+        void expire() {
+            // mark every outstanding host as done before interrupting any of them -- otherwise a thread freed up by an interrupt could
+            // go on to start a queued host of this same sweep
+            List<HostRun<K, T>> expired = new ArrayList<>();
+            for (HostRun<K, T> host : hosts) {
+                if (host.markDone()) {
+                    expired.add(host);
+                }
+            }
+            for (HostRun<K, T> host : expired) {
+                host.interruptRunner();
+                report(host.key, null, new TimeoutException("Sweep timed out"));
+            }
+        }
+
+        void cancel() {
+            for (HostRun<K, T> host : hosts) {
+                if (host.markDone()) {
+                    host.interruptRunner();
+                }
+            }
+        }
+
+        void report(K key, T result, Throwable cause) {
+            if (!future.isDone()) {
+                try {
+                    if (cause == null) {
+                        listener.succeeded(key, result);
+                    } else {
+                        listener.failed(key, cause);
+                    }
+                } catch (RuntimeException re) {
+                    logger.error("Listener failed for {}", key, re);
+                }
+            }
+
+            if (remaining.decrementAndGet() == 0) {
+                future.complete(null);
+            }
+        }
+    }
+
+    private final class HostRun<K, T> implements Runnable {
+        private final Sweep<K, T> sweep;
+        private final K key;
+        private final Operation<T> operation;
+
+        private boolean done;          // guarded by this
+        private Thread runner;         // non-null only while the operation is running, guarded by this
+        private Future<?> hostTimeout; // non-null only while the operation is running, guarded by this
+
+        HostRun(Sweep<K, T> sweep, K key, Operation<T> operation) {
+            this.sweep = sweep;
+            this.key = key;
+            this.operation = operation;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (done) { // timed out or cancelled before it got the chance to run
+                    return;
+                }
+                runner = Thread.currentThread();
+                hostTimeout = timer.schedule(() -> timeOut(), sweep.hostTimeout, TimeUnit.MILLISECONDS);
+            }
+
+            T result = null;
+            Throwable cause = null;
+            try {
+                result = operation.run();
+            } catch (IOException | RuntimeException e) {
+                cause = e;
+            } catch (Error e) {
+                complete(null, e);
+                throw e;
+            }
+            complete(result, cause);
+        }
+
+        private void timeOut() {
+            if (markDone()) {
+                interruptRunner();
+                sweep.report(key, null, new TimeoutException("Host timed out"));
+            }
+        }
+
+        // Mark as done without waiting for the operation to finish (returns false if already done).
+        synchronized boolean markDone() {
+            if (done) {
+                return false;
+            }
+            done = true;
+            return true;
+        }
+
+        synchronized void interruptRunner() {
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+
+        private void complete(T result, Throwable cause) {
+            boolean report;
+            synchronized (this) {
+                report = !done;
+                done = true;
+                runner = null;
+                hostTimeout.cancel(false);
+                hostTimeout = null;
+                Thread.interrupted(); // clear interrupt (if timed out) so it doesn't leak into whatever this thread runs next
+            }
+
+            if (report) {
+                sweep.report(key, result, cause);
+            }
+        }
+    }
+}
@@ -16,7 +16,6 @@
  */
 package com.offbynull.rfm.host.executors.communicator;
 
-import static com.offbynull.rfm.host.executors.communicator.InternalUtils.toLong;
 import org.apache.commons.lang3.Validate;
 
 // cat /sys/fs/cgroup/memory/memory.stat
@@ -27,33 +26,25 @@ final class CGroupMemoryStatParser {
         // do nothing
     }
 
-    public static CGroupMemoryStat parse(String str) {
+    public static CGroupMemoryStat parse(CharSequence str) {
         Validate.notNull(str);
         
         Long totalCache = null;
         Long totalRss = null;
         Long totalSwap = null;
         
-        String[] lines = str.split("\\n+");
-        for (String line : lines) {
-            String[] words = line.split("\\s+");
-            if (words.length < 2) {
+        TextTokenizer tokenizer = new TextTokenizer(str);
+        while (tokenizer.nextLine()) {
+            if (!tokenizer.nextToken()) {
                 continue;
             }
 
-            switch (words[0]) {
-                case "total_cache":
-                    totalCache = toLong(words[1]);
-                    break;
-                case "total_rss":
-                    totalRss = toLong(words[1]);
-                    break;
-                case "total_swap":
-                    totalSwap = toLong(words[1]);
-                    break;
-                default:
-                    // do nothing
-                    break;
+            if (tokenizer.tokenEquals("total_cache")) {
+                totalCache = nextLong(tokenizer);
+            } else if (tokenizer.tokenEquals("total_rss")) {
+                totalRss = nextLong(tokenizer);
+            } else if (tokenizer.tokenEquals("total_swap")) {
+                totalSwap = nextLong(tokenizer);
             }
         }
 
@@ -62,6 +53,10 @@ final class CGroupMemoryStatParser {
         return new CGroupMemoryStat(totalRss, totalCache, totalSwap);
     }
 
+    private static Long nextLong(TextTokenizer tokenizer) {
+        return tokenizer.nextToken() && tokenizer.tokenIsLong() ? tokenizer.longValue() : null;
+    }
+
     static final class CGroupMemoryStat {
         private final long rss;
         private final long cache;
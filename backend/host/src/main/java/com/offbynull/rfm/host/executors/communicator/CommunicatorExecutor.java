@@ -17,6 +17,7 @@
 package com.offbynull.rfm.host.executors.communicator;
 
 import com.offbynull.rfm.host.communicator.BootTimeChangedException;
+import com.offbynull.rfm.host.executor.BackupOptions;
 import com.offbynull.rfm.host.executor.GlobalMemory;
 import com.offbynull.rfm.host.executor.TaskCheckResult;
 import com.offbynull.rfm.host.executor.Processor;
@@ -24,21 +25,27 @@ import com.offbynull.rfm.host.executor.Mount;
 import com.offbynull.rfm.host.executor.HostCheckResult;
 import com.offbynull.rfm.host.executor.Executor;
 import com.offbynull.rfm.host.communicator.Communicator;
+import com.offbynull.rfm.host.communicator.ExecuteResult;
+import com.offbynull.rfm.host.communicator.FrameReader;
 import com.offbynull.rfm.host.communicator.InMemoryExecuteResult;
+import com.offbynull.rfm.host.communicator.OutputConsumer;
 import com.offbynull.rfm.host.communicator.StreamLimitExceededException;
+import com.offbynull.rfm.host.communicator.StreamingScriptParser;
 import com.offbynull.rfm.host.communicator.TimeLimitExceededException;
 import com.offbynull.rfm.host.executor.RebootedException;
 import com.offbynull.rfm.host.executor.TaskConfiguration;
+import com.offbynull.rfm.host.executor.TaskFileTail;
 import com.offbynull.rfm.host.executor.TaskIdConflictException;
 import com.offbynull.rfm.host.executor.TaskResourceAllocation;
 import static com.offbynull.rfm.host.executor.TaskResourceAllocation.CFS_PERIOD;
+import static com.offbynull.rfm.host.executors.communicator.InternalUtils.toSecondsArgument;
 import com.offbynull.rfm.host.executor.TaskMemory;
 import com.offbynull.rfm.host.executor.TaskState;
 import com.offbynull.rfm.host.executor.TaskStateException;
 import com.offbynull.rfm.host.executors.communicator.CGroupMemoryStatParser.CGroupMemoryStat;
 import com.offbynull.rfm.host.executors.communicator.DfParser.DfEntry;
 import com.offbynull.rfm.host.executors.communicator.ProcMemInfoParser.ProcMemInfo;
-import com.offbynull.rfm.host.executors.communicator.ProcStatParser.ProcStatCpuEntry;
+import com.offbynull.rfm.host.executors.communicator.ProcStatParser.ProcStatCpuTimes;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URLDecoder;
@@ -46,9 +53,16 @@ import java.net.URLEncoder;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
@@ -74,6 +88,7 @@ public final class CommunicatorExecutor implements Executor {
 
     private static final String HOST_BOOT_RESTORE_SCRIPT;
     private static final String HOST_STATE_CHECK_SCRIPT;
+    static final String HOST_TELEMETRY_SCRIPT;
 
     private static final String TASK_CREATE_SCRIPT;
     private static final String TASK_DESTROY_SCRIPT;
@@ -86,6 +101,8 @@ public final class CommunicatorExecutor implements Executor {
     private static final String TASK_START_SCRIPT;
     private static final String TASK_STOP_SCRIPT;
     private static final String TASK_CHECK_SCRIPT;
+    private static final String TASK_TAIL_FILE_SCRIPT;
+    private static final String TASK_CHECK_MULTI_SCRIPT;
 
     private static final String WORK_ADD_TRACK_SCRIPT;
     private static final String WORK_CHECK_TRACK_SCRIPT;
@@ -98,9 +115,11 @@ public final class CommunicatorExecutor implements Executor {
     private static final String WORK_DELETE_CGROUP_SCRIPT;
     private static final String WORK_CREATE_IMAGE_SCRIPT;
     private static final String WORK_BACKUP_IMAGE_SCRIPT;
+    private static final String WORK_COMPACT_IMAGE_SCRIPT;
     private static final String WORK_MOUNT_IMAGE_SCRIPT;
     private static final String WORK_RECOVER_IMAGE_SCRIPT;
     private static final String WORK_RESIZE_IMAGE_SCRIPT;
+    private static final String WORK_GROW_IMAGE_SCRIPT;
     private static final String WORK_REPAIR_IMAGE_SCRIPT;
     private static final String WORK_SHRINK_IMAGE_SCRIPT;
     private static final String WORK_UNMOUNT_IMAGE_SCRIPT;
@@ -108,49 +127,66 @@ public final class CommunicatorExecutor implements Executor {
     private static final String WORK_START_PROCESS_SCRIPT;
     private static final String WORK_CHECK_PROCESS_SCRIPT;
     private static final String WORK_STOP_PROCESS_SCRIPT;
+
+    // All of the above get installed on the host the first time they're needed. Calls then reference the host's copies rather than
+    // shipping every script over each time (see ScriptCache).
+    static final ScriptCache SCRIPT_CACHE;
     static {
+        Map<String, String> scripts = new HashMap<>();
         try {
-            BASE_LOCK_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("base_lock.sh"), UTF_8);
+            BASE_LOCK_SCRIPT = load(scripts, "base_lock.sh");
 
-            HOST_BOOT_RESTORE_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("host_boot_restore.sh"), UTF_8);
-            HOST_STATE_CHECK_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("host_state_info.sh"), UTF_8);
+            HOST_BOOT_RESTORE_SCRIPT = load(scripts, "host_boot_restore.sh");
+            HOST_STATE_CHECK_SCRIPT = load(scripts, "host_state_info.sh");
+            HOST_TELEMETRY_SCRIPT = load(scripts, "host_telemetry.sh");
             
-            TASK_CREATE_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("task_create.sh"), UTF_8);
-            TASK_DESTROY_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("task_destroy.sh"), UTF_8);
-            TASK_RES_ALLOC_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("task_res_alloc.sh"), UTF_8);
-            TASK_RES_DEALLOC_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("task_res_dealloc.sh"), UTF_8);
-            TASK_RES_REALLOC_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("task_res_realloc.sh"), UTF_8);
-            TASK_RES_REPAIR_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("task_res_repair.sh"), UTF_8);
-            TASK_DISK_BACKUP_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("task_disk_backup.sh"), UTF_8);
-            TASK_DISK_RESTORE_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("task_disk_restore.sh"), UTF_8);
-            TASK_START_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("task_start.sh"), UTF_8);
-            TASK_STOP_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("task_stop.sh"), UTF_8);
-            TASK_CHECK_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("task_check.sh"), UTF_8);
-
-            WORK_ADD_TRACK_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("work_track_add.sh"), UTF_8);
-            WORK_CHECK_TRACK_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("work_track_check.sh"), UTF_8);
-            WORK_REMOVE_TRACK_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("work_track_remove.sh"), UTF_8);
-            WORK_SET_STATE_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("work_state_set.sh"), UTF_8);
-            WORK_CHECK_STATE_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("work_state_check.sh"), UTF_8);
-            WORK_CREATE_WORKDIR_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("work_workdir_create.sh"), UTF_8);
-            WORK_DELETE_WORKDIR_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("work_workdir_delete.sh"), UTF_8);
-            WORK_CREATE_CGROUP_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("work_cgroup_create.sh"), UTF_8);
-            WORK_DELETE_CGROUP_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("work_cgroup_delete.sh"), UTF_8);
-            WORK_CREATE_IMAGE_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("work_image_create.sh"), UTF_8);
-            WORK_BACKUP_IMAGE_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("work_image_backup.sh"), UTF_8);
-            WORK_MOUNT_IMAGE_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("work_image_mount.sh"), UTF_8);
-            WORK_RECOVER_IMAGE_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("work_image_recover.sh"), UTF_8);
-            WORK_RESIZE_IMAGE_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("work_image_resize.sh"), UTF_8);
-            WORK_REPAIR_IMAGE_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("work_image_repair.sh"), UTF_8);
-            WORK_SHRINK_IMAGE_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("work_image_shrink.sh"), UTF_8);
-            WORK_UNMOUNT_IMAGE_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("work_image_unmount.sh"), UTF_8);
-            WORK_DELETE_IMAGE_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("work_image_delete.sh"), UTF_8);
-            WORK_START_PROCESS_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("work_process_start.sh"), UTF_8);
-            WORK_CHECK_PROCESS_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("work_process_info.sh"), UTF_8);
-            WORK_STOP_PROCESS_SCRIPT = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream("work_process_stop.sh"), UTF_8);
+            TASK_CREATE_SCRIPT = load(scripts, "task_create.sh");
+            TASK_DESTROY_SCRIPT = load(scripts, "task_destroy.sh");
+            TASK_RES_ALLOC_SCRIPT = load(scripts, "task_res_alloc.sh");
+            TASK_RES_DEALLOC_SCRIPT = load(scripts, "task_res_dealloc.sh");
+            TASK_RES_REALLOC_SCRIPT = load(scripts, "task_res_realloc.sh");
+            TASK_RES_REPAIR_SCRIPT = load(scripts, "task_res_repair.sh");
+            TASK_DISK_BACKUP_SCRIPT = load(scripts, "task_disk_backup.sh");
+            TASK_DISK_RESTORE_SCRIPT = load(scripts, "task_disk_restore.sh");
+            TASK_START_SCRIPT = load(scripts, "task_start.sh");
+            TASK_STOP_SCRIPT = load(scripts, "task_stop.sh");
+            TASK_CHECK_SCRIPT = load(scripts, "task_check.sh");
+            TASK_TAIL_FILE_SCRIPT = load(scripts, "task_file_tail.sh");
+            TASK_CHECK_MULTI_SCRIPT = load(scripts, "task_check_multi.sh");
+
+            WORK_ADD_TRACK_SCRIPT = load(scripts, "work_track_add.sh");
+            WORK_CHECK_TRACK_SCRIPT = load(scripts, "work_track_check.sh");
+            WORK_REMOVE_TRACK_SCRIPT = load(scripts, "work_track_remove.sh");
+            WORK_SET_STATE_SCRIPT = load(scripts, "work_state_set.sh");
+            WORK_CHECK_STATE_SCRIPT = load(scripts, "work_state_check.sh");
+            WORK_CREATE_WORKDIR_SCRIPT = load(scripts, "work_workdir_create.sh");
+            WORK_DELETE_WORKDIR_SCRIPT = load(scripts, "work_workdir_delete.sh");
+            WORK_CREATE_CGROUP_SCRIPT = load(scripts, "work_cgroup_create.sh");
+            WORK_DELETE_CGROUP_SCRIPT = load(scripts, "work_cgroup_delete.sh");
+            WORK_CREATE_IMAGE_SCRIPT = load(scripts, "work_image_create.sh");
+            WORK_BACKUP_IMAGE_SCRIPT = load(scripts, "work_image_backup.sh");
+            WORK_COMPACT_IMAGE_SCRIPT = load(scripts, "work_image_compact.sh");
+            WORK_MOUNT_IMAGE_SCRIPT = load(scripts, "work_image_mount.sh");
+            WORK_RECOVER_IMAGE_SCRIPT = load(scripts, "work_image_recover.sh");
+            WORK_RESIZE_IMAGE_SCRIPT = load(scripts, "work_image_resize.sh");
+            WORK_GROW_IMAGE_SCRIPT = load(scripts, "work_image_grow.sh");
+            WORK_REPAIR_IMAGE_SCRIPT = load(scripts, "work_image_repair.sh");
+            WORK_SHRINK_IMAGE_SCRIPT = load(scripts, "work_image_shrink.sh");
+            WORK_UNMOUNT_IMAGE_SCRIPT = load(scripts, "work_image_unmount.sh");
+            WORK_DELETE_IMAGE_SCRIPT = load(scripts, "work_image_delete.sh");
+            WORK_START_PROCESS_SCRIPT = load(scripts, "work_process_start.sh");
+            WORK_CHECK_PROCESS_SCRIPT = load(scripts, "work_process_info.sh");
+            WORK_STOP_PROCESS_SCRIPT = load(scripts, "work_process_stop.sh");
         } catch (IOException ioe) {
             throw new IllegalStateException(ioe);
         }
+        SCRIPT_CACHE = new ScriptCache(scripts);
+    }
+
+    private static String load(Map<String, String> scripts, String name) throws IOException {
+        String script = IOUtils.toString(CommunicatorExecutor.class.getResourceAsStream(name), UTF_8);
+        scripts.put(name, script);
+        return script;
     }
 
     private static final int EXIT_CODE_OK = 0;
@@ -160,15 +196,66 @@ public final class CommunicatorExecutor implements Executor {
     private static final int EXIT_CODE_RECOVERY_ERROR = 4;
     
     private static final long BUFFER_LIMIT = 1024L * 1024L;
+    private static final long TAIL_LIMIT = 16L * 1024L * 1024L;
+
+    // Locks that BASE_LOCK_SCRIPT can take before running a script. Read-only operations take shared locks so they don't queue up behind
+    // mutations, and operations on a single task only lock out other operations on that same task. Anything that touches state shared
+    // between tasks (e.g. the tasks file) needs EXCLUSIVE.
+    private enum LockMode {
+        EXCLUSIVE("exclusive", false),
+        SHARED("shared", false),
+        TASK_EXCLUSIVE("task_exclusive", true),
+        TASK_SHARED("task_shared", true);
+        
+        private final String argument;
+        private final boolean taskLock;
+
+        LockMode(String argument, boolean taskLock) {
+            this.argument = argument;
+            this.taskLock = taskLock;
+        }
+
+        public String getArgument() {
+            return argument;
+        }
+
+        public boolean isTaskLock() {
+            return taskLock;
+        }
+    }
+
+    /**
+     * Default sampling window (see {@link #withSamplingWindow(long) }).
+     */
+    public static final long DEFAULT_SAMPLING_WINDOW = 60000L;
+
+    // CPU usage is the difference between 2 /proc/stat samples. If there's no usable sample from a previous host check, the host check
+    // script takes 2 samples this far apart. A previous sample is only usable if it was taken at least MIN_SAMPLE_DELTA ago -- less than
+    // that and the number of jiffies elapsed is too small to give a meaningful usage.
+    private static final long FALLBACK_SAMPLE_DELAY = 1000L;
+    private static final long MIN_SAMPLE_DELTA = 100L;
 
     private final Communicator communicator;
     private final long bootTime;
+    private final long samplingWindow;
+
+    private final Object procStatLock = new Object();
+    private ProcStatSample lastProcStat; // guarded by procStatLock
+
+    // Task mount directories, looked up through checkTask() the first time a task file gets tailed. An executor is bound to a single boot
+    // of the host, so entries never outlive the boot they were looked up in. Entries are dropped when the task is created/destroyed through
+    // this executor or when a tail fails (e.g. task was destroyed through some other executor).
+    private final ConcurrentHashMap<String, String> mountDirs = new ConcurrentHashMap<>();
 
     public static CommunicatorExecutor create(Communicator communicator) throws IOException {
         // HOST_BOOT_RESTORE_SCRIPT will reallocate resources (e.g. cgroups) for any jobs that were running during previous boot instances.
         // It's up to the caller to actually re-start the tasks.
-        InMemoryExecuteResult res = communicator.execute(60000L, -1L, BUFFER_LIMIT, BUFFER_LIMIT,
+        StringBuilder stderr = new StringBuilder();
+        ExecuteResult res = executeCached(communicator, 60000L, -1L,
+                chunk -> { }, BUFFER_LIMIT,
+                chunk -> stderr.append(chunk), BUFFER_LIMIT,
                 BASE_LOCK_SCRIPT,
+                LockMode.EXCLUSIVE.getArgument(),
                 HOST_BOOT_RESTORE_SCRIPT,
                 TASK_RES_REPAIR_SCRIPT,
                 TASK_STOP_SCRIPT,
@@ -186,102 +273,165 @@ public final class CommunicatorExecutor implements Executor {
             case EXIT_CODE_OK:
                 break;
             case EXIT_CODE_CRITICAL:
-                throw new IOException("Critical error\n" + res.getStderr());
+                throw new IOException("Critical error\n" + stderr);
             case EXIT_CODE_RECOVERY_ERROR:
                 logger.warn("Problems recovering one or more tasks: {}", communicator);
                 break;
             default:
-                throw new IOException("Unrecognized error\n" + res.getStderr());
+                throw new IOException("Unrecognized error\n" + stderr);
         }
-        return new CommunicatorExecutor(communicator, res.getBootTime());
+        return new CommunicatorExecutor(communicator, res.getBootTime(), DEFAULT_SAMPLING_WINDOW);
     }
 
     public static CommunicatorExecutor create(Communicator communicator, long bootTime) {
-        return new CommunicatorExecutor(communicator, bootTime);
+        return new CommunicatorExecutor(communicator, bootTime, DEFAULT_SAMPLING_WINDOW);
     }
 
-    private CommunicatorExecutor(Communicator communicator, long bootTime) {
+    private CommunicatorExecutor(Communicator communicator, long bootTime, long samplingWindow) {
         Validate.notNull(communicator);
         Validate.isTrue(bootTime >= 0L); // No -1L boottime (-1L means dont care) -- executor ops must be for the same boot of the host
+        Validate.isTrue(samplingWindow >= 0L);
 
         this.communicator = communicator;
         this.bootTime = bootTime;
+        this.samplingWindow = samplingWindow;
+    }
+
+    /**
+     * Get a copy of this executor with a different sampling window. {@link #checkHost() } calculates CPU usage by comparing a fresh
+     * /proc/stat sample against the one taken by the previous call, so long as that previous sample is no older than the sampling window.
+     * Otherwise (e.g. first call, or calls spaced further apart than the sampling window), 2 samples are taken 1 second apart, meaning the
+     * call takes at least a second longer. CPU usage is averaged over the time between the samples being compared.
+     * @param samplingWindow maximum age in milliseconds of a previous sample for it to be used ({@code 0L} to always take 2 samples)
+     * @return copy of this executor with the sampling window set (doesn't carry over any previous sample)
+     * @throws IllegalArgumentException if {@code samplingWindow < 0L}
+     */
+    public CommunicatorExecutor withSamplingWindow(long samplingWindow) {
+        return new CommunicatorExecutor(communicator, bootTime, samplingWindow);
     }
 
     @Override
     public HostCheckResult checkHost() throws IOException {
-        String stdout = simpleRunWithOutput(false, false, HOST_STATE_CHECK_SCRIPT);
-
-        try {
-            Map<String, String> output = ScriptParser.parse(stdout);
+        // Compare against the /proc/stat sample from the previous call if it's usable, otherwise have the script take 2 samples.
+        ProcStatSample prevSample;
+        synchronized (procStatLock) {
+            prevSample = lastProcStat;
+        }
+        if (prevSample != null) {
+            long age = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - prevSample.getTime());
+            if (age < MIN_SAMPLE_DELTA || age > samplingWindow) { // no boot time check -- executor only ever talks to a single boot
+                prevSample = null;
+            }
+        }
 
-            String uname = output.get("!UNAME");
+        FrameReader stdoutReader = new FrameReader();
+        if (prevSample != null) {
+            simpleRunWithOutput(false, false, stdoutReader, HOST_STATE_CHECK_SCRIPT, "single", "0");
+        } else {
+            simpleRunWithOutput(false, false, stdoutReader, HOST_STATE_CHECK_SCRIPT, "double", toSecondsArgument(FALLBACK_SAMPLE_DELAY));
+        }
+        long sampleTime = System.nanoTime();
 
-            boolean swapEnabled = KernelConfigParser.parse(output.get("!KERNEL_CONFIGS")).stream()
-                    .anyMatch(x -> "CONFIG_MEMCG_SWAP_ENABLED".equals(x.getKey()) && "y".equals(x.getValue()));
+        try {
+            Map<String, String> output = stdoutReader.finish();
+            if (prevSample != null) {
+                output.put("!PROCSTAT1", prevSample.getProcStat());
+            }
+            HostCheckResult ret = parseHostCheck(output);
 
-            List<Mount> mounts = DfParser.parse(output.get("!DF")).stream()
-                    .filter(x -> x.getAvailable() != null)
-                    .filter(x -> x.getUsed() != null)
-                    .map(x -> new Mount(x.getTarget(), x.getUsed(), x.getAvailable()))
-                    .collect(toList());
-            
-            Set<Long> cpus = CGroupCpuSetParser.parse(output.get("!CGROUP_CPUSET"));
-            
-            List<ProcStatCpuEntry> procStat1 = ProcStatParser.parse(output.get("!PROCSTAT1"));
-            List<ProcStatCpuEntry> procStat2 = ProcStatParser.parse(output.get("!PROCSTAT2"));
-            List<Processor> processors = ProcCpuInfoParser.parse(output.get("!CPUINFO")).stream()
-                    .filter(x -> cpus.contains(x.getProcessor()))
-                    .map(x -> {
-                        // procstat1 and procstat2 are taken 1 second apart
-                        ProcStatCpuEntry stat1 = procStat1.stream().filter(a -> a.getProcessor() == x.getProcessor()).findAny().get();
-                        ProcStatCpuEntry stat2 = procStat2.stream().filter(a -> a.getProcessor() == x.getProcessor()).findAny().get();
-
-                        long stat1Used = stat1.getUserTime() + stat1.getNiceTime() + stat1.getSystemTime();
-                        long stat1Idle = stat1.getIdleTime();
-                        long stat2Used = stat2.getUserTime() + stat2.getNiceTime() + stat2.getSystemTime();
-                        long stat2Idle = stat2.getIdleTime();
-
-                        long statUsedDiff = stat2Used - stat1Used;
-                        long statIdleDiff = stat2Idle - stat1Idle;
-
-                        double usage = ((double) statUsedDiff) / ((double) (statUsedDiff + statIdleDiff));
-
-                        return new Processor(
-                                x.getPhysicalId(),
-                                x.getCoreId(),
-                                x.getProcessor(),
-                                x.getModel(),
-                                x.getFlags(),
-                                usage
-                        );
-                    })
-                    .collect(toList());
-            
-//            CGroupMemoryStat memStat = CGroupMemoryStatParser.parse(output.get("!CGROUP_MEM_STAT"));
-            ProcMemInfo memInfo = ProcMemInfoParser.parse(output.get("!MEMINFO"));
-            GlobalMemory memory = new GlobalMemory( // https://unix.stackexchange.com/q/263881
-                    memInfo.getMemTotal() * 1024L,
-                    memInfo.getMemAvailable() * 1024L,
-                    memInfo.getSwapTotal() * 1024L,
-                    memInfo.getSwapFree() * 1024L);
-
-            List<String> tasks = TrackParser.parse(output.get("!TASKS")).stream()
-                    .map(x -> {
-                        try {
-                            return URLDecoder.decode(x.getId(), "UTF-8");
-                        } catch (IOException ioe) {
-                            throw new RuntimeException(ioe);
-                        }
-                    })
-                    .collect(toList());
-
-            return new HostCheckResult(uname, swapEnabled, mounts, processors, memory, tasks);
+            synchronized (procStatLock) {
+                lastProcStat = new ProcStatSample(sampleTime, output.get("!PROCSTAT2"));
+            }
+            return ret;
         } catch (RuntimeException re) {
             throw new IOException("Parse error", re);
         }
     }
 
+    /**
+     * Open a stream that keeps a {@link HostCheckResult} for this host continuously updated. Rather than running a full host check on
+     * each call (which takes at least a second), a single long-lived script on the host samples its state every {@code interval}
+     * milliseconds and streams back what changed. Reads from the returned stream are in-memory.
+     * <p>
+     * The script keeps a session open on the communicator for as long as the stream is open (restarted every hour). For pooled
+     * communicators such as {@link com.offbynull.rfm.host.communicators.sshj.SshjCommunicator}, that's one connection leased out of the
+     * pool the whole time -- size the pool with that in mind, otherwise other operations on the host will block waiting for a connection.
+     * <p>
+     * Remember to close the returned stream when done with it. Closing this executor does not close the stream.
+     * @param interval milliseconds between samples
+     * @return new telemetry stream
+     * @throws IllegalArgumentException if {@code interval <= 0L}
+     */
+    public HostTelemetryStream openTelemetryStream(long interval) {
+        Validate.isTrue(interval > 0L);
+        return HostTelemetryStream.open(communicator, bootTime, interval);
+    }
+
+    // Output must have the entries that host_state_info.sh outputs (HostTelemetryStream recreates them from its samples). Throws
+    // RuntimeException on bad output.
+    static HostCheckResult parseHostCheck(Map<String, String> output) {
+        String uname = output.get("!UNAME");
+
+        boolean swapEnabled = KernelConfigParser.parse(output.get("!KERNEL_CONFIGS")).stream()
+                .anyMatch(x -> "CONFIG_MEMCG_SWAP_ENABLED".equals(x.getKey()) && "y".equals(x.getValue()));
+
+        List<Mount> mounts = DfParser.parse(output.get("!DF")).stream()
+                .filter(x -> x.getAvailable() != null)
+                .filter(x -> x.getUsed() != null)
+                .map(x -> new Mount(x.getTarget(), x.getUsed(), x.getAvailable()))
+                .collect(toList());
+        
+        Set<Long> cpus = CGroupCpuSetParser.parse(output.get("!CGROUP_CPUSET"));
+        
+        ProcStatCpuTimes procStat1 = ProcStatParser.parseCpuTimes(output.get("!PROCSTAT1"));
+        ProcStatCpuTimes procStat2 = ProcStatParser.parseCpuTimes(output.get("!PROCSTAT2"));
+        List<Processor> processors = ProcCpuInfoParser.parse(output.get("!CPUINFO")).stream()
+                .filter(x -> cpus.contains(x.getProcessor()))
+                .map(x -> {
+                    // usage is averaged over the time between procstat1 and procstat2 (either the previous host check's sample or 1 second
+                    // apart, see checkHost())
+                    long stat1Used = procStat1.getUsedTime(x.getProcessor());
+                    long stat1Idle = procStat1.getIdleTime(x.getProcessor());
+                    long stat2Used = procStat2.getUsedTime(x.getProcessor());
+                    long stat2Idle = procStat2.getIdleTime(x.getProcessor());
+
+                    long statUsedDiff = stat2Used - stat1Used;
+                    long statIdleDiff = stat2Idle - stat1Idle;
+
+                    double usage = ((double) statUsedDiff) / ((double) (statUsedDiff + statIdleDiff));
+
+                    return new Processor(
+                            x.getPhysicalId(),
+                            x.getCoreId(),
+                            x.getProcessor(),
+                            x.getModel(),
+                            x.getFlags(),
+                            usage
+                    );
+                })
+                .collect(toList());
+        
+//            CGroupMemoryStat memStat = CGroupMemoryStatParser.parse(output.get("!CGROUP_MEM_STAT"));
+        ProcMemInfo memInfo = ProcMemInfoParser.parse(output.get("!MEMINFO"));
+        GlobalMemory memory = new GlobalMemory( // https://unix.stackexchange.com/q/263881
+                memInfo.getMemTotal() * 1024L,
+                memInfo.getMemAvailable() * 1024L,
+                memInfo.getSwapTotal() * 1024L,
+                memInfo.getSwapFree() * 1024L);
+
+        List<String> tasks = TrackParser.parse(output.get("!TASKS")).stream()
+                .map(x -> {
+                    try {
+                        return URLDecoder.decode(x.getId(), "UTF-8");
+                    } catch (IOException ioe) {
+                        throw new RuntimeException(ioe);
+                    }
+                })
+                .collect(toList());
+
+        return new HostCheckResult(uname, swapEnabled, mounts, processors, memory, tasks);
+    }
+
     @Override
     public void createTask(String id, TaskConfiguration config) throws IOException {
         Validate.notNull(id);
@@ -289,6 +439,7 @@ public final class CommunicatorExecutor implements Executor {
         Validate.notBlank(id);
         
         String safeId = URLEncoder.encode(id, "UTF-8"); // encode because tasks file cannot have spaces
+        mountDirs.remove(id);
 
         String[] lockArgs = ArrayUtils.insert(0, config.getCommand().toArray(new String[0]),
                 TASK_CREATE_SCRIPT,
@@ -300,7 +451,7 @@ public final class CommunicatorExecutor implements Executor {
                 safeId,
                 config.getWorkPath(),
                 config.getUser());
-        simpleRun(true, false, BASE_LOCK_SCRIPT, lockArgs);
+        lockedRun(true, false, LockMode.EXCLUSIVE, null, lockArgs);
     }
 
     @Override
@@ -309,8 +460,9 @@ public final class CommunicatorExecutor implements Executor {
         Validate.notBlank(id);
         
         String safeId = URLEncoder.encode(id, "UTF-8"); // encode because tasks file cannot have spaces
+        mountDirs.remove(id);
 
-        simpleRun(true, true, BASE_LOCK_SCRIPT,
+        lockedRun(true, true, LockMode.EXCLUSIVE, null,
                 TASK_DESTROY_SCRIPT,
                 WORK_REMOVE_TRACK_SCRIPT,
                 WORK_CHECK_STATE_SCRIPT,
@@ -330,7 +482,7 @@ public final class CommunicatorExecutor implements Executor {
 
         String safeId = URLEncoder.encode(id, "UTF-8"); // encode because tasks file cannot have spaces
         
-        simpleRun(true, true, BASE_LOCK_SCRIPT,
+        lockedRun(true, true, LockMode.TASK_EXCLUSIVE, safeId,
                 TASK_RES_ALLOC_SCRIPT,
                 WORK_CHECK_TRACK_SCRIPT,
                 WORK_SET_STATE_SCRIPT,
@@ -356,7 +508,7 @@ public final class CommunicatorExecutor implements Executor {
 
         String safeId = URLEncoder.encode(id, "UTF-8"); // encode because tasks file cannot have spaces
         
-        simpleRun(true, true, BASE_LOCK_SCRIPT,
+        lockedRun(true, true, LockMode.TASK_EXCLUSIVE, safeId,
                 TASK_RES_DEALLOC_SCRIPT,
                 WORK_CHECK_TRACK_SCRIPT,
                 WORK_SET_STATE_SCRIPT,
@@ -375,13 +527,14 @@ public final class CommunicatorExecutor implements Executor {
 
         String safeId = URLEncoder.encode(id, "UTF-8"); // encode because tasks file cannot have spaces
         
-        simpleRun(true, true, BASE_LOCK_SCRIPT,
+        lockedRun(true, true, LockMode.TASK_EXCLUSIVE, safeId,
                 TASK_RES_REALLOC_SCRIPT,
                 WORK_CHECK_TRACK_SCRIPT,
                 WORK_CHECK_STATE_SCRIPT,
                 WORK_CREATE_CGROUP_SCRIPT,
                 WORK_MOUNT_IMAGE_SCRIPT,
                 WORK_RESIZE_IMAGE_SCRIPT,
+                WORK_GROW_IMAGE_SCRIPT,
                 WORK_UNMOUNT_IMAGE_SCRIPT,
                 WORK_DELETE_CGROUP_SCRIPT,
                 safeId,
@@ -393,21 +546,45 @@ public final class CommunicatorExecutor implements Executor {
     }
 
     @Override
-    public void backupTaskDisk(String id, String backupPath) throws IOException {
+    public void backupTaskDisk(String id, String backupPath, BackupOptions options) throws IOException {
         Validate.notNull(id);
         Validate.notNull(backupPath);
+        Validate.notNull(options);
         Validate.notBlank(id);
         InternalUtils.validatePath(backupPath);
         
         String safeId = URLEncoder.encode(id, "UTF-8"); // encode because tasks file cannot have spaces
         
-        simpleRun(true, true, BASE_LOCK_SCRIPT,
+        lockedRun(true, true, LockMode.TASK_EXCLUSIVE, safeId,
                 TASK_DISK_BACKUP_SCRIPT,
                 WORK_CHECK_TRACK_SCRIPT,
                 WORK_CHECK_STATE_SCRIPT,
                 WORK_BACKUP_IMAGE_SCRIPT,
                 safeId,
-                backupPath);
+                backupPath,
+                options.getCompression().name().toLowerCase(Locale.ENGLISH),
+                Integer.toString(options.getCompressionLevel()),
+                Boolean.toString(options.isSparse()),
+                Boolean.toString(options.isReflink()),
+                Boolean.toString(options.isIncremental()));
+    }
+    
+    @Override
+    public void compactTaskDiskBackup(String id, String backupPath) throws IOException {
+        Validate.notNull(id);
+        Validate.notNull(backupPath);
+        Validate.notBlank(id);
+        InternalUtils.validatePath(backupPath);
+        
+        String safeId = URLEncoder.encode(id, "UTF-8"); // encode because tasks file cannot have spaces
+        
+        // task doesn't need to exist, the lock is only there so a backup/restore of the same task can't run while compacting
+        lockedRun(false, false, LockMode.TASK_EXCLUSIVE, safeId,
+                WORK_COMPACT_IMAGE_SCRIPT,
+                safeId,
+                backupPath,
+                WORK_RECOVER_IMAGE_SCRIPT,
+                WORK_BACKUP_IMAGE_SCRIPT);
     }
     
     @Override
@@ -419,7 +596,7 @@ public final class CommunicatorExecutor implements Executor {
         
         String safeId = URLEncoder.encode(id, "UTF-8"); // encode because tasks file cannot have spaces
         
-        simpleRun(true, true, BASE_LOCK_SCRIPT,
+        lockedRun(true, true, LockMode.TASK_EXCLUSIVE, safeId,
                 TASK_DISK_RESTORE_SCRIPT,
                 WORK_CHECK_TRACK_SCRIPT,
                 WORK_CHECK_STATE_SCRIPT,
@@ -459,6 +636,55 @@ public final class CommunicatorExecutor implements Executor {
         }
     }
 
+    @Override
+    public TaskFileTail tailTaskFile(String id, String path, long fromOffset, long maxBytes, String filter) throws IOException {
+        Validate.notNull(id);
+        Validate.notNull(path);
+        Validate.notBlank(id);
+        InternalUtils.validatePath(path);
+        Validate.isTrue(fromOffset >= 0L);
+        Validate.isTrue(maxBytes > 0L);
+        Validate.isTrue(maxBytes <= TAIL_LIMIT);
+        Validate.isTrue(filter == null || !filter.contains("\u0000"));
+
+        String mountDir = mountDirs.get(id);
+        if (mountDir == null) {
+            Mount disk = checkTask(id).getDisk();
+            if (disk == null) { // no disk mounted (task not allocated)
+                throw new TaskStateException();
+            }
+            mountDir = removeEnd(disk.getTarget(), "/"); // remove / at the end if it's there -- shouldn't be there but just incase
+            mountDirs.put(id, mountDir);
+        }
+
+        long stdoutLimit = (maxBytes + 2L) / 3L * 4L + 1024L; // data is base64 encoded, other entries are small
+
+        FrameReader stdoutReader = new FrameReader();
+        try {
+            simpleRunWithOutput(false, true, stdoutReader, TASK_TAIL_FILE_SCRIPT, 60000L, stdoutLimit,
+                    mountDir, // script appends path to dir -- mountDir not ends with /, path starts with / and not contains /../
+                    path,
+                    Long.toString(fromOffset),
+                    Long.toString(maxBytes),
+                    filter == null ? "none" : "grep",
+                    filter == null ? "" : filter);
+        } catch (TaskStateException tse) {
+            mountDirs.remove(id); // disk no longer mounted at cached mount dir, look it up again next time
+            throw tse;
+        }
+
+        try {
+            Map<String, String> output = stdoutReader.finish();
+            long fileSize = Long.parseLong(output.get("!SIZE"));
+            long nextOffset = Long.parseLong(output.get("!NEXT"));
+            boolean truncated = !"0".equals(output.get("!TRUNCATED"));
+            byte[] data = Base64.getDecoder().decode(output.get("!DATA"));
+            return new TaskFileTail(data, nextOffset, fileSize, truncated);
+        } catch (RuntimeException re) {
+            throw new IOException("Parse error", re);
+        }
+    }
+
     @Override
     public void startTask(String id) throws IOException {
         Validate.notNull(id);
@@ -466,7 +692,7 @@ public final class CommunicatorExecutor implements Executor {
 
         String safeId = URLEncoder.encode(id, "UTF-8"); // encode because tasks file cannot have spaces
         
-        simpleRun(true, true, BASE_LOCK_SCRIPT,
+        lockedRun(true, true, LockMode.TASK_EXCLUSIVE, safeId,
                 TASK_START_SCRIPT,
                 WORK_CHECK_TRACK_SCRIPT,
                 WORK_SET_STATE_SCRIPT,
@@ -483,7 +709,7 @@ public final class CommunicatorExecutor implements Executor {
 
         String safeId = URLEncoder.encode(id, "UTF-8"); // encode because tasks file cannot have spaces
         
-        simpleRun(true, true, BASE_LOCK_SCRIPT,
+        lockedRun(true, true, LockMode.TASK_EXCLUSIVE, safeId,
                 TASK_STOP_SCRIPT,
                 WORK_CHECK_TRACK_SCRIPT,
                 WORK_SET_STATE_SCRIPT,
@@ -500,99 +726,155 @@ public final class CommunicatorExecutor implements Executor {
         String safeId = URLEncoder.encode(id, "UTF-8"); // encode because tasks file cannot have spaces
         
         try {
-            String checkOutput = simpleRunWithOutput(true, false, BASE_LOCK_SCRIPT,
+            FrameReader stdoutReader = new FrameReader();
+            lockedRunWithOutput(true, false, stdoutReader, LockMode.TASK_SHARED, safeId,
                     TASK_CHECK_SCRIPT,
                     WORK_CHECK_TRACK_SCRIPT,
                     WORK_CHECK_PROCESS_SCRIPT,
                     safeId);
 
-            Map<String, String> output = ScriptParser.parse(checkOutput);
-            
-            String sidStr = output.get("!RUN_SID");
-            Integer sid = null;
-            if (sidStr != null) {
-                sid = Integer.parseInt(sidStr);
-            }
+            Map<String, String> output = stdoutReader.finish();
+            return parseTaskCheck(output);
+        } catch (RuntimeException re) {
+            throw new IOException("Parse error", re);
+        }
+    }
 
-            String pidsStr = output.get("!RUN_PIDS");
-            List<Integer> pids = null;
-            if (pidsStr != null && !pidsStr.isEmpty()) {
-                pids = Arrays.stream(pidsStr.split("\\n"))
-                    .map(x -> Integer.valueOf(x.trim()))
-                    .collect(toList());
-            }
+    @Override
+    public Map<String, TaskCheckResult> checkTasks(Collection<String> ids) throws IOException {
+        Validate.notNull(ids);
+        Validate.noNullElements(ids);
+        ids.forEach(id -> Validate.notBlank(id));
+
+        List<String> uniqueIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        if (uniqueIds.isEmpty()) {
+            return new HashMap<>();
+        }
 
-            String exitCodeStr = output.get("!EXITCODE");
-            Integer exitCode = null;
-            if (exitCodeStr != null) {
-                exitCode = Integer.parseInt(exitCodeStr);
-            }
-            
-            String dfStr = output.get("!DF");
-            Mount mount = null;
-            if (dfStr != null) {
-                List<DfEntry> dfEntries = DfParser.parse(dfStr);
-                mount = new Mount(
-                        dfEntries.get(0).getTarget(),
-                        dfEntries.get(0).getUsed(),
-                        dfEntries.get(0).getAvailable());
-            }
+        String[] safeIds = new String[uniqueIds.size()];
+        for (int i = 0; i < safeIds.length; i++) {
+            safeIds[i] = URLEncoder.encode(uniqueIds.get(i), "UTF-8"); // encode because tasks file cannot have spaces
+        }
 
-            CGroupMemoryStat memStat = CGroupMemoryStatParser.parse(output.get("!CGROUP_MEM_STAT"));
-            TaskMemory memory = new TaskMemory(
-                    memStat.getRss(),
-                    memStat.getCache(),
-                    memStat.getSwap() == null ? 0L : memStat.getSwap());
-            
-            String workPath = output.get("!WORKDIR");
-            String user = output.get("!WORKUSER");
-            int cmdCounter = 0;
-            String cmdArg;
-            List<String> command = new ArrayList<>();
-            while ((cmdArg = output.get("!WORKCMD" + cmdCounter)) != null) {
-                command.add(cmdArg);
-                cmdCounter++;
-            }
-            TaskConfiguration config = new TaskConfiguration(workPath, user, command.toArray(new String[0]));
+        String[] lockArgs = ArrayUtils.insert(0, safeIds,
+                TASK_CHECK_MULTI_SCRIPT,
+                TASK_CHECK_SCRIPT,
+                WORK_CHECK_TRACK_SCRIPT,
+                WORK_CHECK_PROCESS_SCRIPT);
+        long timeout = 60000L + 1000L * safeIds.length; // 1 lock acquisition for all tasks, but each task still takes time to check
 
-            String stateStr = output.get("!STATE");
-            TaskState state = TaskState.valueOf(stateStr);
-            
-            TaskResourceAllocation res = null;
-            if (state != TaskState.CREATED) {
-                String cpuAffinityStr = output.get("!CPUS");
-                Set<Long> cpuAffinity = Arrays.stream(cpuAffinityStr.split(",")).map(x -> Long.parseLong(x)).collect(toSet());
-                long schedulerQuota = Long.parseLong(output.get("!CPU_QUOTA"));
-                long schedulerPeriod = Long.parseLong(output.get("!CPU_PERIOD"));
-                long memoryLimit = Long.parseLong(output.get("!MEMORY_SIZE"));
-                long diskLimit = Long.parseLong(output.get("!DISK_SIZE"));
-                Validate.isTrue(schedulerPeriod == CFS_PERIOD);
-                res = new TaskResourceAllocation(cpuAffinity, schedulerQuota, memoryLimit, diskLimit);
+        try {
+            StreamingScriptParser stdoutParser = new StreamingScriptParser();
+            simpleRunWithOutput(false, false, stdoutParser, BASE_LOCK_SCRIPT, timeout, BUFFER_LIMIT * safeIds.length,
+                    withLock(LockMode.SHARED, null, lockArgs)); // task locks are taken individually by TASK_CHECK_MULTI_SCRIPT
+
+            Map<String, String> output = stdoutParser.finish();
+            Map<String, TaskCheckResult> ret = new HashMap<>();
+            for (int i = 0; i < safeIds.length; i++) {
+                int exitCode = Integer.parseInt(output.get("!RESULT" + i));
+                switch (exitCode) {
+                    case EXIT_CODE_OK:
+                        ret.put(uniqueIds.get(i), parseTaskCheck(FrameReader.read(output.get("!OUTPUT" + i))));
+                        break;
+                    case EXIT_CODE_BAD_TASK_ID:
+                        break; // doesn't exist, leave it out
+                    default:
+                        throw new IOException("Check failed for " + uniqueIds.get(i) + " with exit code " + exitCode);
+                }
             }
-
-            return new TaskCheckResult(state, config, res, sid, pids, exitCode, mount, memory);
+            return ret;
         } catch (RuntimeException re) {
             throw new IOException("Parse error", re);
         }
     }
 
-    private String simpleRunWithOutput(boolean badIdCheck, boolean badStateCheck, String script, long timeout, String... args)
-            throws IOException {
+    private static TaskCheckResult parseTaskCheck(Map<String, String> output) {
+        String sidStr = output.get("!RUN_SID");
+        Integer sid = null;
+        if (sidStr != null) {
+            sid = Integer.parseInt(sidStr);
+        }
+
+        String pidsStr = output.get("!RUN_PIDS");
+        List<Integer> pids = null;
+        if (pidsStr != null && !pidsStr.isEmpty()) {
+            pids = Arrays.stream(pidsStr.split("\\n"))
+                .map(x -> Integer.valueOf(x.trim()))
+                .collect(toList());
+        }
+
+        String exitCodeStr = output.get("!EXITCODE");
+        Integer exitCode = null;
+        if (exitCodeStr != null) {
+            exitCode = Integer.parseInt(exitCodeStr);
+        }
+        
+        String dfStr = output.get("!DF");
+        Mount mount = null;
+        if (dfStr != null) {
+            List<DfEntry> dfEntries = DfParser.parse(dfStr);
+            mount = new Mount(
+                    dfEntries.get(0).getTarget(),
+                    dfEntries.get(0).getUsed(),
+                    dfEntries.get(0).getAvailable());
+        }
+
+        CGroupMemoryStat memStat = CGroupMemoryStatParser.parse(output.get("!CGROUP_MEM_STAT"));
+        TaskMemory memory = new TaskMemory(
+                memStat.getRss(),
+                memStat.getCache(),
+                memStat.getSwap() == null ? 0L : memStat.getSwap());
+        
+        String workPath = output.get("!WORKDIR");
+        String user = output.get("!WORKUSER");
+        int cmdCounter = 0;
+        String cmdArg;
+        List<String> command = new ArrayList<>();
+        while ((cmdArg = output.get("!WORKCMD" + cmdCounter)) != null) {
+            command.add(cmdArg);
+            cmdCounter++;
+        }
+        TaskConfiguration config = new TaskConfiguration(workPath, user, command.toArray(new String[0]));
+
+        String stateStr = output.get("!STATE");
+        TaskState state = TaskState.valueOf(stateStr);
+        
+        TaskResourceAllocation res = null;
+        if (state != TaskState.CREATED) {
+            String cpuAffinityStr = output.get("!CPUS");
+            Set<Long> cpuAffinity = Arrays.stream(cpuAffinityStr.split(",")).map(x -> Long.parseLong(x)).collect(toSet());
+            long schedulerQuota = Long.parseLong(output.get("!CPU_QUOTA"));
+            long schedulerPeriod = Long.parseLong(output.get("!CPU_PERIOD"));
+            long memoryLimit = Long.parseLong(output.get("!MEMORY_SIZE"));
+            long diskLimit = Long.parseLong(output.get("!DISK_SIZE"));
+            Validate.isTrue(schedulerPeriod == CFS_PERIOD);
+            res = new TaskResourceAllocation(cpuAffinity, schedulerQuota, memoryLimit, diskLimit);
+        }
+
+        return new TaskCheckResult(state, config, res, sid, pids, exitCode, mount, memory);
+    }
+
+    private void simpleRunWithOutput(boolean badIdCheck, boolean badStateCheck, OutputConsumer stdoutConsumer, String script,
+            long timeout, long stdoutLimit, String... args) throws IOException {
         try {
-            InMemoryExecuteResult res = communicator.execute(timeout, bootTime, BUFFER_LIMIT, BUFFER_LIMIT, script, args);
+            // stdout is streamed straight into the consumer, stderr is only kept around for error messages
+            StringBuilder stderr = new StringBuilder();
+            ExecuteResult res = executeCached(communicator, timeout, bootTime,
+                    stdoutConsumer, stdoutLimit,
+                    chunk -> stderr.append(chunk), BUFFER_LIMIT,
+                    script, args);
             switch (res.getExitCode()) {
                 case EXIT_CODE_OK:
                     break;
                 case EXIT_CODE_CRITICAL:
-                    throw new IOException("Critical error\n" + res.getStderr());
+                    throw new IOException("Critical error\n" + stderr);
                 case EXIT_CODE_BAD_TASK_ID:
-                    throw badIdCheck ? new TaskIdConflictException() : new IOException("Unrecognized error\n" + res.getStderr());
+                    throw badIdCheck ? new TaskIdConflictException() : new IOException("Unrecognized error\n" + stderr);
                 case EXIT_CODE_BAD_TASK_STATE:
-                    throw badStateCheck ? new TaskStateException() : new IOException("Unrecognized error\n" + res.getStderr());
+                    throw badStateCheck ? new TaskStateException() : new IOException("Unrecognized error\n" + stderr);
                 default:
-                    throw new IOException("Unrecognized error\n" + res.getStderr());
+                    throw new IOException("Unrecognized error\n" + stderr);
             }
-            return res.getStdout();
         } catch (StreamLimitExceededException | TimeLimitExceededException e) {
             throw new IOException(e);
         } catch (BootTimeChangedException btce) {
@@ -600,12 +882,87 @@ public final class CommunicatorExecutor implements Executor {
         }
     }
 
-    private String simpleRunWithOutput(boolean badIdCheck, boolean badStateCheck, String script, String... args) throws IOException {
-        return simpleRunWithOutput(badIdCheck, badStateCheck, script, 60000L, args);
+    private void simpleRunWithOutput(boolean badIdCheck, boolean badStateCheck, OutputConsumer stdoutConsumer, String script,
+            String... args) throws IOException {
+        simpleRunWithOutput(badIdCheck, badStateCheck, stdoutConsumer, script, 60000L, BUFFER_LIMIT, args);
+    }
+
+    private void lockedRunWithOutput(boolean badIdCheck, boolean badStateCheck, OutputConsumer stdoutConsumer, LockMode lockMode,
+            String safeId, String... args) throws IOException {
+        simpleRunWithOutput(badIdCheck, badStateCheck, stdoutConsumer, BASE_LOCK_SCRIPT, withLock(lockMode, safeId, args));
+    }
+
+    private void lockedRun(boolean badIdCheck, boolean badStateCheck, LockMode lockMode, String safeId, String... args)
+            throws IOException {
+        simpleRun(badIdCheck, badStateCheck, BASE_LOCK_SCRIPT, withLock(lockMode, safeId, args));
+    }
+
+    private static String[] withLock(LockMode lockMode, String safeId, String... args) {
+        if (lockMode.isTaskLock()) {
+            Validate.notNull(safeId);
+            return ArrayUtils.insert(0, args, lockMode.getArgument(), safeId);
+        } else {
+            Validate.isTrue(safeId == null);
+            return ArrayUtils.insert(0, args, lockMode.getArgument());
+        }
     }
 
     private void simpleRun(boolean badIdCheck, boolean badStateCheck, String script, String... args) throws IOException {
-        simpleRunWithOutput(badIdCheck, badStateCheck, script, args);
+        simpleRunWithOutput(badIdCheck, badStateCheck, chunk -> { }, script, args); // stdout not needed, discard as it comes in
+    }
+
+    static ExecuteResult executeCached(Communicator communicator, long timeout, long bootTime,
+            OutputConsumer stdoutConsumer, long stdoutLimit,
+            OutputConsumer stderrConsumer, long stderrLimit,
+            String script, String... args) throws IOException {
+        String entry = SCRIPT_CACHE.toEntry(script);
+        String[] invocationArgs = SCRIPT_CACHE.toInvocations(args);
+
+        ExecuteResult res = communicator.executeStreaming(timeout, bootTime,
+                stdoutConsumer, stdoutLimit,
+                stderrConsumer, stderrLimit,
+                entry, invocationArgs);
+        if (res.getExitCode() != ScriptCache.EXIT_CODE_MISSING) {
+            return res;
+        }
+
+        // Scripts aren't on the host (first contact, host wiped, or scripts changed since last install) -- install and try again. The
+        // entry stub bails before doing anything else, so nothing was written to the consumers and nothing was run on the host.
+        logger.info("Installing scripts to {}: {}", SCRIPT_CACHE.getDirectory(), communicator);
+        InMemoryExecuteResult installRes = communicator.execute(timeout, bootTime, BUFFER_LIMIT, BUFFER_LIMIT,
+                SCRIPT_CACHE.getInstallScript(),
+                SCRIPT_CACHE.getInstallArgs());
+        if (installRes.getExitCode() != EXIT_CODE_OK) {
+            throw new IOException("Script install error\n" + installRes.getStderr());
+        }
+
+        res = communicator.executeStreaming(timeout, bootTime,
+                stdoutConsumer, stdoutLimit,
+                stderrConsumer, stderrLimit,
+                entry, invocationArgs);
+        if (res.getExitCode() == ScriptCache.EXIT_CODE_MISSING) {
+            throw new IOException("Scripts missing after install: " + SCRIPT_CACHE.getDirectory());
+        }
+        return res;
+    }
+
+    private static final class ProcStatSample {
+        private final long time; // System.nanoTime() when taken
+        private final String procStat;
+
+        ProcStatSample(long time, String procStat) {
+            Validate.notNull(procStat);
+            this.time = time;
+            this.procStat = procStat;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public String getProcStat() {
+            return procStat;
+        }
     }
 
     @Override
@@ -16,7 +16,6 @@
  */
 package com.offbynull.rfm.host.executors.communicator;
 
-import static com.offbynull.rfm.host.executors.communicator.InternalUtils.toLong;
 import java.util.ArrayList;
 import java.util.List;
 import org.apache.commons.lang3.Validate;
@@ -26,23 +25,31 @@ final class DfParser {
         // do nothing
     }
 
-    public static List<DfEntry> parse(String str) {
+    public static List<DfEntry> parse(CharSequence str) {
         Validate.notNull(str);
         
         List<DfEntry> ret = new ArrayList<>();
         
-        String[] lines = str.split("\\n+");
-        
-        // start at 1, 0 is the header
-        for (int i = 1; i < lines.length; i++) {
-            String[] fields = lines[i].trim().split("\\s+", 4);
-            
-            Long used = toLong(fields[0]);
-            Long available = toLong(fields[1]);
-            String type = fields[2];
-            String target = fields[3];
+        TextTokenizer tokenizer = new TextTokenizer(str);
+        boolean headerSkipped = false;
+        while (tokenizer.nextLine()) {
+            if (tokenizer.isLineEmpty()) {
+                continue;
+            }
+            if (!headerSkipped) { // first line is the header
+                headerSkipped = true;
+                continue;
+            }
+
+            Validate.isTrue(tokenizer.nextToken());
+            Long used = tokenizer.tokenIsLong() ? tokenizer.longValue() : null;
+            Validate.isTrue(tokenizer.nextToken());
+            Long available = tokenizer.tokenIsLong() ? tokenizer.longValue() : null;
+            Validate.isTrue(tokenizer.nextToken());
+            String type = tokenizer.tokenToString();
+            Validate.isTrue(tokenizer.restOfLine()); // target can have spaces in it
+            String target = tokenizer.tokenToString();
             
-            Validate.isTrue(target != null);
             DfEntry dfEntry = new DfEntry(used, available, type, target);
 
             ret.add(dfEntry);
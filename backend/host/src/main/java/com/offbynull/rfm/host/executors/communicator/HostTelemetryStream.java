@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.executors.communicator;
+
+import com.offbynull.rfm.host.communicator.BootTimeChangedException;
+import com.offbynull.rfm.host.communicator.Communicator;
+import com.offbynull.rfm.host.communicator.ExecuteResult;
+import com.offbynull.rfm.host.communicator.StreamingScriptParser;
+import com.offbynull.rfm.host.executor.HostCheckResult;
+import com.offbynull.rfm.host.executor.RebootedException;
+import static com.offbynull.rfm.host.executors.communicator.CommunicatorExecutor.HOST_TELEMETRY_SCRIPT;
+import static com.offbynull.rfm.host.executors.communicator.InternalUtils.toSecondsArgument;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Continuously updated {@link HostCheckResult} for a host.
+ * <p>
+ * A single script stays running on the host, sampling CPU usage, memory, mounts, and tasks at a fixed interval and streaming back what
+ * changed between samples. Each sample updates an in-memory snapshot, so {@link #getSnapshot() } returns instantly rather than running a
+ * full host check. The script is restarted periodically (and after connection failures) -- this is invisible to callers other than the
+ * snapshot not updating while the script is being restarted.
+ * <p>
+ * The running script holds a session on the communicator the whole time the stream is open. For a pooled communicator, that's one of the
+ * pool's connections that's never available to anything else.
+ * <p>
+ * Instances are created through {@link CommunicatorExecutor#openTelemetryStream(long) }.
+ * @author Kasra Faghihi
+ */
+public final class HostTelemetryStream implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HostTelemetryStream.class);
+
+    // The script exits after taking enough samples to span this much time, at which point it's started again. Keeps the timeout for each
+    // run bounded and means a connection that silently died is noticed eventually.
+    private static final long SESSION_DURATION = 60L * 60L * 1000L;
+    private static final long SESSION_TIMEOUT_SLACK = 60000L;
+    private static final long RETRY_DELAY = 1000L;
+    private static final long STDERR_LIMIT = 1024L * 1024L;
+
+    private static final String SAMPLE_MARKER = "!SAMPLE";
+    private static final String PROCSTAT_MARKER = "!PROCSTAT";
+    private static final Set<String> REQUIRED_ENTRIES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "!UNAME", "!CGROUP_CPUSET", "!CPUINFO", "!KERNEL_CONFIGS", "!MEMINFO", "!DF", "!TASKS")));
+
+    private final Communicator communicator;
+    private final long bootTime;
+    private final long interval;
+    private final long sessionDuration;
+    private final Thread thread;
+
+    // Accessed only by the streaming thread. Entries are carried over between samples because the script only sends entries that changed.
+    private final Map<String, String> entries = new HashMap<>();
+    private String lastProcStat;
+
+    private final CountDownLatch firstSnapshotLatch = new CountDownLatch(1);
+    private volatile HostCheckResult snapshot;
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    static HostTelemetryStream open(Communicator communicator, long bootTime, long interval) {
+        return open(communicator, bootTime, interval, SESSION_DURATION);
+    }
+
+    static HostTelemetryStream open(Communicator communicator, long bootTime, long interval, long sessionDuration) {
+        HostTelemetryStream ret = new HostTelemetryStream(communicator, bootTime, interval, sessionDuration);
+        ret.thread.start();
+        return ret;
+    }
+
+    private HostTelemetryStream(Communicator communicator, long bootTime, long interval, long sessionDuration) {
+        Validate.notNull(communicator);
+        Validate.isTrue(bootTime >= 0L);
+        Validate.isTrue(interval > 0L);
+        Validate.isTrue(sessionDuration > 0L);
+        
+        this.communicator = communicator;
+        this.bootTime = bootTime;
+        this.interval = interval;
+        this.sessionDuration = sessionDuration;
+        this.thread = new Thread(this::run, "host-telemetry-" + communicator);
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Get the latest snapshot of the host's state.
+     * @return latest snapshot, or {@code null} if the first one hasn't come in yet (CPU usage needs 2 samples, so the first snapshot
+     * shows up {@code interval} milliseconds after opening)
+     * @throws RebootedException if the host rebooted (no further snapshots will come in)
+     * @throws IOException if this stream failed permanently
+     * @throws IllegalStateException if closed
+     */
+    public HostCheckResult getSnapshot() throws IOException {
+        Validate.validState(!closed);
+        IOException ioe = failure;
+        if (ioe != null) {
+            throw ioe;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Get the latest snapshot of the host's state, waiting for the first one to come in if needed.
+     * @param timeout maximum number of milliseconds to wait
+     * @return latest snapshot, or {@code null} if the first one didn't come in before the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     * @throws RebootedException if the host rebooted (no further snapshots will come in)
+     * @throws IOException if this stream failed permanently
+     * @throws IllegalStateException if closed
+     * @throws IllegalArgumentException if {@code timeout < 0L}
+     */
+    public HostCheckResult awaitSnapshot(long timeout) throws InterruptedException, IOException {
+        Validate.isTrue(timeout >= 0L);
+        firstSnapshotLatch.await(timeout, TimeUnit.MILLISECONDS);
+        return getSnapshot();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt(); // communicator aborts the running script when interrupted
+        firstSnapshotLatch.countDown();
+    }
+
+    private void run() {
+        long samples = Math.max(2L, sessionDuration / interval);
+        String intervalArg = toSecondsArgument(interval);
+        
+        while (!closed) {
+            // Each run of the script starts by sending everything again.
+            entries.clear();
+            lastProcStat = null;
+
+            StreamingScriptParser stdoutParser = new StreamingScriptParser(SAMPLE_MARKER, this::onSample);
+            StringBuilder stderr = new StringBuilder();
+            try {
+                ExecuteResult res = CommunicatorExecutor.executeCached(communicator, sessionDuration + SESSION_TIMEOUT_SLACK, bootTime,
+                        stdoutParser, Long.MAX_VALUE,
+                        chunk -> stderr.append(chunk), STDERR_LIMIT,
+                        HOST_TELEMETRY_SCRIPT, intervalArg, Long.toString(samples));
+                if (res.getExitCode() != 0) {
+                    throw new IOException("Telemetry script error\n" + stderr);
+                }
+                stdoutParser.finish();
+                continue; // script ran for its full session, start it again right away
+            } catch (BootTimeChangedException btce) {
+                failure = new RebootedException(btce);
+                firstSnapshotLatch.countDown();
+                logger.warn("Host rebooted, stopping telemetry: {}", communicator);
+                return;
+            } catch (InterruptedIOException iioe) {
+                if (closed) {
+                    return;
+                }
+                logger.warn("Telemetry interrupted, restarting: {}", communicator, iioe);
+            } catch (IOException | RuntimeException e) {
+                if (closed) {
+                    return;
+                }
+                logger.warn("Telemetry failed, restarting: {}", communicator, e);
+            }
+
+            try {
+                Thread.sleep(RETRY_DELAY);
+            } catch (InterruptedException ie) {
+                return;
+            }
+        }
+    }
+
+    private void onSample(Map<String, String> sample) {
+        // Don't let a bad sample bubble up -- the parser would ignore the rest of the session. Later samples may still be good.
+        try {
+            String procStat = sample.remove(PROCSTAT_MARKER);
+            Validate.isTrue(procStat != null, "Sample missing %s", PROCSTAT_MARKER);
+            entries.putAll(sample);
+
+            String prevProcStat = lastProcStat;
+            lastProcStat = procStat;
+            if (prevProcStat == null) { // CPU usage is the difference between 2 samples
+                return;
+            }
+
+            Validate.isTrue(entries.keySet().containsAll(REQUIRED_ENTRIES), "Sample missing entries");
+            Map<String, String> output = new HashMap<>(entries);
+            output.put("!PROCSTAT1", prevProcStat);
+            output.put("!PROCSTAT2", procStat);
+            snapshot = CommunicatorExecutor.parseHostCheck(output);
+            firstSnapshotLatch.countDown();
+        } catch (RuntimeException re) {
+            logger.warn("Bad telemetry sample, skipping: {}", communicator, re);
+        }
+    }
+}
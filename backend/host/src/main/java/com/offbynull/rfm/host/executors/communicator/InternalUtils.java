@@ -16,6 +16,7 @@
  */
 package com.offbynull.rfm.host.executors.communicator;
 
+import java.util.Locale;
 import org.apache.commons.lang3.Validate;
 
 final class InternalUtils {
@@ -31,6 +32,12 @@ final class InternalUtils {
         }
     }
     
+    // Milliseconds as seconds with a fractional part (e.g. 1500 becomes 1.500), for passing to commands like sleep.
+    static String toSecondsArgument(long millis) {
+        Validate.isTrue(millis >= 0L);
+        return String.format(Locale.ROOT, "%d.%03d", millis / 1000L, millis % 1000L);
+    }
+    
     static void validatePath(String path) {
         Validate.notNull(path);
         Validate.notBlank(path);
@@ -16,12 +16,7 @@
  */
 package com.offbynull.rfm.host.executors.communicator;
 
-import static com.offbynull.rfm.host.executors.communicator.InternalUtils.toLong;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.StringReader;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -35,61 +30,63 @@ final class ProcCpuInfoParser {
         // do nothing
     }
 
-    public static List<ProcCpuInfoEntry> parse(String str) {
+    public static List<ProcCpuInfoEntry> parse(CharSequence str) {
         Validate.notNull(str);
         
         List<ProcCpuInfoEntry> ret = new ArrayList<>();
         
-        String[] cpuInfoBlocks = str.split("\\n{2,}");
-        for (String cpuInfoBlock : cpuInfoBlocks) {
-            Long physicalId = null;
-            Long coreId = null;
-            Long processor = null;
-            String model = null;
-            Set<String> flags = null;
+        // Each processor is a block of "key : value" lines, blocks are separated by empty lines
+        Long physicalId = null;
+        Long coreId = null;
+        Long processor = null;
+        String model = null;
+        Set<String> flags = null;
+        boolean inBlock = false;
 
-            try (BufferedReader br = new BufferedReader(new StringReader(cpuInfoBlock))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    String[] words = line.split(":", 2);
-                    if (words.length < 2) {
-                        continue;
-                    }
+        TextTokenizer tokenizer = new TextTokenizer(str);
+        while (true) {
+            boolean hasLine = tokenizer.nextLine();
+            if (!hasLine || tokenizer.isLineEmpty()) {
+                if (inBlock) {
+                    Validate.isTrue(physicalId != null);
+                    Validate.isTrue(coreId != null);
+                    Validate.isTrue(processor != null);
+                    ProcCpuInfoEntry procCpuInfo = new ProcCpuInfoEntry(physicalId, coreId, processor, model, flags);
+                    ret.add(procCpuInfo);
 
-                    String key = words[0].trim();
-                    String val = words[1].trim();
-                    
-                    switch (key) {
-                        case "physical id":
-                            physicalId = toLong(val);
-                            break;
-                        case "core id":
-                            coreId = toLong(val);
-                            break;
-                        case "processor":
-                            processor = toLong(val);
-                            break;
-                        case "model name":
-                            model = val;
-                            break;
-                        case "flags":
-                            flags = new HashSet<>(Arrays.asList(val.split("\\s+")));
-                            break;
-                        default:
-                            // do nothing
-                            break;
-                    }
+                    physicalId = null;
+                    coreId = null;
+                    processor = null;
+                    model = null;
+                    flags = null;
+                    inBlock = false;
+                }
+                if (!hasLine) {
+                    break;
+                }
+                continue;
+            }
+
+            inBlock = true;
+            if (!tokenizer.nextTokenUntil(':')) {
+                continue;
+            }
+
+            if (tokenizer.tokenEquals("physical id")) {
+                physicalId = tokenizer.restOfLine() && tokenizer.tokenIsLong() ? tokenizer.longValue() : null;
+            } else if (tokenizer.tokenEquals("core id")) {
+                coreId = tokenizer.restOfLine() && tokenizer.tokenIsLong() ? tokenizer.longValue() : null;
+            } else if (tokenizer.tokenEquals("processor")) {
+                processor = tokenizer.restOfLine() && tokenizer.tokenIsLong() ? tokenizer.longValue() : null;
+            } else if (tokenizer.tokenEquals("model name")) {
+                tokenizer.restOfLine();
+                model = tokenizer.tokenToString();
+            } else if (tokenizer.tokenEquals("flags")) {
+                flags = new HashSet<>();
+                while (tokenizer.nextToken()) {
+                    flags.add(tokenizer.tokenToString());
                 }
-            } catch (IOException ioe) {
-                // should never happen
-                throw new IllegalStateException(ioe);
             }
-            
-            Validate.isTrue(physicalId != null);
-            Validate.isTrue(coreId != null);
-            Validate.isTrue(processor != null);
-            ProcCpuInfoEntry procCpuInfo = new ProcCpuInfoEntry(physicalId, coreId, processor, model, flags);
-            ret.add(procCpuInfo);
         }
         
         return ret;
@@ -16,7 +16,6 @@
  */
 package com.offbynull.rfm.host.executors.communicator;
 
-import static com.offbynull.rfm.host.executors.communicator.InternalUtils.toLong;
 import org.apache.commons.lang3.Validate;
 
 final class ProcMemInfoParser {
@@ -25,7 +24,7 @@ final class ProcMemInfoParser {
         // do nothing
     }
 
-    public static ProcMemInfo parse(String str) {
+    public static ProcMemInfo parse(CharSequence str) {
         Validate.notNull(str);
         
         Long memTotal = null;
@@ -33,29 +32,20 @@ final class ProcMemInfoParser {
         Long swapTotal = null;
         Long swapFree = null;
         
-        String[] lines = str.split("\\n+");
-        for (String line : lines) {
-            String[] words = line.split("[:\\s]+");
-            if (words.length < 2) {
+        TextTokenizer tokenizer = new TextTokenizer(str);
+        while (tokenizer.nextLine()) {
+            if (!tokenizer.nextTokenUntil(':')) {
                 continue;
             }
 
-            switch (words[0]) {
-                case "MemTotal":
-                    memTotal = toLong(words[1]);
-                    break;
-                case "MemAvailable":
-                    memAvailable = toLong(words[1]);
-                    break;
-                case "SwapTotal":
-                    swapTotal = toLong(words[1]);
-                    break;
-                case "SwapFree":
-                    swapFree = toLong(words[1]);
-                    break;
-                default:
-                    // do nothing
-                    break;
+            if (tokenizer.tokenEquals("MemTotal")) {
+                memTotal = nextLong(tokenizer);
+            } else if (tokenizer.tokenEquals("MemAvailable")) {
+                memAvailable = nextLong(tokenizer);
+            } else if (tokenizer.tokenEquals("SwapTotal")) {
+                swapTotal = nextLong(tokenizer);
+            } else if (tokenizer.tokenEquals("SwapFree")) {
+                swapFree = nextLong(tokenizer);
             }
         }
 
@@ -66,6 +56,10 @@ final class ProcMemInfoParser {
         return new ProcMemInfo(memTotal, memAvailable, swapTotal, swapFree);
     }
 
+    private static Long nextLong(TextTokenizer tokenizer) {
+        return tokenizer.nextToken() && tokenizer.tokenIsLong() ? tokenizer.longValue() : null;
+    }
+
     static final class ProcMemInfo {
         private final long memTotal;
         private final long memAvailable;
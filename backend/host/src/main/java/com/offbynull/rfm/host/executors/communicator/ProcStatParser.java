@@ -17,47 +17,130 @@
 package com.offbynull.rfm.host.executors.communicator;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import org.apache.commons.lang3.Validate;
-import static com.offbynull.rfm.host.executors.communicator.InternalUtils.toLong;
 
 final class ProcStatParser {
 
+    private static final int MAX_PROCESSOR = 65535; // sanity check -- kernel caps processor IDs well below this
+
     private ProcStatParser() {
         // do nothing
     }
 
-    public static List<ProcStatCpuEntry> parse(String str) {
-        Validate.notNull(str);
+    public static List<ProcStatCpuEntry> parse(CharSequence str) {
+        ProcStatCpuTimes times = parseCpuTimes(str);
         
         List<ProcStatCpuEntry> ret = new ArrayList<>();
+        for (int i = 0; i < times.size(); i++) {
+            if (times.contains(i)) {
+                ret.add(new ProcStatCpuEntry(i, times.getUserTime(i), times.getNiceTime(i), times.getSystemTime(i), times.getIdleTime(i)));
+            }
+        }
+        return ret;
+    }
+
+    public static ProcStatCpuTimes parseCpuTimes(CharSequence str) {
+        Validate.notNull(str);
         
-        String[] procStatLines = str.split("\\n+");
-        for (String line : procStatLines) {
-            if (!line.matches("^cpu\\d+\\s+.*")) {
+        ProcStatCpuTimes ret = new ProcStatCpuTimes();
+        
+        TextTokenizer tokenizer = new TextTokenizer(str);
+        while (tokenizer.nextLine()) {
+            // only per-processor lines (cpu0, cpu1, ...) -- skip the aggregate "cpu" line and everything else
+            if (!tokenizer.nextToken() || !tokenizer.tokenStartsWith("cpu") || tokenizer.tokenLength() == 3 || !tokenizer.tokenIsLong(3)) {
                 continue;
             }
 
-            String[] fields = line.split("\\s+");
-            Validate.isTrue(fields.length >= 5);
-            Long processor = toLong(fields[0].substring("cpu".length()));
-            Long userTime = toLong(fields[1]);
-            Long niceTime = toLong(fields[2]);
-            Long systemTime = toLong(fields[3]);
-            Long idleTime = toLong(fields[4]);
-
-            Validate.isTrue(processor != null);
-            Validate.isTrue(userTime != null);
-            Validate.isTrue(niceTime != null);
-            Validate.isTrue(systemTime != null);
-            Validate.isTrue(idleTime != null);
-            ProcStatCpuEntry procStatCpu = new ProcStatCpuEntry(processor, userTime, niceTime, systemTime, idleTime);
-            ret.add(procStatCpu);
+            long processor = tokenizer.longValue();
+            Validate.isTrue(tokenizer.nextToken());
+            long userTime = tokenizer.tokenToLong();
+            Validate.isTrue(tokenizer.nextToken());
+            long niceTime = tokenizer.tokenToLong();
+            Validate.isTrue(tokenizer.nextToken());
+            long systemTime = tokenizer.tokenToLong();
+            Validate.isTrue(tokenizer.nextToken());
+            long idleTime = tokenizer.tokenToLong();
+
+            ret.set(processor, userTime, niceTime, systemTime, idleTime);
         }
         
         return ret;
     }
 
+    // Per-processor times indexed by processor ID, so that looking up a processor doesn't involve a scan.
+    static final class ProcStatCpuTimes {
+        private long[] userTimes = new long[0];
+        private long[] niceTimes = new long[0];
+        private long[] systemTimes = new long[0];
+        private long[] idleTimes = new long[0]; // -1 for processors that weren't listed
+
+        private void set(long processor, long userTime, long niceTime, long systemTime, long idleTime) {
+            Validate.isTrue(processor >= 0L && processor <= MAX_PROCESSOR);
+            Validate.isTrue(userTime >= 0L);
+            Validate.isTrue(niceTime >= 0L);
+            Validate.isTrue(systemTime >= 0L);
+            Validate.isTrue(idleTime >= 0L);
+
+            int idx = (int) processor;
+            if (idx >= idleTimes.length) {
+                int newLength = Math.max(idx + 1, idleTimes.length * 2);
+                int oldLength = idleTimes.length;
+                userTimes = Arrays.copyOf(userTimes, newLength);
+                niceTimes = Arrays.copyOf(niceTimes, newLength);
+                systemTimes = Arrays.copyOf(systemTimes, newLength);
+                idleTimes = Arrays.copyOf(idleTimes, newLength);
+                Arrays.fill(idleTimes, oldLength, newLength, -1L);
+            }
+
+            userTimes[idx] = userTime;
+            niceTimes[idx] = niceTime;
+            systemTimes[idx] = systemTime;
+            idleTimes[idx] = idleTime;
+        }
+
+        // Exclusive upper bound of processor IDs.
+        public int size() {
+            return idleTimes.length;
+        }
+
+        public boolean contains(long processor) {
+            return processor >= 0L && processor < idleTimes.length && idleTimes[(int) processor] != -1L;
+        }
+
+        public long getUserTime(long processor) {
+            validateContains(processor);
+            return userTimes[(int) processor];
+        }
+
+        public long getNiceTime(long processor) {
+            validateContains(processor);
+            return niceTimes[(int) processor];
+        }
+
+        public long getSystemTime(long processor) {
+            validateContains(processor);
+            return systemTimes[(int) processor];
+        }
+
+        public long getIdleTime(long processor) {
+            validateContains(processor);
+            return idleTimes[(int) processor];
+        }
+
+        // user + nice + system
+        public long getUsedTime(long processor) {
+            validateContains(processor);
+            int idx = (int) processor;
+            return userTimes[idx] + niceTimes[idx] + systemTimes[idx];
+        }
+
+        private void validateContains(long processor) {
+            Validate.isTrue(contains(processor), "Processor %d missing", processor);
+        }
+    }
+
     // http://man7.org/linux/man-pages/man5/proc.5.html (search for /proc/stat section)
     // https://stackoverflow.com/a/9027251
     // https://unix.stackexchange.com/questions/361245/what-does-an-idle-cpu-process-do
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.executors.communicator;
+
+import com.offbynull.rfm.host.communicator.FrameReader;
+import static com.offbynull.rfm.host.communicator.HashUtils.sha256Hex;
+import java.io.IOException;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.Validate;
+
+// Keeps copies of scripts on the host so that they don't have to be shipped over on every call. Scripts get installed into a directory
+// named after the hash of all scripts (/opt/rfm/scripts/<sha256>), and calls then pass around small stubs that source the installed
+// copies instead of the scripts themselves.
+//
+// Stubs work as drop-in replacements because sourcing a file without arguments leaves $0/$1/... untouched, so a stub that gets invoked
+// via bash -c "$stub" arg0 arg1 ... sees the same arguments that the full script would have seen. Top-level stubs (see toEntry()) also
+// check that the install directory exists and exit with EXIT_CODE_MISSING if it doesn't, at which point the caller is expected to
+// install() and try again.
+//
+// Installed copies have the write_frame shell function prepended (see FrameReader.prependWriter()), so scripts that write framed output
+// don't each carry their own copy of it. Scripts are still looked up by their original content.
+final class ScriptCache {
+
+    public static final int EXIT_CODE_MISSING = 100;
+    
+    private static final String BASE_DIRECTORY = "/opt/rfm/scripts";
+    
+    private static final String INSTALL_SCRIPT;
+    static {
+        try {
+            INSTALL_SCRIPT = IOUtils.toString(ScriptCache.class.getResourceAsStream("host_script_install.sh"), UTF_8);
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe);
+        }
+    }
+
+    private final String directory;
+    private final Map<String, String> invocations; // script -> stub
+    private final Map<String, String> entries;     // script -> stub
+    private final List<String> installArgs;
+
+    public ScriptCache(Map<String, String> scripts) {
+        Validate.notNull(scripts);
+        Validate.noNullElements(scripts.keySet());
+        Validate.noNullElements(scripts.values());
+        scripts.keySet().forEach(n -> Validate.isTrue(n.matches("[A-Za-z0-9_.\\-]+") && !n.startsWith(".")));
+        
+        Map<String, String> sortedScripts = new TreeMap<>(scripts); // sort so that the directory hash doesn't depend on map order
+
+        StringBuilder listing = new StringBuilder(); // name + hash of each script, which in turn gets hashed to form the directory name
+        List<String> installArgs = new ArrayList<>();
+        for (Entry<String, String> e : sortedScripts.entrySet()) {
+            String installedScript = FrameReader.prependWriter(e.getValue());
+            String scriptHash = sha256Hex(installedScript);
+            listing.append(e.getKey()).append(' ').append(scriptHash).append('\n');
+
+            installArgs.add(e.getKey());
+            installArgs.add(scriptHash);
+            installArgs.add(installedScript);
+        }
+        String directory = BASE_DIRECTORY + "/" + sha256Hex(listing.toString());
+        installArgs.add(0, directory);
+
+        Map<String, String> invocations = new HashMap<>();
+        Map<String, String> entries = new HashMap<>();
+        for (Entry<String, String> e : sortedScripts.entrySet()) {
+            String path = directory + "/" + e.getKey();
+            String invocation = "source \"" + path + "\"\n";
+            String entry = ""
+                    + "if [ ! -d \"" + directory + "\" ]\n"
+                    + "then\n"
+                    + "    exit " + EXIT_CODE_MISSING + "\n"
+                    + "fi\n"
+                    + invocation;
+            Validate.isTrue(invocations.put(e.getValue(), invocation) == null, "Duplicate script content for %s", e.getKey());
+            entries.put(e.getValue(), entry);
+        }
+
+        this.directory = directory;
+        this.invocations = Collections.unmodifiableMap(invocations);
+        this.entries = Collections.unmodifiableMap(entries);
+        this.installArgs = Collections.unmodifiableList(installArgs);
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    // Stub for a script that's run directly by the communicator.
+    public String toEntry(String script) {
+        Validate.notNull(script);
+        String ret = entries.get(script);
+        Validate.isTrue(ret != null, "Script not cached");
+        return ret;
+    }
+
+    // Stubs for scripts passed in as arguments to other scripts. Arguments that aren't cached scripts are passed through as-is.
+    public String[] toInvocations(String... args) {
+        Validate.notNull(args);
+        Validate.noNullElements(args);
+        String[] ret = new String[args.length];
+        for (int i = 0; i < args.length; i++) {
+            ret[i] = invocations.getOrDefault(args[i], args[i]);
+        }
+        return ret;
+    }
+
+    public String getInstallScript() {
+        return INSTALL_SCRIPT;
+    }
+
+    public String[] getInstallArgs() {
+        return installArgs.toArray(new String[0]);
+    }
+}
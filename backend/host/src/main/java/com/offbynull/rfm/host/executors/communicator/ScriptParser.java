@@ -16,10 +16,8 @@
  */
 package com.offbynull.rfm.host.executors.communicator;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.StringReader;
-import java.util.HashMap;
+import com.offbynull.rfm.host.communicator.StreamingScriptParser;
+import java.nio.CharBuffer;
 import java.util.Map;
 import org.apache.commons.lang3.Validate;
 
@@ -28,48 +26,12 @@ final class ScriptParser {
         // do nothing
     }
 
-    public static Map<String, String> parse(String str) {
+    public static Map<String, String> parse(CharSequence str) {
         Validate.notNull(str);
 
-        Map<String, String> ret = new HashMap<>();
-        
-        try (StringReader sr = new StringReader(str);
-                BufferedReader br = new BufferedReader(sr)) {
-            String markerStr;
-            while (true) {
-                markerStr = br.readLine();
-                if (markerStr == null) {
-                    break;
-                }
-
-                if (!markerStr.startsWith("!")) {
-                    throw new IllegalArgumentException();
-                }
-
-                String lengthStr = br.readLine();
-
-                long length = Long.parseLong(lengthStr);
-                StringBuilder outputStr = new StringBuilder();
-                for (long i = 0; i < length; i++) {
-                    String line = br.readLine();
-
-                    Validate.isTrue(line != null);
-
-                    outputStr.append(line);
-                    if (i < length - 1) {
-                        outputStr.append('\n');
-                    }
-                }
-
-                Validate.isTrue(!ret.containsKey(markerStr), "Duplicate entry found for %s", markerStr);
-                ret.put(markerStr, outputStr.toString());
-            }
-        } catch (NullPointerException | NumberFormatException e) {
-            throw new IllegalArgumentException(e);
-        } catch (IOException ioe) { // should never happen
-            throw new IllegalStateException(ioe);
-        }
-        
-        return ret;
+        // Same format as what's streamed in, so parse it the same way -- one pass, no intermediate line strings.
+        StreamingScriptParser parser = new StreamingScriptParser();
+        parser.accept(CharBuffer.wrap(str));
+        return parser.finish();
     }
 }
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3.0 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.
+ */
+package com.offbynull.rfm.host.executors.communicator;
+
+import org.apache.commons.lang3.Validate;
+
+// Zero-copy tokenizer shared by the parsers in this package. Walks over the text line-by-line and token-by-token by tracking positions
+// rather than splitting it up, meaning that strings only get created for the tokens that are kept (e.g. model names) and numbers get
+// parsed in place.
+//
+// Lines end at \n, \r, or \r\n (same as BufferedReader.readLine()). Tokens are separated by spaces and tabs.
+final class TextTokenizer {
+
+    private final CharSequence text;
+
+    private int nextLineStart;
+    private int lineStart;
+    private int lineEnd;
+    private int pos;
+    private int tokenStart;
+    private int tokenEnd;
+    private long longValue;
+
+    TextTokenizer(CharSequence text) {
+        Validate.notNull(text);
+        this.text = text;
+    }
+
+    // Move to the next line. Returns false if there are no more lines.
+    public boolean nextLine() {
+        int len = text.length();
+        if (nextLineStart >= len) {
+            return false;
+        }
+
+        int i = nextLineStart;
+        while (i < len) {
+            char ch = text.charAt(i);
+            if (ch == '\n' || ch == '\r') {
+                break;
+            }
+            i++;
+        }
+
+        lineStart = nextLineStart;
+        lineEnd = i;
+        pos = lineStart;
+        tokenStart = pos;
+        tokenEnd = pos;
+
+        if (i < len && text.charAt(i) == '\r' && i + 1 < len && text.charAt(i + 1) == '\n') {
+            nextLineStart = i + 2;
+        } else {
+            nextLineStart = i + 1;
+        }
+        return true;
+    }
+
+    public boolean isLineEmpty() {
+        return lineStart == lineEnd;
+    }
+
+    // Move to the next whitespace-delimited token on the current line. Returns false if there are no more tokens on the line.
+    public boolean nextToken() {
+        while (pos < lineEnd && isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+        if (pos == lineEnd) {
+            return false;
+        }
+
+        tokenStart = pos;
+        while (pos < lineEnd && !isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+        tokenEnd = pos;
+        return true;
+    }
+
+    // Move to the token that runs up to the next occurrence of delimiter on the current line (surrounding whitespace is trimmed off, and
+    // the delimiter is skipped over). Returns false if the delimiter isn't on the rest of the line.
+    public boolean nextTokenUntil(char delimiter) {
+        int i = pos;
+        while (i < lineEnd && text.charAt(i) != delimiter) {
+            i++;
+        }
+        if (i == lineEnd) {
+            return false;
+        }
+
+        setTrimmedToken(pos, i);
+        pos = i + 1;
+        return true;
+    }
+
+    // Move to the token that spans the rest of the current line (surrounding whitespace is trimmed off). Returns false if the rest of the
+    // line is empty.
+    public boolean restOfLine() {
+        setTrimmedToken(pos, lineEnd);
+        pos = lineEnd;
+        return tokenStart != tokenEnd;
+    }
+
+    public int tokenLength() {
+        return tokenEnd - tokenStart;
+    }
+
+    public boolean tokenEquals(String str) {
+        return tokenLength() == str.length() && tokenStartsWith(str);
+    }
+
+    public boolean tokenStartsWith(String str) {
+        int len = str.length();
+        if (tokenLength() < len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (text.charAt(tokenStart + i) != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String tokenToString() {
+        return text.subSequence(tokenStart, tokenEnd).toString();
+    }
+
+    public boolean tokenIsLong() {
+        return tokenIsLong(0);
+    }
+
+    // True if the token (ignoring the first offset chars) is a decimal number that fits in a long (same rules as Long.parseLong()), in
+    // which case the number is available from longValue() until this gets called again. Tokens that aren't numbers (e.g. "-" in df output)
+    // are common, so this is a single scan that signals failure through the return value rather than an exception.
+    public boolean tokenIsLong(int offset) {
+        int start = tokenStart + offset;
+        int end = tokenEnd;
+        if (start >= end) {
+            return false;
+        }
+
+        int i = start;
+        boolean negative = false;
+        char first = text.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+            if (i == end) {
+                return false;
+            }
+        }
+
+        // Accumulate negatively so that Long.MIN_VALUE can be parsed (same trick as Long.parseLong()).
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multLimit = limit / 10L;
+        long result = 0L;
+        for (; i < end; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return false;
+            }
+            if (result < multLimit) {
+                return false;
+            }
+            result *= 10L;
+            if (result < limit + digit) {
+                return false;
+            }
+            result -= digit;
+        }
+
+        longValue = negative ? result : -result;
+        return true;
+    }
+
+    // Number found by the last successful call to tokenIsLong().
+    public long longValue() {
+        return longValue;
+    }
+
+    public long tokenToLong() {
+        return tokenToLong(0);
+    }
+
+    // Parse the token (ignoring the first offset chars) as a decimal number. Throws NumberFormatException if it isn't one. Use
+    // tokenIsLong()+longValue() instead if the token might not be a number.
+    public long tokenToLong(int offset) {
+        if (!tokenIsLong(offset)) {
+            throw new NumberFormatException("Bad number: " + text.subSequence(Math.min(tokenStart + offset, tokenEnd), tokenEnd));
+        }
+        return longValue;
+    }
+
+    private void setTrimmedToken(int start, int end) {
+        while (start < end && isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        tokenStart = start;
+        tokenEnd = end;
+    }
+
+    private static boolean isWhitespace(char ch) {
+        return ch == ' ' || ch == '\t';
+    }
+}
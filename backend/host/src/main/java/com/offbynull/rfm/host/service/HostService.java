@@ -17,6 +17,7 @@
 package com.offbynull.rfm.host.service;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -88,6 +89,17 @@ public interface HostService {
      */
     void updateWorker(Worker worker) throws IOException;
 
+    /**
+     * Update workers or add them if they don't exist. Equivalent to calling {@link #updateWorker(com.offbynull.rfm.host.service.Worker) }
+     * for each worker, but written in bulk. Workers are committed in groups, so if this method fails some of the workers may have been
+     * written while others haven't.
+     * @param workers workers
+     * @throws NullPointerException if any argument is {@code null} or contains {@code null}
+     * @throws IllegalArgumentException if {@code workers} contains more than one worker for the same host and port
+     * @throws IOException if error occurs with the backend datastore
+     */
+    void updateWorkers(Collection<Worker> workers) throws IOException;
+
     /**
      * Delete worker. Does nothing if worker doesn't exist. Will fail to delete if worker has work assigned to it.
      * @param host worker host
@@ -142,6 +154,8 @@ public interface HostService {
      * {@code !workId.isEmpty()}
      * {@code !workerHost.isEmpty()}
      * {@code workerPort >= 1 && workerHost <= 65535}
+     * @throws IllegalStateException if the work or worker doesn't exist, the work is already bound or still waiting on parents, or the
+     * work's requirements don't fit on the worker
      * @throws IOException if error occurs with the backend datastore
      */
     void bind(String id, String host, int port) throws IOException;
@@ -192,7 +206,7 @@ public interface HostService {
      * Find waiting work item with the lowest possible priority that can run on the specified host.
      * @param host worker host
      * @param port worker port
-     * @return work with the lowest priority that can on the specified host
+     * @return work with the lowest priority that can on the specified host, or {@code null} if no waiting work fits
      * @throws IOException if error occurs with the backend datastore
      */
     StoredWork findBindableWork(String host, int port) throws IOException;
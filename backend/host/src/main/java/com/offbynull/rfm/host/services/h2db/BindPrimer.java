@@ -0,0 +1,48 @@
+package com.offbynull.rfm.host.services.h2db;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import javax.sql.DataSource;
+
+// MUST BE PRIMED AFTER WorkerPrimer AND WorkPrimer -- references tables from both.
+final class BindPrimer {
+    private BindPrimer() {
+        // do nothing
+    }
+
+    public static void prime(DataSource dataSource) throws IOException {
+        try (Connection conn = dataSource.getConnection()) {
+            createTableBindSql(conn);
+        } catch (SQLException sqle) {
+            throw new IOException(sqle);
+        }
+    }
+
+    private static void createTableBindSql(Connection conn) throws IOException {
+        // work can only be bound to a single worker. Deleting the work removes the bind, but deleting a worker that still has work bound
+        // to it fails.
+        //
+        // Both sides reference the lock tables rather than work/host_spec -- updating work or a worker deletes and re-inserts its rows,
+        // which would either drop the bind (cascade) or fail (restrict) if the bind referenced them directly. The work_lock/worker_lock
+        // row stays put for as long as the work/worker exists (WorkLock/WorkerLock only remove it once the work/worker is gone).
+        String table = ""
+                + "CREATE TABLE IF NOT EXISTS bind(\n"
+                + "work_id VARCHAR(2048) NOT NULL,\n"
+                + "s_host VARCHAR(2048) NOT NULL,\n"
+                + "n_port NUMBER(38,10) NOT NULL,\n"
+                + "PRIMARY KEY(work_id),\n"
+                + "FOREIGN KEY(work_id) REFERENCES work_lock(id) ON DELETE CASCADE,\n"
+                + "FOREIGN KEY(s_host, n_port) REFERENCES worker_lock(s_host, n_port)\n"
+                + ")";
+        String index1 = "CREATE INDEX IF NOT EXISTS bind_worker_idx ON bind(s_host, n_port)";
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(table);
+            stmt.execute(index1);
+        } catch (SQLException sqle) {
+            throw new IOException(sqle);
+        }
+    }
+}
@@ -11,7 +11,6 @@ import com.offbynull.rfm.host.model.requirement.CapacityEnabledRequirement;
 import com.offbynull.rfm.host.model.requirement.CoreRequirement;
 import com.offbynull.rfm.host.model.requirement.CpuRequirement;
 import com.offbynull.rfm.host.model.requirement.GpuRequirement;
-import com.offbynull.rfm.host.model.requirement.HostRequirement;
 import com.offbynull.rfm.host.model.requirement.MountRequirement;
 import com.offbynull.rfm.host.model.requirement.NumberRange;
 import com.offbynull.rfm.host.model.requirement.RamRequirement;
@@ -25,16 +24,13 @@ import com.offbynull.rfm.host.model.specification.MountSpecification;
 import com.offbynull.rfm.host.model.specification.RamSpecification;
 import com.offbynull.rfm.host.model.specification.SocketSpecification;
 import com.offbynull.rfm.host.model.specification.Specification;
-import com.offbynull.rfm.host.parser.Parser;
 import com.offbynull.rfm.host.service.Work;
-import com.offbynull.rfm.host.service.Worker;
 import static com.offbynull.rfm.host.services.h2db.InternalUtils.getSpecificationKeyValues;
-import java.io.IOException;
+import com.offbynull.rfm.host.services.h2db.WorkerIndex.CompiledRequirement;
 import java.math.BigDecimal;
 import static java.math.BigDecimal.ONE;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -49,58 +45,97 @@ final class Binder {
         // do nothing
     }
     
-    public static boolean bind(Connection conn, Parser parser, String workId, String workerHost, int workerPort)
-            throws SQLException, IOException {
+    // Bind work to worker. Capacity for the work gets handed out in the worker index, the work gets marked as bound in the work index, and the
+    // bind gets written to the db. Returns false (without changing anything) if the work or worker doesn't exist, the work is already bound,
+    // the work is still waiting on parents, or the work's requirements don't fit on the worker.
+    //
+    // If this returns true but the transaction ends up not being committed, the caller MUST unbind the work from both indexes.
+    public static boolean bind(Connection conn, WorkIndex workIndex, WorkerIndex workerIndex,
+            String workId, String workerHost, int workerPort) throws SQLException {
+        Validate.notNull(conn);
+        Validate.notNull(workIndex);
+        Validate.notNull(workerIndex);
         Validate.notNull(workId);
         Validate.notNull(workerHost);
         Validate.notEmpty(workId);
         Validate.notEmpty(workerHost);
         Validate.isTrue(workerPort >= 1 && workerPort <= 65535);
         
-        Worker worker = WorkerGetter.getWorker(conn, workerHost, workerPort);
-        if (worker == null) {
+        CompiledRequirement requirement = workIndex.getWaitingRequirement(workId);
+        if (requirement == null || !workerIndex.bind(workId, workerHost, workerPort, requirement)) {
             return false;
         }
         
-        Work work = WorkGetter.getWork(conn, workId);
-        if (work == null) {
-            return false;
+        String insertBindSql = "insert into bind values (?,?,?)";
+        try (PreparedStatement ps = conn.prepareStatement(insertBindSql)) {
+            ps.setString(1, workId);
+            ps.setString(2, workerHost);
+            ps.setBigDecimal(3, BigDecimal.valueOf(workerPort));
+            ps.executeUpdate();
+        } catch (SQLException | RuntimeException e) {
+            workerIndex.unbind(workId);
+            throw e;
         }
+        workIndex.setBound(workId, true);
         
-        String bindCheckSql = "select count(*) bind where work_id=?";
-        try (PreparedStatement ps = conn.prepareStatement(bindCheckSql);
-                ResultSet rs = ps.executeQuery()) {
-            rs.next();
-            int count = rs.getInt(1);
-            if (count > 0) {
-                return false;
-            }
-        }
+        return true;
+    }
+    
+    // Removes the bind from the db. Returns false if the work wasn't bound to the worker. The caller is responsible for unbinding the work
+    // from the worker index while the locks are still held (and restoring it if the commit fails).
+    public static boolean unbind(Connection conn, String workId, String workerHost, int workerPort) throws SQLException {
+        Validate.notNull(conn);
+        Validate.notNull(workId);
+        Validate.notNull(workerHost);
+        Validate.notEmpty(workId);
+        Validate.notEmpty(workerHost);
+        Validate.isTrue(workerPort >= 1 && workerPort <= 65535);
         
-        String parentCheckSql = "select count(*) from work_parent where id=?";
-        try (PreparedStatement ps = conn.prepareStatement(parentCheckSql);
-                ResultSet rs = ps.executeQuery()) {
-            rs.next();
-            int count = rs.getInt(1);
-            if (count > 0) {
-                return false;
-            }
+        String deleteBindSql = "delete from bind where work_id=? and s_host=? and n_port=?";
+        try (PreparedStatement ps = conn.prepareStatement(deleteBindSql)) {
+            ps.setString(1, workId);
+            ps.setString(2, workerHost);
+            ps.setBigDecimal(3, BigDecimal.valueOf(workerPort));
+            return ps.executeUpdate() > 0;
         }
+    }
+    
+    // Removes the bind of work from the db, whatever worker it's bound to. Returns false if the work wasn't bound. The bind references
+    // work_lock rather than work, so deleting work needs to call this -- it doesn't go away with the work row. The caller is responsible
+    // for unbinding the work from the worker index while the locks are still held (and restoring it if the commit fails).
+    public static boolean unbind(Connection conn, String workId) throws SQLException {
+        Validate.notNull(conn);
+        Validate.notNull(workId);
+        Validate.notEmpty(workId);
         
+        String deleteBindSql = "delete from bind where work_id=?";
+        try (PreparedStatement ps = conn.prepareStatement(deleteBindSql)) {
+            ps.setString(1, workId);
+            return ps.executeUpdate() > 0;
+        }
+    }
+    
+    // Find the lowest priority work that isn't bound, isn't waiting on parents, and fits on the worker as it is right now. Finding the work
+    // happens entirely against the work index and the worker index -- the db only gets read to load the work that was found.
+    public static Work findBindableWork(Connection conn, WorkIndex workIndex, WorkerIndex workerIndex,
+            String workerHost, int workerPort) throws SQLException {
+        Validate.notNull(conn);
+        Validate.notNull(workIndex);
+        Validate.notNull(workerIndex);
+        Validate.notNull(workerHost);
+        Validate.notEmpty(workerHost);
+        Validate.isTrue(workerPort >= 1 && workerPort <= 65535);
         
-        Map<String, Object> tags = work.getTags();
-        String reqScript = work.getRequirementsScript();
-        HostRequirement preBindHostReq = parser.parseScriptReqs(tags, reqScript);
+        if (!workerIndex.contains(workerHost, workerPort)) {
+            return null;
+        }
         
-        String insertBindSql = "insert into bind values (?,?,?)";
-        try (PreparedStatement ps = conn.prepareStatement(insertBindSql)) {
-            ps.setString(1, workId);
-            ps.setString(2, workerHost);
-            ps.setBigDecimal(3, BigDecimal.valueOf(workerPort));
-            ps.executeUpdate();
+        String workId = workIndex.findBindable(workerIndex, workerHost, workerPort);
+        if (workId == null) {
+            return null;
         }
         
-        return false;
+        return WorkGetter.getWork(conn, workId); // null if the work was deleted since it was found
     }
     
 
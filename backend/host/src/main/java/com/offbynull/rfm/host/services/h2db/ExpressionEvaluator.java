@@ -8,12 +8,12 @@ import com.offbynull.rfm.host.model.expression.RequirementFunctionBuiltIns;
 import com.offbynull.rfm.host.model.expression.VariableExpression;
 import java.math.BigDecimal;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import org.apache.commons.collections4.map.UnmodifiableMap;
 import static org.apache.commons.collections4.map.UnmodifiableMap.unmodifiableMap;
+import org.apache.commons.lang3.Validate;
 
 final class ExpressionEvaluator {
     private final UnmodifiableMap<String, Function<Object[], Object>> functions;
@@ -84,48 +84,37 @@ final class ExpressionEvaluator {
         this.functions = (UnmodifiableMap<String, Function<Object[], Object>>) unmodifiableMap(new HashMap<>(functionsCopy));
     }
 
-    public Object evaluate(Expression expression, Map<String, Object> properties) {
-        Set<String> varNames = new HashSet<>();
-        collectVariableNames(expression, varNames);
-        
-        if (!varNames.containsAll(properties.keySet())) {
-            return null;
-        }
-        
-        return coreEvaluate(expression, properties);
-    }
-    
-    private Object coreEvaluate(Expression expression, Map<String, Object> properties) {
+    // Evaluates expression, pulling variables from the resolver -- resolver gets passed the variable's scope (e.g. cpu, socket, host) and
+    // name and returns its value, or null if it doesn't exist. Missing variables propagate up as null (the same way null works in SQL), so
+    // the caller should treat anything other than Boolean.TRUE as a failed condition.
+    public Object evaluate(Expression expression, BiFunction<String, String, Object> variables) {
         if (expression instanceof LiteralExpression) {
             return ((LiteralExpression) expression).getValue();
         } else if (expression instanceof VariableExpression) {
-            String name = ((VariableExpression) expression).getName();
-            return properties.get(name);
+            VariableExpression varExpr = (VariableExpression) expression;
+            return variables.apply(varExpr.getScope(), varExpr.getName());
         } else if (expression instanceof InvocationExpression) {
             InvocationExpression invExpr = ((InvocationExpression) expression);
             
             RequirementFunction func = invExpr.getFunction();
             String funcName = func.getName();
             Function<Object[], Object> funcImpl = functions.get(funcName);
+            Validate.validState(funcImpl != null, "No implementation for function %s", funcName);
             
-            Object[] funcArgs = invExpr.getArguments().stream().map(x -> evaluate(x, properties)).toArray();
+            Object[] funcArgs = new Object[invExpr.getArguments().size()];
+            int idx = 0;
+            for (Expression argExpr : invExpr.getArguments()) {
+                Object arg = evaluate(argExpr, variables);
+                if (arg == null) {
+                    return null;
+                }
+                funcArgs[idx] = arg;
+                idx++;
+            }
             
             return funcImpl.apply(funcArgs);
         } else {
             throw new IllegalArgumentException();
         }
     }
-    
-    private void collectVariableNames(Expression expression, Set<String> varNames) {
-        if (expression instanceof VariableExpression) {
-            String name = ((VariableExpression) expression).getName();
-            varNames.add(name);
-        } else if (expression instanceof InvocationExpression) {
-            for (Expression childExpression : ((InvocationExpression) expression).getArguments()) {
-                collectVariableNames(childExpression, varNames);
-            }
-        } else {
-            throw new IllegalArgumentException();
-        }
-    }
 }
@@ -16,6 +16,7 @@
  */
 package com.offbynull.rfm.host.services.h2db;
 
+import com.offbynull.rfm.host.parser.Parser;
 import com.offbynull.rfm.host.service.Work;
 import com.offbynull.rfm.host.service.Worker;
 import com.offbynull.rfm.host.service.Bind;
@@ -23,20 +24,25 @@ import com.offbynull.rfm.host.service.Direction;
 import com.offbynull.rfm.host.service.HostService;
 import com.offbynull.rfm.host.service.StoredWork;
 import com.offbynull.rfm.host.service.StoredWorker;
-import com.offbynull.rfm.host.services.h2db.InternalUtils.DecomposedWorkCursor;
-import com.offbynull.rfm.host.services.h2db.InternalUtils.DecomposedWorkerCursor;
-import static com.offbynull.rfm.host.services.h2db.InternalUtils.fromWorkCursor;
+import com.offbynull.rfm.host.services.h2db.WorkIndex.Change;
+import com.offbynull.rfm.host.services.h2db.WorkerIndex.Allocation;
+import com.offbynull.rfm.host.services.h2db.WorkerIndex.CompiledRequirement;
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.sql.Connection;
 import static java.sql.Connection.TRANSACTION_READ_COMMITTED;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import static java.util.Collections.emptyList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import javax.sql.DataSource;
 import org.apache.commons.lang3.Validate;
 import static com.offbynull.rfm.host.services.h2db.InternalUtils.toWorkerCursor;
-import static com.offbynull.rfm.host.services.h2db.InternalUtils.fromWorkerCursor;
 import static com.offbynull.rfm.host.services.h2db.InternalUtils.toWorkCursor;
 
 /**
@@ -44,11 +50,26 @@ import static com.offbynull.rfm.host.services.h2db.InternalUtils.toWorkCursor;
  * @author Kasra Faghihi
  */
 public class H2dbHostService implements HostService {
+    private static final int UPDATE_WORKERS_GROUP_SIZE = 256; // workers written (and locked) per transaction by updateWorkers()
+    private static final Comparator<Worker> WORKER_ORDER = Comparator
+            .comparing((Worker w) -> (String) w.getHostSpecification().getProperties().get("s_host"))
+            .thenComparing(w -> (BigDecimal) w.getHostSpecification().getProperties().get("n_port"));
+    
     private final DataSource dataSource;
+    private final WorkIndex workIndex;     // both indexes are changed while the db locks for the write they mirror are still held
+    private final WorkerIndex workerIndex; // (before commit), so changes hit the indexes in the same order as they hit the db -- undone if
+                                           // commit fails
 
     public H2dbHostService(DataSource dataSource) {
+        this(dataSource, new Parser(emptyList(), emptyList()));
+    }
+
+    public H2dbHostService(DataSource dataSource, Parser parser) {
         Validate.notNull(dataSource);
+        Validate.notNull(parser);
         this.dataSource = dataSource;
+        this.workIndex = new WorkIndex(parser);
+        this.workerIndex = new WorkerIndex();
     }
 
 
@@ -58,6 +79,17 @@ public class H2dbHostService implements HostService {
         try {
             WorkerPrimer.prime(dataSource);
             WorkPrimer.prime(dataSource);
+            BindPrimer.prime(dataSource);
+        } catch (SQLException sqle) {
+            throw new IOException(sqle);
+        }
+        
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            conn.setTransactionIsolation(TRANSACTION_READ_COMMITTED);
+            
+            workIndex.load(conn);
+            workerIndex.load(conn, workIndex);
         } catch (SQLException sqle) {
             throw new IOException(sqle);
         }
@@ -66,15 +98,23 @@ public class H2dbHostService implements HostService {
     @Override
     public void updateWork(Work work) throws IOException {
         Validate.notNull(work);
+        CompiledRequirement requirement = workIndex.compile(work); // null if it never fits
         try (Connection conn = dataSource.getConnection()) {
             conn.setAutoCommit(false);
             conn.setTransactionIsolation(TRANSACTION_READ_COMMITTED);
             
+            Change change;
             try (WorkLock workLock = WorkLock.lock(conn, work)) {
-                WorkSetter.setWork(conn, work);
+                WorkSetter.setWork(conn, work); // bind row (if any) stays put, so does the capacity it was handed in the worker index
+                change = workIndex.put(work, requirement);
             }
             
-            conn.commit();
+            try {
+                conn.commit();
+            } catch (SQLException sqle) {
+                workIndex.undo(change);
+                throw sqle;
+            }
         } catch (SQLException sqle) {
             throw new IOException(sqle);
         }
@@ -88,11 +128,24 @@ public class H2dbHostService implements HostService {
             conn.setAutoCommit(false);
             conn.setTransactionIsolation(TRANSACTION_READ_COMMITTED);
             
+            Allocation unbound;
+            Change change;
             try (WorkLock workLock = WorkLock.lock(conn, id)) {
+                Binder.unbind(conn, id);
                 WorkDeleter.deleteWork(conn, id);
+                unbound = workerIndex.unbind(id);
+                change = workIndex.remove(id);
             }
             
-            conn.commit();
+            try {
+                conn.commit();
+            } catch (SQLException sqle) {
+                workIndex.undo(change);
+                if (unbound != null) {
+                    workerIndex.restore(unbound);
+                }
+                throw sqle;
+            }
         } catch (SQLException sqle) {
             throw new IOException(sqle);
         }
@@ -124,7 +177,7 @@ public class H2dbHostService implements HostService {
         Validate.notNull(direction);
         Validate.isTrue(max >= 0);
         
-        if (max <= 2048) {
+        if (max > 2048) {
             throw new IOException("Max too high"); // not a real restriction, but we want to avoid clobbering the db
         }
 
@@ -132,22 +185,11 @@ public class H2dbHostService implements HostService {
             conn.setAutoCommit(false);
             conn.setTransactionIsolation(TRANSACTION_READ_COMMITTED);
             
-            List<String> nextKeys;
+            List<StoredWork> nextStoredWorks;
             if (key == null) {
-                nextKeys = WorkScanner.scanWorks(conn, direction, max);
+                nextStoredWorks = WorkScanner.scanAndGetWorks(conn, direction, max);
             } else {
-                nextKeys = WorkScanner.scanWorks(conn, key, direction, max);
-            }
-            
-            List<StoredWork> nextStoredWorks = new ArrayList<>(nextKeys.size());
-            for (String nextKey : nextKeys) {
-                DecomposedWorkCursor decomposedLastCursor = fromWorkCursor(nextKey);
-                String id = decomposedLastCursor.getId();
-                
-                Work nextWork = WorkGetter.getWork(conn, id);
-                StoredWork nextStoredWork = new StoredWork(nextKey, nextWork);
-                
-                nextStoredWorks.add(nextStoredWork);
+                nextStoredWorks = WorkScanner.scanAndGetWorks(conn, key, direction, max);
             }
             
             return nextStoredWorks;
@@ -165,16 +207,80 @@ public class H2dbHostService implements HostService {
             conn.setAutoCommit(false);
             conn.setTransactionIsolation(TRANSACTION_READ_COMMITTED);
             
+            Worker replaced;
             try (WorkerLock workerLock = WorkerLock.lock(conn, worker)) {
                 WorkerSetter.setWorker(conn, worker);
+                replaced = workerIndex.put(worker);
             }
             
-            conn.commit();
+            try {
+                conn.commit();
+            } catch (SQLException sqle) {
+                undoPut(worker, replaced);
+                throw sqle;
+            }
         } catch (SQLException sqle) {
             throw new IOException(sqle);
         }
     }
 
+    @Override
+    public void updateWorkers(Collection<Worker> workers) throws IOException {
+        Validate.notNull(workers);
+        Validate.noNullElements(workers);
+        
+        // Lock workers in a consistent order -- concurrent bulk updates with overlapping workers would deadlock otherwise.
+        List<Worker> sortedWorkers = new ArrayList<>(workers);
+        sortedWorkers.sort(WORKER_ORDER);
+        for (int i = 1; i < sortedWorkers.size(); i++) {
+            Validate.isTrue(WORKER_ORDER.compare(sortedWorkers.get(i - 1), sortedWorkers.get(i)) != 0, "Duplicate worker");
+        }
+        
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            conn.setTransactionIsolation(TRANSACTION_READ_COMMITTED);
+            
+            for (int start = 0; start < sortedWorkers.size(); start += UPDATE_WORKERS_GROUP_SIZE) {
+                int end = Math.min(start + UPDATE_WORKERS_GROUP_SIZE, sortedWorkers.size());
+                List<Worker> group = sortedWorkers.subList(start, end);
+                
+                List<WorkerLock> workerLocks = new ArrayList<>(group.size());
+                List<Worker> replaced = new ArrayList<>(group.size());
+                try {
+                    for (Worker worker : group) {
+                        workerLocks.add(WorkerLock.lock(conn, worker));
+                    }
+                    WorkerSetter.setWorkers(conn, group);
+                    for (Worker worker : group) {
+                        replaced.add(workerIndex.put(worker));
+                    }
+                } finally {
+                    workerLocks.forEach(WorkerLock::close);
+                }
+                
+                try {
+                    conn.commit();
+                } catch (SQLException sqle) {
+                    for (int i = replaced.size() - 1; i >= 0; i--) {
+                        undoPut(group.get(i), replaced.get(i));
+                    }
+                    throw sqle;
+                }
+            }
+        } catch (SQLException sqle) {
+            throw new IOException(sqle);
+        }
+    }
+
+    private void undoPut(Worker worker, Worker replaced) {
+        if (replaced != null) {
+            workerIndex.put(replaced);
+        } else {
+            Map<String, Object> props = worker.getHostSpecification().getProperties();
+            workerIndex.remove((String) props.get("s_host"), ((BigDecimal) props.get("n_port")).intValueExact());
+        }
+    }
+
     @Override
     public void deleteWorker(String host, int port) throws IOException {
         Validate.notNull(host);
@@ -184,11 +290,23 @@ public class H2dbHostService implements HostService {
             conn.setAutoCommit(false);
             conn.setTransactionIsolation(TRANSACTION_READ_COMMITTED);
             
+            Worker removed;
             try (WorkerLock workerLock = WorkerLock.lock(conn, host, port)) {
+                if (workerIndex.isBound(host, port)) {
+                    throw new IllegalStateException("Worker has work bound to it");
+                }
                 WorkerDeleter.deleteWorker(conn, host, port);
+                removed = workerIndex.remove(host, port);
             }
             
-            conn.commit();
+            try {
+                conn.commit();
+            } catch (SQLException sqle) {
+                if (removed != null) {
+                    workerIndex.put(removed);
+                }
+                throw sqle;
+            }
         } catch (SQLException sqle) {
             throw new IOException(sqle);
         }
@@ -221,7 +339,7 @@ public class H2dbHostService implements HostService {
         Validate.notNull(direction);
         Validate.isTrue(max >= 0);
         
-        if (max <= 2048) {
+        if (max > 2048) {
             throw new IOException("Max too high"); // not a real restriction, but we want to avoid clobbering the db
         }
 
@@ -236,14 +354,11 @@ public class H2dbHostService implements HostService {
                 nextKeys = WorkerScanner.scanWorkers(conn, key, direction, max);
             }
             
-            List<StoredWorker> nextStoredWorkers = new ArrayList<>(nextKeys.size());
-            for (String nextKey : nextKeys) {
-                DecomposedWorkerCursor decomposedLastCursor = fromWorkerCursor(nextKey);
-                String nextHost = decomposedLastCursor.getHost();
-                int nextPort = decomposedLastCursor.getPort();
-                
-                Worker nextWorker = WorkerGetter.getWorker(conn, nextHost, nextPort);
-                StoredWorker nextStoredWorker = new StoredWorker(nextKey, nextWorker);
+            Map<String, Worker> nextWorkers = WorkerGetter.getWorkers(conn, nextKeys);
+            
+            List<StoredWorker> nextStoredWorkers = new ArrayList<>(nextWorkers.size());
+            for (Entry<String, Worker> nextEntry : nextWorkers.entrySet()) {
+                StoredWorker nextStoredWorker = new StoredWorker(nextEntry.getKey(), nextEntry.getValue());
                 
                 nextStoredWorkers.add(nextStoredWorker);
             }
@@ -258,12 +373,74 @@ public class H2dbHostService implements HostService {
 
     @Override
     public void bind(String id, String host, int port) throws IOException {
-        throw new UnsupportedOperationException();
+        Validate.notNull(id);
+        Validate.notNull(host);
+        Validate.notEmpty(id);
+        Validate.notEmpty(host);
+        Validate.isTrue(port >= 1 && port <= 65535);
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            conn.setTransactionIsolation(TRANSACTION_READ_COMMITTED);
+            
+            boolean bound;
+            try (WorkLock workLock = WorkLock.lock(conn, id);
+                    WorkerLock workerLock = WorkerLock.lock(conn, host, port)) {
+                bound = Binder.bind(conn, workIndex, workerIndex, id, host, port);
+            }
+            
+            if (!bound) {
+                conn.rollback();
+                throw new IllegalStateException("Unable to bind " + id + " to " + toWorkerCursor(host, port));
+            }
+            
+            try {
+                conn.commit();
+            } catch (SQLException sqle) {
+                workIndex.setBound(id, false);
+                workerIndex.unbind(id);
+                throw sqle;
+            }
+        } catch (SQLException sqle) {
+            throw new IOException(sqle);
+        }
     }
 
     @Override
     public void unbind(String id, String host, int port) throws IOException {
-        throw new UnsupportedOperationException();
+        Validate.notNull(id);
+        Validate.notNull(host);
+        Validate.notEmpty(id);
+        Validate.notEmpty(host);
+        Validate.isTrue(port >= 1 && port <= 65535);
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            conn.setTransactionIsolation(TRANSACTION_READ_COMMITTED);
+            
+            boolean removed;
+            Allocation unbound = null;
+            try (WorkLock workLock = WorkLock.lock(conn, id);
+                    WorkerLock workerLock = WorkerLock.lock(conn, host, port)) {
+                removed = Binder.unbind(conn, id, host, port);
+                if (removed) {
+                    unbound = workerIndex.unbind(id);
+                    workIndex.setBound(id, false);
+                }
+            }
+            
+            try {
+                conn.commit();
+            } catch (SQLException sqle) {
+                if (removed) {
+                    workIndex.setBound(id, true);
+                }
+                if (unbound != null) {
+                    workerIndex.restore(unbound);
+                }
+                throw sqle;
+            }
+        } catch (SQLException sqle) {
+            throw new IOException(sqle);
+        }
     }
 
     @Override
@@ -280,6 +457,22 @@ public class H2dbHostService implements HostService {
 
     @Override
     public StoredWork findBindableWork(String host, int port) throws IOException {
-        throw new UnsupportedOperationException();
+        Validate.notNull(host);
+        Validate.notEmpty(host);
+        Validate.isTrue(port >= 1 && port <= 65535);
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            conn.setTransactionIsolation(TRANSACTION_READ_COMMITTED);
+            
+            Work work = Binder.findBindableWork(conn, workIndex, workerIndex, host, port);
+            if (work == null) {
+                return null;
+            }
+            
+            String key = toWorkCursor(work.getPriority(), work.getId());
+            return new StoredWork(key, work);
+        } catch (SQLException sqle) {
+            throw new IOException(sqle);
+        }
     }
 }
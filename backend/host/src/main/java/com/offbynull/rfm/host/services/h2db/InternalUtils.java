@@ -125,7 +125,7 @@ final class InternalUtils {
             UnmodifiableList<Requirement> childRequirements = (UnmodifiableList<Requirement>) method.invoke(object);
             
             long typesReturnedByMethod = childRequirements.stream().map(cr -> cr.getClass()).distinct().count();
-            Validate.validState(typesReturnedByMethod == 1L);
+            Validate.validState(typesReturnedByMethod <= 1L); // 0 if list is empty
             
             return childRequirements;
         } catch (IllegalArgumentException | ReflectiveOperationException ex) {
@@ -6,13 +6,24 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singletonList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import org.apache.commons.lang3.Validate;
 
 final class WorkGetter {
+    private static final int IDS_PER_QUERY = 512; // max ids read in one go -- larger requests get split up
+
     private WorkGetter() {
         // do nothing
     }
@@ -22,39 +33,88 @@ final class WorkGetter {
         Validate.notNull(id);
         Validate.notEmpty(id);
 
-        InternalCore core = readCore(conn, id);
-        Map<String, Object> tags = readTags(conn, id);
-        Set<String> parentIds = readParents(conn, id);
-        
-        return new Work(id, core.priority, parentIds, tags, core.requirementsScript);
+        return getWorks(conn, singletonList(id)).get(id);
     }
-    
-    private static InternalCore readCore(Connection conn, String id) throws SQLException {
-        String selectWorkStr = "select priority,script from work where id=?";
+
+    // Returns works keyed by id, in the same order as the ids passed in. Ids for works that don't exist are left out of the returned map.
+    public static Map<String, Work> getWorks(Connection conn, Collection<String> ids) throws SQLException {
+        Validate.notNull(conn);
+        Validate.notNull(ids);
+        Validate.noNullElements(ids);
+
+        List<String> orderedIds = new ArrayList<>(new LinkedHashSet<>(ids));
+
+        Map<String, Work> found = new HashMap<>();
+        String selectWorkStr = "select x.id,x.priority,x.script from work x inner join table(id varchar=?) k on x.id=k.id";
         try (PreparedStatement selectWorkPs = conn.prepareStatement(selectWorkStr)) {
-            selectWorkPs.setString(1, id);
-            try (ResultSet rs = selectWorkPs.executeQuery()) {
-                if (!rs.next()) {
-                    return null;
+            for (int start = 0; start < orderedIds.size(); start += IDS_PER_QUERY) {
+                int end = Math.min(start + IDS_PER_QUERY, orderedIds.size());
+                selectWorkPs.setObject(1, orderedIds.subList(start, end).stream().toArray(len -> new String[len]));
+                try (ResultSet rs = selectWorkPs.executeQuery()) {
+                    found.putAll(readWorks(conn, rs));
                 }
-                
-                BigDecimal priority = rs.getBigDecimal("priority");
-                String requirementsScript = rs.getString("script");
-                Validate.validState(priority != null);
-                Validate.validState(requirementsScript != null);
-                
-                return new InternalCore(priority, requirementsScript);
             }
         }
+
+        Map<String, Work> ret = new LinkedHashMap<>();
+        for (String id : orderedIds) {
+            Work work = found.get(id);
+            if (work != null) {
+                ret.put(id, work);
+            }
+        }
+        return ret;
+    }
+
+    // Turns rows from the work table (must have id, priority, and script columns) into works. The tags and parents for all the rows get
+    // read in 1 query each, so the number of queries stays the same no matter how many rows there are. Returned map is in row order.
+    static Map<String, Work> readWorks(Connection conn, ResultSet rs) throws SQLException {
+        Validate.notNull(conn);
+        Validate.notNull(rs);
+
+        Map<String, InternalCore> cores = new LinkedHashMap<>();
+        while (rs.next()) {
+            String id = rs.getString("id");
+            BigDecimal priority = rs.getBigDecimal("priority");
+            String requirementsScript = rs.getString("script");
+            Validate.validState(id != null);
+            Validate.validState(priority != null);
+            Validate.validState(requirementsScript != null);
+
+            cores.put(id, new InternalCore(priority, requirementsScript));
+        }
+
+        Map<String, Work> ret = new LinkedHashMap<>();
+        if (cores.isEmpty()) {
+            return ret;
+        }
+
+        String[] ids = cores.keySet().stream().toArray(len -> new String[len]);
+        Map<String, Map<String, Object>> tags = readTags(conn, ids);
+        Map<String, Set<String>> parentIds = readParents(conn, ids);
+
+        for (Entry<String, InternalCore> entry : cores.entrySet()) {
+            String id = entry.getKey();
+            InternalCore core = entry.getValue();
+            Work work = new Work(
+                    id,
+                    core.priority,
+                    parentIds.getOrDefault(id, emptySet()),
+                    tags.getOrDefault(id, emptyMap()),
+                    core.requirementsScript);
+            ret.put(id, work);
+        }
+        return ret;
     }
     
-    private static Map<String, Object> readTags(Connection conn, String id) throws SQLException {
-        String selectWorkStr = "select name,val_b,val_n,val_s from work_tag where id=?";
+    private static Map<String, Map<String, Object>> readTags(Connection conn, String[] ids) throws SQLException {
+        String selectWorkStr = "select x.id,x.name,x.val_b,x.val_n,x.val_s from work_tag x inner join table(id varchar=?) k on x.id=k.id";
         try (PreparedStatement selectWorkPs = conn.prepareStatement(selectWorkStr)) {
-            selectWorkPs.setString(1, id);
+            selectWorkPs.setObject(1, ids);
             try (ResultSet rs = selectWorkPs.executeQuery()) {
-                Map<String, Object> tags = new HashMap<>();
+                Map<String, Map<String, Object>> tags = new HashMap<>();
                 while (rs.next()) {
+                    String id = rs.getString("id");
                     String name = rs.getString("name");
                     Object value;
                     
@@ -73,24 +133,25 @@ final class WorkGetter {
                             throw new IllegalStateException();
                     }
                     
-                    tags.put(name, value);
+                    tags.computeIfAbsent(id, k -> new HashMap<>()).put(name, value);
                 }
                 return tags;
             }
         }
     }
     
-    private static Set<String> readParents(Connection conn, String id) throws SQLException {
-        String selectWorkStr = "select parent_id from work_parent where id=?";
+    private static Map<String, Set<String>> readParents(Connection conn, String[] ids) throws SQLException {
+        String selectWorkStr = "select x.id,x.parent_id from work_parent x inner join table(id varchar=?) k on x.id=k.id";
         try (PreparedStatement selectWorkPs = conn.prepareStatement(selectWorkStr)) {
-            selectWorkPs.setString(1, id);
+            selectWorkPs.setObject(1, ids);
             try (ResultSet rs = selectWorkPs.executeQuery()) {
-                Set<String> parents = new HashSet<>();
+                Map<String, Set<String>> parents = new HashMap<>();
                 while (rs.next()) {
+                    String id = rs.getString("id");
                     String parentId = rs.getString("parent_id");
                     Validate.validState(parentId != null);
                     
-                    parents.add(parentId);
+                    parents.computeIfAbsent(id, k -> new HashSet<>()).add(parentId);
                 }
                 return parents;
             }
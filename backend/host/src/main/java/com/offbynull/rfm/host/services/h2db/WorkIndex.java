@@ -0,0 +1,283 @@
+package com.offbynull.rfm.host.services.h2db;
+
+import com.offbynull.rfm.host.model.requirement.HostRequirement;
+import com.offbynull.rfm.host.parser.Parser;
+import static com.offbynull.rfm.host.service.Direction.FORWARD;
+import com.offbynull.rfm.host.service.StoredWork;
+import com.offbynull.rfm.host.service.Work;
+import com.offbynull.rfm.host.services.h2db.WorkerIndex.CompiledRequirement;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptySet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// In-memory index of every work's compiled requirements, parents, and whether it's bound. Work that's waiting (not bound and not waiting
+// on parents) is kept in a set ordered the same way the work table is scanned (priority then id), so finding bindable work for a worker
+// walks that set and checks each one against the worker index without touching the database.
+//
+// The database is the source of truth. load() rebuilds the index from the database, after which the service keeps it in sync as work gets
+// updated/deleted and bound/unbound. Changes get applied while the db locks for the write they mirror are still held, and put()/remove()
+// hand back a Change that undo() uses to back them out if the write doesn't get committed.
+//
+// Rewriting or deleting work cascades to the work_parent rows of its children, so any children of that work stop waiting on it -- the
+// index does the same.
+//
+// Work whose requirements can't be compiled (bad script, or one that doesn't resolve against the parser's functions) is kept with a null
+// requirement. It never fits anywhere, so it's skipped rather than parsed again each time.
+final class WorkIndex {
+    private static final Logger logger = LoggerFactory.getLogger(WorkIndex.class);
+
+    private static final int LOAD_PAGE_SIZE = 1024;
+    private static final Comparator<Entry> WAITING_ORDER = Comparator
+            .comparing((Entry e) -> e.priority)
+            .thenComparing(e -> e.id);
+
+    private final Parser parser;
+    private final Map<String, Entry> entries;                   // work id -> work
+    private final Map<String, Set<String>> childrenByParent;    // work id -> ids of work waiting on it
+    private final TreeSet<Entry> waiting;
+
+    WorkIndex(Parser parser) {
+        Validate.notNull(parser);
+        this.parser = parser;
+        this.entries = new HashMap<>();
+        this.childrenByParent = new HashMap<>();
+        this.waiting = new TreeSet<>(WAITING_ORDER);
+    }
+
+    // Compiles requirements of work. Returns null if the requirements can't be compiled (the work never fits). Parsing is slow, so do this
+    // before taking any locks.
+    CompiledRequirement compile(Work work) {
+        Validate.notNull(work);
+
+        try {
+            HostRequirement hostRequirement = parser.parseScriptReqs(work.getTags(), work.getRequirementsScript());
+            return WorkerIndex.compile(hostRequirement);
+        } catch (RuntimeException re) {
+            logger.warn("Unable to compile requirements of work {}, work will never be bound", work.getId(), re);
+            return null;
+        }
+    }
+
+
+
+    // Rebuild the index from the database.
+    synchronized void load(Connection conn) throws SQLException, IOException {
+        Validate.notNull(conn);
+
+        entries.clear();
+        childrenByParent.clear();
+        waiting.clear();
+
+        String cursor = null;
+        while (true) {
+            List<StoredWork> storedWorks = cursor == null
+                    ? WorkScanner.scanAndGetWorks(conn, FORWARD, LOAD_PAGE_SIZE)
+                    : WorkScanner.scanAndGetWorks(conn, cursor, FORWARD, LOAD_PAGE_SIZE);
+            if (storedWorks.isEmpty()) {
+                break;
+            }
+            for (StoredWork storedWork : storedWorks) {
+                Work work = storedWork.getWork();
+                add(new Entry(work.getId(), work.getPriority(), compile(work), work.getParents()));
+            }
+            cursor = storedWorks.get(storedWorks.size() - 1).getKey();
+        }
+
+        String selectBindStr = "select work_id from bind";
+        try (PreparedStatement ps = conn.prepareStatement(selectBindStr);
+                ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                Entry entry = entries.get(rs.getString("work_id"));
+                if (entry != null) {
+                    entry.bound = true;
+                    refresh(entry);
+                }
+            }
+        }
+    }
+
+    // Add/replace work. Replaced work keeps its bind (the bind row stays put when the work gets rewritten) and its children stop waiting
+    // on it. requirement should come from compile() -- null means the work never fits.
+    synchronized Change put(Work work, CompiledRequirement requirement) {
+        Validate.notNull(work);
+
+        String id = work.getId();
+        Entry removed = detach(id);
+        List<String> orphaned = orphan(id);
+        Entry added = new Entry(id, work.getPriority(), requirement, work.getParents());
+        added.bound = removed != null && removed.bound;
+        add(added);
+        return new Change(id, removed, added, orphaned);
+    }
+
+    // Remove work. Children of the removed work stop waiting on it.
+    synchronized Change remove(String id) {
+        Validate.notNull(id);
+
+        Entry removed = detach(id);
+        List<String> orphaned = orphan(id);
+        return new Change(id, removed, null, orphaned);
+    }
+
+    // Back out a change returned by put()/remove().
+    synchronized void undo(Change change) {
+        Validate.notNull(change);
+
+        if (change.added != null && entries.get(change.id) == change.added) {
+            detach(change.id);
+        }
+        if (change.removed != null && !entries.containsKey(change.id)) {
+            change.removed.parents.retainAll(entries.keySet()); // a parent may have been deleted in the meantime
+            add(change.removed);
+        }
+        for (String childId : change.orphaned) {
+            Entry child = entries.get(childId);
+            if (child != null && entries.containsKey(change.id)) {
+                child.parents.add(change.id);
+                childrenByParent.computeIfAbsent(change.id, k -> new LinkedHashSet<>()).add(childId);
+                refresh(child);
+            }
+        }
+    }
+
+    // Returns null if the work doesn't exist or if it isn't waiting (it's bound or it's waiting on parents) or if it never fits.
+    synchronized CompiledRequirement getWaitingRequirement(String id) {
+        Validate.notNull(id);
+
+        Entry entry = entries.get(id);
+        if (entry == null || !isWaiting(entry)) {
+            return null;
+        }
+        return entry.requirement;
+    }
+
+    // Returns null if the work doesn't exist or if it never fits.
+    synchronized CompiledRequirement getRequirement(String id) {
+        Validate.notNull(id);
+
+        Entry entry = entries.get(id);
+        return entry == null ? null : entry.requirement;
+    }
+
+    // Returns false if the work doesn't exist.
+    synchronized boolean setBound(String id, boolean bound) {
+        Validate.notNull(id);
+
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            return false;
+        }
+        entry.bound = bound;
+        refresh(entry);
+        return true;
+    }
+
+    // Id of the first waiting work (in priority order) that fits on the worker as it is right now, or null if nothing fits.
+    synchronized String findBindable(WorkerIndex workerIndex, String host, int port) {
+        Validate.notNull(workerIndex);
+        Validate.notNull(host);
+
+        for (Entry entry : waiting) {
+            if (entry.requirement != null && workerIndex.isBindable(host, port, entry.requirement)) {
+                return entry.id;
+            }
+        }
+        return null;
+    }
+
+    private void add(Entry entry) {
+        entries.put(entry.id, entry);
+        for (String parentId : entry.parents) {
+            childrenByParent.computeIfAbsent(parentId, k -> new LinkedHashSet<>()).add(entry.id);
+        }
+        refresh(entry);
+    }
+
+    private Entry detach(String id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return null;
+        }
+        waiting.remove(entry);
+        for (String parentId : entry.parents) {
+            Set<String> siblings = childrenByParent.getOrDefault(parentId, emptySet());
+            siblings.remove(id);
+            if (siblings.isEmpty()) {
+                childrenByParent.remove(parentId);
+            }
+        }
+        return entry;
+    }
+
+    private List<String> orphan(String id) {
+        Set<String> childIds = childrenByParent.remove(id);
+        if (childIds == null) {
+            return emptyList();
+        }
+        for (String childId : childIds) {
+            Entry child = entries.get(childId);
+            child.parents.remove(id);
+            refresh(child);
+        }
+        return new ArrayList<>(childIds);
+    }
+
+    private void refresh(Entry entry) {
+        if (isWaiting(entry)) {
+            waiting.add(entry);
+        } else {
+            waiting.remove(entry);
+        }
+    }
+
+    private static boolean isWaiting(Entry entry) {
+        return !entry.bound && entry.parents.isEmpty();
+    }
+
+    private static final class Entry {
+        private final String id;
+        private final BigDecimal priority;
+        private final CompiledRequirement requirement; // null if never fits
+        private final Set<String> parents;             // parents still around (waiting on)
+        private boolean bound;
+
+        Entry(String id, BigDecimal priority, CompiledRequirement requirement, Collection<String> parents) {
+            this.id = id;
+            this.priority = priority;
+            this.requirement = requirement;
+            this.parents = new LinkedHashSet<>(parents);
+        }
+    }
+
+    // Change made by put()/remove(). Opaque outside of this class.
+    static final class Change {
+        private final String id;
+        private final Entry removed;            // null if there was nothing to replace/remove
+        private final Entry added;              // null if removed
+        private final List<String> orphaned;    // children that stopped waiting on the work
+
+        private Change(String id, Entry removed, Entry added, List<String> orphaned) {
+            this.id = id;
+            this.removed = removed;
+            this.added = added;
+            this.orphaned = orphaned;
+        }
+    }
+}
@@ -17,6 +17,7 @@ final class WorkPrimer {
             createTableWorkTagSql(conn);
             createTableWorkParentSql(conn);
             createTableWorkWriteTimeSql(conn);
+            createTableWorkLockSql(conn);
         } catch (SQLException sqle) {
             throw new IOException(sqle);
         }
@@ -98,4 +99,18 @@ final class WorkPrimer {
             throw new IOException(sqle);
         }
     }
+
+    private static void createTableWorkLockSql(Connection conn) throws IOException {
+        String table = ""
+                + "CREATE TABLE IF NOT EXISTS work_lock(\n"
+                + "id VARCHAR(2048) NOT NULL,\n"
+                + "PRIMARY KEY(id)\n"
+                + ")";
+        
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(table);
+        } catch (SQLException sqle) {
+            throw new IOException(sqle);
+        }
+    }
 }
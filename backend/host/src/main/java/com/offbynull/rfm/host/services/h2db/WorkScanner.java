@@ -1,6 +1,8 @@
 package com.offbynull.rfm.host.services.h2db;
 
 import com.offbynull.rfm.host.service.Direction;
+import com.offbynull.rfm.host.service.StoredWork;
+import com.offbynull.rfm.host.service.Work;
 import static com.offbynull.rfm.host.service.Direction.BACKWARD;
 import static com.offbynull.rfm.host.service.Direction.FORWARD;
 import com.offbynull.rfm.host.services.h2db.InternalUtils.DecomposedWorkCursor;
@@ -10,8 +12,10 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import org.apache.commons.lang3.Validate;
 import static com.offbynull.rfm.host.services.h2db.InternalUtils.toWorkCursor;
 import static com.offbynull.rfm.host.services.h2db.InternalUtils.fromWorkCursor;
@@ -27,19 +31,7 @@ final class WorkScanner {
         Validate.notNull(direction);
         Validate.isTrue(max >= 0);
         
-        String selectWorkStr = "select id,priority from work";
-        switch (direction) {
-            case FORWARD:
-                selectWorkStr += " order by priority asc,id asc";
-                break;
-            case BACKWARD:
-                selectWorkStr += " order by priority desc,id desc";
-                break;
-            default:
-                throw new IllegalStateException(); // should never happen
-        }
-        selectWorkStr += " limit ?";
-        
+        String selectWorkStr = buildSelect("id,priority", false, direction);
         try (PreparedStatement selectWorkIdPs = conn.prepareStatement(selectWorkStr)) {
             selectWorkIdPs.setInt(1, max);
             return executeAndRead(selectWorkIdPs);
@@ -53,29 +45,80 @@ final class WorkScanner {
         Validate.notEmpty(cursor);
         Validate.isTrue(max >= 0);
         
-        DecomposedWorkCursor decomposedCursor = fromWorkCursor(cursor);
-        String id = decomposedCursor.getId();
-        BigDecimal priority = decomposedCursor.getPriority();
+        String selectWorkStr = buildSelect("priority,id", true, direction);
+        try (PreparedStatement selectWorkIdPs = conn.prepareStatement(selectWorkStr)) {
+            bindCursor(selectWorkIdPs, cursor, max);
+            return executeAndRead(selectWorkIdPs);
+        }
+    }
+    
+    // Same as scanWorks(), but the scan itself pulls back the full work rows rather than just the cursors. Tags and parents for the entire
+    // page are then read in bulk (see WorkGetter.readWorks()), so a page costs the same number of queries regardless of its size.
+    static List<StoredWork> scanAndGetWorks(Connection conn, Direction direction, int max) throws SQLException {
+        Validate.notNull(conn);
+        Validate.notNull(direction);
+        Validate.isTrue(max >= 0);
+        
+        String selectWorkStr = buildSelect("id,priority,script", false, direction);
+        try (PreparedStatement selectWorkPs = conn.prepareStatement(selectWorkStr)) {
+            selectWorkPs.setInt(1, max);
+            return executeAndReadWorks(conn, selectWorkPs);
+        }
+    }
+    
+    static List<StoredWork> scanAndGetWorks(Connection conn, String cursor, Direction direction, int max)
+            throws SQLException, IOException {
+        Validate.notNull(conn);
+        Validate.notNull(cursor);
+        Validate.notNull(direction);
+        Validate.notEmpty(cursor);
+        Validate.isTrue(max >= 0);
         
-        String selectWorkStr = "select priority,id from work";
+        String selectWorkStr = buildSelect("id,priority,script", true, direction);
+        try (PreparedStatement selectWorkPs = conn.prepareStatement(selectWorkStr)) {
+            bindCursor(selectWorkPs, cursor, max);
+            return executeAndReadWorks(conn, selectWorkPs);
+        }
+    }
+    
+    private static String buildSelect(String columns, boolean hasCursor, Direction direction) {
+        String selectWorkStr = "select " + columns + " from work";
         switch (direction) {
             case FORWARD:
-                selectWorkStr += " where (priority=? and id>?) or (priority>?) order by priority asc,id asc";
+                selectWorkStr += hasCursor ? " where (priority=? and id>?) or (priority>?)" : "";
+                selectWorkStr += " order by priority asc,id asc";
                 break;
             case BACKWARD:
-                selectWorkStr += " where (priority=? and id<?) or (priority<?) order by priority desc,id desc";
+                selectWorkStr += hasCursor ? " where (priority=? and id<?) or (priority<?)" : "";
+                selectWorkStr += " order by priority desc,id desc";
                 break;
             default:
                 throw new IllegalStateException(); // should never happen
         }
         selectWorkStr += " limit ?";
+        return selectWorkStr;
+    }
+    
+    private static void bindCursor(PreparedStatement ps, String cursor, int max) throws SQLException, IOException {
+        DecomposedWorkCursor decomposedCursor = fromWorkCursor(cursor);
+        String id = decomposedCursor.getId();
+        BigDecimal priority = decomposedCursor.getPriority();
+        
+        ps.setBigDecimal(1, priority);
+        ps.setString(2, id);
+        ps.setBigDecimal(3, priority);
+        ps.setInt(4, max);
+    }
 
-        try (PreparedStatement selectWorkIdPs = conn.prepareStatement(selectWorkStr)) {
-            selectWorkIdPs.setBigDecimal(1, priority);
-            selectWorkIdPs.setString(2, id);
-            selectWorkIdPs.setBigDecimal(3, priority);
-            selectWorkIdPs.setInt(4, max);
-            return executeAndRead(selectWorkIdPs);
+    private static List<StoredWork> executeAndReadWorks(Connection conn, PreparedStatement selectWorkPs) throws SQLException {
+        try (ResultSet selectWorkRs = selectWorkPs.executeQuery()) {
+            Map<String, Work> works = WorkGetter.readWorks(conn, selectWorkRs);
+            List<StoredWork> ret = new ArrayList<>(works.size());
+            for (Work work : works.values()) {
+                String cursor = toWorkCursor(work.getPriority(), work.getId());
+                ret.add(new StoredWork(cursor, work));
+            }
+            return ret;
         }
     }
 
@@ -0,0 +1,200 @@
+package com.offbynull.rfm.host.services.h2db;
+
+import java.math.BigDecimal;
+import static java.math.BigDecimal.ONE;
+import static java.math.BigDecimal.ZERO;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import org.apache.commons.lang3.Validate;
+import org.h2.jdbc.JdbcConnection;
+
+// Accumulates changes to the cached counts/capacities in the WORKER table for a single spec table within a single db session. As rows in
+// the spec table change, the net change for each host gets tallied up here in memory. Once the statement completes, the tallies get
+// applied as a single relative update per host...
+//
+//   UPDATE worker SET x_count=x_count+?, x_capacity_sum=x_capacity_sum+? WHERE s_host=? AND n_port=?
+//
+// Since the update is relative, concurrent sessions changing the same host don't overwrite each other (the db serializes them on the
+// row lock) -- no need to read the old value and retry if it changed.
+//
+// Instances are tracked per (session, spec table). Sessions are weakly referenced so that abandoned sessions don't leak.
+final class WorkerCacheDeltas {
+    private static final Map<Object, SessionState> SESSIONS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final String name;
+    private final boolean capacityEnabled;
+    private final Map<HostKey, BigDecimal[]> deltas; // host -> {count delta, capacity delta}
+    private boolean immediate;
+
+    private WorkerCacheDeltas(String name, boolean capacityEnabled) {
+        this.name = name;
+        this.capacityEnabled = capacityEnabled;
+        this.deltas = new LinkedHashMap<>();
+    }
+
+    // Get the accumulator for a spec table in the session that conn belongs to, or null if updates to the cache are being suppressed
+    // for that session.
+    static WorkerCacheDeltas get(Connection conn, String name, boolean capacityEnabled) throws SQLException {
+        Validate.notNull(conn);
+        Validate.notNull(name);
+
+        SessionState sessionState = SESSIONS.computeIfAbsent(toSession(conn), k -> new SessionState());
+        if (sessionState.suppressed) {
+            return null;
+        }
+        return sessionState.tables.computeIfAbsent(name, k -> new WorkerCacheDeltas(name, capacityEnabled));
+    }
+
+    // Stop accumulating/applying changes for the session that conn belongs to. Used by code that writes the WORKER table rows itself
+    // (e.g. ingesting an entire host) where per-row tallying would be wasted work. Returns null if conn isn't an H2 connection.
+    static Suppression suppress(Connection conn) throws SQLException {
+        Validate.notNull(conn);
+
+        if (!conn.isWrapperFor(JdbcConnection.class)) {
+            return null;
+        }
+
+        Object session = toSession(conn);
+        SessionState sessionState = SESSIONS.computeIfAbsent(session, k -> new SessionState());
+        Validate.validState(!sessionState.suppressed);
+        sessionState.suppressed = true;
+        sessionState.tables.clear();
+        return new Suppression(sessionState);
+    }
+
+    private static Object toSession(Connection conn) throws SQLException {
+        return conn.unwrap(JdbcConnection.class).getSession();
+    }
+
+    // Called at the start of each statement. Anything left over from a previous statement that failed part way through gets dropped.
+    //
+    // If the session is in autocommit mode, h2 won't allow the statement-level trigger to issue an update (it sees it as a commit within
+    // a trigger), so changes get applied as each row changes instead. The service always works within transactions, so this is only ever
+    // hit by ad-hoc statements.
+    void start(boolean autoCommit) {
+        deltas.clear();
+        immediate = autoCommit;
+    }
+
+    boolean isImmediate() {
+        return immediate;
+    }
+
+    void removed(String host, BigDecimal port, BigDecimal capacity) {
+        add(host, port, ONE.negate(), capacity == null ? null : capacity.negate());
+    }
+
+    void added(String host, BigDecimal port, BigDecimal capacity) {
+        add(host, port, ONE, capacity);
+    }
+
+    private void add(String host, BigDecimal port, BigDecimal count, BigDecimal capacity) {
+        Validate.notNull(host);
+        Validate.notNull(port);
+        Validate.isTrue(capacityEnabled == (capacity != null));
+
+        BigDecimal[] delta = deltas.computeIfAbsent(new HostKey(host, port), k -> new BigDecimal[] { ZERO, ZERO });
+        delta[0] = delta[0].add(count);
+        if (capacity != null) {
+            delta[1] = delta[1].add(capacity);
+        }
+    }
+
+    void apply(Connection conn) throws SQLException {
+        Validate.notNull(conn);
+
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        String updateStmt = "UPDATE worker SET " + name + "_count=" + name + "_count+?"
+                + (capacityEnabled ? ", " + name + "_capacity_sum=" + name + "_capacity_sum+?" : "")
+                + " WHERE s_host=? AND n_port=?";
+        try (PreparedStatement ps = conn.prepareStatement(updateStmt)) {
+            for (Entry<HostKey, BigDecimal[]> entry : deltas.entrySet()) {
+                HostKey hostKey = entry.getKey();
+                BigDecimal[] delta = entry.getValue();
+                if (delta[0].signum() == 0 && delta[1].signum() == 0) {
+                    continue; // e.g. row updated but capacity didn't change
+                }
+
+                // don't use batching here -- h2 treats executeBatch() within a trigger as a commit if autocommit is on
+                int idx = 1;
+                ps.setBigDecimal(idx++, delta[0]);
+                if (capacityEnabled) {
+                    ps.setBigDecimal(idx++, delta[1]);
+                }
+                ps.setString(idx++, hostKey.host);
+                ps.setBigDecimal(idx, hostKey.port);
+                ps.executeUpdate();
+            }
+        } finally {
+            deltas.clear();
+        }
+    }
+
+    static final class Suppression implements AutoCloseable {
+        private final SessionState sessionState;
+
+        private Suppression(SessionState sessionState) {
+            this.sessionState = sessionState;
+        }
+
+        @Override
+        public void close() {
+            sessionState.suppressed = false;
+        }
+    }
+
+    private static final class SessionState {
+        private final Map<String, WorkerCacheDeltas> tables = new HashMap<>();
+        private boolean suppressed;
+    }
+
+    private static final class HostKey {
+        private final String host;
+        private final BigDecimal port;
+
+        HostKey(String host, BigDecimal port) {
+            this.host = host;
+            this.port = port.stripTrailingZeros(); // so that 12345 and 12345.0000000000 are the same key
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 7;
+            hash = 41 * hash + Objects.hashCode(this.host);
+            hash = 41 * hash + Objects.hashCode(this.port);
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null) {
+                return false;
+            }
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+            final HostKey other = (HostKey) obj;
+            if (!Objects.equals(this.host, other.host)) {
+                return false;
+            }
+            if (!Objects.equals(this.port, other.port)) {
+                return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.offbynull.rfm.host.services.h2db;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.h2.api.Trigger;
+
+// MUST BE PUBLIC AND NOT INNERCLASS -- OTHERWISE H2 TRIGGER WON'T WORK
+//
+// Keeps the cached counts/capacities in the WORKER table in sync with a spec table. Registered 3 times on each spec table...
+//   1. BEFORE, statement-level: drops anything left over from a previous statement that failed part way through.
+//   2. AFTER, row-level: tallies up the change in count/capacity for the host the row belongs to.
+//   3. AFTER, statement-level: applies the tallies to the WORKER table, 1 update per host.
+// Statement-level firings are the ones where both oldRow and newRow are null. See WorkerCacheDeltas for the autocommit special case.
+//
+// Writers should hold the WorkerLock for the host being changed. If this trigger's update to the WORKER row has to wait on another
+// transaction, h2 (1.4.196) retries it in a way that drops the triggering statement's own changes.
+public final class WorkerCacheTrigger implements Trigger {
+    private final int idx;
+    private final String name;
+    private boolean before;
+
+    public WorkerCacheTrigger(String name) {
+        this(-1, name);
+    }
+
+    public WorkerCacheTrigger(int idx, String name) {
+        Validate.notNull(name);
+        Validate.isTrue(idx == -1 || idx >= 2); // starts with s_host and n_port, so idx of capacity column can't be 0 or 1
+        Validate.notEmpty(name);
+        Validate.isTrue(StringUtils.containsOnly(name, "abcdefghijklmnopqrstuvwxyz"));
+        this.idx = idx;
+        this.name = name;
+    }
+
+    @Override
+    public void init(Connection conn, String schemaName,
+                String triggerName, String tableName, boolean before, int type) throws SQLException {
+        this.before = before;
+    }
+
+    @Override
+    public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+        WorkerCacheDeltas deltas = WorkerCacheDeltas.get(conn, name, idx != -1);
+        if (deltas == null) { // suppressed
+            return;
+        }
+
+        if (oldRow == null && newRow == null) {
+            if (before) {
+                deltas.start(conn.getAutoCommit());
+            } else if (!deltas.isImmediate()) {
+                deltas.apply(conn);
+            }
+            return;
+        }
+
+        // an update is treated as a removal of the old row followed by an addition of the new row -- if the host didn't change, the
+        // count nets out to 0 and the capacity nets out to the difference
+        if (oldRow != null) {
+            validateRow(oldRow);
+            deltas.removed((String) oldRow[0], (BigDecimal) oldRow[1], idx != -1 ? (BigDecimal) oldRow[idx] : null);
+        }
+        if (newRow != null) {
+            validateRow(newRow);
+            deltas.added((String) newRow[0], (BigDecimal) newRow[1], idx != -1 ? (BigDecimal) newRow[idx] : null);
+        }
+
+        if (deltas.isImmediate()) {
+            deltas.apply(conn);
+        }
+    }
+
+    private void validateRow(Object[] row) {
+        Validate.isTrue(row.length >= 2);
+        Validate.isTrue(idx < row.length);
+        Validate.isTrue(row[0] instanceof String);
+        Validate.isTrue(row[1] instanceof BigDecimal);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        // do nothing
+    }
+
+    @Override
+    public void remove() throws SQLException {
+        // do nothing
+    }
+
+}
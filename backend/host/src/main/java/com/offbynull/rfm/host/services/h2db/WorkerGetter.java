@@ -4,11 +4,16 @@ import com.offbynull.rfm.host.model.specification.HostSpecification;
 import com.offbynull.rfm.host.model.specification.Specification;
 import com.offbynull.rfm.host.service.Worker;
 import static com.offbynull.rfm.host.services.h2db.InternalUtils.constructSpecification;
+import static com.offbynull.rfm.host.services.h2db.InternalUtils.fromWorkerCursor;
 import static com.offbynull.rfm.host.services.h2db.InternalUtils.getSpecificationChildClasses;
+import static com.offbynull.rfm.host.services.h2db.InternalUtils.getSpecificationFullKeyFromClasses;
 import static com.offbynull.rfm.host.services.h2db.InternalUtils.getSpecificationKey;
 import static com.offbynull.rfm.host.services.h2db.InternalUtils.getSpecificationName;
 import static com.offbynull.rfm.host.services.h2db.InternalUtils.isSpecificationCapacityEnabled;
 import static com.offbynull.rfm.host.services.h2db.InternalUtils.reduceToSpecificationKey;
+import static com.offbynull.rfm.host.services.h2db.InternalUtils.toWorkerCursor;
+import com.offbynull.rfm.host.services.h2db.InternalUtils.DecomposedWorkerCursor;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import static java.sql.Connection.TRANSACTION_READ_COMMITTED;
@@ -16,21 +21,39 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import static java.util.Arrays.asList;
+import java.util.Collection;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 import static java.util.stream.Collectors.joining;
 import org.apache.commons.lang3.Validate;
 
+// Reads workers in bulk. Rather than walking the spec hierarchy and issuing a query per spec (and another per spec for its properties),
+// each spec table and each prop table gets read once for the entire set of hosts being requested. The rows are then stitched back
+// together into HostSpecifications in memory.
 final class WorkerGetter {
+    private static final int HOSTS_PER_QUERY = 512; // max hosts read in one go -- larger requests get split up
+
+    private static final List<SpecTable> TABLES; // pre-order -- parents always come before children
+    static {
+        List<SpecTable> tables = new ArrayList<>();
+        LinkedList<Class<? extends Specification>> specChainClses = new LinkedList<>();
+        specChainClses.add(HostSpecification.class);
+        recurseCollectTables(specChainClses, null, tables);
+        TABLES = unmodifiableList(tables);
+    }
+
     private WorkerGetter() {
         // do nothing
     }
-    
+
     public static Worker getWorker(Connection conn, String host, int port) throws SQLException {
         Validate.notNull(conn);
         Validate.notNull(host);
@@ -40,178 +63,182 @@ final class WorkerGetter {
         conn.setAutoCommit(false);
         conn.setTransactionIsolation(TRANSACTION_READ_COMMITTED);
 
-        Map<String, Object> dbKeyValues = new LinkedHashMap<>();
-        dbKeyValues.put("s_host", host);
-        dbKeyValues.put("n_port", BigDecimal.valueOf(port));
+        Map<String, Worker> workers = readWorkers(conn, new String[] { host }, new BigDecimal[] { BigDecimal.valueOf(port) });
+        return workers.get(toWorkerCursor(host, port));
+    }
 
-        Set<String> expectedKeys = getSpecificationKey(HostSpecification.class);
-        Validate.isTrue(dbKeyValues.keySet().equals(expectedKeys));
+    // Returns workers keyed by worker cursor (host:port), in the same order as the keys passed in. Keys for workers that don't exist
+    // are left out of the returned map.
+    public static Map<String, Worker> getWorkers(Connection conn, Collection<String> keys) throws SQLException, IOException {
+        Validate.notNull(conn);
+        Validate.notNull(keys);
+        Validate.noNullElements(keys);
 
-        HostSpecification hostSpecification = (HostSpecification) readSpec(conn, dbKeyValues, HostSpecification.class);
-        if (hostSpecification == null) {
-            return null;
+        conn.setAutoCommit(false);
+        conn.setTransactionIsolation(TRANSACTION_READ_COMMITTED);
+
+        LinkedHashSet<String> orderedKeys = new LinkedHashSet<>(keys);
+        List<String> hosts = new ArrayList<>(orderedKeys.size());
+        List<BigDecimal> ports = new ArrayList<>(orderedKeys.size());
+        for (String key : orderedKeys) {
+            DecomposedWorkerCursor decomposedKey = fromWorkerCursor(key);
+            hosts.add(decomposedKey.getHost());
+            ports.add(BigDecimal.valueOf(decomposedKey.getPort()));
         }
 
-        Worker worker = new Worker(hostSpecification);
-        return worker;
-    }
+        Map<String, Worker> found = new HashMap<>();
+        for (int start = 0; start < hosts.size(); start += HOSTS_PER_QUERY) {
+            int end = Math.min(start + HOSTS_PER_QUERY, hosts.size());
+            found.putAll(readWorkers(conn,
+                    hosts.subList(start, end).stream().toArray(len -> new String[len]),
+                    ports.subList(start, end).stream().toArray(len -> new BigDecimal[len])));
+        }
 
-    private static Specification readSpec(
-            Connection conn,
-            Map<String, Object> dbKeyValues,
-            Class<? extends Specification> specCls) throws SQLException {
-        String name = getSpecificationName(specCls);
-        boolean capacityEnabled = isSpecificationCapacityEnabled(specCls);
-        
-        // read spec
-        List<SpecificationRow> specRows = selectSpecificationRows(conn, name, dbKeyValues.keySet(), dbKeyValues, capacityEnabled);
-        switch (specRows.size()) {
-            case 0:
-                return null;
-            case 1:
-                // get spec
-                SpecificationRow specRow = specRows.get(0);
-                
-                // read spec's user properties
-                Map<String, Object> specUserProps = selectSpecificationUserProperties(conn, name, specRow.dbKeyProperties);
-                
-                // create spec
-                Specification spec = createSpecification(conn, specCls, specRow, specUserProps);
-                
-                // add spec to collection
-                return spec;
-            default:
-                throw new IllegalStateException("" + specRows.size());
+        Map<String, Worker> ret = new LinkedHashMap<>();
+        for (String key : orderedKeys) {
+            DecomposedWorkerCursor decomposedKey = fromWorkerCursor(key);
+            Worker worker = found.get(toWorkerCursor(decomposedKey.getHost(), decomposedKey.getPort()));
+            if (worker != null) {
+                ret.put(key, worker);
+            }
         }
+        return ret;
     }
-    
-    private static Specification[] readSpecsByParent(
-            Connection conn,
-            Map<String, Object> parentDbKeyValues,
-            Class<? extends Specification> specCls) throws SQLException {
-        String name = getSpecificationName(specCls);
-        Set<String> key = getSpecificationKey(specCls);
-        boolean capacityEnabled = isSpecificationCapacityEnabled(specCls);
-        
-        Set<String> dbKey = new LinkedHashSet<>(parentDbKeyValues.keySet());
-        dbKey.addAll(key);
-        
-        List<Specification> ret = new ArrayList<>();
-        
-        // read specs -- for each spec
-        List<SpecificationRow> specRows = selectSpecificationRows(conn, name, dbKey, parentDbKeyValues, capacityEnabled);
-        for (SpecificationRow specRow : specRows) {
-            // read spec's user properties
-            Map<String, Object> specUserProps = selectSpecificationUserProperties(conn, name, specRow.dbKeyProperties);
-            
-            // create spec
-            Specification spec = createSpecification(conn, specCls, specRow, specUserProps);
-            
-            // add spec to collection
-            ret.add(spec);
+
+    private static Map<String, Worker> readWorkers(Connection conn, String[] hosts, BigDecimal[] ports) throws SQLException {
+        // read every spec table + prop table for the hosts
+        Map<SpecTable, List<SpecificationRow>> rowsByTable = new HashMap<>();
+        for (SpecTable table : TABLES) {
+            Map<List<Object>, Map<String, Object>> userPropsByKey = selectSpecificationUserProperties(conn, table, hosts, ports);
+            List<SpecificationRow> specRows = selectSpecificationRows(conn, table, hosts, ports, userPropsByKey);
+            rowsByTable.put(table, specRows);
         }
-        
-        return ret.stream().toArray(len -> new Specification[len]);
+
+        // build specs bottom-up -- children get built first and are then grouped by the key of the parent they belong to
+        Map<SpecTable, Map<List<Object>, List<Specification>>> specsByParentKey = new HashMap<>();
+        ListIterator<SpecTable> it = TABLES.listIterator(TABLES.size());
+        while (it.hasPrevious()) {
+            SpecTable table = it.previous();
+
+            Map<List<Object>, List<Specification>> builtSpecs = new HashMap<>();
+            for (SpecificationRow specRow : rowsByTable.get(table)) {
+                Set<Specification> childSpecs = new LinkedHashSet<>();
+                for (SpecTable childTable : table.children) {
+                    childSpecs.addAll(specsByParentKey.get(childTable).getOrDefault(specRow.dbKeyValues, emptyList()));
+                }
+
+                Specification spec = createSpecification(table, specRow, childSpecs);
+
+                List<Object> parentKey = specRow.dbKeyValues.subList(0, table.parentKeySize);
+                builtSpecs.computeIfAbsent(parentKey, k -> new ArrayList<>()).add(spec);
+            }
+            specsByParentKey.put(table, builtSpecs);
+        }
+
+        Map<String, Worker> ret = new HashMap<>();
+        for (Specification spec : specsByParentKey.get(TABLES.get(0)).getOrDefault(emptyList(), emptyList())) {
+            HostSpecification hostSpecification = (HostSpecification) spec;
+            String host = (String) hostSpecification.getProperties().get("s_host");
+            int port = ((BigDecimal) hostSpecification.getProperties().get("n_port")).intValueExact();
+            ret.put(toWorkerCursor(host, port), new Worker(hostSpecification));
+        }
+        return ret;
     }
-    
+
     private static Specification createSpecification(
-            Connection conn,
-            Class<? extends Specification> specCls,
+            SpecTable table,
             SpecificationRow specRow,
-            Map<String, Object> specUserProps) throws SQLException {
-        // read spec's child specs
-        Set<Specification> childSpecs = new LinkedHashSet<>();
-        Set<Class<? extends Specification>> childSpecClses = getSpecificationChildClasses(specCls);
-        for (Class<? extends Specification> childSpecCls : childSpecClses) {
-            Specification[] childSpec = readSpecsByParent(conn, specRow.dbKeyProperties, childSpecCls);
-            childSpecs.addAll(asList(childSpec));
-        }
-
+            Set<Specification> childSpecs) {
         // get key properties
-          // specRow.dbKeyProperties contains the key of ALL specifications in the hierarchy/chain (the full key). For example, if this was
-          // for a cpu spec, it would contain the keys for host, socket, core, and cpu (enough to identify it in the database). We reduce it
-          // to JUST the cpu key, because that's what the Specification expects: the key for just it, not it and everything in its
+          // specRow.dbKeyValues contains the key of ALL specifications in the hierarchy/chain (the full key). For example, if this was for
+          // a cpu spec, it would contain the keys for host, socket, core, and cpu (enough to identify it in the database). We reduce it to
+          // JUST the cpu key, because that's what the Specification expects: the key for just it, not it and everything in its
           // hierarchy.
-        Map<String, Object> specKeyProps = reduceToSpecificationKey(specCls, specRow.dbKeyProperties);
-        
+        Map<String, Object> dbKeyProperties = new LinkedHashMap<>();
+        for (int i = 0; i < table.dbKey.size(); i++) {
+            dbKeyProperties.put(table.dbKey.get(i), specRow.dbKeyValues.get(i));
+        }
+        Map<String, Object> specKeyProps = reduceToSpecificationKey(table.specCls, dbKeyProperties);
+
         // construct spec
         Map<String, Object> specProps = new HashMap<>();
         specProps.putAll(specKeyProps);
-        specProps.putAll(specUserProps);
-        Validate.isTrue(specProps.size() == specKeyProps.size() + specUserProps.size()); // make sure no colliding properties
+        specProps.putAll(specRow.userProperties);
+        Validate.isTrue(specProps.size() == specKeyProps.size() + specRow.userProperties.size()); // make sure no colliding properties
         BigDecimal specCapacity = specRow.capacity;
-        Specification spec = constructSpecification(specCls, childSpecs, specProps, specCapacity);
-        
+        Specification spec = constructSpecification(table.specCls, childSpecs, specProps, specCapacity);
+
         return spec;
     }
-    
+
     private static List<SpecificationRow> selectSpecificationRows(
             Connection conn,
-            String specName,
-            Set<String> selectKeys,
-            Map<String, Object> searchKeys,
-            boolean capacityEnabled) throws SQLException {
+            SpecTable table,
+            String[] hosts,
+            BigDecimal[] ports,
+            Map<List<Object>, Map<String, Object>> userPropsByKey) throws SQLException {
         String selectSpecStr = ""
                 + "SELECT"
-                + " " + selectKeys.stream().collect(joining(",")) + (capacityEnabled ? ",capacity" : "")
-                + " FROM " + specName + "_spec";
-        if (!searchKeys.isEmpty()) {
-            selectSpecStr += " WHERE " + searchKeys.keySet().stream().map(k -> k + "=?").collect(joining(" AND "));
-        }
-        
+                + " " + table.dbKey.stream().map(k -> "x." + k).collect(joining(",")) + (table.capacityEnabled ? ",x.capacity" : "")
+                + " FROM " + table.name + "_spec x"
+                + " INNER JOIN TABLE(s_host VARCHAR=?, n_port DECIMAL=?) k ON x.s_host=k.s_host AND x.n_port=k.n_port"
+                + " ORDER BY " + table.dbKey.stream().map(k -> "x." + k).collect(joining(","));
+
         try (PreparedStatement ps = conn.prepareStatement(selectSpecStr)) {
-            int idx = 1;
-            for (Object value : searchKeys.values()) {
-                ps.setObject(idx, value);
-                idx++;
-            }
-            
+            ps.setObject(1, hosts);
+            ps.setObject(2, ports);
+
             try (ResultSet rs = ps.executeQuery()) {
                 List<SpecificationRow> specRows = new ArrayList<>();
                 while (rs.next()) {
-                    Map<String, Object> keyProperties = new LinkedHashMap<>();
+                    List<Object> dbKeyValues = new ArrayList<>(table.dbKey.size());
                     BigDecimal capacity = null;
 
-                    for (String name : selectKeys) {
-                        Object value = rs.getObject(name);
-                        keyProperties.put(name, value);
+                    int idx = 1;
+                    for (int i = 0; i < table.dbKey.size(); i++) {
+                        dbKeyValues.add(rs.getObject(idx));
+                        idx++;
                     }
 
-                    if (capacityEnabled) {
-                        capacity = rs.getBigDecimal("capacity");
+                    if (table.capacityEnabled) {
+                        capacity = rs.getBigDecimal(idx);
                     }
-                    
-                    SpecificationRow specRow = new SpecificationRow(keyProperties, capacity);
+
+                    Map<String, Object> userProperties = userPropsByKey.getOrDefault(dbKeyValues, new HashMap<>());
+                    SpecificationRow specRow = new SpecificationRow(dbKeyValues, capacity, userProperties);
                     specRows.add(specRow);
                 }
                 return specRows;
             }
         }
     }
-    
-    private static Map<String, Object> selectSpecificationUserProperties(
+
+    private static Map<List<Object>, Map<String, Object>> selectSpecificationUserProperties(
             Connection conn,
-            String specName,
-            Map<String, Object> searchKeys) throws SQLException {
+            SpecTable table,
+            String[] hosts,
+            BigDecimal[] ports) throws SQLException {
         String selectPropStr = ""
                 + "SELECT"
-                + " name,val_b,val_n,val_s"
-                + " FROM " + specName + "_prop";
-        if (!searchKeys.isEmpty()) {
-            selectPropStr += " WHERE " + searchKeys.keySet().stream().map(k -> k + "=?").collect(joining(" AND "));
-        }
-        
-        Map<String, Object> userProperties = new HashMap<>();
-        
+                + " " + table.dbKey.stream().map(k -> "x." + k).collect(joining(",")) + ",x.name,x.val_b,x.val_n,x.val_s"
+                + " FROM " + table.name + "_prop x"
+                + " INNER JOIN TABLE(s_host VARCHAR=?, n_port DECIMAL=?) k ON x.s_host=k.s_host AND x.n_port=k.n_port";
+
+        Map<List<Object>, Map<String, Object>> userPropertiesByKey = new HashMap<>();
+
         try (PreparedStatement ps = conn.prepareStatement(selectPropStr)) {
-            int idx = 1;
-            for (Object value : searchKeys.values()) {
-                ps.setObject(idx, value);
-                idx++;
-            }
-            
+            ps.setObject(1, hosts);
+            ps.setObject(2, ports);
+
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
+                    List<Object> dbKeyValues = new ArrayList<>(table.dbKey.size());
+                    int idx = 1;
+                    for (int i = 0; i < table.dbKey.size(); i++) {
+                        dbKeyValues.add(rs.getObject(idx));
+                        idx++;
+                    }
+
                     String name = rs.getString("name");
                     Object value;
                     Validate.validState(name.length() >= 2);
@@ -228,21 +255,67 @@ final class WorkerGetter {
                         default:
                             throw new IllegalStateException();
                     }
-                    userProperties.put(name, value);
+                    userPropertiesByKey.computeIfAbsent(dbKeyValues, k -> new HashMap<>()).put(name, value);
                 }
             }
         }
-        
-        return userProperties;
+
+        return userPropertiesByKey;
+    }
+
+    private static SpecTable recurseCollectTables(
+            LinkedList<Class<? extends Specification>> specChainClses,
+            SpecTable parent,
+            List<SpecTable> tables) {
+        Class<? extends Specification> specCls = specChainClses.getLast();
+        List<String> dbKey = new ArrayList<>(getSpecificationFullKeyFromClasses(specChainClses));
+        Validate.validState(dbKey.size() >= 2 && dbKey.get(0).equals("s_host") && dbKey.get(1).equals("n_port"));
+
+        SpecTable table = new SpecTable(
+                specCls,
+                getSpecificationName(specCls),
+                dbKey,
+                parent == null ? 0 : parent.dbKey.size(),
+                isSpecificationCapacityEnabled(specCls));
+        Validate.validState(table.parentKeySize + getSpecificationKey(specCls).size() == dbKey.size()); // parent key must be a prefix
+        tables.add(table);
+
+        for (Class<? extends Specification> childSpecCls : getSpecificationChildClasses(specCls)) {
+            specChainClses.addLast(childSpecCls);
+            table.children.add(recurseCollectTables(specChainClses, table, tables));
+            specChainClses.removeLast();
+        }
+
+        return table;
     }
-    
-    private static class SpecificationRow {
-        private final Map<String, Object> dbKeyProperties;
+
+    private static final class SpecTable {
+        private final Class<? extends Specification> specCls;
+        private final String name;
+        private final List<String> dbKey;  // full key -- parent's full key followed by this spec's key
+        private final int parentKeySize;
+        private final boolean capacityEnabled;
+        private final List<SpecTable> children;
+
+        SpecTable(Class<? extends Specification> specCls, String name, List<String> dbKey, int parentKeySize, boolean capacityEnabled) {
+            this.specCls = specCls;
+            this.name = name;
+            this.dbKey = unmodifiableList(dbKey);
+            this.parentKeySize = parentKeySize;
+            this.capacityEnabled = capacityEnabled;
+            this.children = new ArrayList<>();
+        }
+    }
+
+    private static final class SpecificationRow {
+        private final List<Object> dbKeyValues;
         private final BigDecimal capacity;
+        private final Map<String, Object> userProperties;
 
-        public SpecificationRow(Map<String, Object> keys, BigDecimal capacity) {
-            this.dbKeyProperties = keys;
+        SpecificationRow(List<Object> dbKeyValues, BigDecimal capacity, Map<String, Object> userProperties) {
+            this.dbKeyValues = dbKeyValues;
             this.capacity = capacity;
+            this.userProperties = userProperties;
         }
     }
 }
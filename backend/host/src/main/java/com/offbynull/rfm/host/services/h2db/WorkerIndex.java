@@ -0,0 +1,576 @@
+package com.offbynull.rfm.host.services.h2db;
+
+import com.offbynull.rfm.host.model.expression.Expression;
+import com.offbynull.rfm.host.model.requirement.CapacityEnabledRequirement;
+import com.offbynull.rfm.host.model.requirement.HostRequirement;
+import com.offbynull.rfm.host.model.requirement.NumberRange;
+import com.offbynull.rfm.host.model.requirement.Requirement;
+import com.offbynull.rfm.host.model.specification.HostSpecification;
+import com.offbynull.rfm.host.model.specification.Specification;
+import static com.offbynull.rfm.host.service.Direction.FORWARD;
+import com.offbynull.rfm.host.service.Worker;
+import static com.offbynull.rfm.host.services.h2db.InternalUtils.getRequirementChildren;
+import static com.offbynull.rfm.host.services.h2db.InternalUtils.getRequirementName;
+import static com.offbynull.rfm.host.services.h2db.InternalUtils.getSpecificationCapacity;
+import static com.offbynull.rfm.host.services.h2db.InternalUtils.getSpecificationChildClasses;
+import static com.offbynull.rfm.host.services.h2db.InternalUtils.getSpecificationChildren;
+import static com.offbynull.rfm.host.services.h2db.InternalUtils.getSpecificationKeyValues;
+import static com.offbynull.rfm.host.services.h2db.InternalUtils.getSpecificationName;
+import static com.offbynull.rfm.host.services.h2db.InternalUtils.toWorkerCursor;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.lang3.Validate;
+
+// In-memory index of every worker's spec tree along with how much capacity is still available on each capacity-enabled spec (capacity
+// that hasn't been handed out to bound work). Checking if work fits on a worker happens entirely against this index, without touching the
+// database. Requirements are compiled up front, and the shape of each worker's spec tree (types, parents, children) along with its
+// remaining capacities is flattened into int/long arrays. Spec properties (used by where conditions) are still held as maps and spec keys
+// as lists.
+//
+// The database is the source of truth. load() rebuilds the index from the database, after which the service keeps it in sync as workers
+// get updated/deleted and work gets bound/unbound. The capacity handed out to each bind is tracked by spec key, so updating a worker
+// that has work bound to it carries its binds over to the new spec tree.
+//
+// Matching is greedy (first fit) in the same way Binder's partitioning is.
+final class WorkerIndex {
+    private static final int LOAD_PAGE_SIZE = 1024;
+    private static final BigDecimal LONG_MIN = BigDecimal.valueOf(Long.MIN_VALUE);
+    private static final BigDecimal LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+
+    private static final Map<String, Integer> TYPE_IDS; // spec name -> type id used in the arrays below (host is 0)
+    private static final int[] HOST_NODE = new int[] { 0 };
+    static {
+        Map<String, Integer> typeIds = new HashMap<>();
+        LinkedList<Class<? extends Specification>> pending = new LinkedList<>();
+        pending.add(HostSpecification.class);
+        while (!pending.isEmpty()) {
+            Class<? extends Specification> specCls = pending.removeFirst();
+            typeIds.putIfAbsent(getSpecificationName(specCls), typeIds.size());
+            pending.addAll(getSpecificationChildClasses(specCls));
+        }
+        TYPE_IDS = unmodifiableMap(typeIds);
+    }
+
+    private final ExpressionEvaluator evaluator;
+    private final Map<String, IndexedWorker> workers;            // worker cursor -> worker
+    private final Map<String, Allocation> allocations;           // work id -> capacity handed out to it
+    private final Map<String, Set<String>> allocationsByWorker;  // worker cursor -> work ids
+
+    WorkerIndex() {
+        this.evaluator = new ExpressionEvaluator(emptyMap());
+        this.workers = new HashMap<>();
+        this.allocations = new HashMap<>();
+        this.allocationsByWorker = new HashMap<>();
+    }
+
+    // Compile requirements into the form the index matches against. Compiled requirements are immutable and can be cached/shared.
+    static CompiledRequirement compile(HostRequirement hostRequirement) {
+        Validate.notNull(hostRequirement);
+        return compileRequirement(hostRequirement, true);
+    }
+
+    private static CompiledRequirement compileRequirement(Requirement requirement, boolean root) {
+        Integer type = TYPE_IDS.get(getRequirementName(requirement));
+        Validate.validState(type != null);
+
+        // count of the host requirement is the number of hosts, not something that's checked per host -- ignore it
+        NumberRange count = root ? null : requirement.getCount();
+
+        NumberRange capacityRange = null;
+        if (requirement instanceof CapacityEnabledRequirement) {
+            capacityRange = ((CapacityEnabledRequirement) requirement).getCapacityRange();
+            Validate.validState(count != null); // leaf requirements must have a count
+        }
+
+        List<CompiledRequirement> children = new ArrayList<>();
+        for (Requirement child : getRequirementChildren(requirement).values()) {
+            children.add(compileRequirement(child, false));
+        }
+
+        return new CompiledRequirement(
+                type,
+                count == null ? -1L : toLong(count.getStart()),
+                count == null ? -1L : toLong(count.getEnd()),
+                capacityRange == null ? -1L : toLong(capacityRange.getStart()),
+                capacityRange == null ? -1L : toLong(capacityRange.getEnd()),
+                requirement.getWhereCondition(),
+                children.stream().toArray(len -> new CompiledRequirement[len]));
+    }
+
+    // Requirement counts and capacities are always whole numbers, so flooring spec capacities doesn't change which requirements fit.
+    private static long toLong(BigDecimal value) {
+        BigDecimal floored = value.setScale(0, RoundingMode.FLOOR);
+        if (floored.compareTo(LONG_MAX) > 0) {
+            return Long.MAX_VALUE;
+        }
+        if (floored.compareTo(LONG_MIN) < 0) {
+            return Long.MIN_VALUE;
+        }
+        return floored.longValueExact();
+    }
+
+
+
+    // Rebuild the index from the database. Binds get handed capacity in the order of their work ids, using the requirements held in the
+    // work index (so the work index must be loaded first). If a bind no longer fits on its worker (e.g. the worker was shrunk) or its
+    // requirements can't be compiled, it's still tracked but without any capacity.
+    //
+    // The work index gets read before this index's lock is taken -- the work index calls into this index while holding its own lock.
+    void load(Connection conn, WorkIndex workIndex) throws SQLException, IOException {
+        Validate.notNull(conn);
+        Validate.notNull(workIndex);
+
+        List<Worker> loadedWorkers = new ArrayList<>();
+        String cursor = null;
+        while (true) {
+            List<String> keys = cursor == null
+                    ? WorkerScanner.scanWorkers(conn, FORWARD, LOAD_PAGE_SIZE)
+                    : WorkerScanner.scanWorkers(conn, cursor, FORWARD, LOAD_PAGE_SIZE);
+            if (keys.isEmpty()) {
+                break;
+            }
+            loadedWorkers.addAll(WorkerGetter.getWorkers(conn, keys).values());
+            cursor = keys.get(keys.size() - 1);
+        }
+
+        List<String> bindWorkIds = new ArrayList<>();
+        List<String> bindWorkerKeys = new ArrayList<>();
+        List<CompiledRequirement> bindRequirements = new ArrayList<>();
+        String selectBindStr = "select work_id,s_host,n_port from bind order by work_id";
+        try (PreparedStatement ps = conn.prepareStatement(selectBindStr);
+                ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                String workId = rs.getString("work_id");
+                String host = rs.getString("s_host");
+                int port = rs.getBigDecimal("n_port").intValueExact();
+
+                bindWorkIds.add(workId);
+                bindWorkerKeys.add(toWorkerCursor(host, port));
+                bindRequirements.add(workIndex.getRequirement(workId)); // null if never fits
+            }
+        }
+
+        synchronized (this) {
+            workers.clear();
+            allocations.clear();
+            allocationsByWorker.clear();
+
+            for (Worker worker : loadedWorkers) {
+                put(worker);
+            }
+
+            for (int i = 0; i < bindWorkIds.size(); i++) {
+                String workId = bindWorkIds.get(i);
+                String workerKey = bindWorkerKeys.get(i);
+                CompiledRequirement requirement = bindRequirements.get(i);
+                if (requirement == null || !bind(workId, workerKey, requirement)) {
+                    addAllocation(new Allocation(workId, workerKey, new List[0], new long[0]));
+                }
+            }
+        }
+    }
+
+    // Returns the worker that got replaced (null if there wasn't one) so that the caller can put it back if the change doesn't get
+    // committed.
+    synchronized Worker put(Worker worker) {
+        Validate.notNull(worker);
+
+        IndexedWorker indexedWorker = new IndexedWorker(worker);
+        String key = indexedWorker.key;
+        IndexedWorker oldIndexedWorker = workers.put(key, indexedWorker);
+
+        // carry over capacity handed out to existing binds -- if the spec a bind was using is gone, that portion of the bind is dropped
+        for (String workId : allocationsByWorker.getOrDefault(key, emptySet())) {
+            adjustCapacities(indexedWorker, allocations.get(workId), -1L); // may go negative if worker shrunk, nothing will fit
+        }
+
+        return oldIndexedWorker == null ? null : oldIndexedWorker.worker;
+    }
+
+    // Returns the worker that got removed (null if there wasn't one) so that the caller can put it back if the change doesn't get
+    // committed.
+    synchronized Worker remove(String host, int port) {
+        Validate.notNull(host);
+        IndexedWorker oldIndexedWorker = workers.remove(toWorkerCursor(host, port));
+        return oldIndexedWorker == null ? null : oldIndexedWorker.worker;
+    }
+
+    synchronized boolean contains(String host, int port) {
+        Validate.notNull(host);
+        return workers.containsKey(toWorkerCursor(host, port));
+    }
+
+    synchronized boolean isBound(String host, int port) {
+        Validate.notNull(host);
+        return allocationsByWorker.containsKey(toWorkerCursor(host, port));
+    }
+
+    // Check if requirement fits on the worker as it is right now (without handing out any capacity).
+    synchronized boolean isBindable(String host, int port, CompiledRequirement requirement) {
+        Validate.notNull(host);
+        Validate.notNull(requirement);
+
+        IndexedWorker indexedWorker = workers.get(toWorkerCursor(host, port));
+        if (indexedWorker == null) {
+            return false;
+        }
+
+        Matcher matcher = new Matcher(indexedWorker);
+        boolean matched = matcher.matchHost(requirement);
+        matcher.rollback(0);
+        return matched;
+    }
+
+    // Hand out capacity on the worker to work. Returns false if the requirement doesn't fit.
+    synchronized boolean bind(String workId, String host, int port, CompiledRequirement requirement) {
+        Validate.notNull(host);
+        return bind(workId, toWorkerCursor(host, port), requirement);
+    }
+
+    private boolean bind(String workId, String workerKey, CompiledRequirement requirement) {
+        Validate.notNull(workId);
+        Validate.notNull(requirement);
+        Validate.isTrue(!allocations.containsKey(workId), "Work already bound: %s", workId);
+
+        IndexedWorker indexedWorker = workers.get(workerKey);
+        if (indexedWorker == null) {
+            return false;
+        }
+
+        Matcher matcher = new Matcher(indexedWorker);
+        if (!matcher.matchHost(requirement)) {
+            matcher.rollback(0);
+            return false;
+        }
+
+        List<Object>[] specKeys = new List[matcher.logSize];
+        long[] amounts = Arrays.copyOf(matcher.logAmounts, matcher.logSize);
+        for (int i = 0; i < matcher.logSize; i++) {
+            specKeys[i] = indexedWorker.keys[matcher.logNodes[i]];
+        }
+        addAllocation(new Allocation(workId, indexedWorker.key, specKeys, amounts));
+        return true;
+    }
+
+    // Give back capacity handed out to work. Returns the capacity that was given back (null if the work isn't bound) so that the caller
+    // can restore() it if the change doesn't get committed.
+    synchronized Allocation unbind(String workId) {
+        Validate.notNull(workId);
+
+        Allocation allocation = allocations.remove(workId);
+        if (allocation == null) {
+            return null;
+        }
+
+        Set<String> workIds = allocationsByWorker.get(allocation.workerKey);
+        workIds.remove(workId);
+        if (workIds.isEmpty()) {
+            allocationsByWorker.remove(allocation.workerKey);
+        }
+
+        IndexedWorker indexedWorker = workers.get(allocation.workerKey);
+        if (indexedWorker != null) {
+            adjustCapacities(indexedWorker, allocation, 1L);
+        }
+        return allocation;
+    }
+
+    // Hand capacity given back by unbind() out again.
+    synchronized void restore(Allocation allocation) {
+        Validate.notNull(allocation);
+        Validate.isTrue(!allocations.containsKey(allocation.workId), "Work already bound: %s", allocation.workId);
+
+        addAllocation(allocation);
+
+        IndexedWorker indexedWorker = workers.get(allocation.workerKey);
+        if (indexedWorker != null) {
+            adjustCapacities(indexedWorker, allocation, -1L);
+        }
+    }
+
+    private void addAllocation(Allocation allocation) {
+        allocations.put(allocation.workId, allocation);
+        allocationsByWorker.computeIfAbsent(allocation.workerKey, k -> new LinkedHashSet<>()).add(allocation.workId);
+    }
+
+    private static void adjustCapacities(IndexedWorker indexedWorker, Allocation allocation, long sign) {
+        for (int i = 0; i < allocation.specKeys.length; i++) {
+            Integer node = indexedWorker.nodesByKey.get(allocation.specKeys[i]);
+            if (node != null) {
+                indexedWorker.capacities[node] += sign * allocation.amounts[i];
+            }
+        }
+    }
+
+
+
+    // Matches a requirement against a single worker, pulling capacity directly out of the worker's capacity array as it goes. Every
+    // change is logged so that it can be rolled back if a branch of the requirement (or the entire requirement) doesn't fit.
+    private final class Matcher {
+        private final IndexedWorker worker;
+        private int[] logNodes;
+        private long[] logAmounts;
+        private int logSize;
+
+        Matcher(IndexedWorker worker) {
+            this.worker = worker;
+            this.logNodes = new int[16];
+            this.logAmounts = new long[16];
+        }
+
+        boolean matchHost(CompiledRequirement hostRequirement) {
+            Validate.isTrue(hostRequirement.type == 0);
+            if (!isTrue(hostRequirement.where, 0)) {
+                return false;
+            }
+            return matchChildren(hostRequirement, HOST_NODE, 0, 1);
+        }
+
+        // parents[from] to parents[to-1] are the parent nodes
+        private boolean matchChildren(CompiledRequirement requirement, int[] parents, int from, int to) {
+            for (CompiledRequirement child : requirement.children) {
+                int[] candidates = worker.childrenOf(parents, from, to, child.type);
+                if (!matchRequirement(child, candidates)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean matchRequirement(CompiledRequirement requirement, int[] candidates) {
+            // no count means children are spread across all matching specs rather than being replicated for each one
+            if (requirement.countStart == -1L) {
+                int matchingCount = 0;
+                for (int node : candidates) { // candidates is a fresh array, so filter in place
+                    if (isTrue(requirement.where, node)) {
+                        candidates[matchingCount] = node;
+                        matchingCount++;
+                    }
+                }
+                return matchChildren(requirement, candidates, 0, matchingCount);
+            }
+
+            long taken = 0L;
+            for (int i = 0; i < candidates.length && taken < requirement.countEnd; i++) {
+                int node = candidates[i];
+                if (!isTrue(requirement.where, node)) {
+                    continue;
+                }
+
+                int mark = logSize;
+                boolean matched = requirement.capacityStart == -1L
+                        ? matchChildren(requirement, candidates, i, i + 1)
+                        : consume(requirement, node);
+                if (matched) {
+                    taken++;
+                } else {
+                    rollback(mark);
+                }
+            }
+            return taken >= requirement.countStart;
+        }
+
+        // same rules as Binder.calculateCapacityToConsume() -- take the max if possible, otherwise take whatever is left if it's at
+        // least the min
+        private boolean consume(CompiledRequirement requirement, int node) {
+            long available = worker.capacities[node];
+            long amount;
+            if (available >= requirement.capacityEnd) {
+                amount = requirement.capacityEnd;
+            } else if (available >= requirement.capacityStart) {
+                amount = available;
+            } else {
+                return false;
+            }
+
+            worker.capacities[node] -= amount;
+
+            if (logSize == logNodes.length) {
+                logNodes = Arrays.copyOf(logNodes, logSize * 2);
+                logAmounts = Arrays.copyOf(logAmounts, logSize * 2);
+            }
+            logNodes[logSize] = node;
+            logAmounts[logSize] = amount;
+            logSize++;
+            return true;
+        }
+
+        void rollback(int mark) {
+            while (logSize > mark) {
+                logSize--;
+                worker.capacities[logNodes[logSize]] += logAmounts[logSize];
+            }
+        }
+
+        private boolean isTrue(Expression where, int node) {
+            // variables are scoped by spec type (e.g. socket.s_model inside a cpu requirement), so look up the type's scope starting from
+            // node and walking up through its parents
+            Object result = evaluator.evaluate(where, (scope, name) -> {
+                Integer scopeType = TYPE_IDS.get(scope);
+                if (scopeType == null) {
+                    return null;
+                }
+                int type = scopeType;
+                for (int n = node; n != -1; n = worker.parents[n]) {
+                    if (worker.types[n] == type) {
+                        return worker.properties[n].get(name);
+                    }
+                }
+                return null;
+            });
+            return Boolean.TRUE.equals(result);
+        }
+    }
+
+    // A worker's spec tree, flattened in pre-order (host is always node 0).
+    private static final class IndexedWorker {
+        private final Worker worker;
+        private final String key;
+        private final int[] types;
+        private final int[] parents;            // -1 for host
+        private final int[][] children;
+        private final long[] capacities;        // remaining capacity, -1 if not capacity enabled
+        private final Map<String, Object>[] properties;
+        private final List<Object>[] keys;      // full key of each spec (e.g. s_host, n_port, n_socket_id for a socket)
+        private final Map<List<Object>, Integer> nodesByKey;
+
+        IndexedWorker(Worker worker) {
+            HostSpecification hostSpecification = worker.getHostSpecification();
+            List<Specification> specs = new ArrayList<>();
+            List<Integer> specParents = new ArrayList<>();
+            collect(hostSpecification, -1, specs, specParents);
+
+            int size = specs.size();
+            this.types = new int[size];
+            this.parents = new int[size];
+            this.children = new int[size][];
+            this.capacities = new long[size];
+            this.properties = new Map[size];
+            this.keys = new List[size];
+            this.nodesByKey = new HashMap<>();
+
+            int[] childCounts = new int[size];
+            for (int i = 0; i < size; i++) {
+                Specification spec = specs.get(i);
+                int parent = specParents.get(i);
+
+                Integer type = TYPE_IDS.get(getSpecificationName(spec));
+                Validate.validState(type != null);
+                types[i] = type;
+                parents[i] = parent;
+                BigDecimal capacity = getSpecificationCapacity(spec);
+                capacities[i] = capacity == null ? -1L : toLong(capacity);
+                properties[i] = spec.getProperties();
+
+                List<Object> nodeKey = new ArrayList<>();
+                if (parent != -1) {
+                    nodeKey.addAll(keys[parent]);
+                    childCounts[parent]++;
+                }
+                nodeKey.addAll(getSpecificationKeyValues(spec).values());
+                keys[i] = unmodifiableList(nodeKey);
+                nodesByKey.put(keys[i], i);
+            }
+
+            for (int i = 0; i < size; i++) {
+                children[i] = new int[childCounts[i]];
+                childCounts[i] = 0;
+            }
+            for (int i = 1; i < size; i++) {
+                int parent = parents[i];
+                children[parent][childCounts[parent]] = i;
+                childCounts[parent]++;
+            }
+
+            String host = (String) hostSpecification.getProperties().get("s_host");
+            int port = ((BigDecimal) hostSpecification.getProperties().get("n_port")).intValueExact();
+            this.key = toWorkerCursor(host, port);
+            this.worker = worker;
+        }
+
+        private static void collect(Specification spec, int parent, List<Specification> specs, List<Integer> specParents) {
+            int idx = specs.size();
+            specs.add(spec);
+            specParents.add(parent);
+            for (Specification child : getSpecificationChildren(spec).values()) {
+                collect(child, idx, specs, specParents);
+            }
+        }
+
+        int[] childrenOf(int[] parentNodes, int from, int to, int type) {
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                for (int child : children[parentNodes[i]]) {
+                    if (types[child] == type) {
+                        count++;
+                    }
+                }
+            }
+
+            int[] ret = new int[count];
+            int idx = 0;
+            for (int i = from; i < to; i++) {
+                for (int child : children[parentNodes[i]]) {
+                    if (types[child] == type) {
+                        ret[idx] = child;
+                        idx++;
+                    }
+                }
+            }
+            return ret;
+        }
+    }
+
+    // Capacity handed out to a single bind. Opaque outside of this class.
+    static final class Allocation {
+        private final String workId;
+        private final String workerKey;
+        private final List<Object>[] specKeys;
+        private final long[] amounts;
+
+        private Allocation(String workId, String workerKey, List<Object>[] specKeys, long[] amounts) {
+            this.workId = workId;
+            this.workerKey = workerKey;
+            this.specKeys = specKeys;
+            this.amounts = amounts;
+        }
+    }
+
+    static final class CompiledRequirement {
+        private final int type;
+        private final long countStart;      // -1 if no count
+        private final long countEnd;        // -1 if no count
+        private final long capacityStart;   // -1 if not capacity enabled
+        private final long capacityEnd;     // -1 if not capacity enabled
+        private final Expression where;
+        private final CompiledRequirement[] children;
+
+        private CompiledRequirement(int type, long countStart, long countEnd, long capacityStart, long capacityEnd, Expression where,
+                CompiledRequirement[] children) {
+            this.type = type;
+            this.countStart = countStart;
+            this.countEnd = countEnd;
+            this.capacityStart = capacityStart;
+            this.capacityEnd = capacityEnd;
+            this.where = where;
+            this.children = children;
+        }
+    }
+}
@@ -43,14 +43,22 @@ final class WorkerPrimer {
             // create worker table (essentially a cache of counts and capacities of children)
             LinkedHashSet<String> names = new LinkedHashSet<>();
             LinkedHashSet<String> capacityEnabledNames = new LinkedHashSet<>();
-            recursiveCollectNames(specChainClses, names, capacityEnabledNames);
+            collectCachedNames(names, capacityEnabledNames);
             createTableWorkerLockSql(conn);
             createTableWorkerSql(conn,
-                    names.stream().toArray(len -> new String[len]),
-                    capacityEnabledNames.stream().toArray(len -> new String[len]));
+                    capacityEnabledNames.stream().toArray(len -> new String[len]),
+                    names.stream().toArray(len -> new String[len]));
         }
     }
     
+    // names of all specs cached in the worker table (each gets a count column) + the subset that are capacity enabled (each gets a
+    // capacity sum column)
+    static void collectCachedNames(Set<String> names, Set<String> capacityEnabledNames) {
+        LinkedList<Class<? extends Specification>> specChainClses = new LinkedList<>();
+        specChainClses.add(HostSpecification.class);
+        recursiveCollectNames(specChainClses, names, capacityEnabledNames);
+    }
+    
     private static void recursiveCollectNames(
             LinkedList<Class<? extends Specification>> specChainClses,
             Set<String> names,
@@ -147,27 +155,28 @@ final class WorkerPrimer {
             
             
             if (cached) {
-                String countTriggerClsName = CountTrigger.class.getTypeName();
-                String countTrigger = ""
-                        + "CREATE TRIGGER IF NOT EXISTS " + pkName + "_spec_count_trigger\n"
-                        + "AFTER UPDATE ON " + pkName + "_spec\n"
-                        + "FOR EACH ROW AS $$org.h2.api.Trigger create() {\n"
-                        + "  return new " + countTriggerClsName + "(\"" + pkName + "\");\n"
-                        + "} $$";
-                stmt.execute(countTrigger);
-            }
-
-            
-            if (cached && capacityEnabled) {
-                int capacityIdxInRow = columns.size(); // idx of capacity column -- it's added right after all the items in columns list
-                String capacityTriggerClsName = CapacityTrigger.class.getName();
-                String capacityTrigger = ""
-                        + "CREATE TRIGGER IF NOT EXISTS " + pkName + "_spec_capacity_trigger\n"
-                        + "AFTER UPDATE ON " + pkName + "_spec\n"
-                        + "FOR EACH ROW AS $$org.h2.api.Trigger create() {\n"
-                        + "  return new " + capacityTriggerClsName + "(" + capacityIdxInRow + ", \"" + pkName + "\");\n"
-                        + "} $$";
-                stmt.execute(capacityTrigger);
+                // older versions maintained the cache using per-row compare-and-set loops -- remove them if they're still around
+                stmt.execute("DROP TRIGGER IF EXISTS " + pkName + "_spec_count_trigger");
+                stmt.execute("DROP TRIGGER IF EXISTS " + pkName + "_spec_capacity_trigger");
+                
+                String cacheTriggerClsName = WorkerCacheTrigger.class.getName();
+                String cacheTriggerArgs = capacityEnabled
+                        ? columns.size() + ", \"" + pkName + "\"" // idx of capacity column -- it's added right after all items in columns
+                        : "\"" + pkName + "\"";
+                String[][] cacheTriggers = {
+                    { "_spec_cache_start_trigger", "BEFORE", "" },
+                    { "_spec_cache_row_trigger", "AFTER", "FOR EACH ROW " },
+                    { "_spec_cache_apply_trigger", "AFTER", "" }
+                };
+                for (String[] cacheTrigger : cacheTriggers) {
+                    String cacheTriggerStmt = ""
+                            + "CREATE TRIGGER IF NOT EXISTS " + pkName + cacheTrigger[0] + "\n"
+                            + cacheTrigger[1] + " INSERT, UPDATE, DELETE ON " + pkName + "_spec\n"
+                            + cacheTrigger[2] + "AS $$org.h2.api.Trigger create() {\n"
+                            + "  return new " + cacheTriggerClsName + "(" + cacheTriggerArgs + ");\n"
+                            + "} $$";
+                    stmt.execute(cacheTriggerStmt);
+                }
             }
         }
     }
@@ -228,7 +237,7 @@ final class WorkerPrimer {
 
             String table = tableStmtElems.stream().collect(Collectors.joining(
                     ",\n",
-                    "CREATE TABLE IF NOT EXISTS worker(\n",
+                    "CREATE TABLE IF NOT EXISTS worker_lock(\n",
                     "\n)")
             );
             stmt.execute(table);
@@ -8,10 +8,20 @@ import static com.offbynull.rfm.host.services.h2db.InternalUtils.getSpecificatio
 import static com.offbynull.rfm.host.services.h2db.InternalUtils.getSpecificationFullKeyValues;
 import static com.offbynull.rfm.host.services.h2db.InternalUtils.getSpecificationKey;
 import static com.offbynull.rfm.host.services.h2db.InternalUtils.getSpecificationName;
+import static com.offbynull.rfm.host.services.h2db.InternalUtils.toWorkerCursor;
 import java.math.BigDecimal;
+import static java.math.BigDecimal.ONE;
+import static java.math.BigDecimal.ZERO;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.Collection;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.unmodifiableSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -21,61 +31,142 @@ import static java.util.stream.Collectors.joining;
 import org.apache.commons.lang3.Validate;
 
 final class WorkerSetter {
+    private static final int FLUSH_THRESHOLD = 4096; // rows queued up before batches get sent to the db
+
+    private static final Set<String> COUNT_NAMES;
+    private static final Set<String> CAPACITY_NAMES;
+    private static final String INSERT_WORKER_STR;
+    static {
+        LinkedHashSet<String> names = new LinkedHashSet<>();
+        LinkedHashSet<String> capacityEnabledNames = new LinkedHashSet<>();
+        WorkerPrimer.collectCachedNames(names, capacityEnabledNames);
+
+        COUNT_NAMES = unmodifiableSet(names);
+        CAPACITY_NAMES = unmodifiableSet(capacityEnabledNames);
+
+        List<String> columns = new LinkedList<>();
+        columns.add("s_host");
+        columns.add("n_port");
+        CAPACITY_NAMES.forEach(n -> columns.add(n + "_capacity_sum"));
+        COUNT_NAMES.forEach(n -> columns.add(n + "_count"));
+        INSERT_WORKER_STR = "insert into worker(" + columns.stream().collect(joining(",")) + ")"
+                + " values(" + columns.stream().map(x -> "?").collect(joining(",")) + ")";
+    }
+
     private WorkerSetter() {
         // do nothing
     }
- 
+
     public static void setWorker(Connection conn, Worker worker) throws SQLException {
         Validate.notNull(conn);
         Validate.notNull(worker);
 
-        HostSpecification hostSpecification = worker.getHostSpecification();
+        setWorkers(conn, singletonList(worker));
+    }
 
-        LinkedList<Specification> specChain = new LinkedList<>();
-        specChain.add(hostSpecification);
+    // Writes many workers using JDBC batches. A single prepared statement is kept per table (spec tables, prop tables, and worker table)
+    // for the duration of the call, and the worker table's cached counts/capacities are calculated in memory and written as a single row
+    // per host rather than being maintained row-by-row as specs get inserted (WorkerCacheTrigger is suppressed for the duration).
+    public static void setWorkers(Connection conn, Collection<Worker> workers) throws SQLException {
+        Validate.notNull(conn);
+        Validate.notNull(workers);
+        Validate.noNullElements(workers);
 
-        deleteSpec(conn, specChain); // delete spec
-        recurseWriteSpecs(conn, specChain); // add spec
+        Set<String> keys = new HashSet<>();
+        for (Worker worker : workers) {
+            Map<String, Object> props = worker.getHostSpecification().getProperties();
+            String key = toWorkerCursor((String) props.get("s_host"), ((BigDecimal) props.get("n_port")).intValueExact());
+            Validate.isTrue(keys.add(key), "Duplicate worker %s", key);
+        }
+
+        try (WorkerCacheDeltas.Suppression suppression = WorkerCacheDeltas.suppress(conn);
+                StatementBatches batches = new StatementBatches(conn);
+                StatementBatches workerBatches = new StatementBatches(conn)) {
+            // delete specs -- because of fk bindings, this will also delete props + children and their props (recursively) + the worker
+            // table row
+            for (Worker worker : workers) {
+                LinkedList<Specification> specChain = new LinkedList<>();
+                specChain.add(worker.getHostSpecification());
+                deleteSpec(batches, specChain);
+            }
+            batches.flush();
+
+            // add specs
+            for (Worker worker : workers) {
+                HostSpecification hostSpecification = worker.getHostSpecification();
+
+                LinkedList<Specification> specChain = new LinkedList<>();
+                specChain.add(hostSpecification);
+
+                Map<String, BigDecimal> counts = new HashMap<>();
+                Map<String, BigDecimal> capacities = new HashMap<>();
+                recurseWriteSpecs(batches, specChain, counts, capacities);
+                writeWorker(workerBatches, hostSpecification, counts, capacities);
+
+                if (batches.getPending() >= FLUSH_THRESHOLD) {
+                    flush(batches, workerBatches);
+                }
+            }
+            flush(batches, workerBatches);
+        }
     }
 
-    private static void deleteSpec(Connection conn, LinkedList<Specification> specChain) throws SQLException {
+    private static void flush(StatementBatches batches, StatementBatches workerBatches) throws SQLException {
+        // Worker rows MUST go in after the specs that they're a cache of. If the cache trigger couldn't be suppressed, it'll try to apply
+        // changes as specs are inserted -- those changes need to hit a missing worker row (no-op) rather than get counted on top of what's
+        // already been calculated.
+        batches.flush();
+        workerBatches.flush();
+    }
+
+    private static void deleteSpec(StatementBatches batches, LinkedList<Specification> specChain) throws SQLException {
         Specification finalSpec = specChain.get(specChain.size() - 1);
-        
+
         String name = getSpecificationName(finalSpec);
-        
+
         Map<String, Object> dbKeyValues = getSpecificationFullKeyValues(specChain);
         Set<String> dbKey = dbKeyValues.keySet();
-        
-        // because of fk bindings, this will also delete props + children and their props (recursively)
+
         String deleteSpecStr = "delete from " + name + "_spec where " + dbKey.stream().map(x -> x+"=?").collect(joining(" and "));
-        try (PreparedStatement deleteSpecPs = conn.prepareStatement(deleteSpecStr)) {
-            int specColIdx = 1;
-            for (String keyName : dbKey) {
-                Object keyValue = dbKeyValues.get(keyName);
-                deleteSpecPs.setObject(specColIdx, keyValue);
-                specColIdx++;
-            }
-            
-            deleteSpecPs.executeUpdate();
+        PreparedStatement deleteSpecPs = batches.get(deleteSpecStr);
+
+        int specColIdx = 1;
+        for (String keyName : dbKey) {
+            Object keyValue = dbKeyValues.get(keyName);
+            deleteSpecPs.setObject(specColIdx, keyValue);
+            specColIdx++;
         }
+
+        batches.add(deleteSpecPs);
     }
-    
-    private static void recurseWriteSpecs(Connection conn, LinkedList<Specification> specChain) throws SQLException {
+
+    private static void recurseWriteSpecs(StatementBatches batches, LinkedList<Specification> specChain,
+            Map<String, BigDecimal> counts, Map<String, BigDecimal> capacities) throws SQLException {
         Specification finalSpec = specChain.get(specChain.size() - 1);
-        writeSpec(conn, specChain);
+        writeSpec(batches, specChain);
+
+        if (specChain.size() > 1) { // host itself isn't cached, only its children
+            String name = getSpecificationName(finalSpec);
+            BigDecimal capacity = getSpecificationCapacity(finalSpec);
+            counts.merge(name, ONE, BigDecimal::add);
+            if (capacity != null) {
+                capacities.merge(name, capacity, BigDecimal::add);
+            }
+        }
+
         for (Specification child : getSpecificationChildren(finalSpec).values()) {
             specChain.addLast(child);
-            recurseWriteSpecs(conn, specChain);
+            recurseWriteSpecs(batches, specChain, counts, capacities);
             specChain.removeLast();
         }
     }
-    
-    private static void writeSpec(Connection conn, List<Specification> specChain) throws SQLException {
+
+    private static void writeSpec(StatementBatches batches, List<Specification> specChain) throws SQLException {
         Specification finalSpec = specChain.get(specChain.size() - 1);
-        
+
         String name = getSpecificationName(finalSpec);
         Set<String> key = getSpecificationKey(finalSpec);
-        
+
         Map<String, Object> dbKeyValues = getSpecificationFullKeyValues(specChain);
         Set<String> dbKey = dbKeyValues.keySet(); // NOT the same as key -- this is key of entire specChain, not the individual spec
 
@@ -85,69 +176,155 @@ final class WorkerSetter {
         BigDecimal capacity = getSpecificationCapacity(finalSpec);
         String mergeSpecStr = "insert into " + name + "_spec"
                 + " values(" + dbKey.stream().map(x -> "?").collect(joining(",")) + (capacity != null ? ",?" : "") + ")";
-        try (PreparedStatement mergeSpecPs = conn.prepareStatement(mergeSpecStr)) {
-            int specColIdx = 1;
-            for (String keyName : dbKey) {
-                Object keyValue = dbKeyValues.get(keyName);
-                mergeSpecPs.setObject(specColIdx, keyValue);
-                specColIdx++;
-            }
+        PreparedStatement mergeSpecPs = batches.get(mergeSpecStr);
 
-            if (capacity != null) {
-                mergeSpecPs.setBigDecimal(specColIdx, capacity);
-            }
+        int specColIdx = 1;
+        for (String keyName : dbKey) {
+            Object keyValue = dbKeyValues.get(keyName);
+            mergeSpecPs.setObject(specColIdx, keyValue);
+            specColIdx++;
+        }
 
-            mergeSpecPs.executeUpdate();
+        if (capacity != null) {
+            mergeSpecPs.setBigDecimal(specColIdx, capacity);
         }
 
+        batches.add(mergeSpecPs);
+
 
 
         // write prop rows
         Map<String, Object> props = finalSpec.getProperties();
         String mergePropStr = "insert into " + name + "_prop"
                 + " values(" + dbKey.stream().map(x -> "?").collect(joining(",")) + ",?,?,?,?)";
-        try (PreparedStatement mergePropPs = conn.prepareStatement(mergePropStr)) {
-            for (Entry<String, Object> prop : props.entrySet()) {
-                String propName = prop.getKey();
-                Object propValue = prop.getValue();
-
-                int propColIdx = 1;
-                for (String keyName : dbKey) {
-                    Object keyValue = dbKeyValues.get(keyName);
-                    mergePropPs.setObject(propColIdx, keyValue);
-                    propColIdx++;
-                }
+        PreparedStatement mergePropPs = batches.get(mergePropStr);
+        for (Entry<String, Object> prop : props.entrySet()) {
+            String propName = prop.getKey();
+            Object propValue = prop.getValue();
 
-                if (key.contains(propName)) { // skip keys -- DONT use dbKeys, we can have props that have same name as a parent's key 
-                    continue;
-                }
+            if (key.contains(propName)) { // skip keys -- DONT use dbKeys, we can have props that have same name as a parent's key
+                continue;
+            }
 
-                mergePropPs.setString(propColIdx, propName);
+            int propColIdx = 1;
+            for (String keyName : dbKey) {
+                Object keyValue = dbKeyValues.get(keyName);
+                mergePropPs.setObject(propColIdx, keyValue);
                 propColIdx++;
+            }
+
+            mergePropPs.setString(propColIdx, propName);
+            propColIdx++;
+
+            Object bVal = null;
+            Object nVal = null;
+            Object sVal = null;
+            switch(propName.substring(0, 2)) {
+                case "b_":
+                    bVal = propValue;
+                    break;
+                case "n_":
+                    nVal = propValue;
+                    break;
+                case "s_":
+                    sVal = propValue;
+                    break;
+                default:
+                    throw new IllegalStateException(); // should never happen
+            }
+            mergePropPs.setObject(propColIdx, bVal);
+            propColIdx++;
+            mergePropPs.setObject(propColIdx, nVal);
+            propColIdx++;
+            mergePropPs.setObject(propColIdx, sVal);
+
+            batches.add(mergePropPs);
+        }
+    }
+
+    private static void writeWorker(StatementBatches batches, HostSpecification hostSpecification,
+            Map<String, BigDecimal> counts, Map<String, BigDecimal> capacities) throws SQLException {
+        Map<String, Object> props = hostSpecification.getProperties();
+
+        PreparedStatement insertWorkerPs = batches.get(INSERT_WORKER_STR);
+
+        int colIdx = 1;
+        insertWorkerPs.setObject(colIdx, props.get("s_host"));
+        colIdx++;
+        insertWorkerPs.setObject(colIdx, props.get("n_port"));
+        colIdx++;
+        for (String name : CAPACITY_NAMES) {
+            insertWorkerPs.setBigDecimal(colIdx, capacities.getOrDefault(name, ZERO));
+            colIdx++;
+        }
+        for (String name : COUNT_NAMES) {
+            insertWorkerPs.setBigDecimal(colIdx, counts.getOrDefault(name, ZERO));
+            colIdx++;
+        }
 
-                Object bVal = null;
-                Object nVal = null;
-                Object sVal = null;
-                switch(propName.substring(0, 2)) {
-                    case "b_":
-                        bVal = propValue;
-                        break;
-                    case "n_":
-                        nVal = propValue;
-                        break;
-                    case "s_":
-                        sVal = propValue;
-                        break;
-                    default:
-                        throw new IllegalStateException(); // should never happen
+        batches.add(insertWorkerPs);
+    }
+
+
+
+    // Prepared statements keyed by SQL, each accumulating a batch. Batches are executed in the order that their statements were first
+    // requested. Since a parent table's statement is always requested before its children's statements (parents get written first), this
+    // ordering keeps the fk constraints happy no matter when a flush happens.
+    private static final class StatementBatches implements AutoCloseable {
+        private final Connection conn;
+        private final LinkedHashMap<String, PreparedStatement> statements;
+        private final Set<PreparedStatement> dirty;
+        private int pending;
+
+        StatementBatches(Connection conn) {
+            this.conn = conn;
+            this.statements = new LinkedHashMap<>();
+            this.dirty = new HashSet<>();
+        }
+
+        PreparedStatement get(String sql) throws SQLException {
+            PreparedStatement ps = statements.get(sql);
+            if (ps == null) {
+                ps = conn.prepareStatement(sql);
+                statements.put(sql, ps);
+            }
+            return ps;
+        }
+
+        void add(PreparedStatement ps) throws SQLException {
+            ps.addBatch();
+            dirty.add(ps);
+            pending++;
+        }
+
+        int getPending() {
+            return pending;
+        }
+
+        void flush() throws SQLException {
+            for (PreparedStatement ps : statements.values()) {
+                if (dirty.contains(ps)) {
+                    ps.executeBatch();
                 }
-                mergePropPs.setObject(propColIdx, bVal);
-                propColIdx++;
-                mergePropPs.setObject(propColIdx, nVal);
-                propColIdx++;
-                mergePropPs.setObject(propColIdx, sVal);
+            }
+            dirty.clear();
+            pending = 0;
+        }
 
-                mergePropPs.executeUpdate();
+        @Override
+        public void close() throws SQLException {
+            SQLException closeException = null;
+            for (PreparedStatement ps : statements.values()) {
+                try {
+                    ps.close();
+                } catch (SQLException sqle) {
+                    if (closeException == null) {
+                        closeException = sqle;
+                    }
+                }
+            }
+            if (closeException != null) {
+                throw closeException;
             }
         }
     }
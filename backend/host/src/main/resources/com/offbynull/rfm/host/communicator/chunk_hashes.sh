@@ -0,0 +1,69 @@
+#!/bin/bash
+
+# Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+# 
+# This library is free software; you can redistribute it and/or
+# modify it under the terms of the GNU Lesser General Public
+# License as published by the Free Software Foundation; either
+# version 3.0 of the License, or (at your option) any later version.
+# 
+# This library is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+# Lesser General Public License for more details.
+# 
+# You should have received a copy of the GNU Lesser General Public
+# License along with this library.
+
+
+
+# Setup variables
+if [ $# -lt 2 ]
+then
+    echo Arguments missing >&2
+    exit 1
+fi
+path="${1}"
+chunk_size="${2}"
+truncate_size="${3}"
+
+
+
+# Truncate (if requested)
+if [ -n "$truncate_size" ]
+then
+    truncate -s "$truncate_size" "$path"
+    if [ $? != 0 ]
+    then
+        echo Truncate failed >&2
+        exit 1
+    fi
+fi
+
+
+
+# Output size followed by the SHA-256 of each chunk (1 per line)
+size=$( stat -c %s "$path" )
+if [ $? != 0 ]
+then
+    echo Stat failed >&2
+    exit 1
+fi
+echo "$size"
+
+set -o pipefail  # otherwise a failed dd is masked by the exit status of cut
+chunk_count=$(( (size + chunk_size - 1) / chunk_size ))
+iter=0
+while [ $iter -lt $chunk_count ]
+do
+    hash=$( dd if="$path" bs="$chunk_size" skip="$iter" count=1 iflag=fullblock 2>"/dev/null" | sha256sum | cut -d ' ' -f 1 )
+    if [ $? != 0 ] || [ -z "$hash" ]
+    then
+        echo Hash failed for chunk $iter >&2
+        exit 1
+    fi
+    echo "$hash"
+    iter=$((iter+1))
+done
+
+exit 0
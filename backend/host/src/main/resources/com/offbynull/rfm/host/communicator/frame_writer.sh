@@ -0,0 +1,35 @@
+#!/bin/bash
+
+# Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+# 
+# This library is free software; you can redistribute it and/or
+# modify it under the terms of the GNU Lesser General Public
+# License as published by the Free Software Foundation; either
+# version 3.0 of the License, or (at your option) any later version.
+# 
+# This library is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+# Lesser General Public License for more details.
+# 
+# You should have received a copy of the GNU Lesser General Public
+# License along with this library.
+
+
+
+# Shared by every script that writes framed output -- prepended to those scripts by FrameReader.prependWriter() rather than copied into
+# each one.
+#
+# write_frame NAME VALUE writes an entry as its name and then its value, each terminated by NUL. Bash variables can't hold NUL, so values
+# never need escaping. If RFM_OUTPUT_FORMAT is set to legacy, entries are written in the older format instead (name, number of lines,
+# lines) -- needed when output is captured into a variable, since bash drops NULs from command substitutions.
+write_frame() {
+    if [ "$RFM_OUTPUT_FORMAT" == "legacy" ]
+    then
+        local value_lines
+        mapfile -t value_lines <<< "$2"
+        printf '%s\n%d\n%s\n' "$1" "${#value_lines[@]}" "$2"
+    else
+        printf '%s\0%s\0' "$1" "$2"
+    fi
+}
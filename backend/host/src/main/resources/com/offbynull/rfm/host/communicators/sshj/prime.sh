@@ -101,15 +101,9 @@ fi
 rm "$key_file_priv"
 rm "$key_file_pub"
 
-echo !KEYPASSWORD
-echo "$key_passwd" | wc -l
-echo "$key_passwd"
-echo !KEYPRIV
-echo "$key_priv" | wc -l
-echo "$key_priv"
-echo !KEYPUB
-echo "$key_pub" | wc -l
-echo "$key_pub"
+write_frame "!KEYPASSWORD" "$key_passwd"
+write_frame "!KEYPRIV" "$key_priv"
+write_frame "!KEYPUB" "$key_pub"
 
 
 
@@ -179,6 +173,4 @@ do
     fi
 done
 
-echo !FINGERPRINTS
-echo "$fingerprints" | wc -l
-echo "$fingerprints"
+write_frame "!FINGERPRINTS" "$fingerprints"
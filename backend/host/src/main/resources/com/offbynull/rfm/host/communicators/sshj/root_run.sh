@@ -32,8 +32,9 @@ then
     # -S flag reads from stdin
     # -k flag makes it so it always asks for password (no caching)
     # -p flag gives a custom prompt -- using $'somestring' (ANSI C Quoting) allows you to use escape characters like \n for newline
+    # exec so that sudo takes over this process -- any signal sent to this process (see below) then goes to sudo, which relays it
     self_cmd="/bin/bash ${0} ${@}"
-    sudo -S -k -p $'SudoPasswd\n' $self_cmd
+    exec sudo -S -k -p $'SudoPasswd\n' $self_cmd
 else
     echo "YesRoot" >&2
     # Root -- run the command
@@ -46,6 +47,14 @@ else
     else
         echo "Ok" >&2
         echo "$boottime" >&2
-        ${@:2}
+        # Run the command in its own process group. If this process gets told to terminate (e.g. the operation was cancelled and the
+        # caller sent a signal over SSH), the whole group gets terminated -- not just this process.
+        set -m
+        ${@:2} &
+        cmd_pid=$!
+        set +m
+        trap 'kill -TERM -- -$cmd_pid 2>/dev/null' TERM INT HUP
+        wait $cmd_pid
+        exit $?
     fi
 fi
\ No newline at end of file
@@ -27,17 +27,58 @@ fi
 
 
 # Setup variables
-if [ $# -lt 1 ]
+#   lock_mode is one of...
+#     exclusive      -- exclusive lock on the system (for anything that touches state shared between tasks, e.g. the tasks file)
+#     shared         -- shared lock on the system (for read-only operations)
+#     task_exclusive -- shared lock on the system + exclusive lock on the task identified by the next argument
+#     task_shared    -- shared lock on the system + shared lock on the task identified by the next argument
+if [ $# -lt 2 ]
 then
     echo Arguments missing >&2
     exit 1
 fi
-script_args=( "${@:1}" )
+lock_mode="${1}"
+case "$lock_mode" in
+    exclusive)
+        system_lock_flag="-x"
+        task_lock_flag=""
+        ;;
+    shared)
+        system_lock_flag="-s"
+        task_lock_flag=""
+        ;;
+    task_exclusive)
+        system_lock_flag="-s"
+        task_lock_flag="-x"
+        ;;
+    task_shared)
+        system_lock_flag="-s"
+        task_lock_flag="-s"
+        ;;
+    *)
+        echo Unrecognized lock mode >&2
+        exit 1
+        ;;
+esac
+
+if [ -n "$task_lock_flag" ]
+then
+    if [ $# -lt 3 ]
+    then
+        echo Arguments missing >&2
+        exit 1
+    fi
+    task_lock_file="/opt/rfm/locks/${2}.lock"  # task id is URL encoded by the caller, so it's safe to use as a filename
+    script_args=( "${@:3}" )
+else
+    task_lock_file=""
+    script_args=( "${@:2}" )
+fi
 
 
 
-# Ensure folder exists
-mkdir -p "/opt/rfm"
+# Ensure folders exist
+mkdir -p "/opt/rfm/locks"
 if [ $? != 0 ]
 then
     echo Base directory creation failed >&2
@@ -49,12 +90,23 @@ fi
 # Lock and run
 (
     # Lock + add trap to unlock if script ungracefully terminates
+    #   always system lock first then task lock, so that locks are acquired in the same order everywhere (no deadlocks)
     function cleanup {
+        if [ -n "$task_lock_file" ]
+        then
+            flock -u 8
+        fi
         flock -u 9
     }
     trap cleanup 0
 
-    flock -x 9
+    flock $system_lock_flag 9
+
+    if [ -n "$task_lock_file" ]
+    then
+        exec 8>"$task_lock_file"
+        flock $task_lock_flag 8
+    fi
 
 
     # Note how the bash arguments are being formed when bash is called. It needs to be done like this -- form a new array with all arguments
@@ -63,6 +115,11 @@ fi
     bash "${bash_args[@]}"
     ret=$?
 
-    flock -u 9  # the bash invocation above may launch other bash instances async... these prevent unlocking, so force unlock at the end
+    # the bash invocation above may launch other bash instances async... these prevent unlocking, so force unlock at the end
+    if [ -n "$task_lock_file" ]
+    then
+        flock -u 8
+    fi
+    flock -u 9
     exit $ret
 ) 9>"/opt/rfm/system.lock"
@@ -0,0 +1,115 @@
+#!/bin/bash
+
+# Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+# 
+# This library is free software; you can redistribute it and/or
+# modify it under the terms of the GNU Lesser General Public
+# License as published by the Free Software Foundation; either
+# version 3.0 of the License, or (at your option) any later version.
+# 
+# This library is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+# Lesser General Public License for more details.
+# 
+# You should have received a copy of the GNU Lesser General Public
+# License along with this library.
+
+
+
+# Check is root
+if [ $UID != "0" ]
+then
+    echo Root required >&2
+    exit 1
+fi
+
+
+
+# Setup variables
+#   arguments after the target directory are triplets of... script_name script_sha256 script_content
+if [ $# -lt 1 ]
+then
+    echo Arguments missing >&2
+    exit 1
+fi
+target_dir="${1}"
+shift 1
+
+if [ $(( $# % 3 )) != 0 ]
+then
+    echo Arguments malformed >&2
+    exit 1
+fi
+
+
+
+# Exit early if already installed (directory name is a hash of its contents, so if it exists it's the same set of scripts)
+if [ -d "$target_dir" ]
+then
+    exit 0
+fi
+
+
+
+# Ensure folder exists
+parent_dir=$( dirname "$target_dir" )
+mkdir -p "$parent_dir"
+if [ $? != 0 ]
+then
+    echo Base directory creation failed >&2
+    exit 1
+fi
+
+
+
+# Write scripts into a staging directory and check each one against its hash
+staging_dir=$( mktemp -d "$parent_dir/.install.XXXXXXXX" )
+if [ $? != 0 ]
+then
+    echo Staging directory creation failed >&2
+    exit 1
+fi
+
+function cleanup {
+    rm -rf "$staging_dir"
+}
+trap cleanup 0
+
+while [ $# -gt 0 ]
+do
+    script_name="${1}"
+    script_hash="${2}"
+    script_content="${3}"
+    shift 3
+
+    printf '%s' "$script_content" > "$staging_dir/$script_name"
+    if [ $? != 0 ]
+    then
+        echo Failed to write $script_name >&2
+        exit 1
+    fi
+
+    actual_hash=$( sha256sum "$staging_dir/$script_name" | cut -d ' ' -f 1 )
+    if [ "$actual_hash" != "$script_hash" ]
+    then
+        echo Hash mismatch for $script_name >&2
+        exit 1
+    fi
+done
+
+
+
+# Move staging directory into place -- atomic, so invocations never see a partially installed directory
+mv -T "$staging_dir" "$target_dir"
+if [ $? != 0 ]
+then
+    if [ -d "$target_dir" ]  # someone else installed it first
+    then
+        exit 0
+    fi
+    echo Failed to move scripts into place >&2
+    exit 1
+fi
+
+exit 0
@@ -26,13 +26,30 @@ fi
 
 
 
+# Setup variables
+if [ $# -lt 1 ]
+then
+    echo Arguments missing >&2
+    exit 1
+fi
+procstat_mode="${0}"   # single or double
+procstat_delay="${1}"  # seconds (fractions allowed)
+if [ "$procstat_mode" != "single" ] && [ "$procstat_mode" != "double" ]
+then
+    echo Bad procstat mode >&2
+    exit 1
+fi
+
+
+
 # Check required commands are available
 req_commands=(echo cat grep wc dd rm mkdir mktemp kill pkill sudo su sleep tr)              # core commands
 req_commands+=(systemctl ssh-keygen)                                                        # commands required for priming
 req_commands+=(uptime df free uname ps pstree)                                              # commands required by host info (this)
-req_commands+=(cgcreate cgexec cgdelete fallocate e2fsck resize2fs mkfs mount umount gzip)  # commands required for containerization
+req_commands+=(cgcreate cgexec cgdelete fallocate e2fsck resize2fs mkfs mount umount gzip tar)  # commands required for containerization
+req_commands+=(perl truncate)                                                               # commands required for incremental backups
 req_commands+=(mountpoint)
-for req_command in $req_commands
+for req_command in "${req_commands[@]}"
 do
     which "$req_command" > /dev/null
     if [ $? != 0 ]
@@ -42,6 +59,14 @@ do
     fi
 done
 
+# Check required perl modules are available
+perl -MDigest::SHA -e1 2> /dev/null   # used for block hashes in incremental backups
+if [ $? != 0 ]
+then
+    echo "Perl module Digest::SHA missing" >&2
+    exit 1
+fi
+
 
 
 # Check systemd is used
@@ -61,9 +86,7 @@ then
     echo Uname info capture failed >&2
     exit 1
 fi
-echo !UNAME
-echo "$uname_output" | wc -l
-echo "$uname_output"
+write_frame "!UNAME" "$uname_output"
 
 
 
@@ -74,9 +97,7 @@ then
     echo Mount info capture failed >&2
     exit 1
 fi
-echo !DF
-echo "$df_output" | wc -l
-echo "$df_output"
+write_frame "!DF" "$df_output"
 
 
 
@@ -88,9 +109,7 @@ then
     exit 1
 fi
 cgroup_cpuset=$(cat "$cgroup_cpuset_file")
-echo !CGROUP_CPUSET
-echo "$cgroup_cpuset" | wc -l
-echo "$cgroup_cpuset"
+write_frame "!CGROUP_CPUSET" "$cgroup_cpuset"
 
 cpuinfo_output=$(cat /proc/cpuinfo)
 if [ $? != 0 ]
@@ -98,25 +117,30 @@ then
     echo CPU info capture failed >&2
     exit 1
 fi
-echo !CPUINFO
-echo "$cpuinfo_output" | wc -l
-echo "$cpuinfo_output"
+write_frame "!CPUINFO" "$cpuinfo_output"
 
-procstat_output1=$(cat /proc/stat)
-if [ $? != 0 ]
+# CPU usage is the difference between 2 /proc/stat samples. If the caller still has a sample from an earlier check, only 1 sample is
+# taken here (after waiting procstat_delay seconds -- lets the caller make sure enough time has passed since its sample). Otherwise, 2
+# samples are taken procstat_delay seconds apart.
+if [ "$procstat_mode" == "double" ]
 then
-    echo /proc/stat capture failed >&2
-    exit 1
+    procstat_output1=$(cat /proc/stat)
+    if [ $? != 0 ]
+    then
+        echo /proc/stat capture failed >&2
+        exit 1
+    fi
+    write_frame "!PROCSTAT1" "$procstat_output1"
 fi
-echo !PROCSTAT1
-echo "$procstat_output1" | wc -l
-echo "$procstat_output1"
 
-sleep 1
-if [ $? != 0 ]
+if [ "$procstat_delay" != "0" ]
 then
-    echo Sleep failed >&2
-    exit 1
+    sleep "$procstat_delay"
+    if [ $? != 0 ]
+    then
+        echo Sleep failed >&2
+        exit 1
+    fi
 fi
 
 procstat_output2=$(cat /proc/stat)
@@ -125,9 +149,7 @@ then
     echo /proc/stat capture failed >&2
     exit 1
 fi
-echo !PROCSTAT2
-echo "$procstat_output2" | wc -l
-echo "$procstat_output2"
+write_frame "!PROCSTAT2" "$procstat_output2"
 
 
 
@@ -144,9 +166,7 @@ then
     echo Kernel config option grepping failed >&2
     exit 1
 fi
-echo !KERNEL_CONFIGS
-echo "$kernel_configs" | wc -l
-echo "$kernel_configs"
+write_frame "!KERNEL_CONFIGS" "$kernel_configs"
 
 
 
@@ -157,9 +177,7 @@ then
     echo Unable to read mem usage cgroup file >&2
     exit 1
 fi
-echo !CGROUP_MEM_USAGE
-echo "$cgroup_mem_usage" | wc -l
-echo "$cgroup_mem_usage"
+write_frame "!CGROUP_MEM_USAGE" "$cgroup_mem_usage"
 
 cgroup_mem_stat=$(cat /sys/fs/cgroup/memory/memory.stat)
 if [ $? != 0 ]
@@ -167,9 +185,7 @@ then
     echo Unable to read mem stat cgroup file >&2
     exit 1
 fi
-echo !CGROUP_MEM_STAT
-echo "$cgroup_mem_stat" | wc -l
-echo "$cgroup_mem_stat"
+write_frame "!CGROUP_MEM_STAT" "$cgroup_mem_stat"
 
 meminfo_output=$(cat /proc/meminfo)
 if [ $? != 0 ]
@@ -177,9 +193,7 @@ then
     echo Unable to read meminfo file >&2
     exit 1
 fi
-echo !MEMINFO
-echo "$meminfo_output" | wc -l
-echo "$meminfo_output"
+write_frame "!MEMINFO" "$meminfo_output"
 
 
 
@@ -191,12 +205,8 @@ if [ $nvidia_installed == 0 ]
 then
     nvidia_smi=$(nvidia-smi --query-gpu=index,name --format=csv)
     nvidia_devs=$(find /dev | grep /dev/nvidia.*)
-    echo !NVIDIA_SMI
-    echo "$nvidia_smi" | wc -l
-    echo "$nvidia_smi"
-    echo !NVIDIA_DEVICES
-    echo "$nvidia_devs" | wc -l
-    echo "$nvidia_devs"
+    write_frame "!NVIDIA_SMI" "$nvidia_smi"
+    write_frame "!NVIDIA_DEVICES" "$nvidia_devs"
 fi
 
 
@@ -212,8 +222,6 @@ then
         exit 1
     fi
 fi
-echo !TASKS
-echo "$tasks_output" | wc -l
-echo "$tasks_output"
+write_frame "!TASKS" "$tasks_output"
 
 exit 0
@@ -0,0 +1,166 @@
+#!/bin/bash
+
+# Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+# 
+# This library is free software; you can redistribute it and/or
+# modify it under the terms of the GNU Lesser General Public
+# License as published by the Free Software Foundation; either
+# version 3.0 of the License, or (at your option) any later version.
+# 
+# This library is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+# Lesser General Public License for more details.
+# 
+# You should have received a copy of the GNU Lesser General Public
+# License along with this library.
+
+
+
+# Check is root
+if [ $UID != "0" ]
+then
+    echo Root required >&2
+    exit 1
+fi
+
+
+
+# Setup variables (script is run through bash -c, so the first argument is ${0} and $# doesn't count it -- $# -lt 1 means ${1} is missing)
+if [ $# -lt 1 ]
+then
+    echo Arguments missing >&2
+    exit 1
+fi
+interval="${0}"  # seconds between samples (fractions allowed)
+samples="${1}"   # number of samples to take before exiting
+if ! [[ "$interval" =~ ^[0-9]+(\.[0-9]+)?$ ]]
+then
+    echo Bad interval >&2
+    exit 1
+fi
+if ! [[ "$samples" =~ ^[0-9]+$ ]]
+then
+    echo Bad samples >&2
+    exit 1
+fi
+
+
+
+# Entries are written with write_frame (prepended by FrameReader.prependWriter()), and each sample ends with a !SAMPLE entry. The first
+# sample contains every entry. Later samples only contain entries that change between samples (!PROCSTAT and !MEMINFO always) or that
+# changed since they were last sent (!DF and !TASKS). Everything is read with builtins where possible so that each sample forks as little
+# as possible.
+#
+# Output is read as a stream of samples (see StreamingScriptParser) rather than as a single set of frames, so the line-counted format is
+# used.
+RFM_OUTPUT_FORMAT=legacy
+
+read_file() {
+    local file_lines
+    mapfile -t file_lines < "$1" || return 1
+    local IFS=$'\n'
+    echo "${file_lines[*]}"
+}
+
+
+
+# Static entries
+uname_output=$(uname -a)
+if [ $? != 0 ]
+then
+    echo Uname info capture failed >&2
+    exit 1
+fi
+
+cgroup_cpuset=$(read_file "/sys/fs/cgroup/cpuset/cpuset.cpus")
+if [ $? != 0 ]
+then
+    echo Missing cpuset cgroup file >&2
+    exit 1
+fi
+
+cpuinfo_output=$(read_file /proc/cpuinfo)
+if [ $? != 0 ]
+then
+    echo CPU info capture failed >&2
+    exit 1
+fi
+
+kernel_configs=$(cat /boot/config-* | grep "CONFIG_MEMCG_SWAP_ENABLED")
+if [ $? != 0 ]
+then
+    echo Kernel config option capture failed >&2
+    exit 1
+fi
+
+write_frame "!UNAME" "$uname_output"
+write_frame "!CGROUP_CPUSET" "$cgroup_cpuset"
+write_frame "!CPUINFO" "$cpuinfo_output"
+write_frame "!KERNEL_CONFIGS" "$kernel_configs"
+
+
+
+# Sampled entries
+exec {sleep_fd}<> <(:) # read -t on a pipe that never gets written to -- sleeps without forking
+last_df_output=""
+last_tasks_output=""
+for (( i=0; i<samples; i++ ))
+do
+    if [ $i != 0 ]
+    then
+        read -t "$interval" -u "$sleep_fd"
+    fi
+
+    procstat_output=""
+    while read -r line
+    do
+        if [[ "$line" =~ ^cpu[0-9]+[[:space:]] ]]
+        then
+            procstat_output+="$line"$'\n'
+        fi
+    done < /proc/stat
+    write_frame "!PROCSTAT" "${procstat_output%$'\n'}"
+
+    meminfo_output=""
+    while read -r line
+    do
+        if [[ "$line" =~ ^(MemTotal|MemAvailable|SwapTotal|SwapFree): ]]
+        then
+            meminfo_output+="$line"$'\n'
+        fi
+    done < /proc/meminfo
+    write_frame "!MEMINFO" "${meminfo_output%$'\n'}"
+
+    df_output=$(df -B 1 -a --output="used,avail,fstype,target")
+    if [ $? != 0 ]
+    then
+        echo Mount info capture failed >&2
+        exit 1
+    fi
+    if [ $i == 0 ] || [ "$df_output" != "$last_df_output" ]
+    then
+        write_frame "!DF" "$df_output"
+        last_df_output="$df_output"
+    fi
+
+    tasks_output=""
+    if [ -f "/opt/rfm/tasks" ]
+    then
+        tasks_output=$(read_file "/opt/rfm/tasks")
+        if [ $? != 0 ]
+        then
+            echo Failed to read active tasks >&2
+            exit 1
+        fi
+    fi
+    if [ $i == 0 ] || [ "$tasks_output" != "$last_tasks_output" ]
+    then
+        write_frame "!TASKS" "$tasks_output"
+        last_tasks_output="$tasks_output"
+    fi
+
+    printf '!SAMPLE\n0\n' # record marker has no value, write_frame always writes at least 1 line
+done
+
+exit 0
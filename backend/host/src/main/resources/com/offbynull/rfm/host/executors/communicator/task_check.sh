@@ -57,9 +57,7 @@ fi
 
 
 # Output configuration
-echo "!WORKDIR"
-echo "$work_dir" | wc -l
-echo "$work_dir"
+write_frame "!WORKDIR" "$work_dir"
 
 work_user=$( cat "$work_dir/work.user" )
 if [ $? != 0 ]
@@ -67,9 +65,7 @@ then
     echo Unable to extract work user >&2
     exit 1
 fi
-echo "!WORKUSER"
-echo "$work_user" | wc -l
-echo "$work_user"
+write_frame "!WORKUSER" "$work_user"
 
 arg_count=0
 while true
@@ -91,9 +87,7 @@ do
         echo Failed to read argument $iter >&2
         exit 1
     fi
-    echo "!WORKCMD$iter"
-    echo "$arg" | wc -l
-    echo "$arg"
+    write_frame "!WORKCMD$iter" "$arg"
     iter=$((iter+1))
 done
 
@@ -101,37 +95,25 @@ done
 
 # Output state
 state=$( cat "$work_dir/work.state" )
-echo !STATE
-echo "$state" | wc -l
-echo "$state"
+write_frame "!STATE" "$state"
 
 
 
 # Output resource allocation
 cpus=$( cat "$work_dir/work.cpus" )
-echo !CPUS
-echo "$cpus" | wc -l
-echo "$cpus"
+write_frame "!CPUS" "$cpus"
 
 cpu_quota=$( cat "$work_dir/work.cpu_quota" )
-echo !CPU_QUOTA
-echo "$cpu_quota" | wc -l
-echo "$cpu_quota"
+write_frame "!CPU_QUOTA" "$cpu_quota"
 
 cpu_period=$( cat "$work_dir/work.cpu_period" )
-echo !CPU_PERIOD
-echo "$cpu_period" | wc -l
-echo "$cpu_period"
+write_frame "!CPU_PERIOD" "$cpu_period"
 
 memory_size=$( cat "$work_dir/work.memory_size" )
-echo !MEMORY_SIZE
-echo "$memory_size" | wc -l
-echo "$memory_size"
+write_frame "!MEMORY_SIZE" "$memory_size"
 
 disk_size=$( cat "$work_dir/work.disk_size" )
-echo !DISK_SIZE
-echo "$disk_size" | wc -l
-echo "$disk_size"
+write_frame "!DISK_SIZE" "$disk_size"
 
 
 
@@ -0,0 +1,71 @@
+#!/bin/bash
+
+# Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+# 
+# This library is free software; you can redistribute it and/or
+# modify it under the terms of the GNU Lesser General Public
+# License as published by the Free Software Foundation; either
+# version 3.0 of the License, or (at your option) any later version.
+# 
+# This library is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+# Lesser General Public License for more details.
+# 
+# You should have received a copy of the GNU Lesser General Public
+# License along with this library.
+
+
+
+# Check is root
+if [ $UID != "0" ]
+then
+    echo Root required >&2
+    exit 1
+fi
+
+
+
+# Setup variables
+if [ $# -lt 2 ]
+then
+    echo Arguments missing >&2
+    exit 1
+fi
+check_task_script="${0}"
+check_track_script="${1}"
+info_process_script="${2}"
+work_ids=( "${@:3}" )
+
+
+
+# Check each task -- output for each is nested within this script's output as...
+#   !RESULT<index>  -- exit code of the task check script
+#   !OUTPUT<index>  -- output of the task check script (only if exit code is 0)
+# ... where index is the task's position in the argument list.
+#
+# base_lock.sh only holds a shared system lock for this script, so each task's lock is taken (shared) while that task is being checked.
+# The lock is released when the subshell exits.
+iter=0
+for work_id in "${work_ids[@]}"
+do
+    check_output=$(
+        exec 8>"/opt/rfm/locks/${work_id}.lock" || exit 1
+        flock -s 8 || exit 1
+        # output is captured into a variable, which can't hold NULs -- have the check write the older line-counted format
+        RFM_OUTPUT_FORMAT=legacy bash "-c" "$check_task_script" "$check_track_script" "$info_process_script" "$work_id"
+    )
+    check_result=$?
+    echo "!RESULT$iter"
+    echo 1
+    echo "$check_result"
+    if [ $check_result == 0 ]
+    then
+        echo "!OUTPUT$iter"
+        echo "$check_output" | wc -l
+        echo "$check_output"
+    fi
+    iter=$((iter+1))
+done
+
+exit 0
@@ -27,16 +27,21 @@ fi
 
 
 # Setup variables
-if [ $# -lt 5 ]
+if [ $# -lt 9 ]
 then
     echo Arguments missing >&2
     exit 1
 fi
 check_track_script="${0}"
-check_state_script="${2}"
-image_backup_script="${3}"
-work_id="${4}"
-backup_dir="${5}"
+check_state_script="${1}"
+image_backup_script="${2}"
+work_id="${3}"
+backup_dir="${4}"
+compression="${5}"
+compression_level="${6}"
+sparse="${7}"
+reflink="${8}"
+incremental="${9}"
 
 
 
@@ -70,7 +75,7 @@ fi
 
 
 # Backup image
-bash "-c" "$image_backup_script" "$work_id" "$work_dir" "$backup_dir"
+bash "-c" "$image_backup_script" "$work_id" "$work_dir" "$backup_dir" "$compression" "$compression_level" "$sparse" "$reflink" "$incremental"
 if [ $? != 0 ]
 then
     echo Unable to backup image >&2
@@ -0,0 +1,170 @@
+#!/bin/bash
+
+# Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+# 
+# This library is free software; you can redistribute it and/or
+# modify it under the terms of the GNU Lesser General Public
+# License as published by the Free Software Foundation; either
+# version 3.0 of the License, or (at your option) any later version.
+# 
+# This library is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+# Lesser General Public License for more details.
+# 
+# You should have received a copy of the GNU Lesser General Public
+# License along with this library.
+
+
+
+# Check is root
+if [ $UID != "0" ]
+then
+    echo Root required >&2
+    exit 1
+fi
+
+
+
+# Setup variables
+#   path is relative to mount_dir (the task's disk mount), filter_mode is one of...
+#     none -- bytes are returned as-is
+#     grep -- only complete lines matching pattern (extended regex) are returned, and reading stops at the last complete line so a line
+#             that's still being written isn't split between calls
+if [ $# -lt 5 ]
+then
+    echo Arguments missing >&2
+    exit 1
+fi
+mount_dir="${0}"
+path="${1}"
+offset="${2}"
+max_bytes="${3}"
+filter_mode="${4}"
+pattern="${5}"
+
+file="$mount_dir$path"
+
+case "$filter_mode" in
+    none|grep)
+        ;;
+    *)
+        echo Unrecognized filter mode >&2
+        exit 1
+        ;;
+esac
+
+
+
+# Check disk is still mounted (exit 3 lets the caller tell this apart from the file not existing yet, and drop its cached mount dir)
+mountpoint -q "$mount_dir"
+if [ $? != 0 ]
+then
+    echo Task disk not mounted >&2
+    exit 3
+fi
+
+
+
+# Open file -- everything under the mount dir is controlled by the task, so path (or a directory along the way) may be a symlink to
+# somewhere else on the host (e.g. /etc/shadow). This runs as root, so refuse anything that doesn't resolve to a regular file inside the
+# mount dir. The check is repeated on the opened descriptor so that the file can't be swapped out between checking and reading.
+mount_real=$(realpath -e "$mount_dir")
+if [ $? != 0 ]
+then
+    echo Task disk not mounted >&2
+    exit 3
+fi
+file_real=$(realpath -e "$file" 2>/dev/null)
+if [ $? != 0 ]
+then
+    echo File not found >&2
+    exit 1
+fi
+case "$file_real" in
+    "$mount_real"/*)
+        ;;
+    *)
+        echo File outside of task disk >&2
+        exit 1
+        ;;
+esac
+if [ ! -f "$file_real" ]
+then
+    echo Not a regular file >&2
+    exit 1
+fi
+{ exec 3<"$file_real"; } 2>/dev/null
+if [ $? != 0 ]
+then
+    echo Unable to open file >&2
+    exit 1
+fi
+case "$(readlink "/proc/$$/fd/3")" in
+    "$mount_real"/*)
+        ;;
+    *)
+        echo File outside of task disk >&2
+        exit 1
+        ;;
+esac
+
+
+
+# Get size (if file is smaller than offset, it was truncated -- start over from the beginning like tail -F does)
+file_size=$(stat -L -c %s /dev/fd/3)
+if [ $? != 0 ]
+then
+    echo Unable to get file size >&2
+    exit 1
+fi
+truncated=0
+if [ $offset -gt $file_size ]
+then
+    offset=0
+    truncated=1
+fi
+
+
+
+# Read chunk
+chunk_file=$(mktemp)
+if [ $? != 0 ]
+then
+    echo Unable to create temp file >&2
+    exit 1
+fi
+trap 'rm -f "$chunk_file"' 0
+
+tail -c "+$(($offset + 1))" <&3 | head -c "$max_bytes" >"$chunk_file"
+chunk_size=$(stat -c %s "$chunk_file")
+if [ $? != 0 ]
+then
+    echo Unable to read file >&2
+    exit 1
+fi
+
+
+
+# Filter chunk and output
+if [ "$filter_mode" == "grep" ]
+then
+    line_count=$(tr -dc '\n' <"$chunk_file" | wc -c)
+    if [ $line_count == 0 ] && [ $chunk_size == $max_bytes ]
+    then
+        consumed=$chunk_size  # single line longer than max_bytes -- take it as is, otherwise tailing would get stuck here forever
+    else
+        consumed=$(head -n "$line_count" "$chunk_file" | wc -c)
+    fi
+    data=$(head -c "$consumed" "$chunk_file" | grep -a -E -- "$pattern" | base64 -w 0)
+else
+    consumed=$chunk_size
+    data=$(base64 -w 0 <"$chunk_file")
+fi
+
+write_frame "!SIZE" "$file_size"
+write_frame "!NEXT" "$(($offset + $consumed))"
+write_frame "!TRUNCATED" "$truncated"
+write_frame "!DATA" "$data"
+
+exit 0
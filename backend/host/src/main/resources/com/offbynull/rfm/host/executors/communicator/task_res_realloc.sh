@@ -27,7 +27,7 @@ fi
 
 
 # Setup variables
-if [ $# -lt 12 ]
+if [ $# -lt 13 ]
 then
     echo Arguments missing >&2
     exit 1
@@ -37,14 +37,15 @@ check_state_script="${1}"
 create_cgroup_script="${2}"
 mount_image_script="${3}"
 resize_image_script="${4}"
-unmount_image_script="${5}"
-delete_cgroup_script="${6}"
-work_id="${7}"
-cpus="${8}"
-cpu_quota="${9}"
-cpu_period="${10}"
-memory_size="${11}"
-disk_size="${12}"
+grow_image_script="${5}"
+unmount_image_script="${6}"
+delete_cgroup_script="${7}"
+work_id="${8}"
+cpus="${9}"
+cpu_quota="${10}"
+cpu_period="${11}"
+memory_size="${12}"
+disk_size="${13}"
 
 
 
@@ -66,9 +67,17 @@ fi
 
 
 
-# Get state
+# Get state (STARTED is only allowed if the only thing changing is the disk growing -- see below)
 check_state_output=$(bash "-c" "$check_state_script" "$work_id" "$work_dir" "ALLOCATED")
 check_state_result=$?
+if [ $check_state_result == 3 ]
+then
+    check_state_output=$(bash "-c" "$check_state_script" "$work_id" "$work_dir" "STARTED")
+    check_state_result=$?
+    work_started=1
+else
+    work_started=0
+fi
 if [ $check_state_result != 0 ]
 then
     echo Check state failed >&2
@@ -87,6 +96,45 @@ fi
 
 
 
+# Reallocate resources for started task -- cgroups can't be recreated while processes are in them and the image can't be unmounted while
+# in use, so the only thing that can be done is growing the disk online
+if [ $work_started == 1 ]
+then
+    if [ "$cpus" != "$(cat "$work_dir/work.cpus")" ] \
+            || [ "$cpu_quota" != "$(cat "$work_dir/work.cpu_quota")" ] \
+            || [ "$cpu_period" != "$(cat "$work_dir/work.cpu_period")" ] \
+            || [ "$memory_size" != "$(cat "$work_dir/work.memory_size")" ]
+    then
+        echo Only disk can be reallocated while started >&2
+        exit 3
+    fi
+
+    bash "-c" "$grow_image_script" "$work_id" "$work_dir" "$disk_size"
+    grow_image_result=$?
+    if [ $grow_image_result == 10 ]
+    then
+        echo Disk cannot be reallocated online while started >&2
+        exit 3
+    elif [ $grow_image_result != 0 ]
+    then
+        echo Unable to grow image >&2
+        exit 1
+    fi
+
+    rm "$work_dir/work.disk_size" >"/dev/null"
+    echo "$disk_size" > "$work_dir/work.disk_size"
+    if [ $? != 0 ]
+    then
+        echo Unable to write out resources >&2
+        exit 1
+    fi
+    sync "$work_dir/work.disk_size" >"/dev/null"
+
+    exit 0
+fi
+
+
+
 # Reallocate resources
 bash "-c" "$delete_cgroup_script" "$work_id" "$work_dir"
 if [ $? != 0 ]
@@ -102,25 +150,38 @@ then
     exit 1
 fi
 
-bash "-c" "$unmount_image_script" "$work_id" "$work_dir"
-if [ $? != 0 ]
+# Resize image -- try growing it online first (fast, no unmount/e2fsck), fall back to offline resize only if the grow script says it can't
+# be done online (exit 10, e.g. shrinking) -- any other failure is a real failure and gets reported as is
+bash "-c" "$grow_image_script" "$work_id" "$work_dir" "$disk_size"
+grow_image_result=$?
+if [ $grow_image_result != 0 ] && [ $grow_image_result != 10 ]
 then
-    echo Unable to unmount image >&2
+    echo Unable to grow image >&2
     exit 1
-fi
-
-bash "-c" "$resize_image_script" "$work_id" "$work_dir" "$disk_size"
-if [ $? != 0 ]
-then
-    echo Unable to resize image >&2
-    exit 1
-fi
-
-bash "-c" "$mount_image_script" "$work_id" "$work_dir"
-if [ $? != 0 ]
+elif [ $grow_image_result == 10 ]
 then
-    echo Unable to mount image >&2
-    exit 1
+    echo Online grow not possible, falling back to offline resize >&2
+
+    bash "-c" "$unmount_image_script" "$work_id" "$work_dir"
+    if [ $? != 0 ]
+    then
+        echo Unable to unmount image >&2
+        exit 1
+    fi
+
+    bash "-c" "$resize_image_script" "$work_id" "$work_dir" "$disk_size"
+    if [ $? != 0 ]
+    then
+        echo Unable to resize image >&2
+        exit 1
+    fi
+
+    bash "-c" "$mount_image_script" "$work_id" "$work_dir"
+    if [ $? != 0 ]
+    then
+        echo Unable to mount image >&2
+        exit 1
+    fi
 fi
 
 # If the host crashes while these commands, there's a possibility that some files will be updated but other won't. The chance of this
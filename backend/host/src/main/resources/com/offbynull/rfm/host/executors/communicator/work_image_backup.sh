@@ -27,7 +27,7 @@ fi
 
 
 # Setup variables
-if [ $# -lt 2 ]
+if [ $# -lt 7 ]
 then
     echo Arguments missing >&2
     exit 1
@@ -35,9 +35,70 @@ fi
 work_id="${0}"
 work_dir="${1}"
 backup_dir="${2}"
+compression="${3}"  # none, gzip, zstd, or lz4
+level="${4}"        # 0 for compressor's default
+sparse="${5}"       # true to only read allocated regions of the image
+reflink="${6}"      # true to share blocks with the image when not compressing (if filesystem supports it)
+incremental="${7}"  # true to only store blocks changed since the last backup (see "Incremental backup" below)
 
 work_img="$work_dir/work.img"
-backup_img="$backup_dir/work.img.gz"
+
+level_arg=()
+if [ "$level" != "0" ]
+then
+    level_arg=("-$level")
+fi
+
+case "$compression" in
+    "none")
+        compress_cmd=()
+        ;;
+    "gzip")
+        compress_cmd=(gzip -c "${level_arg[@]}")
+        ;;
+    "zstd")
+        compress_cmd=(zstd -q -c -T0 "${level_arg[@]}")
+        ;;
+    "lz4")
+        compress_cmd=(lz4 -q -c "${level_arg[@]}")
+        ;;
+    *)
+        echo Unrecognized compression >&2
+        exit 1
+        ;;
+esac
+
+if [ ${#compress_cmd[@]} != 0 ]
+then
+    which "${compress_cmd[0]}" > /dev/null
+    if [ $? != 0 ]
+    then
+        echo "Command ${compress_cmd[0]} missing" >&2
+        exit 1
+    fi
+fi
+
+# Backup file name depends on format, so restore can tell how to read it back...
+#   work.img             -- uncompressed copy (holes preserved if sparse)
+#   work.img.tar.<ext>   -- compressed sparse tar, only allocated regions are read/stored
+#   work.img.<ext>       -- compressed image, entire image is read (holes read as zeros)
+case "$compression" in
+    "none") backup_name="work.img" ;;
+    "gzip") ext="gz" ;;
+    "zstd") ext="zst" ;;
+    "lz4") ext="lz4" ;;
+esac
+if [ "$compression" != "none" ]
+then
+    if [ "$sparse" == "true" ]
+    then
+        backup_name="work.img.tar.$ext"
+    else
+        backup_name="work.img.$ext"
+    fi
+fi
+backup_img="$backup_dir/$backup_name"
+backup_tmp="$backup_dir/.$backup_name.tmp"
 
 
 
@@ -61,13 +122,247 @@ fi
 
 
 
-# Compress image
+# Incremental backup
+#   The image is split into fixed-size blocks and a hash of each block is kept from one backup to the next. Each backup is a level in a
+#   chain: level 0 has every block (minus all-zero blocks if sparse), and each level after it only has blocks whose hash changed since the
+#   level before it. A level is made up of...
+#     inc.<level>.manifest     -- base level, block size, image size, compression (and level), and indices of the blocks stored in the level
+#     inc.<level>.data[.<ext>] -- the blocks listed in the manifest, concatenated in the same order
+#   inc.hashes holds the block hashes as of the latest level. work_image_recover.sh rebuilds the image by applying each level in order, and
+#   work_image_compact.sh merges a chain back down to a single level.
+if [ "$incremental" == "true" ]
+then
+    block_size=4194304  # 4 MiB
+    if [ "$compression" == "none" ]
+    then
+        compress_cmd=(cat)
+        data_name_ext=""
+    else
+        data_name_ext=".$ext"
+    fi
+
+    mkdir -p "$backup_dir"
+    if [ $? != 0 ]
+    then
+        echo Image backup directory creation failed >&2
+        exit 1
+    fi
+
+    # Find where chain left off (start a new chain if there isn't one or if it's unusable)
+    prev_level=$(ls "$backup_dir" | grep -E '^inc\.[0-9]{6}\.manifest$' | sort | tail -n 1 | cut -d '.' -f 2)
+    if [ -n "$prev_level" ] && [ -f "$backup_dir/inc.hashes" ] \
+            && [ "$(grep -E '^block_size ' "$backup_dir/inc.$prev_level.manifest" | cut -d ' ' -f 2)" == "$block_size" ]
+    then
+        base="$prev_level"
+        new_level=$(printf "%06d" $(( 10#$prev_level + 1 )))
+    else
+        base="none"
+        new_level="000000"
+    fi
+
+    if [ "$base" == "none" ]
+    then
+        prev_hashes="/dev/null"
+    else
+        prev_hashes="$backup_dir/inc.hashes"
+    fi
+
+    hashes_tmp="$backup_dir/.inc.hashes.tmp"
+    blocks_tmp="$backup_dir/.inc.blocks.tmp"
+    data_name="inc.$new_level.data$data_name_ext"
+    data_tmp="$backup_dir/.$data_name.tmp"
+    manifest_tmp="$backup_dir/.inc.$new_level.manifest.tmp"
+    old_dir="$backup_dir/.inc.old"
+    function cleanup_tmp {
+        rm -f "$hashes_tmp" "$blocks_tmp" "$data_tmp" "$manifest_tmp"
+    }
+
+    # Hash each block and store the ones that changed, all in a single pass over the image -- hashes go to 1 line per block (in block
+    # order), indices of stored blocks go to 1 line per block, and the stored blocks themselves go to stdout. Blocks that are entirely a
+    # hole (found via SEEK_DATA) are never read, they're hashed/stored as zeros. If sparse, all-zero blocks that weren't in the previous
+    # level (e.g. the entire image for level 0, or the tail end of an image that grew) are skipped because recovery starts with a sparse
+    # image / extends the image with zeros.
+    sync "$work_img" >"/dev/null"  # sync just incase
+    image_size=$(stat -c %s "$work_img")
+    set -o pipefail
+    perl - "$work_img" "$image_size" "$block_size" "$sparse" "$prev_hashes" "$hashes_tmp" "$blocks_tmp" <<'EOF' \
+            | "${compress_cmd[@]}" >"$data_tmp"
+        use strict;
+        use warnings;
+        use Digest::SHA qw(sha256_hex);
+        use Errno qw(ENXIO);
+        use Fcntl qw(SEEK_SET);
+        use constant SEEK_DATA => 3;  # linux value, not exported by Fcntl on older perls
+
+        my ($img, $size, $block_size, $sparse, $prev_path, $hashes_path, $blocks_path) = @ARGV;
+
+        open(my $prev_fh, '<', $prev_path) or die "$prev_path: $!";
+        chomp(my @prev = <$prev_fh>);
+        close($prev_fh);
+
+        open(my $img_fh, '<:raw', $img) or die "$img: $!";
+        open(my $hashes_fh, '>', $hashes_path) or die "$hashes_path: $!";
+        open(my $blocks_fh, '>', $blocks_path) or die "$blocks_path: $!";
+        binmode(STDOUT);
+
+        my $zero = "\0" x $block_size;
+        my $zero_hash = sha256_hex($zero);
+        my $data_off = 0;  # start of the next region with data (-1 if there isn't one)
+        for (my $idx = 0; $idx * $block_size < $size; $idx++) {
+            my $off = $idx * $block_size;
+            my $len = $size - $off < $block_size ? $size - $off : $block_size;
+
+            if ($data_off != -1 && $data_off < $off) {
+                my $pos = sysseek($img_fh, $off, SEEK_DATA);
+                if (defined $pos) {
+                    $data_off = $pos;
+                } elsif ($! == ENXIO) {
+                    $data_off = -1;  # only holes from here on
+                } else {
+                    $data_off = $off;  # SEEK_DATA unsupported, read everything
+                }
+            }
+
+            my $block;
+            if ($data_off == -1 || $data_off >= $off + $len) {
+                $block = $len == $block_size ? $zero : "\0" x $len;
+            } else {
+                defined(sysseek($img_fh, $off, SEEK_SET)) or die "seek failed: $!";
+                $block = '';
+                while (length($block) < $len) {
+                    my $read = sysread($img_fh, $block, $len - length($block), length($block));
+                    defined($read) or die "read failed: $!";
+                    $read != 0 or die "image shrunk";
+                }
+            }
+            my $is_zero = $block eq ($len == $block_size ? $zero : "\0" x $len);
+            my $hash = $is_zero && $len == $block_size ? $zero_hash : sha256_hex($block);
+
+            my $store = $idx < @prev ? $prev[$idx] ne $hash : !($sparse eq 'true' && $is_zero);
+            print $hashes_fh "$hash\n" or die "write failed: $!";
+            if ($store) {
+                print $blocks_fh "$idx\n" or die "write failed: $!";
+                print STDOUT $block or die "write failed: $!";
+            }
+        }
+
+        close($hashes_fh) or die "write failed: $!";
+        close($blocks_fh) or die "write failed: $!";
+        close(STDOUT) or die "write failed: $!";
+EOF
+    if [ $? != 0 ]
+    then
+        cleanup_tmp
+        echo Image block backup failed >&2
+        exit 1
+    fi
+
+    {
+        echo "version 1"
+        echo "base $base"
+        echo "block_size $block_size"
+        echo "image_size $image_size"
+        echo "compression $compression"
+        echo "level $level"
+        echo "blocks $(wc -l <"$blocks_tmp")"
+        cat "$blocks_tmp"
+    } >"$manifest_tmp"
+    if [ $? != 0 ]
+    then
+        cleanup_tmp
+        echo Image manifest write failed >&2
+        exit 1
+    fi
+
+    # Commit level -- manifest goes in after data (a level only counts once its manifest exists) and hashes go in last (if interrupted
+    # before hashes are updated, the next level gets compared against older hashes, meaning it stores more blocks than needed but is still
+    # correct). A new chain moves the old chain aside first so that its level 0 doesn't overwrite files that an old manifest still points
+    # to (if interrupted, the old chain is left in .inc.old).
+    sync "$data_tmp" "$manifest_tmp" "$hashes_tmp" >"/dev/null"
+    if [ "$base" == "none" ]
+    then
+        mkdir -p "$old_dir" && find "$backup_dir" -maxdepth 1 -name 'inc.*' -exec mv -f -t "$old_dir" {} +
+        if [ $? != 0 ]
+        then
+            cleanup_tmp
+            echo "Unable to move old chain aside, left in $old_dir" >&2
+            exit 1
+        fi
+    fi
+    mv -f "$data_tmp" "$backup_dir/$data_name" \
+            && mv -f "$manifest_tmp" "$backup_dir/inc.$new_level.manifest" \
+            && mv -f "$hashes_tmp" "$backup_dir/inc.hashes"
+    if [ $? != 0 ]
+    then
+        cleanup_tmp
+        echo Image backup move failed >&2
+        exit 1
+    fi
+    rm -f "$blocks_tmp"
+
+    # New chain replaces whatever was there before (old chain and full backups)
+    if [ "$base" == "none" ]
+    then
+        rm -rf "$old_dir"
+        rm -f "$backup_dir/work.img" "$backup_dir"/work.img.*
+    fi
+
+    exit 0
+fi
+
+
+
+# Backup image (to temp file first so a failure doesn't clobber an existing backup)
 sync "$work_img" >"/dev/null"  # sync just incase
-gzip -c "$work_img" >"$backup_img"
+rm -f "$backup_tmp"
+if [ "$compression" == "none" ]
+then
+    if [ "$reflink" == "true" ]
+    then
+        reflink_arg="--reflink=auto"    # falls back to a regular copy if the filesystem doesn't support reflinks
+    else
+        reflink_arg="--reflink=never"
+    fi
+    if [ "$sparse" == "true" ]
+    then
+        sparse_arg="--sparse=always"
+    else
+        sparse_arg="--sparse=never"
+    fi
+    cp "$reflink_arg" "$sparse_arg" "$work_img" "$backup_tmp"
+elif [ "$sparse" == "true" ]
+then
+    set -o pipefail
+    tar -c -S --hole-detection=seek -C "$work_dir" -f - "work.img" | "${compress_cmd[@]}" >"$backup_tmp"  # SEEK_DATA/SEEK_HOLE
+else
+    "${compress_cmd[@]}" "$work_img" >"$backup_tmp"
+fi
+if [ $? != 0 ]
+then
+    rm -f "$backup_tmp"
+    echo Image backup failed >&2
+    exit 1
+fi
+
+sync "$backup_tmp" >"/dev/null"
+mv -f "$backup_tmp" "$backup_img"
 if [ $? != 0 ]
 then
-    echo Image backup compression failed >&2
+    rm -f "$backup_tmp"
+    echo Image backup move failed >&2
     exit 1
 fi
 
+
+
+# Remove backups in other formats (restore expects only 1)
+for old_name in work.img work.img.gz work.img.zst work.img.lz4 work.img.tar.gz work.img.tar.zst work.img.tar.lz4
+do
+    if [ "$old_name" != "$backup_name" ]
+    then
+        rm -f "$backup_dir/$old_name"
+    fi
+done
+rm -f "$backup_dir"/inc.*
+
 exit 0
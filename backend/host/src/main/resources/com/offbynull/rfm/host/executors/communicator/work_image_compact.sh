@@ -0,0 +1,100 @@
+#!/bin/bash
+
+# Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+# 
+# This library is free software; you can redistribute it and/or
+# modify it under the terms of the GNU Lesser General Public
+# License as published by the Free Software Foundation; either
+# version 3.0 of the License, or (at your option) any later version.
+# 
+# This library is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+# Lesser General Public License for more details.
+# 
+# You should have received a copy of the GNU Lesser General Public
+# License along with this library.
+
+
+
+# Check is root
+if [ $UID != "0" ]
+then
+    echo Root required >&2
+    exit 1
+fi
+
+
+
+# Setup variables
+if [ $# -lt 3 ]
+then
+    echo Arguments missing >&2
+    exit 1
+fi
+work_id="${0}"
+backup_dir="${1}"
+image_recover_script="${2}"
+image_backup_script="${3}"
+
+compact_dir="$backup_dir/.compact"
+
+
+
+# Check if there's anything to compact (needs an incremental chain with more than 1 level)
+chain_levels=$(ls "$backup_dir" | grep -E '^inc\.[0-9]{6}\.manifest$' | sort | cut -d '.' -f 2)
+if [ $(wc -w <<< "$chain_levels") -lt 2 ]
+then
+    exit 0
+fi
+last_level=$(tail -n 1 <<< "$chain_levels")
+compression=$(grep -E '^compression ' "$backup_dir/inc.$last_level.manifest" | cut -d ' ' -f 2)
+level=$(grep -E '^level ' "$backup_dir/inc.$last_level.manifest" | cut -d ' ' -f 2)
+if [ -z "$level" ]
+then
+    level="0"  # manifests written before the level was recorded
+fi
+
+
+
+# Rebuild image from chain and back it up as a new chain with a single level (same compression and level as the latest level) -- the
+# rebuild skips the filesystem check, the new chain has to hold the exact same content as the old one (a check that repairs anything
+# would change it, and restoring from the new chain runs the check anyway)
+rm -rf "$compact_dir"
+mkdir -p "$compact_dir/work" "$compact_dir/backup" "$compact_dir/old"
+if [ $? != 0 ]
+then
+    echo Compaction directory creation failed >&2
+    exit 1
+fi
+
+bash "-c" "$image_recover_script" "$work_id" "$compact_dir/work" "$backup_dir" "false"
+if [ $? != 0 ]
+then
+    rm -rf "$compact_dir"
+    echo Unable to rebuild image from chain >&2
+    exit 1
+fi
+
+bash "-c" "$image_backup_script" "$work_id" "$compact_dir/work" "$compact_dir/backup" "$compression" "$level" "true" "false" "true"
+if [ $? != 0 ]
+then
+    rm -rf "$compact_dir"
+    echo Unable to backup rebuilt image >&2
+    exit 1
+fi
+
+
+
+# Swap chains (old chain gets moved aside first -- if interrupted, both chains are still in the compaction directory)
+mv "$backup_dir"/inc.* "$compact_dir/old/" && mv "$compact_dir/backup"/inc.* "$backup_dir/"
+if [ $? != 0 ]
+then
+    echo "Unable to swap chains, old chain left in $compact_dir/old" >&2
+    exit 1
+fi
+rm -rf "$compact_dir"
+
+sync "$backup_dir" >"/dev/null"
+
+exit 0
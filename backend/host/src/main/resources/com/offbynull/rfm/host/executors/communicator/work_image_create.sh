@@ -77,7 +77,7 @@ function cleanup {
 }
 trap cleanup 0
 
-mkfs -t ext2 -F "$work_img" >"/dev/null"
+mkfs -t ext4 -O ^has_journal -F "$work_img" >"/dev/null"  # ext4 without journal (behaves like ext2, but can be grown while mounted)
 if [ $? != 0 ]
 then
     echo Image formatting failed >&2
@@ -0,0 +1,108 @@
+#!/bin/bash
+
+# Copyright (c) 2018, Kasra Faghihi, All rights reserved.
+# 
+# This library is free software; you can redistribute it and/or
+# modify it under the terms of the GNU Lesser General Public
+# License as published by the Free Software Foundation; either
+# version 3.0 of the License, or (at your option) any later version.
+# 
+# This library is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+# Lesser General Public License for more details.
+# 
+# You should have received a copy of the GNU Lesser General Public
+# License along with this library.
+
+
+
+# Check is root
+if [ $UID != "0" ]
+then
+    echo Root required >&2
+    exit 1
+fi
+
+
+
+# Setup variables
+#   Grows the image while it's mounted (no unmount, no e2fsck). Exits with 10 if the image can't be resized this way (it's shrinking, it
+#   isn't mounted, or the filesystem/kernel doesn't support growing online), in which case the caller should fall back to
+#   work_image_resize.sh (which needs the image unmounted).
+if [ $# -lt 2 ]
+then
+    echo Arguments missing >&2
+    exit 1
+fi
+work_id="${0}"
+work_dir="${1}"
+disk_size="${2}"
+
+work_img="$work_dir/work.img"
+work_mnt="$work_dir/work_mnt"
+
+
+
+# Determine size (rounded up to 1K, same as work_image_resize.sh)
+disk_excess_boundary=$(($disk_size % 1024))
+if [ $disk_excess_boundary != 0 ]
+then
+    disk_size=$(($disk_size + (1024 - $disk_excess_boundary)))
+    echo Size not multiple of 1K -- rounding up >&2
+fi
+disk_size_in_kb=$(($disk_size / 1024))
+
+current_size=$(stat -c %s "$work_img")
+if [ $? != 0 ]
+then
+    echo Unable to get image size >&2
+    exit 1
+fi
+if [ $disk_size -lt $current_size ]
+then
+    echo Image shrinking, cannot resize online >&2
+    exit 10
+fi
+
+
+
+# Find loop device backing the mount
+loop_dev=$(findmnt -n -o SOURCE --mountpoint "$work_mnt")
+if [ $? != 0 ] || [ -z "$loop_dev" ]
+then
+    echo Image not mounted, cannot resize online >&2
+    exit 10
+fi
+
+
+
+# Grow image -- extend the backing file, have the loop device pick up the new size, then grow the filesystem while mounted. If anything
+# fails past this point, the backing file is left extended but the filesystem isn't grown, which work_image_resize.sh handles fine.
+if [ $disk_size -gt $current_size ]
+then
+    fallocate -l "$disk_size" "$work_img"
+    if [ $? != 0 ]
+    then
+        echo Image extension failed >&2
+        exit 1
+    fi
+
+    losetup -c "$loop_dev"
+    if [ $? != 0 ]
+    then
+        echo Loop device capacity update failed >&2
+        exit 10
+    fi
+fi
+
+resize2fs "$loop_dev" "$disk_size_in_kb"K >&2  # grows mounted filesystem (only supported by ext3/ext4 drivers)
+if [ $? != 0 ]
+then
+    echo Online filesystem resize failed >&2
+    exit 10
+fi
+
+sync "$work_img" >"/dev/null"
+
+exit 0
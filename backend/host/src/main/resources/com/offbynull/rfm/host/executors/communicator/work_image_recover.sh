@@ -35,31 +35,170 @@ fi
 work_id="${0}"
 work_dir="${1}"
 backup_dir="${2}"
+check="${3:-true}"  # false to skip checking/repairing the filesystem (e.g. when only the image's exact content is needed)
 
 work_img="$work_dir/work.img"
-backup_img="$backup_dir/work.img.gz"
 
 
 
-# Recover image
-cat "$backup_img" | gzip -d > "$work_img"
-if [ $? != 0 ]
+# Recover image from incremental chain (see work_image_backup.sh) -- start with an empty sparse image and apply each level in order
+chain_levels=$(ls "$backup_dir" | grep -E '^inc\.[0-9]{6}\.manifest$' | sort | cut -d '.' -f 2)
+if [ -n "$chain_levels" ]
 then
-    echo Image recovery failed >&2
-    exit 1
+    rm -f "$work_img"
+    touch "$work_img"
+    if [ $? != 0 ]
+    then
+        echo Image recovery failed >&2
+        exit 1
+    fi
+
+    # Writes each block listed in a level's manifest to its spot in the image, all in a single pass over the level's data (read from
+    # stdin -- blocks are stored in the same order they're listed). The last block of the image may be short.
+    apply_level_script=$(cat <<'EOF'
+        use strict;
+        use warnings;
+        use Fcntl qw(SEEK_SET);
+
+        my ($img, $size, $block_size, $manifest) = @ARGV;
+
+        open(my $manifest_fh, '<', $manifest) or die "$manifest: $!";
+        open(my $img_fh, '+<:raw', $img) or die "$img: $!";
+        binmode(STDIN);
+
+        my $in_blocks = 0;  # block indices come after the "blocks" line
+        while (my $line = <$manifest_fh>) {
+            chomp($line);
+            if (!$in_blocks) {
+                $in_blocks = $line =~ /^blocks /;
+                next;
+            }
+
+            my $off = $line * $block_size;
+            my $len = $size - $off < $block_size ? $size - $off : $block_size;
+            $len > 0 or die "block $line past end of image";
+
+            my $block = '';
+            while (length($block) < $len) {
+                my $read = read(STDIN, $block, $len - length($block), length($block));
+                defined($read) or die "read failed: $!";
+                $read != 0 or die "data shorter than manifest";
+            }
+
+            defined(sysseek($img_fh, $off, SEEK_SET)) or die "seek failed: $!";
+            my $written = 0;
+            while ($written < $len) {
+                my $count = syswrite($img_fh, $block, $len - $written, $written);
+                defined($count) or die "write failed: $!";
+                $written += $count;
+            }
+        }
+        read(STDIN, my $extra, 1) == 0 or die "data longer than manifest";
+
+        close($manifest_fh);
+        close($img_fh) or die "write failed: $!";
+EOF
+)
+
+    set -o pipefail
+    expected_base="none"
+    for chain_level in $chain_levels
+    do
+        manifest="$backup_dir/inc.$chain_level.manifest"
+        manifest_base=$(grep -E '^base ' "$manifest" | cut -d ' ' -f 2)
+        block_size=$(grep -E '^block_size ' "$manifest" | cut -d ' ' -f 2)
+        image_size=$(grep -E '^image_size ' "$manifest" | cut -d ' ' -f 2)
+        compression=$(grep -E '^compression ' "$manifest" | cut -d ' ' -f 2)
+        if [ "$manifest_base" != "$expected_base" ]
+        then
+            echo "Image backup chain broken at level $chain_level" >&2
+            exit 1
+        fi
+        expected_base="$chain_level"
+
+        case "$compression" in
+            "none") decompress_cmd=(cat) ; data_file="$backup_dir/inc.$chain_level.data" ;;
+            "gzip") decompress_cmd=(gzip -d -c) ; data_file="$backup_dir/inc.$chain_level.data.gz" ;;
+            "zstd") decompress_cmd=(zstd -q -d -c) ; data_file="$backup_dir/inc.$chain_level.data.zst" ;;
+            "lz4") decompress_cmd=(lz4 -q -d -c) ; data_file="$backup_dir/inc.$chain_level.data.lz4" ;;
+            *)
+                echo "Unrecognized compression at level $chain_level" >&2
+                exit 1
+                ;;
+        esac
+
+        truncate -s "$image_size" "$work_img" \
+                && "${decompress_cmd[@]}" "$data_file" | perl -e "$apply_level_script" "$work_img" "$image_size" "$block_size" "$manifest"
+        if [ $? != 0 ]
+        then
+            echo "Image recovery failed at level $chain_level" >&2
+            exit 1
+        fi
+    done
 fi
 
-e2fsck -f -y "$work_img" >&2  # https://www.systutorials.com/docs/linux/man/8-fsck.ext3/
-case "$?" in
-    "0") #0=no errors
-        ;;
-    "1") #1=corrected errors
-        ;;
-    *)
-        echo Image check failed >&2
+
+
+# Recover image from full backup (format depends on the name of the backup file -- see work_image_backup.sh)
+if [ -z "$chain_levels" ]
+then
+    backup_name=""
+    for name in work.img work.img.gz work.img.zst work.img.lz4 work.img.tar.gz work.img.tar.zst work.img.tar.lz4
+    do
+        if [ -f "$backup_dir/$name" ]
+        then
+            backup_name="$name"
+            break
+        fi
+    done
+    if [ "$backup_name" == "" ]
+    then
+        echo Image backup missing >&2
         exit 1
-        ;;
-esac
+    fi
+    backup_img="$backup_dir/$backup_name"
+
+    case "$backup_name" in
+        *.gz) decompress_cmd=(gzip -d -c) ;;
+        *.zst) decompress_cmd=(zstd -q -d -c) ;;
+        *.lz4) decompress_cmd=(lz4 -q -d -c) ;;
+        *) decompress_cmd=() ;;
+    esac
+
+    set -o pipefail
+    case "$backup_name" in
+        work.img)
+            cp --reflink=auto --sparse=always "$backup_img" "$work_img"
+            ;;
+        work.img.tar.*)
+            rm -f "$work_img"  # tar only recreates holes when it creates the file
+            "${decompress_cmd[@]}" "$backup_img" | tar -x -S -C "$work_dir" -f - "work.img"
+            ;;
+        *)
+            "${decompress_cmd[@]}" "$backup_img" > "$work_img"
+            ;;
+    esac
+    if [ $? != 0 ]
+    then
+        echo Image recovery failed >&2
+        exit 1
+    fi
+fi
+
+if [ "$check" == "true" ]
+then
+    e2fsck -f -y "$work_img" >&2  # https://www.systutorials.com/docs/linux/man/8-fsck.ext3/
+    case "$?" in
+        "0") #0=no errors
+            ;;
+        "1") #1=corrected errors
+            ;;
+        *)
+            echo Image check failed >&2
+            exit 1
+            ;;
+    esac
+fi
 
 sync "$work_img" >"/dev/null"
 
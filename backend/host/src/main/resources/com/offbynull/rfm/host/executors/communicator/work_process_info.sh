@@ -65,15 +65,11 @@ then
     current_starttime=$(ps -o lstart --no-headers "--pid=$run_sid" | tr -d ' ') 
     if [ "$run_starttime" == "$current_starttime" ]
     then
-        echo !RUN_SID
-        echo "$run_sid" | wc -l
-        echo "$run_sid"
+        write_frame "!RUN_SID" "$run_sid"
 
           # ps outputs may have prepended/appended spaces if length of output is too short, tr removes spaces
         run_pids=$(ps -o pid --no-headers "--sid=$run_sid" | tr -d ' ')  # returns 1 if not found, 0 if found, output will always be the same
-        echo !RUN_PIDS
-        echo "$run_pids" | wc -l
-        echo "$run_pids"
+        write_frame "!RUN_PIDS" "$run_pids"
     fi
 fi
 
@@ -84,9 +80,7 @@ work_exitcode_file="$work_mnt/work.exitcode"
 if [ -f "$work_exitcode_file" ]
 then
     work_exitcode=$(cat $work_exitcode_file)
-    echo !EXITCODE
-    echo "$work_exitcode" | wc -l
-    echo "$work_exitcode"
+    write_frame "!EXITCODE" "$work_exitcode"
 fi
 
 
@@ -96,9 +90,7 @@ mountpoint -q "$work_mnt"
 if [ -d "$work_mnt" ] && [ $? == 0 ] # if work_mnt is a dir and a mount point
 then
     df_output=$(df -B 1 -a --output="used,avail,fstype,target" "$work_mnt")
-    echo !DF
-    echo "$df_output" | wc -l
-    echo "$df_output"
+    write_frame "!DF" "$df_output"
 fi
 
 
@@ -108,18 +100,14 @@ cgroup_mem_usage_file="/sys/fs/cgroup/memory/$work_id/memory.usage_in_bytes"
 if [ -f "$cgroup_mem_usage_file" ]
 then
     cgroup_mem_usage=$(cat "$cgroup_mem_usage_file")
-    echo !CGROUP_MEM_USAGE
-    echo "$cgroup_mem_usage" | wc -l
-    echo "$cgroup_mem_usage"
+    write_frame "!CGROUP_MEM_USAGE" "$cgroup_mem_usage"
 fi
 
 cgroup_mem_stat_file="/sys/fs/cgroup/memory/$work_id/memory.stat"
 if [ -f "$cgroup_mem_stat_file" ]
 then
     cgroup_mem_stat=$(cat "$cgroup_mem_stat_file")
-    echo !CGROUP_MEM_STAT
-    echo "$cgroup_mem_stat" | wc -l
-    echo "$cgroup_mem_stat"
+    write_frame "!CGROUP_MEM_STAT" "$cgroup_mem_stat"
 fi
 
 exit 0
@@ -0,0 +1,231 @@
+package com.offbynull.rfm.host.communicator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChunkedTransferTest {
+    
+    private Path tempDir;
+    private FakeCommunicator communicator;
+    private byte[] data;
+
+    @Before
+    public void setUp() throws Exception {
+        tempDir = Files.createTempDirectory("chunktest");
+        communicator = new FakeCommunicator();
+        data = new byte[10000];
+        new Random(0L).nextBytes(data);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tempDir.toFile());
+    }
+
+    @Test
+    public void mustUpload() throws Exception {
+        Path local = tempDir.resolve("file");
+        Files.write(local, data);
+        communicator.files.put("/remote", new byte[20000]); // larger existing file must get truncated
+
+        new ChunkedTransfer(communicator, 1024, 3).upload(1000L, local.toString(), "/remote");
+        
+        assertArrayEquals(data, communicator.files.get("/remote"));
+        assertFalse(Files.exists(tempDir.resolve("file.chunks")));
+    }
+
+    @Test
+    public void mustDownload() throws Exception {
+        Path local = tempDir.resolve("file");
+        communicator.files.put("/remote", data);
+
+        new ChunkedTransfer(communicator, 1024, 3).download(1000L, "/remote", local.toString());
+        
+        assertArrayEquals(data, Files.readAllBytes(local));
+        assertFalse(Files.exists(tempDir.resolve("file.chunks")));
+    }
+
+    @Test
+    public void mustTransferEmptyFile() throws Exception {
+        Path local = tempDir.resolve("file");
+        Files.write(local, new byte[0]);
+
+        new ChunkedTransfer(communicator, 1024, 3).upload(1000L, local.toString(), "/remote");
+        assertArrayEquals(new byte[0], communicator.files.get("/remote"));
+
+        Files.delete(local);
+        new ChunkedTransfer(communicator, 1024, 3).download(1000L, "/remote", local.toString());
+        assertArrayEquals(new byte[0], Files.readAllBytes(local));
+    }
+
+    @Test
+    public void mustResendCorruptedUploadChunk() throws Exception {
+        Path local = tempDir.resolve("file");
+        Files.write(local, data);
+        communicator.corruptOffsets.add(2048L);
+
+        new ChunkedTransfer(communicator, 1024, 3).upload(1000L, local.toString(), "/remote");
+        
+        assertArrayEquals(data, communicator.files.get("/remote"));
+    }
+
+    @Test
+    public void mustRefetchCorruptedDownloadChunk() throws Exception {
+        Path local = tempDir.resolve("file");
+        communicator.files.put("/remote", data);
+        communicator.corruptOffsets.add(2048L);
+
+        new ChunkedTransfer(communicator, 1024, 3).download(1000L, "/remote", local.toString());
+        
+        assertArrayEquals(data, Files.readAllBytes(local));
+    }
+
+    @Test
+    public void mustResumeInterruptedDownload() throws Exception {
+        Path local = tempDir.resolve("file");
+        communicator.files.put("/remote", data);
+        communicator.failOffsets.add(5120L);
+
+        try {
+            new ChunkedTransfer(communicator, 1024, 1).download(1000L, "/remote", local.toString());
+            fail("Exception missing");
+        } catch (IOException ioe) {
+            // expected
+        }
+        assertTrue(Files.exists(tempDir.resolve("file.chunks")));
+        
+        communicator.transferCount = 0;
+        new ChunkedTransfer(communicator, 1024, 1).download(1000L, "/remote", local.toString());
+        
+        assertArrayEquals(data, Files.readAllBytes(local));
+        assertEquals(5, communicator.transferCount); // chunks 0 to 4 were done before the failure, only 5 to 9 should be fetched
+    }
+
+    private static final class FakeCommunicator implements Communicator {
+        private final Map<String, byte[]> files = new HashMap<>();
+        private final Set<Long> corruptOffsets = new HashSet<>(); // corrupt transfer at these offsets (once)
+        private final Set<Long> failOffsets = new HashSet<>(); // fail transfer at these offsets (once)
+        private int transferCount;
+
+        @Override
+        public synchronized void upload(long timeout, byte[] localData, int localOffset, String remotePath, long remoteOffset, int len)
+                throws IOException {
+            if (failOffsets.remove(remoteOffset)) {
+                throw new IOException();
+            }
+            transferCount++;
+
+            byte[] file = files.getOrDefault(remotePath, new byte[0]);
+            if (file.length < remoteOffset + len) {
+                file = Arrays.copyOf(file, (int) remoteOffset + len);
+            }
+            System.arraycopy(localData, localOffset, file, (int) remoteOffset, len);
+            if (corruptOffsets.remove(remoteOffset)) {
+                file[(int) remoteOffset] ^= 1;
+            }
+            files.put(remotePath, file);
+        }
+
+        @Override
+        public synchronized byte[] download(long timeout, String remotePath, long remoteOffset, int len) throws IOException {
+            if (failOffsets.remove(remoteOffset)) {
+                throw new IOException();
+            }
+            transferCount++;
+
+            byte[] ret = Arrays.copyOfRange(files.get(remotePath), (int) remoteOffset, (int) remoteOffset + len);
+            if (corruptOffsets.remove(remoteOffset)) {
+                ret[0] ^= 1;
+            }
+            return ret;
+        }
+
+        @Override
+        public synchronized ExecuteResult execute(long timeout, long expectedBootTime, Writer stdoutWriter, long stdoutLimit,
+                Writer stderrWriter, long stderrLimit, String script, String... scriptArgs) throws IOException {
+            // emulates chunk_hashes.sh
+            String path = scriptArgs[0];
+            int chunkSize = Integer.parseInt(scriptArgs[1]);
+            byte[] file = files.getOrDefault(path, new byte[0]);
+            if (scriptArgs.length > 2) {
+                file = Arrays.copyOf(file, Integer.parseInt(scriptArgs[2]));
+                files.put(path, file);
+            }
+
+            try {
+                stdoutWriter.write(file.length + "\n");
+                for (int i = 0; i < file.length; i += chunkSize) {
+                    MessageDigest md = MessageDigest.getInstance("SHA-256");
+                    md.update(file, i, Math.min(chunkSize, file.length - i));
+                    StringBuilder sb = new StringBuilder();
+                    for (byte b : md.digest()) {
+                        sb.append(String.format("%02x", b));
+                    }
+                    stdoutWriter.write(sb + "\n");
+                }
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+            return new ExecuteResult(0, 0L);
+        }
+
+        @Override
+        public void upload(long timeout, byte[] localData, String remotePath) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void upload(long timeout, String localPath, String remotePath) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void pipe(long timeout, String remotePath, long remoteOffset, OutputStream os, long limit) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public byte[] download(long timeout, String remotePath) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void download(long timeout, String remotePath, String localPath) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public StatResult stat(long timeout, String remotePath) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void delete(long timeout, String remotePath) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // do nothing
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.offbynull.rfm.host.communicator;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+// Covers the default (1 request per path) implementations of the batch methods. The SSHJ implementation is covered by
+// PipelinedBatchTest.
+public class CommunicatorTest {
+
+    private Communicator fixture;
+
+    @Before
+    public void setUp() {
+        fixture = mock(Communicator.class, CALLS_REAL_METHODS);
+    }
+
+    @Test
+    public void mustStatMixOfExistingAndMissingPathsInOrder() throws Exception {
+        StatResult a = new StatResult(1, 2, 10L, 0644);
+        StatResult b = new StatResult(3, 4, 20L, 0600);
+        doReturn(a).when(fixture).stat(anyLong(), eq("/a"));
+        doReturn(b).when(fixture).stat(anyLong(), eq("/b"));
+        doReturn(null).when(fixture).stat(anyLong(), eq("/missing"));
+
+        List<StatResult> res = fixture.statAll(5000L, Arrays.asList("/b", "/missing", "/a"));
+
+        assertEquals(3, res.size());
+        assertSame(b, res.get(0));
+        assertNull(res.get(1));
+        assertSame(a, res.get(2));
+    }
+
+    @Test
+    public void mustFailStatIfAnyPathFails() throws Exception {
+        doReturn(null).when(fixture).stat(anyLong(), eq("/a"));
+        doThrow(new IOException("fake failure")).when(fixture).stat(anyLong(), eq("/b"));
+
+        try {
+            fixture.statAll(5000L, Arrays.asList("/a", "/b"));
+            fail();
+        } catch (IOException ioe) {
+            assertEquals("fake failure", ioe.getMessage());
+        }
+    }
+
+    @Test
+    public void mustAttemptEveryDeleteAndReportEachFailure() throws Exception {
+        doThrow(new IOException("fake failure 1")).when(fixture).delete(anyLong(), eq("/missing"));
+        doThrow(new IOException("fake failure 2")).when(fixture).delete(anyLong(), eq("/dir"));
+
+        try {
+            fixture.deleteAll(5000L, Arrays.asList("/a", "/missing", "/dir", "/b"));
+            fail();
+        } catch (IOException ioe) {
+            assertEquals("fake failure 1", ioe.getMessage());
+            assertEquals(1, ioe.getSuppressed().length);
+            assertEquals("fake failure 2", ioe.getSuppressed()[0].getMessage());
+        }
+
+        InOrder inOrder = inOrder(fixture);
+        inOrder.verify(fixture).delete(anyLong(), eq("/a"));
+        inOrder.verify(fixture).delete(anyLong(), eq("/missing"));
+        inOrder.verify(fixture).delete(anyLong(), eq("/dir"));
+        inOrder.verify(fixture).delete(anyLong(), eq("/b"));
+    }
+
+    @Test
+    public void mustStopDeletingOnTimeout() throws Exception {
+        doThrow(new TimeLimitExceededException()).when(fixture).delete(anyLong(), eq("/a"));
+
+        try {
+            fixture.deleteAll(5000L, Arrays.asList("/a", "/b"));
+            fail();
+        } catch (TimeLimitExceededException tlee) {
+            // expected
+        }
+
+        verify(fixture).delete(anyLong(), eq("/a"));
+        verify(fixture, never()).delete(anyLong(), eq("/b"));
+    }
+}
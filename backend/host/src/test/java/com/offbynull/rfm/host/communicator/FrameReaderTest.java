@@ -0,0 +1,110 @@
+package com.offbynull.rfm.host.communicator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.Map;
+import org.apache.commons.io.IOUtils;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Test;
+
+public class FrameReaderTest {
+
+    private static final String FRAMED = "!A\0line1\nline2\r\n\nline4\0!EMPTY\0\0!B\0bbb\0";
+    private static final String LEGACY = "!A\n4\nline1\nline2\n\nline4\n!EMPTY\n1\n\n!B\n1\nbbb\n";
+
+    @Test
+    public void mustReadFramedOutput() {
+        Map<String, String> actual = FrameReader.read(FRAMED);
+
+        assertEquals(3, actual.size());
+        assertEquals("line1\nline2\r\n\nline4", actual.get("!A")); // newlines come through untouched
+        assertEquals("", actual.get("!EMPTY"));
+        assertEquals("bbb", actual.get("!B"));
+    }
+
+    @Test
+    public void mustReadRegardlessOfHowInputIsChunked() {
+        for (String input : new String[] { FRAMED, LEGACY }) {
+            Map<String, String> expected = FrameReader.read(input);
+            for (int chunkSize = 1; chunkSize <= input.length(); chunkSize++) {
+                assertEquals(expected, read(input, chunkSize));
+            }
+        }
+    }
+
+    @Test
+    public void mustFallBackToLegacyOutput() {
+        Map<String, String> actual = FrameReader.read(LEGACY);
+
+        assertEquals(3, actual.size());
+        assertEquals("line1\nline2\n\nline4", actual.get("!A"));
+        assertEquals("", actual.get("!EMPTY"));
+        assertEquals("bbb", actual.get("!B"));
+    }
+
+    @Test
+    public void mustReadIfEmpty() {
+        assertEquals(0, FrameReader.read("").size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mustFailIfOutputEndsMidEntry() {
+        FrameReader.read("!A\0aaa");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mustFailIfOutputEndsAfterName() {
+        FrameReader.read("!A\0");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mustFailOnDuplicateEntry() {
+        FrameReader.read("!A\0a\0!A\0b\0");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mustFailOnBadName() {
+        FrameReader.read("A\0a\0");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mustFailOnTruncatedLegacyOutput() {
+        FrameReader.read("!A\n2\naaa");
+    }
+
+    @Test
+    public void mustReadWhatWriterWrites() throws Exception {
+        assumeTrue(new File("/bin/bash").canExecute());
+        String script = FrameReader.prependWriter(""
+                + "write_frame '!A' \"$(printf 'line1\\nline2')\"\n"
+                + "write_frame '!EMPTY' ''\n");
+        
+        for (String format : new String[] { "", "legacy" }) {
+            Map<String, String> actual = FrameReader.read(runBash(script, format));
+
+            assertEquals(2, actual.size());
+            assertEquals("line1\nline2", actual.get("!A"));
+            assertEquals("", actual.get("!EMPTY"));
+        }
+    }
+
+    private static String runBash(String script, String outputFormat) throws IOException, InterruptedException {
+        ProcessBuilder pb = new ProcessBuilder("/bin/bash", "-c", script);
+        pb.environment().put("RFM_OUTPUT_FORMAT", outputFormat);
+        Process process = pb.start();
+        String output = IOUtils.toString(process.getInputStream(), UTF_8);
+        assertEquals(0, process.waitFor());
+        return output;
+    }
+
+    private static Map<String, String> read(String input, int chunkSize) {
+        FrameReader reader = new FrameReader();
+        for (int i = 0; i < input.length(); i += chunkSize) {
+            reader.accept(CharBuffer.wrap(input, i, Math.min(input.length(), i + chunkSize)));
+        }
+        return reader.finish();
+    }
+}
@@ -0,0 +1,29 @@
+package com.offbynull.rfm.host.communicator;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class HashUtilsTest {
+
+    @Test
+    public void mustHashString() {
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", HashUtils.sha256Hex("abc"));
+    }
+
+    @Test
+    public void mustHashEmptyString() {
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", HashUtils.sha256Hex(""));
+    }
+
+    @Test
+    public void mustHashRegionOfArray() {
+        byte[] data = "xxabcxx".getBytes(UTF_8);
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", HashUtils.sha256Hex(data, 2, 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mustFailOnRegionPastEnd() {
+        HashUtils.sha256Hex(new byte[4], 2, 3);
+    }
+}
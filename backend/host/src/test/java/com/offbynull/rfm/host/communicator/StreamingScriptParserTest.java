@@ -0,0 +1,106 @@
+package com.offbynull.rfm.host.communicator;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import static java.util.Collections.singletonMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class StreamingScriptParserTest {
+
+    private static final String INPUT = ""
+            + "!A\n"
+            + "3\n"
+            + "line1\n"
+            + "line1 2\n"
+            + "line1 2 3\n"
+            + "!OUTPUT 2\n"
+            + "2\n"
+            + "aaa\n"
+            + "bb";
+
+    @Test
+    public void mustParse() {
+        Map<String, String> actual = parse(INPUT, Integer.MAX_VALUE);
+        
+        assertEquals(2, actual.size());
+        assertEquals("line1\nline1 2\nline1 2 3", actual.get("!A"));
+        assertEquals("aaa\nbb", actual.get("!OUTPUT 2"));
+    }
+
+    @Test
+    public void mustParseRegardlessOfHowInputIsChunked() {
+        for (int chunkSize = 1; chunkSize <= INPUT.length(); chunkSize++) {
+            assertEquals(parse(INPUT, Integer.MAX_VALUE), parse(INPUT, chunkSize));
+        }
+    }
+
+    @Test
+    public void mustTreatCarriageReturnsAsLineTerminators() {
+        String input = "!A\r\n3\r\naaa\r\rbb\r\n!B\r0\r\n";
+        for (int chunkSize = 1; chunkSize <= input.length(); chunkSize++) {
+            Map<String, String> actual = parse(input, chunkSize);
+            assertEquals(2, actual.size());
+            assertEquals("aaa\n\nbb", actual.get("!A"));
+            assertEquals("", actual.get("!B"));
+        }
+    }
+
+    @Test
+    public void mustSplitIntoRecords() {
+        List<Map<String, String>> records = new ArrayList<>();
+        StreamingScriptParser parser = new StreamingScriptParser("!SAMPLE", records::add);
+        parser.accept(CharBuffer.wrap("!A\n1\naaa\n!SAMPLE\n0\n!A\n1\nbbb\n!B\n1\nccc\n!SAMPLE\n0\n!A\n1\nddd\n"));
+        Map<String, String> remaining = parser.finish();
+
+        assertEquals(2, records.size());
+        assertEquals(singletonMap("!A", "aaa"), records.get(0));
+        assertEquals(2, records.get(1).size());
+        assertEquals("bbb", records.get(1).get("!A"));
+        assertEquals("ccc", records.get(1).get("!B"));
+        assertEquals(singletonMap("!A", "ddd"), remaining);
+    }
+
+    @Test
+    public void mustParseIfEmpty() {
+        Map<String, String> actual = parse("", Integer.MAX_VALUE);
+        
+        assertEquals(0, actual.size());
+    }
+
+    @Test(expected=RuntimeException.class)
+    public void mustFailToParseIfLessLinesThanSpecifiedIsProvided() {
+        parse(""
+                + "!A\n"
+                + "4\n"
+                + "line1\n"
+                + "line1 2\n"
+                + "line1 2 3", 3);
+    }
+
+    @Test(expected=RuntimeException.class)
+    public void mustFailToParseIfLineCountNotProvided() {
+        parse("!A", 1);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void mustFailToParseIfLineCountNotANumber() {
+        parse("!A\nX\n", 2);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void mustFailToParseDuplicateEntries() {
+        parse("!A\n1\na\n!A\n1\nb\n", 4);
+    }
+    
+    private static Map<String, String> parse(String input, int chunkSize) {
+        StreamingScriptParser parser = new StreamingScriptParser();
+        for (int i = 0; i < input.length(); i += chunkSize) {
+            int end = (int) Math.min((long) i + chunkSize, input.length());
+            parser.accept(CharBuffer.wrap(input.toCharArray(), i, end - i)); // offset buffer, like the communicator hands over
+        }
+        return parser.finish();
+    }
+}
@@ -0,0 +1,106 @@
+package com.offbynull.rfm.host.communicators.sshj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HashedWheelTimerTest {
+    
+    private HashedWheelTimer fixture;
+    
+    @Before
+    public void setUp() {
+        fixture = new HashedWheelTimer("Test Timer", 10L, TimeUnit.MILLISECONDS, 64);
+    }
+
+    @Test(timeout = 2000L)
+    public void mustScheduleTask() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        HashedWheelTimer.Timeout timeout = fixture.schedule(() -> latch.countDown(), 500L, TimeUnit.MILLISECONDS);
+        
+        latch.await();
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+    }
+
+    @Test(timeout = 2000L)
+    public void mustScheduleTaskPastSingleRotation() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        fixture.schedule(() -> latch.countDown(), 1000L, TimeUnit.MILLISECONDS); // wheel rotates once every 640ms
+        
+        latch.await();
+    }
+
+    @Test(timeout = 2000L)
+    public void mustKeepRunningAfterTaskThrowsError() throws Exception {
+        fixture.schedule(() -> {
+            throw new AssertionError("fake error");
+        }, 10L, TimeUnit.MILLISECONDS);
+        
+        CountDownLatch latch = new CountDownLatch(1);
+        fixture.schedule(() -> latch.countDown(), 200L, TimeUnit.MILLISECONDS);
+        
+        latch.await();
+    }
+
+    @Test
+    public void mustNotRunCancelledTask() throws Exception {
+        AtomicInteger counter = new AtomicInteger();
+        HashedWheelTimer.Timeout timeout = fixture.schedule(() -> counter.incrementAndGet(), 100L, TimeUnit.MILLISECONDS);
+        
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        Thread.sleep(300L);
+        
+        assertEquals(0, counter.get());
+        assertTrue(timeout.isCancelled());
+    }
+
+    @Test(timeout = 10000L)
+    public void mustHandle100kConcurrentTimeouts() throws Exception {
+        int threadCount = 8;
+        int perThread = 12500;
+        
+        AtomicInteger fired = new AtomicInteger();
+        AtomicInteger cancelled = new AtomicInteger();
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    startLatch.await();
+                } catch (InterruptedException ie) {
+                    throw new IllegalStateException(ie);
+                }
+                for (int j = 0; j < perThread; j++) {
+                    HashedWheelTimer.Timeout timeout = fixture.schedule(() -> fired.incrementAndGet(), j % 500, TimeUnit.MILLISECONDS);
+                    if (j % 2 == 0 && timeout.cancel()) {
+                        cancelled.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        
+        startLatch.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        int total = threadCount * perThread;
+        while (fired.get() + cancelled.get() < total) {
+            Thread.sleep(50L);
+        }
+        Thread.sleep(100L); // make sure nothing fires after the fact
+        
+        assertEquals(total, fired.get() + cancelled.get());
+    }
+}
@@ -0,0 +1,158 @@
+package com.offbynull.rfm.host.communicators.sshj;
+
+import com.offbynull.rfm.host.communicator.StatResult;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import static java.util.Collections.emptyList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.schmizz.sshj.sftp.Response.StatusCode;
+import net.schmizz.sshj.sftp.SFTPException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PipelinedBatchTest {
+
+    private FakeRemoteBatch remote;
+
+    @Before
+    public void setUp() {
+        remote = new FakeRemoteBatch();
+        remote.files.put("/a", new StatResult(1, 2, 10L, 0644));
+        remote.files.put("/b", new StatResult(3, 4, 20L, 0600));
+        remote.files.put("/c", new StatResult(5, 6, 30L, 0755));
+    }
+
+    @Test
+    public void mustStatMixOfExistingAndMissingPathsInOrder() throws Exception {
+        List<StatResult> res = PipelinedBatch.statAll(remote, Arrays.asList("/c", "/missing1", "/a", "/missing2", "/b"));
+
+        assertEquals(5, res.size());
+        assertEquals(30L, res.get(0).getLength());
+        assertNull(res.get(1));
+        assertEquals(10L, res.get(2).getLength());
+        assertNull(res.get(3));
+        assertEquals(20L, res.get(4).getLength());
+        assertEquals(3, res.get(4).getUserId());
+        assertEquals(4, res.get(4).getGroupId());
+    }
+
+    @Test
+    public void mustSendAllStatRequestsBeforeRetrievingAny() throws Exception {
+        PipelinedBatch.statAll(remote, Arrays.asList("/a", "/missing", "/b"));
+
+        assertEquals(
+                Arrays.asList("request /a", "request /missing", "request /b", "retrieve /a", "retrieve /missing", "retrieve /b"),
+                remote.log);
+    }
+
+    @Test
+    public void mustStatEmptyBatch() throws Exception {
+        assertTrue(PipelinedBatch.statAll(remote, emptyList()).isEmpty());
+        assertTrue(remote.log.isEmpty());
+    }
+
+    @Test
+    public void mustFailStatIfAnyPathFailsForReasonOtherThanMissing() throws Exception {
+        remote.denied.add("/b");
+
+        try {
+            PipelinedBatch.statAll(remote, Arrays.asList("/a", "/missing", "/b", "/c"));
+            fail();
+        } catch (IOException ioe) {
+            assertEquals("Stat failed: /b", ioe.getMessage());
+            assertTrue(ioe.getCause() instanceof SFTPException);
+        }
+    }
+
+    @Test
+    public void mustDeleteAllPaths() throws Exception {
+        PipelinedBatch.deleteAll(remote, Arrays.asList("/c", "/a"));
+
+        assertEquals(1, remote.files.size());
+        assertTrue(remote.files.containsKey("/b"));
+        assertEquals(Arrays.asList("request /c", "request /a", "retrieve /c", "retrieve /a"), remote.log);
+    }
+
+    @Test
+    public void mustAttemptEveryDeleteAndReportEachFailure() throws Exception {
+        remote.denied.add("/b");
+
+        try {
+            PipelinedBatch.deleteAll(remote, Arrays.asList("/a", "/missing", "/b", "/c"));
+            fail();
+        } catch (IOException ioe) {
+            assertEquals("Delete failed: /missing", ioe.getMessage());
+            assertEquals(1, ioe.getSuppressed().length);
+            assertEquals("Delete failed: /b", ioe.getSuppressed()[0].getMessage());
+        }
+
+        assertEquals(1, remote.files.size()); // paths around the failed ones still got deleted
+        assertTrue(remote.files.containsKey("/b"));
+    }
+
+    @Test
+    public void mustAbandonDeleteBatchOnSessionFailure() throws Exception {
+        remote.brokenAfter = 1;
+
+        try {
+            PipelinedBatch.deleteAll(remote, Arrays.asList("/a", "/missing", "/b"));
+            fail();
+        } catch (IOException ioe) {
+            assertEquals("Session broken", ioe.getMessage());
+        }
+
+        assertEquals(Arrays.asList("request /a", "request /missing", "request /b", "retrieve /a", "retrieve /missing"), remote.log);
+    }
+
+    private static final class FakeRemoteBatch implements PipelinedBatch.RemoteBatch<String> {
+        private final Map<String, StatResult> files = new HashMap<>();
+        private final List<String> denied = new ArrayList<>();
+        private final List<String> log = new ArrayList<>();
+        private int brokenAfter = Integer.MAX_VALUE; // number of retrieves that succeed before the session breaks
+        private int retrieved;
+
+        @Override
+        public String requestStat(String path) throws IOException {
+            log.add("request " + path);
+            return path;
+        }
+
+        @Override
+        public StatResult retrieveStat(String request) throws IOException {
+            retrieve(request);
+            return files.get(request);
+        }
+
+        @Override
+        public String requestDelete(String path) throws IOException {
+            log.add("request " + path);
+            return path;
+        }
+
+        @Override
+        public void retrieveDelete(String request) throws IOException {
+            retrieve(request);
+            if (files.remove(request) == null) {
+                throw new SFTPException(StatusCode.NO_SUCH_FILE, "No such file");
+            }
+        }
+
+        private void retrieve(String request) throws IOException {
+            if (retrieved == brokenAfter) {
+                throw new IOException("Session broken");
+            }
+            retrieved++;
+            log.add("retrieve " + request);
+            if (denied.contains(request)) {
+                throw new SFTPException(StatusCode.PERMISSION_DENIED, "Permission denied");
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.offbynull.rfm.host.communicators.sshj;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+public class PipelinedUploaderTest {
+
+    private static final byte[] DATA;
+    static {
+        DATA = new byte[10000];
+        new Random(0L).nextBytes(DATA);
+    }
+
+    @Test
+    public void mustUploadEntireBuffer() throws Exception {
+        FakeRemoteWriter writer = new FakeRemoteWriter(DATA.length, Integer.MAX_VALUE, -1);
+        PipelinedUploader.upload(writer, DATA, 0, 0L, DATA.length, 4, 128);
+        assertArrayEquals(DATA, writer.data);
+        assertEquals(0, writer.inFlight);
+    }
+
+    @Test
+    public void mustUploadRegion() throws Exception {
+        FakeRemoteWriter writer = new FakeRemoteWriter(7000, Integer.MAX_VALUE, -1);
+        PipelinedUploader.upload(writer, DATA, 1000, 2000L, 5000, 4, 128);
+        assertArrayEquals(Arrays.copyOfRange(DATA, 1000, 6000), Arrays.copyOfRange(writer.data, 2000, 7000));
+        assertEquals(0, writer.inFlight);
+    }
+
+    @Test
+    public void mustUploadRegionWithoutOversizedRequests() throws Exception {
+        // 8M region (the default chunk size for chunked transfers) against a server that rejects anything over 32K
+        byte[] largeData = new byte[8 * 1024 * 1024 + 123];
+        new Random(1L).nextBytes(largeData);
+        FakeRemoteWriter writer = new FakeRemoteWriter(8 * 1024 * 1024, 32 * 1024, -1);
+
+        PipelinedUploader.upload(writer, largeData, 100, 0L, 8 * 1024 * 1024, 4);
+
+        assertArrayEquals(Arrays.copyOfRange(largeData, 100, 100 + 8 * 1024 * 1024), writer.data);
+        assertTrue(writer.requestCount > 1);
+    }
+
+    @Test
+    public void mustNeverExceedWindow() throws Exception {
+        FakeRemoteWriter writer = new FakeRemoteWriter(DATA.length, Integer.MAX_VALUE, -1);
+        PipelinedUploader.upload(writer, DATA, 0, 0L, DATA.length, 3, 100);
+        assertEquals(3, writer.maxInFlight);
+    }
+
+    @Test
+    public void mustDoNothingOnZeroLength() throws Exception {
+        FakeRemoteWriter writer = new FakeRemoteWriter(0, Integer.MAX_VALUE, -1);
+        PipelinedUploader.upload(writer, DATA, 0, 0L, 0, 4, 128);
+        assertEquals(0, writer.requestCount);
+    }
+
+    @Test
+    public void mustFailIfAnyWriteFails() throws Exception {
+        FakeRemoteWriter writer = new FakeRemoteWriter(DATA.length, Integer.MAX_VALUE, 5000L);
+        try {
+            PipelinedUploader.upload(writer, DATA, 0, 0L, DATA.length, 4, 128);
+        } catch (IOException ioe) {
+            return;
+        }
+
+        fail("Exception missing");
+    }
+
+    private static final class FakeRemoteWriter implements PipelinedUploader.RemoteWriter<long[]> {
+        private final byte[] data;
+        private final int maxRequestLen;
+        private final long failOffset;
+        private int requestCount;
+        private int inFlight;
+        private int maxInFlight;
+
+        FakeRemoteWriter(int size, int maxRequestLen, long failOffset) {
+            this.data = new byte[size];
+            this.maxRequestLen = maxRequestLen;
+            this.failOffset = failOffset;
+        }
+
+        @Override
+        public long[] requestWrite(long offset, byte[] from, int fromOffset, int len) throws IOException {
+            if (len > maxRequestLen) {
+                throw new IOException("Request too large: " + len);
+            }
+            System.arraycopy(from, fromOffset, data, (int) offset, len);
+            requestCount++;
+            inFlight++;
+            maxInFlight = Math.max(maxInFlight, inFlight);
+            return new long[] { offset, len };
+        }
+
+        @Override
+        public void retrieveWrite(long[] request) throws IOException {
+            inFlight--;
+            if (failOffset >= request[0] && failOffset < request[0] + request[1]) {
+                throw new IOException("Write failed");
+            }
+        }
+    }
+}
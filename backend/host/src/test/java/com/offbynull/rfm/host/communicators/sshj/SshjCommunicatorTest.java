@@ -11,6 +11,8 @@ import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import org.apache.commons.io.IOUtils;
@@ -21,6 +23,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -774,4 +777,70 @@ public class SshjCommunicatorTest {
         StatResult res = fixture.stat(5000L, remotePath);
         assertNull(res);
     }
+
+    @Test
+    public void mustGetStatForMixOfExistingAndMissingFilesInOrder() throws IOException {
+        fixture = new SshjCommunicator(new SshHost(HOST, PORT, FINGERPRINTS), new SshCredential(USER_USER, USER_PASS));
+        
+        String remotePath1 = "/tmp/" + new Random().nextLong();
+        String remotePath2 = "/tmp/" + new Random().nextLong();
+        String missingPath = "/tmp/" + new Random().nextLong();
+
+        try {
+            fixture.upload(5000L, new byte[] {1,2,3}, remotePath1);
+            fixture.upload(5000L, new byte[] {1,2,3,4,5}, remotePath2);
+            List<StatResult> res = fixture.statAll(5000L, Arrays.asList(remotePath2, missingPath, remotePath1));
+            assertEquals(3, res.size());
+            assertEquals(5L, res.get(0).getLength());
+            assertNull(res.get(1));
+            assertEquals(3L, res.get(2).getLength());
+        } finally {
+            fixture.deleteAll(5000L, Arrays.asList(remotePath1, remotePath2));
+        }
+    }
+
+    @Test
+    public void mustDeleteAllFiles() throws IOException {
+        fixture = new SshjCommunicator(new SshHost(HOST, PORT, FINGERPRINTS), new SshCredential(USER_USER, USER_PASS));
+        
+        String remotePath1 = "/tmp/" + new Random().nextLong();
+        String remotePath2 = "/tmp/" + new Random().nextLong();
+
+        fixture.upload(5000L, new byte[] {1,2,3}, remotePath1);
+        fixture.upload(5000L, new byte[] {1,2,3}, remotePath2);
+        fixture.deleteAll(5000L, Arrays.asList(remotePath1, remotePath2));
+
+        List<StatResult> res = fixture.statAll(5000L, Arrays.asList(remotePath1, remotePath2));
+        assertNull(res.get(0));
+        assertNull(res.get(1));
+    }
+
+    @Test
+    public void mustDeleteRemainingFilesWhenSomeFailToDelete() throws IOException {
+        fixture = new SshjCommunicator(new SshHost(HOST, PORT, FINGERPRINTS), new SshCredential(USER_USER, USER_PASS));
+        
+        String remotePath1 = "/tmp/" + new Random().nextLong();
+        String remotePath2 = "/tmp/" + new Random().nextLong();
+        String missingPath = "/tmp/" + new Random().nextLong();
+        String remoteDirPath = "/tmp/" + new Random().nextLong();
+
+        try {
+            fixture.upload(5000L, new byte[] {1,2,3}, remotePath1);
+            fixture.upload(5000L, new byte[] {1,2,3}, remotePath2);
+            fixture.executeUnsafe("mkdir -p $1", remoteDirPath);
+            try {
+                fixture.deleteAll(5000L, Arrays.asList(remotePath1, missingPath, remoteDirPath, remotePath2));
+                fail();
+            } catch (IOException ioe) {
+                assertEquals(1, ioe.getSuppressed().length); // missing path failed first, directory failure is suppressed
+            }
+
+            List<StatResult> res = fixture.statAll(5000L, Arrays.asList(remotePath1, remoteDirPath, remotePath2));
+            assertNull(res.get(0));
+            assertNotNull(res.get(1));
+            assertNull(res.get(2));
+        } finally {
+            fixture.executeUnsafe("rm -rf $1", remoteDirPath);
+        }
+    }
 }
@@ -0,0 +1,175 @@
+package com.offbynull.rfm.host.communicators.sshj;
+
+import com.offbynull.rfm.host.communicator.TimeLimitExceededException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.schmizz.sshj.SSHClient;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SshjConnectionPoolTest {
+    
+    private static final HashedWheelTimer timer = new HashedWheelTimer("Test Timer", 10L, TimeUnit.MILLISECONDS, 64);
+
+    private List<SSHClient> created;
+    
+    @Before
+    public void setUp() {
+        created = new ArrayList<>();
+    }
+    
+    private SSHClient createHealthyClient() {
+        SSHClient client = mock(SSHClient.class);
+        when(client.isConnected()).thenReturn(true);
+        when(client.isAuthenticated()).thenReturn(true);
+        created.add(client);
+        return client;
+    }
+
+    @Test
+    public void mustReuseReturnedConnection() throws Exception {
+        SshjConnectionPool fixture = new SshjConnectionPool(new SshjConnectionPoolSettings(2, 60000L, 0), this::createHealthyClient, timer);
+
+        SshjConnectionPool.Lease lease1 = fixture.acquire(1000L);
+        assertTrue(lease1.isFresh());
+        fixture.release(lease1, true);
+        
+        SshjConnectionPool.Lease lease2 = fixture.acquire(1000L);
+        assertFalse(lease2.isFresh());
+        assertSame(lease1.getClient(), lease2.getClient());
+        assertEquals(1, created.size());
+        verify(lease1.getClient(), never()).close();
+    }
+
+    @Test
+    public void mustDiscardNonReusableConnection() throws Exception {
+        SshjConnectionPool fixture = new SshjConnectionPool(new SshjConnectionPoolSettings(2, 60000L, 0), this::createHealthyClient, timer);
+
+        SshjConnectionPool.Lease lease1 = fixture.acquire(1000L);
+        fixture.release(lease1, false);
+        verify(lease1.getClient()).close();
+        
+        SshjConnectionPool.Lease lease2 = fixture.acquire(1000L);
+        assertTrue(lease2.isFresh());
+        assertEquals(2, created.size());
+    }
+
+    @Test
+    public void mustDiscardUnhealthyConnection() throws Exception {
+        SshjConnectionPool fixture = new SshjConnectionPool(new SshjConnectionPoolSettings(2, 60000L, 0), this::createHealthyClient, timer);
+
+        SshjConnectionPool.Lease lease1 = fixture.acquire(1000L);
+        fixture.release(lease1, true);
+        when(lease1.getClient().isConnected()).thenReturn(false); // connection dropped while idle
+        
+        SshjConnectionPool.Lease lease2 = fixture.acquire(1000L);
+        assertTrue(lease2.isFresh());
+        verify(lease1.getClient()).close();
+    }
+
+    @Test
+    public void mustEvictIdleConnection() throws Exception {
+        SshjConnectionPool fixture = new SshjConnectionPool(new SshjConnectionPoolSettings(2, 0L, 0), this::createHealthyClient, timer);
+
+        SshjConnectionPool.Lease lease1 = fixture.acquire(1000L);
+        fixture.release(lease1, true);
+        
+        assertEquals(0, fixture.getIdleCount());
+        verify(lease1.getClient()).close();
+    }
+
+    @Test(timeout = 5000L)
+    public void mustEvictIdleConnectionWithoutPoolBeingTouched() throws Exception {
+        SshjConnectionPool fixture = new SshjConnectionPool(new SshjConnectionPoolSettings(2, 200L, 0), this::createHealthyClient, timer);
+
+        SshjConnectionPool.Lease lease1 = fixture.acquire(1000L);
+        SshjConnectionPool.Lease lease2 = fixture.acquire(1000L);
+        fixture.release(lease1, true);
+        Thread.sleep(100L);
+        fixture.release(lease2, true);
+        assertEquals(2, fixture.getIdleCount());
+
+        verify(lease1.getClient(), timeout(2000L)).close();
+        verify(lease2.getClient(), timeout(2000L)).close();
+        assertEquals(0, fixture.getIdleCount());
+    }
+
+    @Test
+    public void mustNotEvictIdleConnectionAfterClosing() throws Exception {
+        SshjConnectionPool fixture = new SshjConnectionPool(new SshjConnectionPoolSettings(2, 100L, 0), this::createHealthyClient, timer);
+
+        SshjConnectionPool.Lease lease1 = fixture.acquire(1000L);
+        fixture.release(lease1, true);
+        fixture.close();
+        Thread.sleep(300L);
+
+        verify(lease1.getClient()).close(); // closed once, by close() rather than by a sweep
+    }
+
+    @Test(timeout = 2000L)
+    public void mustTimeOutWhenExhausted() throws Exception {
+        SshjConnectionPool fixture = new SshjConnectionPool(new SshjConnectionPoolSettings(1, 60000L, 0), this::createHealthyClient, timer);
+
+        fixture.acquire(1000L);
+        try {
+            fixture.acquire(100L);
+        } catch (TimeLimitExceededException tlee) {
+            return;
+        }
+        
+        fail("Exception missing");
+    }
+
+    @Test(timeout = 2000L)
+    public void mustUnblockWhenConnectionReturned() throws Exception {
+        SshjConnectionPool fixture = new SshjConnectionPool(new SshjConnectionPoolSettings(1, 60000L, 0), this::createHealthyClient, timer);
+
+        SshjConnectionPool.Lease lease1 = fixture.acquire(1000L);
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(100L);
+            } catch (InterruptedException ie) {
+                throw new IllegalStateException(ie);
+            }
+            fixture.release(lease1, true);
+        });
+        thread.start();
+        
+        SshjConnectionPool.Lease lease2 = fixture.acquire(1000L);
+        assertSame(lease1.getClient(), lease2.getClient());
+        thread.join();
+    }
+
+    @Test
+    public void mustCloseAllConnectionsOnClose() throws Exception {
+        SshjConnectionPool fixture = new SshjConnectionPool(new SshjConnectionPoolSettings(2, 60000L, 0), this::createHealthyClient, timer);
+
+        SshjConnectionPool.Lease lease1 = fixture.acquire(1000L);
+        SshjConnectionPool.Lease lease2 = fixture.acquire(1000L);
+        fixture.release(lease1, true);
+        fixture.close();
+        
+        verify(lease1.getClient()).close();
+        verify(lease2.getClient()).close();
+        
+        try {
+            fixture.acquire(1000L);
+        } catch (IOException ioe) {
+            return;
+        }
+        
+        fail("Exception missing");
+    }
+}
@@ -0,0 +1,204 @@
+package com.offbynull.rfm.host.executor;
+
+import com.offbynull.rfm.host.executor.ExecutionLimiter.RejectableTask;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExecutionLimiterTest {
+
+    private ExecutorService threadPool;
+
+    @Before
+    public void setUp() {
+        threadPool = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        threadPool.shutdownNow();
+    }
+
+    @Test
+    public void mustQueueTasksPastLimitAndRunThemAsSlotsFreeUp() {
+        List<Runnable> downstreamTasks = new ArrayList<>();
+        ExecutionLimiter fixture = new ExecutionLimiter(r -> downstreamTasks.add(r), 2);
+        AtomicInteger ran = new AtomicInteger();
+
+        for (int i = 0; i < 5; i++) {
+            fixture.execute(() -> ran.incrementAndGet());
+        }
+        
+        assertEquals(2, downstreamTasks.size());
+        assertEquals(2, fixture.getInFlightCount());
+        assertEquals(3, fixture.getQueuedCount());
+
+        downstreamTasks.remove(0).run();   // finishing a task passes its slot on to the next queued task
+        assertEquals(2, downstreamTasks.size());
+        assertEquals(2, fixture.getInFlightCount());
+        assertEquals(2, fixture.getQueuedCount());
+
+        while (!downstreamTasks.isEmpty()) {
+            downstreamTasks.remove(0).run();
+        }
+        assertEquals(5, ran.get());
+        assertEquals(0, fixture.getInFlightCount());
+        assertEquals(0, fixture.getQueuedCount());
+    }
+
+    @Test
+    public void mustBoundConcurrencyWhenChained() throws Exception {
+        ExecutionLimiter global = new ExecutionLimiter(threadPool, 3);
+        List<ExecutionLimiter> hosts = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            hosts.add(new ExecutionLimiter(global, 2));
+        }
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger finished = new AtomicInteger();
+        for (int i = 0; i < 40; i++) {
+            hosts.get(i % hosts.size()).execute(() -> {
+                int count = running.incrementAndGet();
+                maxRunning.accumulateAndGet(count, Math::max);
+                try {
+                    Thread.sleep(5L);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                finished.incrementAndGet();
+            });
+        }
+
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (finished.get() < 40 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+
+        assertEquals(40, finished.get());
+        assertTrue(maxRunning.get() <= 3);
+        assertEquals(0, global.getInFlightCount());
+        threadPool.shutdown();
+        assertTrue(threadPool.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void mustReleaseSlotWhenDownstreamRejects() {
+        ExecutionLimiter fixture = new ExecutionLimiter(r -> { throw new IllegalStateException(); }, 1);
+
+        try {
+            fixture.execute(() -> { });
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+
+        assertEquals(0, fixture.getInFlightCount());
+    }
+
+    @Test
+    public void mustFailQueuedTasksWithoutRunningOrRecursingWhenDownstreamKeepsRejecting() {
+        List<Runnable> downstreamTasks = new ArrayList<>();
+        ExecutionLimiter fixture = new ExecutionLimiter(r -> {
+            if (!downstreamTasks.isEmpty()) {
+                throw new IllegalStateException();
+            }
+            downstreamTasks.add(r);
+        }, 1);
+        AtomicInteger ran = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        for (int i = 0; i < 100000; i++) {
+            fixture.execute(new RejectableTask() {
+                @Override
+                public void run() {
+                    ran.incrementAndGet();
+                }
+
+                @Override
+                public void rejected(RuntimeException cause) {
+                    assertTrue(cause instanceof IllegalStateException);
+                    rejected.incrementAndGet();
+                }
+            });
+        }
+        assertEquals(99999, fixture.getQueuedCount());
+
+        downstreamTasks.get(0).run(); // every queued task gets rejected downstream and is failed rather than run on this thread
+
+        assertEquals(1, ran.get());
+        assertEquals(99999, rejected.get());
+        assertEquals(0, fixture.getInFlightCount());
+        assertEquals(0, fixture.getQueuedCount());
+    }
+
+    @Test
+    public void mustFailQueuedTasksAndSubmissionsOnceDownstreamRejects() {
+        List<Runnable> downstreamTasks = new ArrayList<>();
+        boolean[] shutdown = new boolean[1];
+        ExecutionLimiter fixture = new ExecutionLimiter(r -> {
+            if (shutdown[0]) {
+                throw new IllegalStateException();
+            }
+            downstreamTasks.add(r);
+        }, 1);
+        AtomicInteger ran = new AtomicInteger();
+
+        fixture.execute(() -> ran.incrementAndGet());
+        fixture.execute(() -> ran.incrementAndGet()); // queued
+        fixture.execute(() -> ran.incrementAndGet()); // queued
+
+        shutdown[0] = true;
+        downstreamTasks.get(0).run(); // slot freed up, but downstream rejects the queued tasks
+        try {
+            fixture.execute(() -> ran.incrementAndGet());
+            fail();
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+
+        assertEquals(1, ran.get());
+        assertEquals(0, fixture.getInFlightCount());
+        assertEquals(0, fixture.getQueuedCount());
+    }
+
+    @Test
+    public void mustReleaseSlotsWhenChainedLimiterRejectsQueuedTasks() {
+        List<Runnable> downstreamTasks = new ArrayList<>();
+        boolean[] shutdown = new boolean[1];
+        ExecutionLimiter global = new ExecutionLimiter(r -> {
+            if (shutdown[0]) {
+                throw new IllegalStateException();
+            }
+            downstreamTasks.add(r);
+        }, 1);
+        ExecutionLimiter host1 = new ExecutionLimiter(global, 1);
+        ExecutionLimiter host2 = new ExecutionLimiter(global, 1);
+        AtomicInteger ran = new AtomicInteger();
+
+        host1.execute(() -> ran.incrementAndGet()); // takes global slot
+        host2.execute(() -> ran.incrementAndGet()); // takes host2 slot, queued in global
+        host2.execute(() -> ran.incrementAndGet()); // queued in host2
+        assertEquals(1, global.getQueuedCount());
+        assertEquals(1, host2.getQueuedCount());
+
+        shutdown[0] = true;
+        downstreamTasks.get(0).run();
+
+        assertEquals(1, ran.get());
+        assertEquals(0, global.getInFlightCount());
+        assertEquals(0, global.getQueuedCount());
+        assertEquals(0, host1.getInFlightCount());
+        assertEquals(0, host2.getInFlightCount());
+        assertEquals(0, host2.getQueuedCount());
+    }
+}
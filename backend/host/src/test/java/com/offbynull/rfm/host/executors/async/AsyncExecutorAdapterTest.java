@@ -0,0 +1,176 @@
+package com.offbynull.rfm.host.executors.async;
+
+import com.offbynull.rfm.host.executor.ExecutionLimiter;
+import com.offbynull.rfm.host.executor.Executor;
+import com.offbynull.rfm.host.executor.TaskCheckResult;
+import com.offbynull.rfm.host.executor.TaskIdConflictException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AsyncExecutorAdapterTest {
+
+    private ExecutorService threadPool;
+    private Executor mockExecutor;
+    private AsyncExecutorAdapter fixture;
+
+    @Before
+    public void setUp() {
+        threadPool = Executors.newCachedThreadPool();
+        mockExecutor = mock(Executor.class);
+        fixture = new AsyncExecutorAdapter(mockExecutor, new ExecutionLimiter(threadPool, 8), 1);
+    }
+
+    @After
+    public void tearDown() {
+        threadPool.shutdownNow();
+    }
+
+    @Test
+    public void mustCompleteWithResult() throws Exception {
+        Map<String, TaskCheckResult> res = new HashMap<>();
+        when(mockExecutor.checkTasks(Arrays.asList("task1", "task2"))).thenReturn(res);
+
+        assertSame(res, fixture.checkTasks(Arrays.asList("task1", "task2")).get(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void mustCompleteExceptionallyWithExecutorException() throws Exception {
+        when(mockExecutor.checkTask("task")).thenThrow(new TaskIdConflictException());
+
+        try {
+            fixture.checkTask("task").get(5L, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException ee) {
+            assertThat(ee.getCause(), instanceOf(TaskIdConflictException.class));
+        }
+    }
+
+    @Test
+    public void mustInterruptRunningOperationOnCancel() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(mockExecutor.checkTask("task")).then(x -> {
+            started.countDown();
+            try {
+                Thread.sleep(60000L);
+            } catch (InterruptedException ie) {
+                interrupted.countDown();
+                throw new InterruptedIOException();
+            }
+            return null;
+        });
+
+        CompletableFuture<TaskCheckResult> future = fixture.checkTask("task");
+        assertTrue(started.await(5L, TimeUnit.SECONDS));
+        assertTrue(future.cancel(true));
+        
+        assertTrue(interrupted.await(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void mustNotRunQueuedOperationIfCancelled() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(mockExecutor.checkTask("blocker")).then(x -> {
+            release.await();
+            return null;
+        });
+
+        CompletableFuture<TaskCheckResult> blocker = fixture.checkTask("blocker"); // takes the only slot for this host
+        CompletableFuture<Void> queued = fixture.stopTask("task");
+        assertEquals(1, fixture.getQueuedCount());
+        assertTrue(queued.cancel(true));
+
+        release.countDown();
+        blocker.get(5L, TimeUnit.SECONDS);
+        
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (fixture.getInFlightCount() != 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertEquals(0, fixture.getInFlightCount());
+        verify(mockExecutor, never()).stopTask("task");
+    }
+
+    @Test
+    public void mustNotLeakInterruptIntoNextOperation() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        when(mockExecutor.checkTask("task1")).then(x -> {
+            started.countDown();
+            try {
+                Thread.sleep(60000L);
+            } catch (InterruptedException ie) {
+                throw new InterruptedIOException();
+            }
+            return null;
+        });
+        boolean[] interruptedOnNext = new boolean[1];
+        when(mockExecutor.checkTask("task2")).then(x -> {
+            interruptedOnNext[0] = Thread.currentThread().isInterrupted();
+            return null;
+        });
+
+        CompletableFuture<TaskCheckResult> future1 = fixture.checkTask("task1");
+        CompletableFuture<TaskCheckResult> future2 = fixture.checkTask("task2");
+        assertTrue(started.await(5L, TimeUnit.SECONDS));
+        future1.cancel(true);
+        future2.get(5L, TimeUnit.SECONDS);
+
+        assertFalse(interruptedOnNext[0]);
+    }
+
+    @Test
+    public void mustFailQueuedOperationWhenDownstreamRejects() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(mockExecutor.checkTask("blocker")).then(x -> {
+            release.await();
+            return null;
+        });
+
+        CompletableFuture<TaskCheckResult> blocker = fixture.checkTask("blocker"); // takes the only slot for this host
+        CompletableFuture<Void> queued = fixture.stopTask("task");
+        assertEquals(1, fixture.getQueuedCount());
+        threadPool.shutdown();
+
+        release.countDown();
+        blocker.get(5L, TimeUnit.SECONDS);
+
+        try {
+            queued.get(5L, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException ee) {
+            assertThat(ee.getCause(), instanceOf(RejectedExecutionException.class));
+        }
+        assertEquals(0, fixture.getInFlightCount());
+        verify(mockExecutor, never()).stopTask("task");
+    }
+
+    @Test
+    public void mustCloseExecutor() throws IOException {
+        fixture.close();
+        verify(mockExecutor).close();
+    }
+}
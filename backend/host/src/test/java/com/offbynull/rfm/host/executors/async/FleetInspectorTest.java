@@ -0,0 +1,208 @@
+package com.offbynull.rfm.host.executors.async;
+
+import com.offbynull.rfm.host.executor.Executor;
+import com.offbynull.rfm.host.executor.GlobalMemory;
+import com.offbynull.rfm.host.executor.HostCheckResult;
+import com.offbynull.rfm.host.executor.TaskCheckResult;
+import com.offbynull.rfm.host.executors.async.FleetInspector.Listener;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FleetInspectorTest {
+
+    private FleetInspector fixture;
+    private RecordingListener listener;
+
+    @Before
+    public void setUp() {
+        fixture = new FleetInspector(4);
+        listener = new RecordingListener();
+    }
+
+    @After
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Test
+    public void mustReportEachHost() throws Exception {
+        HostCheckResult res = hostCheckResult();
+        Executor goodExecutor = mock(Executor.class);
+        Executor badExecutor = mock(Executor.class);
+        when(goodExecutor.checkHost()).thenReturn(res);
+        when(badExecutor.checkHost()).thenThrow(new IOException());
+
+        Map<String, Executor> executors = new LinkedHashMap<>();
+        executors.put("good", goodExecutor);
+        executors.put("bad", badExecutor);
+        fixture.checkHosts(executors, 5000L, 5000L, listener).get(5L, TimeUnit.SECONDS);
+
+        assertSame(res, listener.succeeded.get("good"));
+        assertThat(listener.failed.get("bad"), instanceOf(IOException.class));
+        assertEquals(1, listener.succeeded.size());
+        assertEquals(1, listener.failed.size());
+    }
+
+    @Test
+    public void mustStreamResultsWithoutWaitingForStragglers() throws Exception {
+        CountDownLatch straggle = new CountDownLatch(1);
+        Executor fastExecutor = mock(Executor.class);
+        Executor slowExecutor = mock(Executor.class);
+        when(fastExecutor.checkHost()).thenReturn(hostCheckResult());
+        when(slowExecutor.checkHost()).then(x -> {
+            straggle.await();
+            return hostCheckResult();
+        });
+
+        Map<String, Executor> executors = new LinkedHashMap<>();
+        executors.put("slow", slowExecutor);
+        executors.put("fast", fastExecutor);
+        CompletableFuture<Void> future = fixture.checkHosts(executors, 5000L, 5000L, listener);
+
+        assertTrue(listener.awaitCount(1, 5000L));
+        assertTrue(listener.succeeded.containsKey("fast"));
+        assertFalse(future.isDone());
+
+        straggle.countDown();
+        future.get(5L, TimeUnit.SECONDS);
+        assertTrue(listener.succeeded.containsKey("slow"));
+    }
+
+    @Test
+    public void mustFailAndInterruptHostThatTimesOut() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Executor slowExecutor = mock(Executor.class);
+        when(slowExecutor.checkHost()).then(x -> {
+            try {
+                Thread.sleep(60000L);
+            } catch (InterruptedException ie) {
+                interrupted.countDown();
+            }
+            return hostCheckResult();
+        });
+
+        fixture.checkHosts(Collections.singletonMap("slow", slowExecutor), 100L, 60000L, listener)
+                .get(5L, TimeUnit.SECONDS);
+
+        assertThat(listener.failed.get("slow"), instanceOf(TimeoutException.class));
+        assertTrue(interrupted.await(5L, TimeUnit.SECONDS));
+        assertTrue(listener.succeeded.isEmpty());
+    }
+
+    @Test
+    public void mustFailHostsStillQueuedWhenSweepTimesOut() throws Exception {
+        fixture.close();
+        fixture = new FleetInspector(1);
+
+        Executor slowExecutor = mock(Executor.class);
+        Executor queuedExecutor = mock(Executor.class);
+        when(slowExecutor.checkHost()).then(x -> {
+            Thread.sleep(60000L);
+            return hostCheckResult();
+        });
+
+        Map<String, Executor> executors = new LinkedHashMap<>();
+        executors.put("slow", slowExecutor);
+        executors.put("queued", queuedExecutor);
+        fixture.checkHosts(executors, 60000L, 200L, listener).get(5L, TimeUnit.SECONDS);
+
+        assertThat(listener.failed.get("slow"), instanceOf(TimeoutException.class));
+        assertThat(listener.failed.get("queued"), instanceOf(TimeoutException.class));
+        verify(queuedExecutor, never()).checkHost();
+    }
+
+    @Test
+    public void mustCheckTasksOnlyOnHostsWithTaskIds() throws Exception {
+        Map<String, TaskCheckResult> res = new HashMap<>();
+        Executor executor1 = mock(Executor.class);
+        Executor executor2 = mock(Executor.class);
+        when(executor1.checkTasks(Arrays.asList("task1", "task2"))).thenReturn(res);
+
+        Map<String, Executor> executors = new LinkedHashMap<>();
+        executors.put("host1", executor1);
+        executors.put("host2", executor2);
+        fixture.checkTasks(executors, Collections.singletonMap("host1", Arrays.asList("task1", "task2")), 5000L, 5000L,
+                listener).get(5L, TimeUnit.SECONDS);
+
+        assertSame(res, listener.succeeded.get("host1"));
+        assertEquals(1, listener.succeeded.size());
+        assertTrue(listener.failed.isEmpty());
+        verify(executor2, never()).checkTasks(Collections.emptyList());
+    }
+
+    @Test
+    public void mustSweepLargeFleetInParallel() throws Exception {
+        fixture.close();
+        fixture = new FleetInspector(500);
+
+        Executor executor = mock(Executor.class);
+        when(executor.checkHost()).then(x -> {
+            Thread.sleep(50L);
+            return hostCheckResult();
+        });
+
+        Map<Integer, Executor> executors = new LinkedHashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            executors.put(i, executor);
+        }
+        long start = System.nanoTime();
+        fixture.checkHosts(executors, 5000L, 60000L, listener).get(60L, TimeUnit.SECONDS);
+        long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(2000, listener.succeeded.size());
+        assertTrue(duration < 20000L); // serially this would be 100s, with 500 at once it should be ~200ms
+    }
+
+    private static HostCheckResult hostCheckResult() {
+        return new HostCheckResult("Linux", false, Collections.emptyList(), Collections.emptyList(), new GlobalMemory(0L, 0L, 0L, 0L),
+                Collections.emptyList());
+    }
+
+    private static final class RecordingListener implements Listener<Object, Object> {
+        private final Map<Object, Object> succeeded = new ConcurrentHashMap<>();
+        private final Map<Object, Throwable> failed = new ConcurrentHashMap<>();
+
+        @Override
+        public void succeeded(Object key, Object result) {
+            succeeded.put(key, result);
+        }
+
+        @Override
+        public void failed(Object key, Throwable cause) {
+            failed.put(key, cause);
+        }
+
+        boolean awaitCount(int count, long timeout) throws InterruptedException {
+            long end = System.currentTimeMillis() + timeout;
+            while (succeeded.size() + failed.size() < count) {
+                if (System.currentTimeMillis() > end) {
+                    return false;
+                }
+                Thread.sleep(10L);
+            }
+            return true;
+        }
+    }
+}
@@ -2,9 +2,12 @@ package com.offbynull.rfm.host.executors.communicator;
 
 import com.offbynull.rfm.host.communicator.Communicator;
 import com.offbynull.rfm.host.communicator.ExecuteResult;
+import com.offbynull.rfm.host.executor.BackupCompression;
+import com.offbynull.rfm.host.executor.BackupOptions;
 import com.offbynull.rfm.host.executor.HostCheckResult;
 import com.offbynull.rfm.host.executor.TaskCheckResult;
 import com.offbynull.rfm.host.executor.TaskConfiguration;
+import com.offbynull.rfm.host.executor.TaskFileTail;
 import com.offbynull.rfm.host.executor.TaskIdConflictException;
 import com.offbynull.rfm.host.executor.TaskResourceAllocation;
 import com.offbynull.rfm.host.executor.TaskStateException;
@@ -13,9 +16,11 @@ import java.io.OutputStream;
 import java.io.Writer;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import java.util.Arrays;
+import java.util.Base64;
 import static java.util.Arrays.asList;
 import static java.util.Arrays.copyOfRange;
 import java.util.HashSet;
+import java.util.Map;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import static org.apache.commons.lang3.ArrayUtils.insert;
@@ -27,6 +32,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -38,6 +44,8 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class CommunicatorExecutorTest {
@@ -52,6 +60,7 @@ public class CommunicatorExecutorTest {
         mockComm = mock(Communicator.class);
         mockResult(1L, 0, "", "",
                 "[res]base_lock.sh",
+                "exclusive",
                 "[res]host_boot_restore.sh",
                 "[res]task_res_repair.sh",
                 "[res]task_stop.sh",
@@ -122,6 +131,58 @@ public class CommunicatorExecutorTest {
         assertEquals(asList("task 1", "task 2", "task 3"), res.getTasks());
     }
     
+    @Test
+    public void mustParseFramedHostCheck() throws IOException {
+        // same as host_check.stdout, but in the framed format that host_state_info.sh writes
+        Map<String, String> entries = ScriptParser.parse(IOUtils.toString(getClass().getResourceAsStream("host_check.stdout"), UTF_8));
+        StringBuilder framed = new StringBuilder();
+        entries.forEach((k, v) -> framed.append(k).append('\0').append(v).append('\0'));
+        primeCheckHost(0, framed.toString(), "", "[res]host_state_info.sh");
+
+        HostCheckResult res = fixture.checkHost();
+
+        assertEquals("Linux user-VirtualBox 4.8.0-53-generic #56~16.04.1-Ubuntu SMP Tue May 16 01:18:56 UTC 2017 x86_64 x86_64 x86_64 GNU/Linux", res.getSystem());
+        assertEquals(6, res.getMounts().size());
+        assertEquals(2, res.getProcessors().size());
+        assertEquals(asList("task 1", "task 2", "task 3"), res.getTasks());
+    }
+    
+    @Test
+    public void mustUsePreviousProcStatSampleOnNextHostCheck() throws Exception {
+        primeCheckHost(0, "[res]host_check.stdout", "", "[res]host_state_info.sh");
+        fixture.checkHost();
+
+        Thread.sleep(150L); // previous sample has to be at least a little old to be used
+        
+        // next check only has 1 sample, usage is calculated against !PROCSTAT2 from the previous check
+        Map<String, String> entries = ScriptParser.parse(IOUtils.toString(getClass().getResourceAsStream("host_check.stdout"), UTF_8));
+        entries.remove("!PROCSTAT1");
+        entries.put("!PROCSTAT2", ""
+                + "cpu0 1328 0 1530 7970555 288 0 102 0 0 0\n"   // 100 used, 100 idle since last sample
+                + "cpu1 3362 0 2422 7946408 182 0 55 0 0 0");    // 0 used, 300 idle since last sample
+        StringBuilder framed = new StringBuilder();
+        entries.forEach((k, v) -> framed.append(k).append('\0').append(v).append('\0'));
+        mockResult(1L, 0, framed.toString(), "", "[res]host_state_info.sh", "single", "0");
+
+        HostCheckResult res = fixture.checkHost();
+
+        assertEquals(0.5, res.getProcessors().get(0).getUsage(), 0.0001);
+        assertEquals(0.0, res.getProcessors().get(1).getUsage(), 0.0001);
+    }
+
+    @Test
+    public void mustTakeTwoProcStatSamplesIfPreviousSampleOutsideSamplingWindow() throws Exception {
+        fixture = fixture.withSamplingWindow(0L);
+        primeCheckHost(0, "[res]host_check.stdout", "", "[res]host_state_info.sh");
+        fixture.checkHost();
+
+        Thread.sleep(150L);
+        
+        HostCheckResult res = fixture.checkHost(); // mock only responds to "double"
+
+        assertEquals(2, res.getProcessors().size());
+    }
+    
     @Test
     public void mustParseHostCheckWithEnabledSwap() throws IOException {
         primeCheckHost(0, "[res]host_check_yes_swap.stdout", "", "[res]host_state_info.sh");    
@@ -137,7 +198,7 @@ public class CommunicatorExecutorTest {
     }
 
     private void primeCheckHost(int exitCode, String stdout, String stderr, String... args) throws IOException {
-        mockResult(1L, exitCode, stdout, stderr, "[res]host_state_info.sh");
+        mockResult(1L, exitCode, stdout, stderr, "[res]host_state_info.sh", "double", "1.000");
     }
 
 
@@ -179,6 +240,7 @@ public class CommunicatorExecutorTest {
             "[res]work_workdir_delete.sh",
             "[res]work_track_remove.sh"
         }, args);
+        cmdline = insert(1, cmdline, "exclusive");
         mockResult(1L, exitCode, "", "", cmdline);        
     }
 
@@ -223,6 +285,7 @@ public class CommunicatorExecutorTest {
                 "[res]work_cgroup_delete.sh",
                 "[res]work_workdir_delete.sh",
         }, args);
+        cmdline = insert(1, cmdline, "exclusive");
         
         mockResult(1L, exitCode, "", "", cmdline);
     }
@@ -270,6 +333,7 @@ public class CommunicatorExecutorTest {
                 "[res]work_image_delete.sh",
                 "[res]work_cgroup_delete.sh",
         }, args);
+        cmdline = insert(1, cmdline, "task_exclusive", args[0]);
 
         mockResult(1L, exitCode, "", "", cmdline);
     }
@@ -314,6 +378,7 @@ public class CommunicatorExecutorTest {
                 "[res]work_image_delete.sh",
                 "[res]work_cgroup_delete.sh",
         }, args);
+        cmdline = insert(1, cmdline, "task_exclusive", args[0]);
 
         mockResult(1L, exitCode, "", "", cmdline);
     }
@@ -348,7 +413,7 @@ public class CommunicatorExecutorTest {
     }
     
     private void primeReallocateTask(int exitCode, String... args) throws IOException {
-        String[] cmdline = insert(9, new String[]{
+        String[] cmdline = insert(10, new String[]{
                 "[res]base_lock.sh",
                 "[res]task_res_realloc.sh",
                 "[res]work_track_check.sh",
@@ -356,9 +421,11 @@ public class CommunicatorExecutorTest {
                 "[res]work_cgroup_create.sh",
                 "[res]work_image_mount.sh",
                 "[res]work_image_resize.sh",
+                "[res]work_image_grow.sh",
                 "[res]work_image_unmount.sh",
                 "[res]work_cgroup_delete.sh",
         }, args);
+        cmdline = insert(1, cmdline, "task_exclusive", args[0]);
 
         mockResult(1L, exitCode, "", "", cmdline);
     }
@@ -367,31 +434,49 @@ public class CommunicatorExecutorTest {
     
     @Test
     public void mustPassWhenBackingUpTaskReturns0() throws IOException {
-        primeBackupTaskDisk(0, "task+1", "/backup/whatever 1");
+        primeBackupTaskDisk(0, "task+1", "/backup/whatever 1", "gzip", "0", "true", "true", "false");
         fixture.backupTaskDisk("task 1", "/backup/whatever 1");
     }
 
     @Test
     public void mustFailWhenBackingUpTaskReturns1() throws IOException {
-        primeBackupTaskDisk(1, "task+1", "/backup/whatever 1");
+        primeBackupTaskDisk(1, "task+1", "/backup/whatever 1", "gzip", "0", "true", "true", "false");
         expectedException.expect(IOException.class);
         fixture.backupTaskDisk("task 1", "/backup/whatever 1");
     }
 
     @Test
     public void mustFailWithIdConflictWhenBackingUpTaskReturns2() throws IOException {
-        primeBackupTaskDisk(2, "task+1", "/backup/whatever 1");
+        primeBackupTaskDisk(2, "task+1", "/backup/whatever 1", "gzip", "0", "true", "true", "false");
         expectedException.expect(TaskIdConflictException.class);
         fixture.backupTaskDisk("task 1", "/backup/whatever 1");
     }
 
     @Test
     public void mustFailWithStateConflictWhenBackingUpTaskReturns3() throws IOException {
-        primeBackupTaskDisk(3, "task+1", "/backup/whatever 1");
+        primeBackupTaskDisk(3, "task+1", "/backup/whatever 1", "gzip", "0", "true", "true", "false");
         expectedException.expect(TaskStateException.class);
         fixture.backupTaskDisk("task 1", "/backup/whatever 1");
     }
 
+    @Test
+    public void mustPassBackupOptionsWhenBackingUpTask() throws IOException {
+        primeBackupTaskDisk(0, "task+1", "/backup/whatever 1", "zstd", "3", "false", "false", "false");
+        fixture.backupTaskDisk("task 1", "/backup/whatever 1", new BackupOptions(BackupCompression.ZSTD, 3, false, false));
+    }
+
+    @Test
+    public void mustPassIncrementalOptionWhenBackingUpTask() throws IOException {
+        primeBackupTaskDisk(0, "task+1", "/backup/whatever 1", "lz4", "0", "true", "false", "true");
+        fixture.backupTaskDisk("task 1", "/backup/whatever 1", new BackupOptions(BackupCompression.LZ4, 0, true, false, true));
+    }
+
+    @Test
+    public void mustFailWhenBackingUpTaskWithOutOfRangeCompressionLevel() throws IOException {
+        expectedException.expect(IllegalArgumentException.class);
+        fixture.backupTaskDisk("task 1", "/backup/whatever 1", new BackupOptions(BackupCompression.GZIP, 10, true, true));
+    }
+
     private void primeBackupTaskDisk(int exitCode, String... args) throws IOException {
         String[] cmdline = insert(5, new String[]{
                 "[res]base_lock.sh",
@@ -400,12 +485,40 @@ public class CommunicatorExecutorTest {
                 "[res]work_state_check.sh",
                 "[res]work_image_backup.sh"
         }, args);
+        cmdline = insert(1, cmdline, "task_exclusive", args[0]);
 
         mockResult(1L, exitCode, "", "", cmdline);
     }
     
     
     
+    @Test
+    public void mustPassWhenCompactingTaskBackupReturns0() throws IOException {
+        primeCompactTaskDiskBackup(0, "task+1", "/backup/whatever 1");
+        fixture.compactTaskDiskBackup("task 1", "/backup/whatever 1");
+    }
+
+    @Test
+    public void mustFailWhenCompactingTaskBackupReturns1() throws IOException {
+        primeCompactTaskDiskBackup(1, "task+1", "/backup/whatever 1");
+        expectedException.expect(IOException.class);
+        fixture.compactTaskDiskBackup("task 1", "/backup/whatever 1");
+    }
+
+    private void primeCompactTaskDiskBackup(int exitCode, String safeId, String backupPath) throws IOException {
+        mockResult(1L, exitCode, "", "",
+                "[res]base_lock.sh",
+                "task_exclusive",
+                safeId,
+                "[res]work_image_compact.sh",
+                safeId,
+                backupPath,
+                "[res]work_image_recover.sh",
+                "[res]work_image_backup.sh");
+    }
+    
+    
+    
     @Test
     public void mustPassWhenRestoringTaskReturns0() throws IOException {
         primeRestoreTaskDisk(0, "task+1", "/backup/whatever 1");
@@ -441,6 +554,7 @@ public class CommunicatorExecutorTest {
                 "[res]work_state_check.sh",
                 "[res]work_image_recover.sh"
         }, args);
+        cmdline = insert(1, cmdline, "task_exclusive", args[0]);
 
         mockResult(1L, exitCode, "", "", cmdline);
     }
@@ -484,6 +598,7 @@ public class CommunicatorExecutorTest {
                 "[res]work_process_start.sh",
                 "[res]work_process_stop.sh"
         }, args);
+        cmdline = insert(1, cmdline, "task_exclusive", args[0]);
         
         mockResult(1L, exitCode, "", "", cmdline);
     }
@@ -526,6 +641,7 @@ public class CommunicatorExecutorTest {
                 "[res]work_state_check.sh",
                 "[res]work_process_stop.sh"
         }, args);
+        cmdline = insert(1, cmdline, "task_exclusive", args[0]);
         
         mockResult(1L, exitCode, "", "", cmdline);
     }
@@ -583,9 +699,98 @@ public class CommunicatorExecutorTest {
                 "[res]work_track_check.sh",
                 "[res]work_process_info.sh"
         }, args);
+        cmdline = insert(1, cmdline, "task_shared", args[0]);
         
         mockResult(1L, exitCode, stdout, stderr, cmdline);
     }
+
+    @Test
+    public void mustParseCheckTasks() throws IOException {
+        String taskCheckStdout = resolveMockInput("[res]task_check.stdout");
+        if (taskCheckStdout.endsWith("\n")) {
+            taskCheckStdout = taskCheckStdout.substring(0, taskCheckStdout.length() - 1);
+        }
+        String stdout = ""
+                + "!RESULT0\n1\n0\n"
+                + "!OUTPUT0\n" + taskCheckStdout.split("\n", -1).length + "\n" + taskCheckStdout + "\n"
+                + "!RESULT1\n1\n2\n";
+        mockResult(1L, 0, stdout, "",
+                "[res]base_lock.sh",
+                "shared",
+                "[res]task_check_multi.sh",
+                "[res]task_check.sh",
+                "[res]work_track_check.sh",
+                "[res]work_process_info.sh",
+                "task+1",
+                "task+2");
+        
+        Map<String, TaskCheckResult> res = fixture.checkTasks(asList("task 1", "task 2", "task 1"));
+        
+        assertEquals(1, res.size());
+        assertEquals("user", res.get("task 1").getConfiguration().getUser());
+        assertEquals(17002, (int) res.get("task 1").getSid());
+        assertEquals(211968L, res.get("task 1").getDisk().getUsed());
+    }
+
+    @Test
+    public void mustFailWhenCheckTasksHasTaskThatReturns1() throws IOException {
+        mockResult(1L, 0, "!RESULT0\n1\n1\n", "",
+                "[res]base_lock.sh",
+                "shared",
+                "[res]task_check_multi.sh",
+                "[res]task_check.sh",
+                "[res]work_track_check.sh",
+                "[res]work_process_info.sh",
+                "task+1");
+        expectedException.expect(IOException.class);
+        fixture.checkTasks(asList("task 1"));
+    }
+
+    @Test
+    public void mustNotRunAnythingWhenCheckTasksHasNoIds() throws IOException {
+        reset(mockComm);
+        assertTrue(fixture.checkTasks(asList()).isEmpty());
+    }
+
+    @Test
+    public void mustInstallScriptsAndRetryWhenScriptsMissingOnHost() throws IOException {
+        reset(mockComm);
+        when(mockComm.execute(anyLong(), anyLong(), anyLong(), anyLong(), any(), any())).thenCallRealMethod();
+        when(mockComm.executeStreaming(anyLong(), anyLong(), any(), anyLong(), any(), anyLong(), any(), any())).thenCallRealMethod();
+
+        String checkEntry = resolveMockScriptArgs("[res]task_check.sh")[0];
+        String[] checkArgs = resolveMockScriptArgs("[res]base_lock.sh", "task_shared", "task+1", "[res]task_check.sh", "[res]work_track_check.sh",
+                "[res]work_process_info.sh", "task+1");
+        String installScript = CommunicatorExecutor.SCRIPT_CACHE.getInstallScript();
+        String[] installArgs = CommunicatorExecutor.SCRIPT_CACHE.getInstallArgs();
+        assertTrue(checkEntry.length() < 1024);
+        
+        int[] checkCount = new int[1];
+        int[] installCount = new int[1];
+        ArgumentCaptor<Writer> stdoutWriterCaptor = ArgumentCaptor.forClass(Writer.class);
+        when(mockComm.execute(anyLong(), anyLong(), stdoutWriterCaptor.capture(), anyLong(), any(), anyLong(), any(), any())).then(x -> {
+            String[] actualArgs = copyOfRange(x.getArguments(), 6, x.getArguments().length, String[].class);
+            if (actualArgs[0].equals(installScript)) {
+                assertArrayEquals(installArgs, copyOfRange(actualArgs, 1, actualArgs.length));
+                installCount[0]++;
+                return new ExecuteResult(0, 1L);
+            }
+
+            assertArrayEquals(checkArgs, actualArgs);
+            checkCount[0]++;
+            if (installCount[0] == 0) {
+                return new ExecuteResult(ScriptCache.EXIT_CODE_MISSING, 1L);
+            }
+            stdoutWriterCaptor.getValue().append(resolveMockInput("[res]task_check.stdout"));
+            return new ExecuteResult(0, 1L);
+        });
+        
+        TaskCheckResult res = fixture.checkTask("task 1");
+        
+        assertEquals(1, installCount[0]);
+        assertEquals(2, checkCount[0]);
+        assertEquals("user", res.getConfiguration().getUser());
+    }
     
     
     
@@ -599,6 +804,97 @@ public class CommunicatorExecutorTest {
         assertArrayEquals(new byte[] { 1, 2, 3, 4, 5 }, baos.toByteArray());
     }
 
+    @Test
+    public void mustTailTaskFileWithFilter() throws IOException {
+        primeCheckTask(0, "[res]task_check.stdout", "", "task+1");
+        addMockResult(1L, 0, tailOutput(120L, 50L, false, "ERROR 1\nERROR 2\n"), "",
+                "[res]task_file_tail.sh", "/opt/rfm/testTask/work_mnt", "/logs/render.log", "0", "100", "grep", "ERROR");
+        
+        TaskFileTail res = fixture.tailTaskFile("task 1", "/logs/render.log", 0L, 100L, "ERROR");
+        
+        assertArrayEquals("ERROR 1\nERROR 2\n".getBytes(UTF_8), res.getData());
+        assertEquals(50L, res.getNextOffset());
+        assertEquals(120L, res.getFileSize());
+        assertFalse(res.isTruncated());
+    }
+
+    @Test
+    public void mustTailTaskFileWithCachedMountDir() throws IOException {
+        primeCheckTask(0, "[res]task_check.stdout", "", "task+1");
+        addMockResult(1L, 0, tailOutput(120L, 100L, false, "abc"), "",
+                "[res]task_file_tail.sh", "/opt/rfm/testTask/work_mnt", "/logs/render.log", "0", "100", "none", "");
+        fixture.tailTaskFile("task 1", "/logs/render.log", 0L, 100L);
+        
+        // task check no longer mocked -- only works if mount dir was cached by previous call
+        mockResult(1L, 0, tailOutput(120L, 120L, false, "def"), "",
+                "[res]task_file_tail.sh", "/opt/rfm/testTask/work_mnt", "/logs/render.log", "100", "100", "none", "");
+        TaskFileTail res = fixture.tailTaskFile("task 1", "/logs/render.log", 100L, 100L);
+
+        assertArrayEquals("def".getBytes(UTF_8), res.getData());
+        assertEquals(120L, res.getNextOffset());
+    }
+
+    @Test
+    public void mustKeepCachedMountDirWhenTailedFileMissing() throws IOException {
+        primeCheckTask(0, "[res]task_check.stdout", "", "task+1");
+        addMockResult(1L, 1, "", "Unable to get file size",
+                "[res]task_file_tail.sh", "/opt/rfm/testTask/work_mnt", "/logs/render.log", "0", "100", "none", "");
+        try {
+            fixture.tailTaskFile("task 1", "/logs/render.log", 0L, 100L);
+            fail();
+        } catch (IOException ioe) {
+            assertFalse(ioe instanceof TaskStateException);
+        }
+        
+        // task check no longer mocked -- only works if mount dir is still cached after the failure
+        mockResult(1L, 0, tailOutput(120L, 100L, false, "abc"), "",
+                "[res]task_file_tail.sh", "/opt/rfm/testTask/work_mnt", "/logs/render.log", "0", "100", "none", "");
+        TaskFileTail res = fixture.tailTaskFile("task 1", "/logs/render.log", 0L, 100L);
+
+        assertArrayEquals("abc".getBytes(UTF_8), res.getData());
+    }
+
+    @Test
+    public void mustLookUpMountDirAgainWhenTaskDiskNoLongerMounted() throws IOException {
+        primeCheckTask(0, "[res]task_check.stdout", "", "task+1");
+        addMockResult(1L, 3, "", "Task disk not mounted",
+                "[res]task_file_tail.sh", "/opt/rfm/testTask/work_mnt", "/logs/render.log", "0", "100", "none", "");
+        try {
+            fixture.tailTaskFile("task 1", "/logs/render.log", 0L, 100L);
+            fail();
+        } catch (TaskStateException tse) {
+            // expected
+        }
+        
+        primeCheckTask(0, "[res]task_check.stdout", "", "task+1");
+        addMockResult(1L, 0, tailOutput(120L, 100L, false, "abc"), "",
+                "[res]task_file_tail.sh", "/opt/rfm/testTask/work_mnt", "/logs/render.log", "0", "100", "none", "");
+        fixture.tailTaskFile("task 1", "/logs/render.log", 0L, 100L);
+
+        String checkEntry = resolveMockScriptArgs("[res]base_lock.sh")[0];
+        verify(mockComm, times(1)).execute(anyLong(), anyLong(), any(), anyLong(), any(), anyLong(), eq(checkEntry), any());
+    }
+
+    @Test
+    public void mustTailTaskFileFromStartWhenTruncated() throws IOException {
+        primeCheckTask(0, "[res]task_check.stdout", "", "task+1");
+        addMockResult(1L, 0, tailOutput(3L, 3L, true, "xyz"), "",
+                "[res]task_file_tail.sh", "/opt/rfm/testTask/work_mnt", "/logs/render.log", "500", "100", "none", "");
+        
+        TaskFileTail res = fixture.tailTaskFile("task 1", "/logs/render.log", 500L, 100L);
+        
+        assertTrue(res.isTruncated());
+        assertArrayEquals("xyz".getBytes(UTF_8), res.getData());
+        assertEquals(3L, res.getNextOffset());
+    }
+
+    private static String tailOutput(long size, long next, boolean truncated, String data) {
+        return "!SIZE\0" + size + "\0"
+                + "!NEXT\0" + next + "\0"
+                + "!TRUNCATED\0" + (truncated ? "1" : "0") + "\0"
+                + "!DATA\0" + Base64.getEncoder().encodeToString(data.getBytes(UTF_8)) + "\0";
+    }
+
     private void primeDownloadTaskFile(String path, int exitCode, String stdout, String stderr, String... args) throws IOException {
         String[] cmdline = insert(4, new String[]{
                 "[res]base_lock.sh",
@@ -606,6 +902,7 @@ public class CommunicatorExecutorTest {
                 "[res]work_track_check.sh",
                 "[res]work_process_info.sh"
         }, args);
+        cmdline = insert(1, cmdline, "task_shared", args[0]);
         
         mockResult(1L, exitCode, stdout, stderr, cmdline);
 
@@ -636,14 +933,19 @@ public class CommunicatorExecutorTest {
     private void mockResult(long bootTime, int exitCode, String stdout, String stderr, String... args) throws IOException {
         reset(mockComm);
 
-        String[] resArgs = Arrays.stream(args)
-                .map(x -> resolveMockInput(x))
-                .toArray(x -> new String[x]);
-        
         when(mockComm.executeBuffered(anyLong(), anyLong(), any(), any())).thenCallRealMethod();
+        when(mockComm.executeBufferedNoSync(anyLong(), anyLong(), any(), any())).thenCallRealMethod();
+        when(mockComm.executeStreaming(anyLong(), anyLong(), any(), anyLong(), any(), anyLong(), any(), any())).thenCallRealMethod();
         when(mockComm.execute(anyLong(), anyLong(), anyLong(), anyLong(), any(), any())).thenCallRealMethod();
         when(mockComm.executeUnsafe(any(), any())).thenCallRealMethod();
         
+        addMockResult(bootTime, exitCode, stdout, stderr, args);
+    }
+
+    // same as mockResult, but keeps previously mocked results around (only works if the first arg of each is different)
+    private void addMockResult(long bootTime, int exitCode, String stdout, String stderr, String... args) throws IOException {
+        String[] resArgs = resolveMockScriptArgs(args);
+        
         ArgumentCaptor<Writer> stdoutWriterCaptor = ArgumentCaptor.forClass(Writer.class);
         ArgumentCaptor<Writer> stderrWriterCaptor = ArgumentCaptor.forClass(Writer.class);
         when(
@@ -678,6 +980,16 @@ public class CommunicatorExecutorTest {
         });
     }
     
+    private String[] resolveMockScriptArgs(String... args) {
+        // scripts are sent as stubs that reference the copies installed on the host (the first one is the one that gets executed)
+        String[] resArgs = Arrays.stream(args)
+                .map(x -> resolveMockInput(x))
+                .toArray(x -> new String[x]);
+        String[] ret = CommunicatorExecutor.SCRIPT_CACHE.toInvocations(resArgs);
+        ret[0] = CommunicatorExecutor.SCRIPT_CACHE.toEntry(resArgs[0]);
+        return ret;
+    }
+
     private String resolveMockInput(String str) {
         if (str.startsWith("[res]")) {
             str = str.substring(5);
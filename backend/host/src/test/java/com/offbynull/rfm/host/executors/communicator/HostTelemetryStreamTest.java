@@ -0,0 +1,124 @@
+package com.offbynull.rfm.host.executors.communicator;
+
+import com.offbynull.rfm.host.communicator.BootTimeChangedException;
+import com.offbynull.rfm.host.communicator.Communicator;
+import com.offbynull.rfm.host.communicator.OutputConsumer;
+import com.offbynull.rfm.host.executor.HostCheckResult;
+import com.offbynull.rfm.host.executor.RebootedException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.CharBuffer;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class HostTelemetryStreamTest {
+    
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private Communicator mockComm;
+    private HostTelemetryStream fixture;
+    private Map<String, String> hostCheck;
+
+    @Before
+    public void setUp() throws IOException {
+        mockComm = mock(Communicator.class);
+        hostCheck = ScriptParser.parse(IOUtils.toString(getClass().getResourceAsStream("host_check.stdout"), UTF_8));
+    }
+
+    @After
+    public void tearDown() {
+        if (fixture != null) {
+            fixture.close();
+        }
+    }
+
+    @Test
+    public void mustBuildSnapshotFromSamples() throws Exception {
+        String output = ""
+                + entry("!UNAME") + entry("!CGROUP_CPUSET") + entry("!CPUINFO") + entry("!KERNEL_CONFIGS")
+                + entry("!PROCSTAT", "!PROCSTAT1") + entry("!MEMINFO") + entry("!DF") + entry("!TASKS")
+                + "!SAMPLE\n0\n"
+                + entry("!PROCSTAT", "!PROCSTAT2") + entry("!MEMINFO")                   // later samples only have what changed
+                + "!SAMPLE\n0\n";
+        CountDownLatch interrupted = primeStream(output);
+
+        fixture = HostTelemetryStream.open(mockComm, 1L, 1000L);
+        HostCheckResult res = fixture.awaitSnapshot(5000L);
+        
+        assertEquals(
+                "Linux user-VirtualBox 4.8.0-53-generic #56~16.04.1-Ubuntu SMP Tue May 16 01:18:56 UTC 2017 x86_64 x86_64 x86_64 GNU/Linux",
+                res.getSystem());
+        assertEquals(6, res.getMounts().size());
+        assertEquals(2, res.getProcessors().size());
+        assertEquals(2047768L * 1024L, res.getMemory().getMemTotal());
+        assertEquals(asList("task 1", "task 2", "task 3"), res.getTasks());
+        
+        fixture.close();
+        assertTrue(interrupted.await(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void mustNotHaveSnapshotUntilSecondSample() throws Exception {
+        String output = ""
+                + entry("!UNAME") + entry("!CGROUP_CPUSET") + entry("!CPUINFO") + entry("!KERNEL_CONFIGS")
+                + entry("!PROCSTAT", "!PROCSTAT1") + entry("!MEMINFO") + entry("!DF") + entry("!TASKS")
+                + "!SAMPLE\n0\n";
+        primeStream(output);
+
+        fixture = HostTelemetryStream.open(mockComm, 1L, 1000L);
+        
+        assertNull(fixture.awaitSnapshot(200L));
+    }
+
+    @Test
+    public void mustFailWithRebootedWhenBootTimeChanges() throws Exception {
+        when(mockComm.executeStreaming(anyLong(), anyLong(), any(), anyLong(), any(), anyLong(), any(), any()))
+                .thenThrow(new BootTimeChangedException(2L));
+
+        fixture = HostTelemetryStream.open(mockComm, 1L, 1000L);
+
+        expectedException.expect(RebootedException.class);
+        fixture.awaitSnapshot(5000L);
+    }
+
+    private CountDownLatch primeStream(String output) throws IOException {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(mockComm.executeStreaming(anyLong(), anyLong(), any(), anyLong(), any(), anyLong(), any(), any())).then(x -> {
+            OutputConsumer stdoutConsumer = x.getArgument(2);
+            stdoutConsumer.accept(CharBuffer.wrap(output));
+            try {
+                Thread.sleep(60000L); // script keeps running until interrupted
+            } catch (InterruptedException ie) {
+                interrupted.countDown();
+            }
+            throw new InterruptedIOException();
+        });
+        return interrupted;
+    }
+
+    private String entry(String name) {
+        return entry(name, name);
+    }
+
+    private String entry(String name, String hostCheckName) {
+        String body = hostCheck.get(hostCheckName);
+        return name + "\n" + body.split("\n", -1).length + "\n" + body + "\n";
+    }
+}
@@ -1,8 +1,11 @@
 package com.offbynull.rfm.host.executors.communicator;
 
 import com.offbynull.rfm.host.executors.communicator.ProcStatParser.ProcStatCpuEntry;
+import com.offbynull.rfm.host.executors.communicator.ProcStatParser.ProcStatCpuTimes;
 import java.util.List;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
 public class ProcStatParserTest {
@@ -83,4 +86,40 @@ public class ProcStatParserTest {
         ProcStatParser.parse("cpu5 2250 0");
     }
 
+
+    @Test
+    public void mustIndexCpuTimesByProcessor() {
+        StringBuilder sb = new StringBuilder("cpu  1 2 3 4 5 6 7 8 9 10\n");
+        for (int i = 255; i >= 0; i--) { // 256 cores, listed out of order
+            sb.append("cpu").append(i).append(' ').append(i).append(' ').append(i + 1).append(' ').append(i + 2).append(' ')
+                    .append(i + 3).append(" 0 0 0 0 0 0\n");
+        }
+        sb.append("intr 12345\nctxt 67890\n");
+
+        ProcStatCpuTimes actual = ProcStatParser.parseCpuTimes(sb);
+
+        for (int i = 0; i < 256; i++) {
+            assertTrue(actual.contains(i));
+            assertEquals(i, actual.getUserTime(i));
+            assertEquals(i + 1, actual.getNiceTime(i));
+            assertEquals(i + 2, actual.getSystemTime(i));
+            assertEquals(i + 3, actual.getIdleTime(i));
+            assertEquals(3 * i + 3, actual.getUsedTime(i));
+        }
+        assertFalse(actual.contains(256));
+    }
+
+    @Test
+    public void mustNotContainMissingProcessors() {
+        ProcStatCpuTimes actual = ProcStatParser.parseCpuTimes("cpu5 2250 0 1623 3663484 182 0 62 0 0 0");
+
+        assertFalse(actual.contains(0));
+        assertFalse(actual.contains(4));
+        assertTrue(actual.contains(5));
+    }
+
+    @Test(expected=RuntimeException.class)
+    public void mustFailToGetMissingProcessor() {
+        ProcStatParser.parseCpuTimes("cpu5 2250 0 1623 3663484 182 0 62 0 0 0").getIdleTime(4);
+    }
 }
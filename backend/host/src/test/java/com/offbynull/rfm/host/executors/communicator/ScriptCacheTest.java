@@ -0,0 +1,77 @@
+package com.offbynull.rfm.host.executors.communicator;
+
+import com.offbynull.rfm.host.communicator.FrameReader;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class ScriptCacheTest {
+
+    @Test
+    public void mustReplaceScriptsWithStubsAndPassOtherArgumentsThrough() {
+        Map<String, String> scripts = new HashMap<>();
+        scripts.put("a.sh", "echo a\n");
+        scripts.put("b.sh", "echo b\n");
+        ScriptCache fixture = new ScriptCache(scripts);
+        
+        String[] actual = fixture.toInvocations("echo a\n", "echo b\n", "task+1");
+        
+        assertEquals("source \"" + fixture.getDirectory() + "/a.sh\"\n", actual[0]);
+        assertEquals("source \"" + fixture.getDirectory() + "/b.sh\"\n", actual[1]);
+        assertEquals("task+1", actual[2]);
+        assertTrue(fixture.toEntry("echo a\n").contains("exit " + ScriptCache.EXIT_CODE_MISSING));
+        assertTrue(fixture.toEntry("echo a\n").endsWith(actual[0]));
+    }
+
+    @Test
+    public void mustNameDirectoryAfterContent() {
+        Map<String, String> scripts1 = new HashMap<>();
+        scripts1.put("a.sh", "echo a\n");
+        scripts1.put("b.sh", "echo b\n");
+        Map<String, String> scripts2 = new HashMap<>(scripts1);
+        Map<String, String> scripts3 = new HashMap<>(scripts1);
+        scripts3.put("b.sh", "echo c\n");
+        
+        assertEquals(new ScriptCache(scripts1).getDirectory(), new ScriptCache(scripts2).getDirectory());
+        assertNotEquals(new ScriptCache(scripts1).getDirectory(), new ScriptCache(scripts3).getDirectory());
+        assertTrue(new ScriptCache(scripts1).getDirectory().matches("/opt/rfm/scripts/[0-9a-f]{64}"));
+    }
+
+    @Test
+    public void mustGenerateInstallArguments() throws Exception {
+        Map<String, String> scripts = new HashMap<>();
+        scripts.put("a.sh", "echo a\n");
+        ScriptCache fixture = new ScriptCache(scripts);
+        
+        String installedScript = FrameReader.prependWriter("echo a\n"); // installed copies get write_frame defined at the top
+        assertArrayEquals(
+                new String[] {
+                    fixture.getDirectory(),
+                    "a.sh",
+                    sha256Hex(installedScript),
+                    installedScript
+                },
+                fixture.getInstallArgs());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mustFailOnUnknownEntryScript() {
+        Map<String, String> scripts = new HashMap<>();
+        scripts.put("a.sh", "echo a\n");
+        new ScriptCache(scripts).toEntry("echo b\n");
+    }
+
+    private static String sha256Hex(String data) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(data.getBytes(UTF_8))) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
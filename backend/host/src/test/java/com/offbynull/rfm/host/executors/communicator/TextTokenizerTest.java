@@ -0,0 +1,113 @@
+package com.offbynull.rfm.host.executors.communicator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TextTokenizerTest {
+
+    @Test
+    public void mustSplitLinesAndTokens() {
+        TextTokenizer tokenizer = new TextTokenizer("a  bb\tccc \r\n\rkey : value with spaces  \ndd");
+
+        assertTrue(tokenizer.nextLine());
+        assertTrue(tokenizer.nextToken());
+        assertEquals("a", tokenizer.tokenToString());
+        assertTrue(tokenizer.nextToken());
+        assertEquals("bb", tokenizer.tokenToString());
+        assertTrue(tokenizer.nextToken());
+        assertEquals("ccc", tokenizer.tokenToString());
+        assertFalse(tokenizer.nextToken());
+
+        assertTrue(tokenizer.nextLine());
+        assertTrue(tokenizer.isLineEmpty());
+
+        assertTrue(tokenizer.nextLine());
+        assertTrue(tokenizer.nextTokenUntil(':'));
+        assertTrue(tokenizer.tokenEquals("key"));
+        assertTrue(tokenizer.restOfLine());
+        assertEquals("value with spaces", tokenizer.tokenToString());
+
+        assertTrue(tokenizer.nextLine());
+        assertFalse(tokenizer.nextTokenUntil(':'));
+        assertTrue(tokenizer.nextToken());
+        assertEquals("dd", tokenizer.tokenToString());
+
+        assertFalse(tokenizer.nextLine());
+    }
+
+    @Test
+    public void mustNotReturnLineForTrailingTerminator() {
+        TextTokenizer tokenizer = new TextTokenizer("a\n");
+        
+        assertTrue(tokenizer.nextLine());
+        assertFalse(tokenizer.nextLine());
+    }
+
+    @Test
+    public void mustParseNumbersInPlace() {
+        TextTokenizer tokenizer = new TextTokenizer("cpu12 -5 9223372036854775807 9223372036854775808 - 1a");
+        tokenizer.nextLine();
+
+        assertTrue(tokenizer.nextToken());
+        assertFalse(tokenizer.tokenIsLong());
+        assertTrue(tokenizer.tokenIsLong(3));
+        assertEquals(12L, tokenizer.longValue());
+        assertEquals(12L, tokenizer.tokenToLong(3));
+        assertTrue(tokenizer.nextToken());
+        assertEquals(-5L, tokenizer.tokenToLong());
+        assertTrue(tokenizer.nextToken());
+        assertEquals(Long.MAX_VALUE, tokenizer.tokenToLong());
+        assertTrue(tokenizer.nextToken());
+        assertFalse(tokenizer.tokenIsLong()); // overflow
+        assertTrue(tokenizer.nextToken());
+        assertFalse(tokenizer.tokenIsLong());
+        assertTrue(tokenizer.nextToken());
+        assertFalse(tokenizer.tokenIsLong());
+    }
+
+    @Test
+    public void mustParseSameAsLongParseLong() {
+        String[] inputs = { "0", "+1", "-0", "-9223372036854775808", "123456789", "0001" };
+        for (String input : inputs) {
+            TextTokenizer tokenizer = new TextTokenizer(input);
+            tokenizer.nextLine();
+            tokenizer.nextToken();
+            assertTrue(tokenizer.tokenIsLong());
+            assertEquals(Long.parseLong(input), tokenizer.longValue());
+            assertEquals(Long.parseLong(input), tokenizer.tokenToLong());
+        }
+    }
+
+    @Test
+    public void mustNotParseNonNumbers() {
+        String[] inputs = { "-", "+", "-9223372036854775809", "9223372036854775808", "1a", "a1", "--1", "1-" };
+        for (String input : inputs) {
+            TextTokenizer tokenizer = new TextTokenizer(input);
+            tokenizer.nextLine();
+            tokenizer.nextToken();
+            assertFalse(input, tokenizer.tokenIsLong());
+        }
+    }
+
+    @Test
+    public void mustKeepLastNumberWhenTokenIsNotNumber() {
+        TextTokenizer tokenizer = new TextTokenizer("5 -");
+        tokenizer.nextLine();
+
+        tokenizer.nextToken();
+        assertTrue(tokenizer.tokenIsLong());
+        tokenizer.nextToken();
+        assertFalse(tokenizer.tokenIsLong());
+        assertEquals(5L, tokenizer.longValue());
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void mustFailToParseNumberPastMinimum() {
+        TextTokenizer tokenizer = new TextTokenizer("-9223372036854775809");
+        tokenizer.nextLine();
+        tokenizer.nextToken();
+        tokenizer.tokenToLong();
+    }
+}
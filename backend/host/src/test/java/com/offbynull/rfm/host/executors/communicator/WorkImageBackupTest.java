@@ -0,0 +1,143 @@
+package com.offbynull.rfm.host.executors.communicator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WorkImageBackupTest {
+
+    private static final int MIB = 1024 * 1024;
+
+    private Path tempDir;
+    private Path workDir;
+    private Path backupDir;
+    private String backupScript;
+    private String compactScript;
+    private String recoverScript;
+    private Random random;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(new File("/bin/bash").canExecute());
+        assumeTrue("root".equals(System.getProperty("user.name"))); // scripts require root
+        assumeTrue(new File("/usr/bin/perl").canExecute());
+
+        tempDir = Files.createTempDirectory("imagebackuptest");
+        workDir = Files.createDirectory(tempDir.resolve("work"));
+        backupDir = tempDir.resolve("backup");
+        backupScript = load("work_image_backup.sh");
+        compactScript = load("work_image_compact.sh");
+        recoverScript = load("work_image_recover.sh");
+        random = new Random(0L);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (tempDir != null) {
+            FileUtils.deleteDirectory(tempDir.toFile());
+        }
+    }
+
+    @Test
+    public void mustRecoverIncrementalChainAfterCompaction() throws Exception {
+        Path workImg = workDir.resolve("work.img");
+        try (RandomAccessFile raf = new RandomAccessFile(workImg.toFile(), "rw")) {
+            raf.setLength(40 * MIB);                   // 4 MiB blocks 0 to 9, mostly holes
+            writeRandom(raf, 5 * MIB, MIB);            // block 1 has data
+            writeRandom(raf, 20 * MIB, 2 * MIB);       // block 5 has data
+        }
+        run(backupScript, "w", workDir.toString(), backupDir.toString(), "gzip", "1", "true", "false", "true");
+        assertEquals(Arrays.asList("1", "5"), storedBlocks("000000"));
+
+        try (RandomAccessFile raf = new RandomAccessFile(workImg.toFile(), "rw")) {
+            writeRandom(raf, 5 * MIB + 100, 10);       // block 1 changed
+            raf.setLength(50 * MIB);                   // blocks 10 to 11 added
+            writeRandom(raf, 45 * MIB, 10);            // block 11 has data
+        }
+        run(backupScript, "w", workDir.toString(), backupDir.toString(), "gzip", "1", "true", "false", "true");
+        assertEquals(Arrays.asList("1", "11"), storedBlocks("000001"));
+
+        run(compactScript, "w", backupDir.toString(), recoverScript, backupScript);
+        assertTrue(Files.exists(backupDir.resolve("inc.000000.manifest")));
+        assertFalse(Files.exists(backupDir.resolve("inc.000001.manifest")));
+        assertFalse(Files.exists(backupDir.resolve(".compact")));
+        assertTrue(Files.readAllLines(backupDir.resolve("inc.000000.manifest"), UTF_8).contains("level 1"));
+        assertEquals(Arrays.asList("1", "5", "11"), storedBlocks("000000"));
+
+        Path recoverDir = Files.createDirectory(tempDir.resolve("recover"));
+        run(recoverScript, "w", recoverDir.toString(), backupDir.toString(), "false"); // not a real filesystem, skip check
+        assertArrayEquals(Files.readAllBytes(workImg), Files.readAllBytes(recoverDir.resolve("work.img")));
+    }
+
+    @Test
+    public void mustReplaceChainWhenHashesMissing() throws Exception {
+        Path workImg = workDir.resolve("work.img");
+        try (RandomAccessFile raf = new RandomAccessFile(workImg.toFile(), "rw")) {
+            raf.setLength(12 * MIB);
+            writeRandom(raf, 0, MIB);
+        }
+        run(backupScript, "w", workDir.toString(), backupDir.toString(), "none", "0", "true", "false", "true");
+        run(backupScript, "w", workDir.toString(), backupDir.toString(), "none", "0", "true", "false", "true");
+        assertTrue(Files.exists(backupDir.resolve("inc.000001.manifest")));
+        Files.delete(backupDir.resolve("inc.hashes"));
+
+        try (RandomAccessFile raf = new RandomAccessFile(workImg.toFile(), "rw")) {
+            writeRandom(raf, 8 * MIB, MIB);
+        }
+        run(backupScript, "w", workDir.toString(), backupDir.toString(), "none", "0", "true", "false", "true");
+        assertEquals(Arrays.asList("0", "2"), storedBlocks("000000"));
+        assertFalse(Files.exists(backupDir.resolve("inc.000001.manifest")));
+        assertFalse(Files.exists(backupDir.resolve(".inc.old")));
+
+        Path recoverDir = Files.createDirectory(tempDir.resolve("recover"));
+        run(recoverScript, "w", recoverDir.toString(), backupDir.toString(), "false"); // not a real filesystem, skip check
+        assertArrayEquals(Files.readAllBytes(workImg), Files.readAllBytes(recoverDir.resolve("work.img")));
+    }
+
+    private List<String> storedBlocks(String level) throws IOException {
+        List<String> lines = Files.readAllLines(backupDir.resolve("inc." + level + ".manifest"), UTF_8);
+        int start = 0;
+        while (!lines.get(start).startsWith("blocks ")) {
+            start++;
+        }
+        return lines.subList(start + 1, lines.size());
+    }
+
+    private void writeRandom(RandomAccessFile raf, long offset, int len) throws IOException {
+        byte[] data = new byte[len];
+        random.nextBytes(data);
+        raf.seek(offset);
+        raf.write(data);
+    }
+
+    private static void run(String script, String... args) throws IOException, InterruptedException {
+        String[] cmd = new String[args.length + 3];
+        cmd[0] = "/bin/bash";
+        cmd[1] = "-c";
+        cmd[2] = script;
+        System.arraycopy(args, 0, cmd, 3, args.length);
+        Process process = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+        String output = IOUtils.toString(process.getInputStream(), UTF_8);
+        assertEquals(output, 0, process.waitFor());
+    }
+
+    private static String load(String name) throws IOException {
+        return IOUtils.toString(WorkImageBackupTest.class.getResourceAsStream(name), UTF_8);
+    }
+}
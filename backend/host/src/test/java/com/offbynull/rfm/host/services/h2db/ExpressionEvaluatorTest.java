@@ -0,0 +1,61 @@
+package com.offbynull.rfm.host.services.h2db;
+
+import com.offbynull.rfm.host.model.expression.Expression;
+import com.offbynull.rfm.host.parser.Parser;
+import java.math.BigDecimal;
+import static java.util.Collections.EMPTY_LIST;
+import static java.util.Collections.EMPTY_MAP;
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class ExpressionEvaluatorTest {
+
+    private final Parser parser = new Parser(EMPTY_LIST, EMPTY_LIST);
+    private final ExpressionEvaluator fixture = new ExpressionEvaluator(EMPTY_MAP);
+
+    private Map<String, Object> variables;
+
+    @Before
+    public void setUp() {
+        variables = new HashMap<>();
+        variables.put("socket.n_socket_id", new BigDecimal(2));
+        variables.put("socket.s_model", "xeon");
+        variables.put("host.n_socket_id", new BigDecimal(5));
+        variables.put("host.s_facility", "US-EAST");
+        variables.put("host.b_gpu", true);
+    }
+
+    @Test
+    public void mustEvaluateLiterals() {
+        assertEquals(true, evaluate("1+1==2"));
+        assertEquals(false, evaluate("2*3==5"));
+        assertEquals(true, evaluate("\"a\"==\"a\" && !false"));
+    }
+
+    @Test
+    public void mustResolveVariablesByScope() {
+        assertEquals(true, evaluate("socket.n_socket_id==2"));
+        assertEquals(true, evaluate("host.n_socket_id==5"));
+        assertEquals(true, evaluate("socket.s_model==\"xeon\" && host.s_facility==\"US-EAST\""));
+        assertEquals(true, evaluate("host.b_gpu"));
+        assertEquals(true, evaluate("socket.n_socket_id+host.n_socket_id>6"));
+    }
+
+    @Test
+    public void mustReturnNullWhenVariableMissing() {
+        assertNull(evaluate("socket.n_core_count==2"));
+        assertNull(evaluate("!(socket.n_core_count==2)"));
+        assertNull(evaluate("socket.n_socket_id==2 && socket.n_core_count==2"));
+    }
+
+    private Object evaluate(String where) {
+        Expression expression = parser.parseScriptReqs(EMPTY_MAP, "1 host { 1 socket where " + where + " }")
+                .getSocketRequirements().get(0)
+                .getWhereCondition();
+        return fixture.evaluate(expression, (scope, name) -> variables.get(scope + "." + name));
+    }
+}
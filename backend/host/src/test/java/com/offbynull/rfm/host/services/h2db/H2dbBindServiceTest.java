@@ -0,0 +1,266 @@
+package com.offbynull.rfm.host.services.h2db;
+
+import com.offbynull.rfm.host.model.specification.HostSpecification;
+import com.offbynull.rfm.host.service.StoredWork;
+import com.offbynull.rfm.host.service.Work;
+import com.offbynull.rfm.host.service.Worker;
+import static com.offbynull.rfm.host.testutils.TestUtils.loadSpecResource;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+public class H2dbBindServiceTest {
+
+    private JdbcDataSource dataSource;
+    private H2dbHostService fixture;
+
+    private Connection keepAliveConnection;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = new JdbcDataSource();
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+        dataSource.setUrl("jdbc:h2:mem:test");
+
+        keepAliveConnection = dataSource.getConnection(); // Because this is an in-memory database, we need atleast 1 connection open during
+                                                          // the duration of the test to keep the database intact. Once the test is finishes
+                                                          // we close this.
+
+        fixture = new H2dbHostService(dataSource);
+        fixture.prime();
+
+        fixture.updateWorker(loadWorker("worker1")); // worker1:12345 has 2 gpus with 1 capacity each
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        keepAliveConnection.close(); // Close the final open connection, releasing in-memory database. Contents of database discarded.
+    }
+
+    @Test
+    public void mustFindBindableWorkInPriorityOrder() throws Exception {
+        fixture.updateWork(work("w1", "0.3", "1 host { 1 gpu with 1 capacity }"));
+        fixture.updateWork(work("w2", "0.1", "1 host { 3 gpu with 1 capacity }")); // never fits
+        fixture.updateWork(work("w3", "0.2", "1 host { 1 gpu with 1 capacity }"));
+
+        assertEquals("w3", fixture.findBindableWork("worker1", 12345).getWork().getId());
+    }
+
+    @Test
+    public void mustNotFindWorkWaitingOnParents() throws Exception {
+        fixture.updateWork(work("w1", "0.2", "1 host { 2 gpu with 1 capacity }"));
+        fixture.updateWork(new Work("w2", new BigDecimal("0.1"), Arrays.asList("w1"), emptyMap(), "1 host { 1 gpu with 1 capacity }"));
+
+        assertEquals("w1", fixture.findBindableWork("worker1", 12345).getWork().getId());
+    }
+
+    @Test
+    public void mustNotFindWorkForMissingWorker() throws Exception {
+        fixture.updateWork(work("w1", "0.1", "1 host { 1 gpu with 1 capacity }"));
+
+        assertNull(fixture.findBindableWork("worker2", 12345));
+    }
+
+    @Test
+    public void mustBindAndUnbind() throws Exception {
+        fixture.updateWork(work("w1", "0.1", "1 host { 2 gpu with 1 capacity }"));
+        fixture.updateWork(work("w2", "0.2", "1 host { 1 gpu with 1 capacity }"));
+
+        fixture.bind("w1", "worker1", 12345);
+        assertEquals(1, countBinds());
+        assertNull(fixture.findBindableWork("worker1", 12345)); // w1 took both gpus and is no longer waiting
+
+        fixture.unbind("w1", "worker1", 12345);
+        assertEquals(0, countBinds());
+        assertEquals("w1", fixture.findBindableWork("worker1", 12345).getWork().getId());
+
+        fixture.bind("w2", "worker1", 12345);
+        assertNull(fixture.findBindableWork("worker1", 12345)); // w1 needs both gpus but only 1 is left
+    }
+
+    @Test
+    public void mustFailToBindWorkThatDoesNotFit() throws Exception {
+        fixture.updateWork(work("w1", "0.1", "1 host { 3 gpu with 1 capacity }"));
+
+        try {
+            fixture.bind("w1", "worker1", 12345);
+            fail();
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+        assertEquals(0, countBinds());
+    }
+
+    @Test
+    public void mustFailToBindWorkTwice() throws Exception {
+        fixture.updateWork(work("w1", "0.1", "1 host { 1 gpu with 1 capacity }"));
+        fixture.bind("w1", "worker1", 12345);
+
+        try {
+            fixture.bind("w1", "worker1", 12345);
+            fail();
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+        assertEquals(1, countBinds());
+    }
+
+    @Test
+    public void mustKeepBindWhenWorkerUpdated() throws Exception {
+        fixture.updateWork(work("w1", "0.1", "1 host { 2 gpu with 1 capacity }"));
+        fixture.updateWork(work("w2", "0.2", "1 host { 1 gpu with 1 capacity }"));
+        fixture.bind("w1", "worker1", 12345);
+
+        fixture.updateWorker(loadWorker("worker1"));
+
+        assertEquals(1, countBinds());
+        assertNull(fixture.findBindableWork("worker1", 12345)); // allocation carried over to updated worker, nothing left for w2
+        try {
+            fixture.deleteWorker("worker1", 12345);
+            fail();
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+    }
+
+    @Test
+    public void mustKeepBindWhenBoundWorkUpdated() throws Exception {
+        fixture.updateWork(work("w1", "0.1", "1 host { 2 gpu with 1 capacity }"));
+        fixture.updateWork(work("w2", "0.2", "1 host { 1 gpu with 1 capacity }"));
+        fixture.bind("w1", "worker1", 12345);
+
+        fixture.updateWork(work("w1", "0.05", "1 host { 2 gpu with 1 capacity }"));
+
+        assertEquals(1, countBinds());
+        assertNull(fixture.findBindableWork("worker1", 12345)); // w1 still bound and still holding both gpus, nothing left for w2
+        try {
+            fixture.bind("w1", "worker1", 12345); // can't be bound a second time
+            fail();
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+        try {
+            fixture.deleteWorker("worker1", 12345);
+            fail();
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+
+        fixture.unbind("w1", "worker1", 12345);
+        assertEquals(0, countBinds());
+        assertEquals("w1", fixture.findBindableWork("worker1", 12345).getWork().getId());
+    }
+
+    @Test
+    public void mustUseRevisedRequirementsWhenWorkUpdated() throws Exception {
+        fixture.updateWork(work("w1", "0.1", "1 host { 3 gpu with 1 capacity }"));
+        assertNull(fixture.findBindableWork("worker1", 12345));
+
+        fixture.updateWork(work("w1", "0.1", "1 host { 2 gpu with 1 capacity }"));
+        assertEquals("w1", fixture.findBindableWork("worker1", 12345).getWork().getId());
+    }
+
+    @Test
+    public void mustReleaseCapacityWhenBoundWorkDeleted() throws Exception {
+        fixture.updateWork(work("w1", "0.1", "1 host { 2 gpu with 1 capacity }"));
+        fixture.updateWork(work("w2", "0.2", "1 host { 1 gpu with 1 capacity }"));
+        fixture.bind("w1", "worker1", 12345);
+
+        fixture.deleteWork("w1");
+
+        assertEquals(0, countBinds());
+        assertEquals("w2", fixture.findBindableWork("worker1", 12345).getWork().getId());
+        fixture.deleteWorker("worker1", 12345); // nothing bound anymore
+    }
+
+    @Test
+    public void mustRestoreBindsWhenPrimed() throws Exception {
+        fixture.updateWork(work("w1", "0.1", "1 host { 2 gpu with 1 capacity }"));
+        fixture.updateWork(work("w2", "0.2", "1 host { 1 gpu with 1 capacity }"));
+        fixture.bind("w1", "worker1", 12345);
+
+        H2dbHostService restarted = new H2dbHostService(dataSource);
+        restarted.prime();
+
+        assertNull(restarted.findBindableWork("worker1", 12345));
+        restarted.unbind("w1", "worker1", 12345);
+        StoredWork found = restarted.findBindableWork("worker1", 12345);
+        assertEquals("w1", found.getWork().getId());
+    }
+
+    @Test
+    public void mustFindChildWorkOnceParentDeleted() throws Exception {
+        fixture.updateWork(work("w1", "0.2", "1 host { 3 gpu with 1 capacity }")); // never fits
+        fixture.updateWork(new Work("w2", new BigDecimal("0.1"), Arrays.asList("w1"), emptyMap(), "1 host { 1 gpu with 1 capacity }"));
+        assertNull(fixture.findBindableWork("worker1", 12345));
+
+        fixture.deleteWork("w1");
+
+        assertEquals("w2", fixture.findBindableWork("worker1", 12345).getWork().getId());
+    }
+
+    @Test
+    public void mustSkipWorkWithUnparsableRequirements() throws Exception {
+        fixture.updateWork(work("w1", "0.1", "this is not a requirements script"));
+        fixture.updateWork(work("w2", "0.2", "1 host { 1 gpu with 1 capacity }"));
+
+        assertEquals("w2", fixture.findBindableWork("worker1", 12345).getWork().getId());
+        try {
+            fixture.bind("w1", "worker1", 12345);
+            fail();
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+
+        H2dbHostService restarted = new H2dbHostService(dataSource);
+        restarted.prime();
+        assertEquals("w2", restarted.findBindableWork("worker1", 12345).getWork().getId());
+    }
+
+    @Test
+    public void mustPrimeWhenBoundWorkHasUnparsableRequirements() throws Exception {
+        fixture.updateWork(work("w1", "0.1", "1 host { 1 gpu with 1 capacity }"));
+        fixture.updateWork(work("w2", "0.2", "1 host { 1 gpu with 1 capacity }"));
+        fixture.bind("w1", "worker1", 12345);
+        try (Statement stmt = keepAliveConnection.createStatement()) {
+            stmt.executeUpdate("update work set script='this is not a requirements script' where id='w1'");
+        }
+
+        H2dbHostService restarted = new H2dbHostService(dataSource);
+        restarted.prime();
+
+        assertEquals("w2", restarted.findBindableWork("worker1", 12345).getWork().getId());
+        restarted.unbind("w1", "worker1", 12345);
+        assertEquals(0, countBinds());
+    }
+
+    private int countBinds() throws SQLException {
+        try (Statement stmt = keepAliveConnection.createStatement();
+                ResultSet rs = stmt.executeQuery("select count(*) from bind")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static Work work(String id, String priority, String script) {
+        return new Work(id, new BigDecimal(priority), emptyList(), emptyMap(), script);
+    }
+
+    private static Worker loadWorker(String name) throws IOException, ClassNotFoundException {
+        return new Worker((HostSpecification) loadSpecResource("/com/offbynull/rfm/host/services/h2db/" + name));
+    }
+}
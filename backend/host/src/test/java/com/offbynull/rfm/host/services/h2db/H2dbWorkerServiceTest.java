@@ -3,10 +3,18 @@ package com.offbynull.rfm.host.services.h2db;
 import com.offbynull.rfm.host.model.specification.HostSpecification;
 import com.offbynull.rfm.host.service.Worker;
 import com.offbynull.rfm.host.service.StoredWorker;
+import static com.offbynull.rfm.host.testutils.TestUtils.loadSpec;
 import static com.offbynull.rfm.host.testutils.TestUtils.loadSpecResource;
 import java.io.IOException;
+import java.io.InputStream;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.io.IOUtils;
 import org.h2.jdbcx.JdbcDataSource;
 import org.junit.After;
 import static org.junit.Assert.assertEquals;
@@ -82,6 +90,36 @@ public class H2dbWorkerServiceTest {
         assertEquals(updatedWorker, actualWorker.getWorker());
     }
 
+    @Test
+    public void mustBulkUpdate5000Workers() throws IOException, ClassNotFoundException, SQLException {
+        String template;
+        try (InputStream is = getClass().getResourceAsStream("/com/offbynull/rfm/host/services/h2db/worker1")) {
+            template = IOUtils.toString(is, UTF_8);
+        }
+        
+        List<Worker> expectedWorkers = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            HostSpecification hostSpec = (HostSpecification) loadSpec(template.replace("s_host:worker1", "s_host:worker" + i));
+            expectedWorkers.add(new Worker(hostSpec));
+        }
+        fixture.updateWorkers(expectedWorkers);
+        fixture.updateWorkers(expectedWorkers.subList(0, 300)); // overwrite some
+        
+        try (Statement stmt = keepAliveConnection.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM host_spec")) {
+            rs.next();
+            assertEquals(5000L, rs.getLong(1));
+        }
+        try (Statement stmt = keepAliveConnection.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT COUNT(*), SUM(cpu_count) FROM worker")) {
+            rs.next();
+            assertEquals(5000L, rs.getLong(1));
+            assertEquals(40000L, rs.getLong(2));
+        }
+        assertEquals(expectedWorkers.get(0), fixture.getWorker("worker0", 12345).getWorker());
+        assertEquals(expectedWorkers.get(4999), fixture.getWorker("worker4999", 12345).getWorker());
+    }
+
     @Test
     public void mustNotGetNonExistantWorker() throws IOException {
         StoredWorker worker = fixture.getWorker("fake", 12345);
@@ -6,11 +6,14 @@ import java.io.IOException;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import java.sql.Connection;
 import java.sql.SQLException;
+import static java.util.Arrays.asList;
 import static java.util.Collections.EMPTY_LIST;
+import java.util.Map;
 import org.apache.commons.io.IOUtils;
 import org.h2.jdbcx.JdbcDataSource;
 import org.junit.After;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -54,6 +57,29 @@ public class WorkGetterTest {
         assertEquals(expectedWork3, actualWork3);
     }
     
+    @Test
+    public void mustReturnNullForMissingWork() throws SQLException, ClassNotFoundException, IOException {
+        loadWorkIntoDatabase("work1");
+        
+        Work actualWork = WorkGetter.getWork(conn, "work2");
+        
+        assertNull(actualWork);
+    }
+    
+    @Test
+    public void mustGetWorksInBulk() throws SQLException, ClassNotFoundException, IOException {
+        Work expectedWork1 = loadWorkIntoDatabase("work1");
+        Work expectedWork2 = loadWorkIntoDatabase("work2");
+        Work expectedWork3 = loadWorkIntoDatabase("work3");
+        
+        Map<String, Work> actualWorks = WorkGetter.getWorks(conn, asList("work3", "missing", "work1", "work2"));
+        
+        assertEquals(asList("work3", "work1", "work2"), asList(actualWorks.keySet().toArray()));
+        assertEquals(expectedWork1, actualWorks.get("work1"));
+        assertEquals(expectedWork2, actualWorks.get("work2"));
+        assertEquals(expectedWork3, actualWorks.get("work3"));
+    }
+    
     private Work loadWorkIntoDatabase(String name) throws ClassNotFoundException, IOException, SQLException {
         String res = IOUtils.resourceToString("/com/offbynull/rfm/host/services/h2db/" + name, UTF_8);
         Work work = new Parser(EMPTY_LIST, EMPTY_LIST).parseScript(res);
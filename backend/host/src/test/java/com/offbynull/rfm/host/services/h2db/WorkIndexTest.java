@@ -0,0 +1,119 @@
+package com.offbynull.rfm.host.services.h2db;
+
+import com.offbynull.rfm.host.model.specification.HostSpecification;
+import com.offbynull.rfm.host.parser.Parser;
+import com.offbynull.rfm.host.service.Work;
+import com.offbynull.rfm.host.service.Worker;
+import com.offbynull.rfm.host.services.h2db.WorkIndex.Change;
+import static com.offbynull.rfm.host.testutils.TestUtils.loadSpecResource;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import static java.util.Collections.EMPTY_LIST;
+import static java.util.Collections.EMPTY_MAP;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class WorkIndexTest {
+
+    private WorkerIndex workerIndex;
+    private WorkIndex fixture;
+
+    @Before
+    public void setUp() throws Exception {
+        workerIndex = new WorkerIndex();
+        workerIndex.put(new Worker((HostSpecification) loadSpecResource("/com/offbynull/rfm/host/services/h2db/worker1")));
+        fixture = new WorkIndex(new Parser(EMPTY_LIST, EMPTY_LIST));
+    }
+
+    @Test
+    public void mustFindBindableInPriorityOrder() {
+        put(work("w1", "0.3", "1 host { 1 gpu with 1 capacity }"));
+        put(work("w2", "0.1", "1 host { 3 gpu with 1 capacity }")); // never fits
+        put(work("w3", "0.2", "1 host { 1 gpu with 1 capacity }"));
+
+        assertEquals("w3", fixture.findBindable(workerIndex, "worker1", 12345));
+    }
+
+    @Test
+    public void mustSkipBoundWork() {
+        put(work("w1", "0.1", "1 host { 1 gpu with 1 capacity }"));
+        put(work("w2", "0.2", "1 host { 1 gpu with 1 capacity }"));
+
+        fixture.setBound("w1", true);
+        assertEquals("w2", fixture.findBindable(workerIndex, "worker1", 12345));
+        assertNull(fixture.getWaitingRequirement("w1"));
+
+        fixture.setBound("w1", false);
+        assertEquals("w1", fixture.findBindable(workerIndex, "worker1", 12345));
+    }
+
+    @Test
+    public void mustSkipWorkThatNeverFits() {
+        put(work("w1", "0.1", "this is not a requirements script"));
+        put(work("w2", "0.2", "1 host { 1 gpu with 1 capacity }"));
+
+        assertNull(fixture.getRequirement("w1"));
+        assertEquals("w2", fixture.findBindable(workerIndex, "worker1", 12345));
+    }
+
+    @Test
+    public void mustStartWaitingOnceParentRemoved() {
+        put(work("w1", "0.2", "1 host { 3 gpu with 1 capacity }")); // never fits
+        put(new Work("w2", new BigDecimal("0.1"), Arrays.asList("w1"), emptyMap(), "1 host { 1 gpu with 1 capacity }"));
+        assertNull(fixture.findBindable(workerIndex, "worker1", 12345));
+
+        fixture.remove("w1");
+
+        assertEquals("w2", fixture.findBindable(workerIndex, "worker1", 12345));
+    }
+
+    @Test
+    public void mustStartWaitingOnceParentRewritten() {
+        put(work("w1", "0.2", "1 host { 3 gpu with 1 capacity }")); // never fits
+        put(new Work("w2", new BigDecimal("0.1"), Arrays.asList("w1"), emptyMap(), "1 host { 1 gpu with 1 capacity }"));
+
+        put(work("w1", "0.2", "1 host { 3 gpu with 1 capacity }")); // rewriting work drops the work_parent rows pointing to it
+
+        assertEquals("w2", fixture.findBindable(workerIndex, "worker1", 12345));
+    }
+
+    @Test
+    public void mustUndoRemove() {
+        put(work("w1", "0.2", "1 host { 1 gpu with 1 capacity }"));
+        put(new Work("w2", new BigDecimal("0.1"), Arrays.asList("w1"), emptyMap(), "1 host { 1 gpu with 1 capacity }"));
+
+        Change change = fixture.remove("w1");
+        fixture.undo(change);
+
+        assertNotNull(fixture.getRequirement("w1"));
+        assertEquals("w1", fixture.findBindable(workerIndex, "worker1", 12345)); // w2 is waiting on w1 again
+    }
+
+    @Test
+    public void mustUndoPut() {
+        put(work("w1", "0.2", "1 host { 1 gpu with 1 capacity }"));
+
+        Change change = put(work("w1", "0.2", "1 host { 3 gpu with 1 capacity }"));
+        assertNull(fixture.findBindable(workerIndex, "worker1", 12345));
+        fixture.undo(change);
+        assertEquals("w1", fixture.findBindable(workerIndex, "worker1", 12345));
+
+        change = put(work("w2", "0.1", "1 host { 1 gpu with 1 capacity }"));
+        fixture.undo(change);
+        assertNull(fixture.getRequirement("w2"));
+        assertEquals("w1", fixture.findBindable(workerIndex, "worker1", 12345));
+    }
+
+    private Change put(Work work) {
+        return fixture.put(work, fixture.compile(work));
+    }
+
+    private static Work work(String id, String priority, String script) {
+        return new Work(id, new BigDecimal(priority), emptyList(), emptyMap(), script);
+    }
+}
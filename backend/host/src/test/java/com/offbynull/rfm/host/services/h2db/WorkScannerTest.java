@@ -3,6 +3,7 @@ package com.offbynull.rfm.host.services.h2db;
 import com.offbynull.rfm.host.parser.Parser;
 import static com.offbynull.rfm.host.service.Direction.BACKWARD;
 import static com.offbynull.rfm.host.service.Direction.FORWARD;
+import com.offbynull.rfm.host.service.StoredWork;
 import com.offbynull.rfm.host.service.Work;
 import java.io.IOException;
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -103,6 +104,26 @@ public final class WorkScannerTest {
         assertEquals("1:work3", works.get(1));
     }
     
+    @Test
+    public void mustScanAndGetWorks() throws SQLException, ClassNotFoundException, IOException {
+        List<StoredWork> works;
+        
+        works = WorkScanner.scanAndGetWorks(conn, FORWARD, 2);
+        assertEquals(2, works.size());
+        assertEquals("0.5:work2", works.get(0).getKey());
+        assertEquals(WorkGetter.getWork(conn, "work2"), works.get(0).getWork());
+        assertEquals("1:work1", works.get(1).getKey());
+        assertEquals(WorkGetter.getWork(conn, "work1"), works.get(1).getWork());
+        
+        works = WorkScanner.scanAndGetWorks(conn, "1:work1", FORWARD, 100);
+        assertEquals(1, works.size());
+        assertEquals("1:work3", works.get(0).getKey());
+        assertEquals(WorkGetter.getWork(conn, "work3"), works.get(0).getWork());
+        
+        works = WorkScanner.scanAndGetWorks(conn, "0.5:work2", BACKWARD, 100);
+        assertTrue(works.isEmpty());
+    }
+    
     private Work loadWorkIntoDatabase(String name) throws ClassNotFoundException, IOException, SQLException {
         String res = IOUtils.resourceToString("/com/offbynull/rfm/host/services/h2db/" + name, UTF_8);
         Work work = new Parser(EMPTY_LIST, EMPTY_LIST).parseScript(res);
@@ -0,0 +1,207 @@
+package com.offbynull.rfm.host.services.h2db;
+
+import com.offbynull.rfm.host.model.specification.HostSpecification;
+import com.offbynull.rfm.host.service.Worker;
+import static com.offbynull.rfm.host.testutils.TestUtils.loadSpecResource;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class WorkerCacheTriggerTest {
+    private JdbcDataSource dataSource;
+
+    private Connection conn;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = new JdbcDataSource();
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+        dataSource.setUrl("jdbc:h2:mem:test");
+
+        conn = dataSource.getConnection();                // Because this is an in-memory database, we need atleast 1 connection open during
+                                                          // the duration of the test to keep the database intact. Once the test is finishes
+                                                          // we close this.
+        conn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+
+        WorkerPrimer.prime(dataSource);
+
+        for (String name : new String[] { "worker1", "worker2" }) {
+            HostSpecification hostSpec = (HostSpecification) loadSpecResource("/com/offbynull/rfm/host/services/h2db/" + name);
+            WorkerSetter.setWorker(conn, new Worker(hostSpec));
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        conn.close(); // Close the final open connection, releasing in-memory database. Contents of database discarded.
+    }
+
+    @Test
+    public void mustApplyCapacityChangesOnUpdate() throws SQLException {
+        execute("UPDATE cpu_spec SET capacity=capacity-1000 WHERE s_host='worker1'");
+
+        assertCached("worker1", "cpu_count", 8L);
+        assertCached("worker1", "cpu_capacity_sum", 792000L);
+        assertCached("worker2", "cpu_capacity_sum", 800000L);
+        assertCacheMatchesSpecs();
+    }
+
+    @Test
+    public void mustApplyCountAndCapacityChangesOnDelete() throws SQLException {
+        execute("DELETE FROM gpu_spec WHERE s_host='worker1' AND s_gpu_id='pci_0000_0001'");
+
+        assertCached("worker1", "gpu_count", 1L);
+        assertCached("worker1", "gpu_capacity_sum", 1L);
+        assertCached("worker2", "gpu_count", 2L);
+        assertCacheMatchesSpecs();
+    }
+
+    @Test
+    public void mustApplyChangesForCascadingDeletes() throws SQLException {
+        execute("DELETE FROM socket_spec WHERE s_host='worker1' AND n_socket_id=1");
+
+        assertCached("worker1", "socket_count", 1L);
+        assertCached("worker1", "core_count", 2L);
+        assertCached("worker1", "cpu_count", 4L);
+        assertCached("worker1", "cpu_capacity_sum", 400000L);
+        assertCacheMatchesSpecs();
+    }
+
+    @Test
+    public void mustApplyCountChangesOnInsert() throws SQLException {
+        execute("INSERT INTO gpu_spec VALUES('worker1', 12345, 'pci_0000_0003', 1)");
+
+        assertCached("worker1", "gpu_count", 3L);
+        assertCached("worker1", "gpu_capacity_sum", 3L);
+        assertCacheMatchesSpecs();
+    }
+
+    @Test
+    public void mustIgnoreChangesFromFailedStatement() throws SQLException {
+        // only the first cpu row gets bumped low enough that the next update on it fails the capacity >= 0 check, so the failed
+        // statement below has already tallied up some rows by the time it blows up
+        execute("UPDATE cpu_spec SET capacity=1 WHERE s_host='worker1' AND n_socket_id=2 AND n_core_id=1 AND n_cpu_id=1");
+        try {
+            execute("UPDATE cpu_spec SET capacity=capacity-2 WHERE s_host='worker1'");
+            fail();
+        } catch (SQLException sqle) {
+            // expected
+        }
+        execute("UPDATE cpu_spec SET capacity=capacity-1 WHERE s_host='worker1' AND n_socket_id=1 AND n_core_id=0 AND n_cpu_id=0");
+
+        assertCached("worker1", "cpu_capacity_sum", 700000L);
+        assertCacheMatchesSpecs();
+    }
+
+    @Test
+    public void mustApplyConcurrentLockedChangesWithoutLosingAny() throws Exception {
+        try (Connection lockConn = dataSource.getConnection()) { // create lock row up front, otherwise threads race to insert it
+            lockConn.setAutoCommit(false);
+            lockConn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            WorkerLock.lock(lockConn, "worker1", 12345).close();
+            lockConn.commit();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                int socketId = (i / 2) + 1;
+                int coreId = i % 2;
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    try (Connection threadConn = dataSource.getConnection();
+                            PreparedStatement ps = threadConn.prepareStatement("UPDATE cpu_spec SET capacity=capacity-1"
+                                    + " WHERE s_host='worker1' AND n_socket_id=? AND n_core_id=?")) {
+                        threadConn.setAutoCommit(false);
+                        threadConn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+                        for (int j = 0; j < 100; j++) {
+                            // writers are expected to hold the worker lock (the service always does) -- h2 1.4.196 loses the triggering
+                            // statement's changes if a trigger's update has to wait on a row locked by another transaction
+                            try (WorkerLock workerLock = WorkerLock.lock(threadConn, "worker1", 12345)) {
+                                ps.setInt(1, socketId);
+                                ps.setInt(2, coreId);
+                                ps.executeUpdate();
+                            }
+                            threadConn.commit();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertCached("worker1", "cpu_capacity_sum", 800000L - (4L * 2L * 100L));
+        assertCacheMatchesSpecs();
+    }
+
+    @Test
+    public void mustNotDoubleCountWhenWorkerRewritten() throws SQLException, ClassNotFoundException, IOException {
+        HostSpecification hostSpec = (HostSpecification) loadSpecResource("/com/offbynull/rfm/host/services/h2db/worker1_less_children");
+        WorkerSetter.setWorker(conn, new Worker(hostSpec));
+        execute("UPDATE cpu_spec SET capacity=capacity-1 WHERE s_host='worker1'");
+
+        assertCacheMatchesSpecs();
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private void assertCached(String host, String column, long expected) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT " + column + " FROM worker WHERE s_host='" + host + "' AND n_port=12345")) {
+            assertTrue(rs.next());
+            assertEquals(0, BigDecimal.valueOf(expected).compareTo(rs.getBigDecimal(1)));
+        }
+    }
+
+    private void assertCacheMatchesSpecs() throws SQLException {
+        String[] countNames = { "socket", "core", "cpu", "gpu", "mount", "ram" };
+        String[] capacityNames = { "cpu", "gpu", "mount", "ram" };
+        for (String host : new String[] { "worker1", "worker2" }) {
+            for (String name : countNames) {
+                BigDecimal expected = query("SELECT COUNT(*) FROM " + name + "_spec WHERE s_host='" + host + "'");
+                BigDecimal actual = query("SELECT " + name + "_count FROM worker WHERE s_host='" + host + "'");
+                assertEquals(expected + " vs " + actual, 0, expected.compareTo(actual));
+            }
+            for (String name : capacityNames) {
+                BigDecimal expected = query("SELECT COALESCE(SUM(capacity), 0) FROM " + name + "_spec WHERE s_host='" + host + "'");
+                BigDecimal actual = query("SELECT " + name + "_capacity_sum FROM worker WHERE s_host='" + host + "'");
+                assertEquals(expected + " vs " + actual, 0, expected.compareTo(actual));
+            }
+        }
+    }
+
+    private BigDecimal query(String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(sql)) {
+            assertTrue(rs.next());
+            return rs.getBigDecimal(1);
+        }
+    }
+}
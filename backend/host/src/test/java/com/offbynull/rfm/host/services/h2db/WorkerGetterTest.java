@@ -6,9 +6,12 @@ import static com.offbynull.rfm.host.testutils.TestUtils.loadSpecResource;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import static java.util.Arrays.asList;
+import java.util.Map;
 import org.h2.jdbcx.JdbcDataSource;
 import org.junit.After;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -51,6 +54,35 @@ public final class WorkerGetterTest {
         assertEquals(expectedWorker3, actualWorker3);
     }
     
+    @Test
+    public void mustReturnNullForMissingWorker() throws SQLException, ClassNotFoundException, IOException {
+        loadWorkerIntoDatabase("worker1");
+        
+        Worker actualWorker = WorkerGetter.getWorker(conn, "worker1", 12346);
+        
+        assertNull(actualWorker);
+    }
+    
+    @Test
+    public void mustGetWorkersInBulk() throws SQLException, ClassNotFoundException, IOException {
+        Worker expectedWorker1 = loadWorkerIntoDatabase("worker1");
+        Worker expectedWorker2 = loadWorkerIntoDatabase("worker2");
+        Worker expectedWorker3 = loadWorkerIntoDatabase("worker3");
+        
+        Map<String, Worker> actualWorkers = WorkerGetter.getWorkers(conn,
+                asList("worker3:12345", "missing:12345", "worker1:12345", "worker2:12345"));
+        
+        assertEquals(asList("worker3:12345", "worker1:12345", "worker2:12345"), asList(actualWorkers.keySet().toArray()));
+        assertEquals(expectedWorker1, actualWorkers.get("worker1:12345"));
+        assertEquals(expectedWorker2, actualWorkers.get("worker2:12345"));
+        assertEquals(expectedWorker3, actualWorkers.get("worker3:12345"));
+    }
+    
+    @Test(expected = IOException.class)
+    public void mustFailToGetWorkersWithBadKey() throws SQLException, IOException {
+        WorkerGetter.getWorkers(conn, asList("worker1"));
+    }
+    
     private Worker loadWorkerIntoDatabase(String name) throws ClassNotFoundException, IOException, SQLException {
         HostSpecification hostSpec = (HostSpecification) loadSpecResource("/com/offbynull/rfm/host/services/h2db/" + name);
         Worker worker = new Worker(hostSpec);
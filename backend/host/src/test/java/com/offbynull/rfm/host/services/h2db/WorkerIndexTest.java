@@ -0,0 +1,115 @@
+package com.offbynull.rfm.host.services.h2db;
+
+import com.offbynull.rfm.host.model.specification.HostSpecification;
+import com.offbynull.rfm.host.parser.Parser;
+import com.offbynull.rfm.host.service.Worker;
+import com.offbynull.rfm.host.services.h2db.WorkerIndex.CompiledRequirement;
+import static com.offbynull.rfm.host.testutils.TestUtils.loadSpecResource;
+import static java.util.Collections.EMPTY_LIST;
+import static java.util.Collections.EMPTY_MAP;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class WorkerIndexTest {
+
+    private final Parser parser = new Parser(EMPTY_LIST, EMPTY_LIST);
+
+    private Worker worker;
+    private WorkerIndex fixture;
+
+    @Before
+    public void setUp() throws Exception {
+        worker = new Worker((HostSpecification) loadSpecResource("/com/offbynull/rfm/host/services/h2db/worker1"));
+        fixture = new WorkerIndex();
+        fixture.put(worker);
+    }
+
+    @Test
+    public void mustOnlyFindBindableWhenCapacityAvailable() {
+        assertTrue(fixture.isBindable("worker1", 12345, compile("1 host { 2 gpu with 1 capacity }")));
+        assertFalse(fixture.isBindable("worker1", 12345, compile("1 host { 3 gpu with 1 capacity }")));
+        assertTrue(fixture.isBindable("worker1", 12345, compile("1 host { 1 socket { 2 core { 2 cpu with 100000 capacity } } }")));
+        assertFalse(fixture.isBindable("worker1", 12345, compile("1 host { 1 socket { 3 core { 2 cpu with 100000 capacity } } }")));
+        assertTrue(fixture.isBindable("worker1", 12345, compile("1 host { 1 mount with 1234512345 capacity }")));
+        assertFalse(fixture.isBindable("worker1", 12345, compile("1 host { 1 mount with 1234512346 capacity }")));
+    }
+
+    @Test
+    public void mustApplyWhereConditions() {
+        assertTrue(fixture.isBindable("worker1", 12345, compile("1 host { 1 socket where socket.n_socket_id==2 }")));
+        assertFalse(fixture.isBindable("worker1", 12345, compile("1 host { 1 socket where socket.n_socket_id==3 }")));
+        assertTrue(fixture.isBindable("worker1", 12345,
+                compile("1 host { 1 socket { 1 core { 1 cpu with 1 capacity where host.s_facility==\"US-EAST\" } } }")));
+        assertFalse(fixture.isBindable("worker1", 12345,
+                compile("1 host { 1 socket { 1 core { 1 cpu with 1 capacity where host.s_facility==\"US-WEST\" } } }")));
+    }
+
+    @Test
+    public void mustSpreadChildrenAcrossParentsWithNoCount() {
+        assertTrue(fixture.isBindable("worker1", 12345, compile("1 host { 1 socket { ? core { 4 cpu with 1 capacity } } }")));
+        assertFalse(fixture.isBindable("worker1", 12345, compile("1 host { 1 socket { ? core { 5 cpu with 1 capacity } } }")));
+        assertFalse(fixture.isBindable("worker1", 12345, compile("1 host { 1 socket { 1 core { 4 cpu with 1 capacity } } }")));
+    }
+
+    @Test
+    public void mustConsumeCapacityOnBindAndRestoreOnUnbind() {
+        CompiledRequirement req = compile("1 host { 1 gpu with 1 capacity }");
+
+        assertTrue(fixture.bind("w1", "worker1", 12345, req));
+        assertTrue(fixture.bind("w2", "worker1", 12345, req));
+        assertFalse(fixture.bind("w3", "worker1", 12345, req));
+        assertTrue(fixture.isBound("worker1", 12345));
+
+        fixture.unbind("w1");
+        assertTrue(fixture.bind("w3", "worker1", 12345, req));
+
+        fixture.unbind("w2");
+        fixture.unbind("w3");
+        assertFalse(fixture.isBound("worker1", 12345));
+    }
+
+    @Test
+    public void mustTakeMaxCapacityElseRemainingCapacity() {
+        CompiledRequirement req = compile("1 host { 1 ram with [1,600000000000] capacity }");
+
+        assertTrue(fixture.bind("w1", "worker1", 12345, req)); // takes 600000000000
+        assertTrue(fixture.bind("w2", "worker1", 12345, req)); // takes remaining 511111111110
+        assertFalse(fixture.bind("w3", "worker1", 12345, req));
+    }
+
+    @Test
+    public void mustNotChangeAnythingWhenCheckingIfBindable() {
+        CompiledRequirement req = compile("1 host { 2 gpu with 1 capacity }");
+
+        assertTrue(fixture.isBindable("worker1", 12345, req));
+        assertTrue(fixture.isBindable("worker1", 12345, req));
+        assertFalse(fixture.isBound("worker1", 12345));
+    }
+
+    @Test
+    public void mustKeepAllocationsWhenWorkerUpdated() {
+        assertTrue(fixture.bind("w1", "worker1", 12345, compile("1 host { 2 gpu with 1 capacity }")));
+
+        fixture.put(worker);
+
+        assertTrue(fixture.isBound("worker1", 12345));
+        assertFalse(fixture.isBindable("worker1", 12345, compile("1 host { 1 gpu with 1 capacity }")));
+    }
+
+    @Test
+    public void mustRemoveWorker() {
+        assertTrue(fixture.contains("worker1", 12345));
+
+        fixture.remove("worker1", 12345);
+
+        assertFalse(fixture.contains("worker1", 12345));
+        assertFalse(fixture.isBindable("worker1", 12345, compile("1 host { 1 gpu with 1 capacity }")));
+        assertFalse(fixture.bind("w1", "worker1", 12345, compile("1 host { 1 gpu with 1 capacity }")));
+    }
+
+    private CompiledRequirement compile(String script) {
+        return WorkerIndex.compile(parser.parseScriptReqs(EMPTY_MAP, script));
+    }
+}
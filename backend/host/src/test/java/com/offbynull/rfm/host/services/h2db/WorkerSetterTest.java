@@ -4,11 +4,19 @@ import com.offbynull.rfm.host.model.specification.HostSpecification;
 import com.offbynull.rfm.host.service.Worker;
 import static com.offbynull.rfm.host.testutils.TestUtils.loadSpecResource;
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import java.util.List;
 import org.h2.jdbcx.JdbcDataSource;
 import org.junit.After;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -63,6 +71,50 @@ public final class WorkerSetterTest {
         assertEquals(expectedWorker, actualWorker);
     }
     
+    @Test
+    public void mustSetWorkersInBulk() throws SQLException, ClassNotFoundException, IOException {
+        loadWorkerIntoDatabase("worker1_less_children");
+        
+        List<Worker> actualWorkers = new ArrayList<>();
+        for (String name : asList("worker1", "worker2", "worker3")) {
+            HostSpecification hostSpec = (HostSpecification) loadSpecResource("/com/offbynull/rfm/host/services/h2db/" + name);
+            actualWorkers.add(new Worker(hostSpec));
+        }
+        WorkerSetter.setWorkers(conn, actualWorkers);
+        
+        assertEquals(actualWorkers.get(0), WorkerGetter.getWorker(conn, "worker1", 12345));
+        assertEquals(actualWorkers.get(1), WorkerGetter.getWorker(conn, "worker2", 12345));
+        assertEquals(actualWorkers.get(2), WorkerGetter.getWorker(conn, "worker3", 12345));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void mustFailToSetDuplicateWorkersInBulk() throws SQLException, ClassNotFoundException, IOException {
+        HostSpecification hostSpec = (HostSpecification) loadSpecResource("/com/offbynull/rfm/host/services/h2db/worker1");
+        WorkerSetter.setWorkers(conn, asList(new Worker(hostSpec), new Worker(hostSpec)));
+    }
+    
+    @Test
+    public void mustWriteCachedCountsAndCapacities() throws SQLException, ClassNotFoundException, IOException {
+        loadWorkerIntoDatabase("worker1_less_children");
+        loadWorkerIntoDatabase("worker1");
+        
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT * FROM worker WHERE s_host='worker1' AND n_port=12345")) {
+            assertTrue(rs.next());
+            assertEquals(0, new BigDecimal(2).compareTo(rs.getBigDecimal("socket_count")));
+            assertEquals(0, new BigDecimal(4).compareTo(rs.getBigDecimal("core_count")));
+            assertEquals(0, new BigDecimal(8).compareTo(rs.getBigDecimal("cpu_count")));
+            assertEquals(0, new BigDecimal(800000).compareTo(rs.getBigDecimal("cpu_capacity_sum")));
+            assertEquals(0, new BigDecimal(2).compareTo(rs.getBigDecimal("gpu_count")));
+            assertEquals(0, new BigDecimal(2).compareTo(rs.getBigDecimal("gpu_capacity_sum")));
+            assertEquals(0, new BigDecimal(2).compareTo(rs.getBigDecimal("mount_count")));
+            assertEquals(0, new BigDecimal(1357971233L).compareTo(rs.getBigDecimal("mount_capacity_sum")));
+            assertEquals(0, new BigDecimal(1).compareTo(rs.getBigDecimal("ram_count")));
+            assertEquals(0, new BigDecimal(1111111111110L).compareTo(rs.getBigDecimal("ram_capacity_sum")));
+            assertFalse(rs.next());
+        }
+    }
+    
     private Worker loadWorkerIntoDatabase(String name) throws ClassNotFoundException, IOException, SQLException {
         HostSpecification hostSpec = (HostSpecification) loadSpecResource("/com/offbynull/rfm/host/services/h2db/" + name);
         Worker worker = new Worker(hostSpec);